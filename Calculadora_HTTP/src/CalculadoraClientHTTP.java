@@ -1,28 +1,83 @@
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
-import java.util.concurrent.TimeUnit;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
 /**
  * Cliente HTTP para a Calculadora Distribuída.
  * Envia requisições POST para o servidor e implementa uma política de Retry (tentativas).
+ *
+ * Usa um único java.net.http.HttpClient (compartilhado por todas as instâncias), que mantém
+ * as conexões abertas (keep-alive do HTTP/1.1) e as reaproveita entre as requisições.
+ * As chamadas são assíncronas (sendAsync), com um limite de requisições simultâneas por instância;
+ * as que passam do limite esperam numa fila, sem ocupar threads.
+ *
+ * Retry: falhas de rede e respostas 5xx são repetidas com backoff exponencial com "jitter"
+ * (espera aleatória entre 0 e o backoff da tentativa, para os clientes não repetirem todos juntos),
+ * sempre dentro de um prazo total por chamada. As esperas são agendadas, sem Thread.sleep.
+ * Tudo isso fica na Resiliencia, que também traz um disjuntor (para de chamar um servidor fora do ar),
+ * um orçamento de retentativas e, se ativados, pedidos de cobertura ("hedging").
  */
 public class CalculadoraClientHTTP {
 
     // URL do servidor HTTP local.
-    private static final String URL_CALCULADORA = "http://localhost:8080/calcular";
+    private static final String URL_SERVIDOR = "http://localhost:8080";
 
-    // --- Configurações da Política de Retry ---
+    // --- Configurações padrão da Política de Retry ---
     private static final int MAX_RETRIES = 3;
-    private static final int INITIAL_BACKOFF_MS = 1000; // 1 segundo inicial
+    private static final int INITIAL_BACKOFF_MS = 1000; // 1 segundo inicial (antes do jitter)
+    private static final int MAX_BACKOFF_MS = 10000;
+    private static final Duration PRAZO_PADRAO = Duration.ofSeconds(30);
+    private static final int MAX_SIMULTANEAS_PADRAO = 256;
+
+    // Cliente compartilhado: um único pool de conexões para todo o processo.
+    private static final HttpClient HTTP = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(15))
+            .build();
+
+    // Falhas de tentativas e mudanças do disjuntor: pelo registrador assíncrono, nunca direto no console
+    // (o cliente pode fazer milhares de requisições por segundo).
+    private static final Registrador LOG = Registrador.compartilhado();
+
+    // Instância usada pelos métodos estáticos de demonstração.
+    private static final CalculadoraClientHTTP PADRAO = new CalculadoraClientHTTP();
+
+    /** Falhas que valem uma nova tentativa: rede, timeout e respostas 5xx (4xx é erro do cliente: repetir não adianta). */
+    private static final Predicate<Throwable> FALHA_TEMPORARIA = e -> e instanceof ErroHttp
+            ? ((ErroHttp) e).getStatus() >= 500
+            : Resiliencia.FALHA_DE_REDE.test(e);
+
+    private final String urlBase;
+    private final int maxTentativas;
+    private final Duration prazoPadrao;
+    private final Resiliencia resiliencia;
+
+    // Limite de requisições simultâneas: quem passa do limite espera na fila.
+    private final Semaphore vagas;
+    private final Queue<Runnable> fila = new ConcurrentLinkedQueue<>();
 
     public static void main(String[] args) {
+        // "java CalculadoraClientHTTP carga 20000" mede quantas requisições por segundo o cliente consegue fazer.
+        if (args.length > 0 && args[0].equals("carga")) {
+            testarCarga(args.length > 1 ? Integer.parseInt(args[1]) : 20000);
+            return;
+        }
+
         // --- Demonstração de todas as operações ---
 
         // 1. Soma (operacao=1)
@@ -41,98 +96,194 @@ public class CalculadoraClientHTTP {
         enviarEReceber("10", "0", 4);
     }
 
+    /** Cria um cliente para o servidor local com as configurações padrão. */
+    public CalculadoraClientHTTP() {
+        this(URL_SERVIDOR, MAX_SIMULTANEAS_PADRAO, MAX_RETRIES, INITIAL_BACKOFF_MS, PRAZO_PADRAO);
+    }
+
+    /**
+     * @param urlBase Endereço do servidor (ex: "http://localhost:8080").
+     * @param maxSimultaneas Máximo de requisições em andamento ao mesmo tempo.
+     * @param maxTentativas Quantas vezes uma requisição é tentada antes de falhar.
+     * @param backoffInicialMs Espera máxima antes da segunda tentativa (dobra a cada tentativa).
+     * @param prazoPadrao Tempo máximo de uma chamada, somando todas as tentativas e esperas.
+     */
+    public CalculadoraClientHTTP(String urlBase, int maxSimultaneas, int maxTentativas,
+                                 long backoffInicialMs, Duration prazoPadrao) {
+        this.urlBase = urlBase;
+        this.vagas = new Semaphore(maxSimultaneas);
+        this.maxTentativas = maxTentativas;
+        this.prazoPadrao = prazoPadrao;
+
+        Disjuntor disjuntor = new Disjuntor(urlBase);
+        disjuntor.adicionarOuvinte((anterior, atual) ->
+                LOG.aviso("http-cliente", "Disjuntor " + anterior + " -> " + atual, urlBase));
+        this.resiliencia = new Resiliencia(disjuntor, new OrcamentoRetentativas())
+                .comRetentativas(maxTentativas, backoffInicialMs, MAX_BACKOFF_MS);
+    }
+
     /**
-     * Envia a requisição HTTP com política de Retry.
+     * Envia a requisição HTTP com política de Retry e exibe o resultado (demonstração do main: só ela
+     * escreve no console; as chamadas da biblioteca usam o Registrador).
      * @param oper1 Primeiro operando.
      * @param oper2 Segundo operando.
      * @param operacao Código da operação (1=soma, 2=subtrai, 3=multiplica, 4=divide).
      */
     public static void enviarEReceber(String oper1, String oper2, int operacao) {
-
-        String postData = String.format("oper1=%s&oper2=%s&operacao=%d", oper1, oper2, operacao);
         String operacaoSimbolo = getOperacaoSimbolo(operacao);
-
         System.out.printf("\n--- Testando: %s %s %s ---\n", oper1, operacaoSimbolo, oper2);
 
-        // --- Lógica de Retry com Backoff Exponencial ---
-        for (int attempt = 1; attempt <= MAX_RETRIES; attempt++) {
+        try {
+            String resultado = PADRAO.calcularAsync(oper1, oper2, operacao).join();
+            System.out.printf("  [SUCESSO] Resposta do Servidor: %s\n", resultado);
+        } catch (CompletionException e) {
+            System.err.println("  [FALHA FATAL] Todas as tentativas falharam: " + descrever(e.getCause()));
+        }
+    }
 
-            long delay = INITIAL_BACKOFF_MS * (long) Math.pow(2, attempt - 1);
+    /**
+     * Calcula "oper1 (operacao) oper2" no endpoint /calcular.
+     * @return Um CompletableFuture com a resposta JSON do servidor.
+     */
+    public CompletableFuture<String> calcularAsync(String oper1, String oper2, int operacao) {
+        String postData = "oper1=" + codificar(oper1) + "&oper2=" + codificar(oper2) + "&operacao=" + operacao;
+        return postAsync("/calcular", postData, prazoPadrao);
+    }
 
-            try {
-                String resultado = realizarRequisicao(postData);
-                System.out.printf("  [SUCESSO] Resposta do Servidor: %s\n", resultado);
-                return; // Sai do método se for bem-sucedido
+    /**
+     * Avalia uma expressão completa no endpoint /avaliar.
+     * @return Um CompletableFuture com a resposta JSON do servidor.
+     */
+    public CompletableFuture<String> avaliarAsync(String expressao) {
+        return postAsync("/avaliar", "expressao=" + codificar(expressao), prazoPadrao);
+    }
 
-            } catch (IOException e) {
-                // Trata falhas de I/O (ex: servidor offline, timeout).
-                System.err.printf("  [TENTATIVA %d/%d] Falha: %s\n", attempt, MAX_RETRIES, e.getMessage());
+    /**
+     * Envia um POST (application/x-www-form-urlencoded) com Retry, respeitando o limite de simultâneas.
+     * @param caminho O endpoint (ex: "/calcular").
+     * @param postData Dados no formato 'x=a&y=b'.
+     * @param prazo Tempo máximo da chamada, somando tentativas e esperas.
+     * @return Um CompletableFuture com a resposta do servidor, ou com a falha da última tentativa
+     *         (TimeoutException se o prazo acabar antes).
+     */
+    public CompletableFuture<String> postAsync(String caminho, String postData, Duration prazo) {
+        HttpRequest.Builder modelo = HttpRequest.newBuilder(URI.create(urlBase + caminho))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(postData, StandardCharsets.UTF_8));
+        long limite = System.nanoTime() + prazo.toNanos();
+        AtomicInteger tentativas = new AtomicInteger();
 
-                // Se for a última tentativa, não espera e falha.
-                if (attempt < MAX_RETRIES) {
-                    System.out.printf("  Aguardando %d ms antes de tentar novamente...\n", delay);
-                    try {
-                        TimeUnit.MILLISECONDS.sleep(delay);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        break;
+        CompletableFuture<String> resultado = new CompletableFuture<>();
+        executarQuandoHouverVaga(() -> resiliencia
+                .executarAsync(() -> tentar(modelo, tentativas.incrementAndGet(), limite), FALHA_TEMPORARIA, limite)
+                .whenComplete((resposta, erro) -> {
+                    liberarVaga();
+                    if (erro == null) {
+                        resultado.complete(resposta);
+                    } else {
+                        resultado.completeExceptionally(erro);
                     }
-                } else {
-                    System.err.println("  [FALHA FATAL] Todas as tentativas falharam.");
-                }
+                }));
+        return resultado;
+    }
+
+    /** Faz uma tentativa (as retentativas e pedidos de cobertura ficam por conta da Resiliencia). */
+    private CompletableFuture<String> tentar(HttpRequest.Builder modelo, int tentativa, long limite) {
+        long restante = limite - System.nanoTime();
+        if (restante <= 0) {
+            return CompletableFuture.failedFuture(new TimeoutException("Prazo da requisição esgotado."));
+        }
+
+        HttpRequest requisicao = modelo.copy().timeout(Duration.ofNanos(restante)).build();
+        return HTTP.sendAsync(requisicao, HttpResponse.BodyHandlers.ofString()).handle((resposta, erro) -> {
+            if (resposta != null && resposta.statusCode() == 200) {
+                return resposta.body().trim();
             }
+            Throwable falha = resposta != null ? new ErroHttp(resposta.statusCode()) : erro;
+            if (falha instanceof CompletionException && falha.getCause() != null) {
+                falha = falha.getCause();
+            }
+            if (LOG.isAtivo(Registrador.Nivel.DEPURACAO)) {
+                LOG.depuracao("http-cliente", "Tentativa " + tentativa + "/" + maxTentativas + " falhou", descrever(falha));
+            }
+            throw new CompletionException(falha);
+        });
+    }
+
+    /** A camada de resiliência deste cliente (ex: para ativar pedidos de cobertura ou ler as métricas). */
+    public Resiliencia getResiliencia() {
+        return resiliencia;
+    }
+
+    /**
+     * Executa a tarefa assim que houver vaga. Quem ocupa a vaga deve chamar liberarVaga() ao terminar.
+     * A tarefa entra na fila antes de tentar a vaga: assim nenhuma tarefa fica parada na fila
+     * enquanto há vagas livres, mesmo com várias threads liberando e enfileirando ao mesmo tempo.
+     */
+    private void executarQuandoHouverVaga(Runnable tarefa) {
+        fila.add(tarefa);
+        iniciarPendentes();
+    }
+
+    private void liberarVaga() {
+        vagas.release();
+        iniciarPendentes();
+    }
+
+    private void iniciarPendentes() {
+        while (!fila.isEmpty() && vagas.tryAcquire()) {
+            Runnable tarefa = fila.poll();
+            if (tarefa == null) {
+                vagas.release(); // Outra thread pegou a tarefa; devolve a vaga e verifica de novo.
+                continue;
+            }
+            tarefa.run();
         }
     }
 
     /**
-     * Realiza a requisição POST para o servidor.
-     * @param postData Dados no formato 'x=a&y=b'.
-     * @return A resposta JSON do servidor como String.
-     * @throws IOException Se houver falha na comunicação de rede.
+     * Envia N expressões de uma vez (assíncronas, limitadas pelo máximo de simultâneas) e mostra a vazão.
      */
-    private static String realizarRequisicao(String postData) throws IOException {
-        // Usa HttpURLConnection para requisições HTTP (não HTTPS, já que é localhost).
-        URL url = new URL(URL_CALCULADORA);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-
-        // --- Configuração da Conexão ---
-        conn.setReadTimeout(10000); // Timeout de leitura (10 segundos)
-        conn.setConnectTimeout(15000); // Timeout de conexão (15 segundos)
-        conn.setRequestMethod("POST");
-        conn.setDoOutput(true); // Indica que iremos escrever dados no corpo (POST)
-
-        // Define o tipo de conteúdo que estamos enviando.
-        conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-
-        // --- 1. Envio dos Parâmetros ---
-        try (OutputStream os = conn.getOutputStream();
-             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8))) {
-
-            writer.write(postData);
-            writer.flush(); // Força o envio dos dados.
+    private static void testarCarga(int quantidade) {
+        CalculadoraClientHTTP cliente = new CalculadoraClientHTTP(URL_SERVIDOR, 64, MAX_RETRIES, 50, PRAZO_PADRAO);
+        for (int rodada = 1; rodada <= 3; rodada++) {
+            long inicio = System.nanoTime();
+            List<CompletableFuture<String>> respostas = new ArrayList<>(quantidade);
+            for (int i = 0; i < quantidade; i++) {
+                respostas.add(cliente.avaliarAsync(i + " * 2 + 1"));
+            }
+            long falhas = respostas.stream().map(f -> f.exceptionally(e -> null).join()).filter(r -> r == null).count();
+            double segundos = (System.nanoTime() - inicio) / 1e9;
+            System.out.printf("Rodada %d: %d requisições em %.2f s (%.0f req/s), %d falha(s)%n",
+                    rodada, quantidade, segundos, quantidade / segundos, falhas);
         }
+    }
 
-        // --- 2. Recebimento e Tratamento da Resposta ---
-        int responseCode = conn.getResponseCode();
+    /** Mensagem da falha; algumas exceções de rede (ex: ConnectException) não têm mensagem, só o tipo. */
+    private static String descrever(Throwable falha) {
+        return falha.getMessage() != null ? falha.getMessage() : falha.getClass().getSimpleName();
+    }
 
-        if (responseCode == HttpURLConnection.HTTP_OK) { // Status 200 OK
-            // Usa try-with-resources para garantir o fechamento do BufferedReader
-            try (BufferedReader br = new BufferedReader(
-                    new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
+    /** Resposta HTTP com status diferente de 200. */
+    public static class ErroHttp extends IOException {
+        private static final long serialVersionUID = 1L;
 
-                StringBuilder response = new StringBuilder();
-                String responseLine;
-                while ((responseLine = br.readLine()) != null) {
-                    response.append(responseLine.trim());
-                }
-                return response.toString();
-            }
-        } else {
-            // Se o código de resposta não for 200 OK, levanta uma exceção para o Retry tratar.
-            throw new IOException("HTTP code: " + responseCode);
+        private final int status;
+
+        public ErroHttp(int status) {
+            super("HTTP code: " + status);
+            this.status = status;
+        }
+
+        public int getStatus() {
+            return status;
         }
     }
 
+    private static String codificar(String valor) {
+        return URLEncoder.encode(valor, StandardCharsets.UTF_8);
+    }
+
     private static String getOperacaoSimbolo(int operacao) {
         switch (operacao) {
             case 1: return "+";
@@ -142,4 +293,4 @@ public class CalculadoraClientHTTP {
             default: return "?";
         }
     }
-}
\ No newline at end of file
+}
@@ -2,41 +2,253 @@ import com.sun.net.httpserver.HttpServer;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.InetSocketAddress;
 import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.IntStream;
 
 /**
  * Servidor HTTP da Calculadora.
  * Recebe requisições POST no endpoint /calcular e retorna o resultado em JSON.
+ * O endpoint /avaliar aceita uma expressão completa, avaliada pelo motor de cálculo configurado
+ * (-Dcalculadora.avaliador, ver AvaliadorExpressoes),
+ * e o /calcular/lote aceita muitos cálculos numa única requisição. O /metrics publica as métricas
+ * (latências, erros, saturação) no formato de texto do Prometheus (ver Metricas).
  * Utiliza a API interna do Java (com.sun.net.httpserver).
+ * As requisições são processadas em paralelo pelo ExecutorHttp; quando ele está saturado, o servidor responde 503.
+ * Com o controle de admissão ligado (-Dcalculadora.admissao.*, ver ControleAdmissao), um cliente acima do seu
+ * limite de taxa recebe 429, e as requisições acima do limite de simultâneas, 503.
+ * As expressões passam pelos limites de complexidade e as pesadas são avaliadas num pool separado
+ * (-Dcalculadora.limites.* e -Dcalculadora.escalonador.*, ver EscalonadorAvaliacao); com a fila desse
+ * pool cheia, o /avaliar responde 503.
  */
 public class CalculadoraServerHTTP {
 
     private static final int PORTA = 8080;
 
+    // Métricas das requisições (latências, erros, saturação do executor), publicadas em /metrics.
+    static final Metricas METRICAS = Metricas.de("http");
+
+    // Controle de admissão (limite de taxa por cliente e de requisições simultâneas; ver ControleAdmissao).
+    static final ControleAdmissao ADMISSAO = ControleAdmissao.configurado(METRICAS);
+
+    // Motor de cálculo compartilhado por /avaliar e /calcular/lote.
+    static final AvaliadorExpressoes MOTOR_CALCULO = AvaliadorExpressoes.configurado();
+
+    // Limites de complexidade e faixa das expressões pesadas (ver EscalonadorAvaliacao), sobre o motor medido.
+    static final EscalonadorAvaliacao ESCALONADOR = EscalonadorAvaliacao.configurado(METRICAS.medir(MOTOR_CALCULO), METRICAS);
+
+    // --- Configuração do executor (ex: java -Dcalculadora.http.executor=roubo CalculadoraServerHTTP) ---
+    // Modelo de execução das requisições: "fixo", "roubo" (work-stealing) ou "virtual" (Java 21+).
+    private static final String EXECUTOR = System.getProperty("calculadora.http.executor", "fixo");
+    // Threads dos modelos "fixo" e "roubo".
+    private static final int THREADS = Integer.getInteger("calculadora.http.threads",
+            Runtime.getRuntime().availableProcessors() * 2);
+    // Requisições que podem esperar por uma thread; acima disso o servidor responde 503.
+    private static final int TAMANHO_FILA = Integer.getInteger("calculadora.http.fila", 256);
+    // Conexões que o sistema operacional pode manter na fila de aceitação (backlog do socket).
+    private static final int BACKLOG = Integer.getInteger("calculadora.http.backlog", 1024);
+
+    // Log assíncrono: as threads de atendimento não fazem I/O de console (ver Registrador).
+    static final Registrador LOG = Registrador.compartilhado();
+
     public static void main(String[] args) throws IOException {
+        // O HttpServer do JDK não liga o TCP_NODELAY: numa conexão reaproveitada (keep-alive), o corpo da
+        // resposta, escrito depois dos cabeçalhos, esperava o ACK atrasado do cliente (~40 ms por requisição).
+        // A propriedade é lida uma única vez, na criação do primeiro servidor.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+
         // Cria uma instância do servidor que escuta no endereço localhost e na porta 8080.
-        HttpServer server = HttpServer.create(new InetSocketAddress(PORTA), 0);
+        HttpServer server = HttpServer.create(new InetSocketAddress(PORTA), BACKLOG);
 
         // Define o contexto (endpoint) para lidar com as requisições de cálculo.
-        server.createContext("/calcular", new CalculadoraHandler());
+        server.createContext("/calcular",
+                new SobrecargaHandler(new AdmissaoHandler(new MedicaoHandler(new CalculadoraHandler()), true)));
+        // Define o contexto para avaliar expressões completas (usa o motor de cálculo configurado).
+        server.createContext("/avaliar",
+                new SobrecargaHandler(new AdmissaoHandler(new MedicaoHandler(new AvaliarHandler()), true)));
+        // Define o contexto para muitos cálculos numa única requisição (resposta enviada aos poucos).
+        // A duração de um lote depende do tamanho dele: não serve de amostra para o limite adaptativo.
+        server.createContext("/calcular/lote",
+                new SobrecargaHandler(new AdmissaoHandler(new MedicaoHandler(new LoteHandler()), false)));
+        // Métricas: sem o SobrecargaHandler, para continuarem acessíveis justamente quando o servidor está saturado.
+        server.createContext("/metrics", new MetricasHandler());
 
-        // Define um executor para lidar com as requisições, permitindo processamento assíncrono.
-        server.setExecutor(null);
+        // Define o executor que processa as requisições em paralelo (com limite e resposta 503 quando saturado).
+        ExecutorHttp executor = new ExecutorHttp(EXECUTOR, THREADS, TAMANHO_FILA);
+        server.setExecutor(executor);
+        METRICAS.registrarMedidor("fila", executor::getNaFila);
+        METRICAS.registrarMedidor("vagasLivres", executor::getVagasLivres);
 
         server.start();
-        System.out.println("Servidor HTTP da Calculadora iniciado na porta " + PORTA + ". Aguardando requisições...");
+        System.out.println("Servidor HTTP da Calculadora iniciado na porta " + PORTA + " com executor "
+                + executor + " e avaliador " + MOTOR_CALCULO.getNome() + ". Aguardando requisições...");
+        if (ADMISSAO.isAtivo()) {
+            System.out.println("Controle de admissão: " + ADMISSAO + ".");
+        }
+        System.out.println("Escalonador: " + ESCALONADOR + ".");
+    }
+
+    /**
+     * Envolve um handler e recusa a requisição com 503 quando o ExecutorHttp está saturado.
+     * A recusa não lê o corpo da requisição nem faz nenhum cálculo, para custar o mínimo possível.
+     */
+    static class SobrecargaHandler implements HttpHandler {
+        private static final byte[] RESPOSTA = "{\"erro\": \"Servidor sobrecarregado, tente novamente.\"}"
+                .getBytes(StandardCharsets.UTF_8);
+
+        private final HttpHandler handler;
+
+        SobrecargaHandler(HttpHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!ExecutorHttp.isDescartando()) {
+                handler.handle(exchange);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            exchange.sendResponseHeaders(503, RESPOSTA.length); // Serviço Indisponível
+            METRICAS.registrarErro(Metricas.TipoErro.SOBRECARGA);
+            LOG.aviso("http", "Requisição recusada por sobrecarga (503)", exchange.getRequestURI().getPath());
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(RESPOSTA);
+            }
+        }
+    }
+
+    /**
+     * Envolve um handler de cálculo e o protege com o controle de admissão (ver ControleAdmissao).
+     * O cliente é identificado pelo cabeçalho X-Api-Key ou, sem ele, pelo endereço. Uma requisição
+     * acima do limite de taxa do cliente recebe 429; acima do limite de simultâneas, 503 (como a
+     * sobrecarga do executor). As duas com Retry-After e sem ler o corpo.
+     */
+    static class AdmissaoHandler implements HttpHandler {
+        private static final byte[] RESPOSTA_TAXA = ("{\"erro\": \"" + ControleAdmissao.Recusa.TAXA.getMensagem() + "\"}")
+                .getBytes(StandardCharsets.UTF_8);
+        private static final byte[] RESPOSTA_CONCORRENCIA = ("{\"erro\": \"" + ControleAdmissao.Recusa.CONCORRENCIA.getMensagem() + "\"}")
+                .getBytes(StandardCharsets.UTF_8);
+
+        private final HttpHandler handler;
+        private final boolean amostrar;
+
+        /**
+         * @param amostrar Se a duração das requisições serve de amostra para o limite adaptativo
+         *                 (não serve para lotes, que demoram pelo tamanho).
+         */
+        AdmissaoHandler(HttpHandler handler, boolean amostrar) {
+            this.handler = handler;
+            this.amostrar = amostrar;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            ControleAdmissao.Recusa recusa = ADMISSAO.admitir(ADMISSAO.isPorCliente() ? cliente(exchange) : null);
+            if (recusa == null) {
+                long inicio = System.nanoTime();
+                try {
+                    handler.handle(exchange);
+                } finally {
+                    // Uma resposta adiada (ver RespostaAdiada) ocupa a vaga até ser enviada.
+                    RespostaAdiada adiada = RespostaAdiada.de(exchange);
+                    Runnable conclusao = amostrar ? () -> ADMISSAO.concluir(inicio) : ADMISSAO::liberar;
+                    if (adiada == null || !adiada.aoConcluir(conclusao)) {
+                        conclusao.run();
+                    }
+                }
+                return;
+            }
+            boolean porTaxa = recusa == ControleAdmissao.Recusa.TAXA;
+            byte[] resposta = porTaxa ? RESPOSTA_TAXA : RESPOSTA_CONCORRENCIA;
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            exchange.sendResponseHeaders(porTaxa ? 429 : 503, resposta.length); // Muitas Requisições / Serviço Indisponível
+            LOG.aviso("http", "Requisição recusada pelo controle de admissão", recusa);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(resposta);
+            }
+        }
+
+        /** A chave de API (cabeçalho X-Api-Key), ou o endereço do cliente. */
+        private static String cliente(HttpExchange exchange) {
+            String chave = exchange.getRequestHeaders().getFirst("X-Api-Key");
+            return chave != null ? chave : exchange.getRemoteAddress().getAddress().getHostAddress();
+        }
+    }
+
+    /**
+     * Envolve um handler de cálculo e registra a requisição nas métricas: em andamento, duração total
+     * e falhas de comunicação com o cliente. As fases (análise, avaliação, escrita da resposta)
+     * e os erros de cálculo são registrados pelos próprios handlers.
+     */
+    static class MedicaoHandler implements HttpHandler {
+        private final HttpHandler handler;
+
+        MedicaoHandler(HttpHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            long inicio = METRICAS.iniciarRequisicao();
+            try {
+                handler.handle(exchange);
+            } catch (IOException e) {
+                METRICAS.registrarErro(Metricas.TipoErro.REDE);
+                throw e;
+            } finally {
+                // Uma resposta adiada (ver RespostaAdiada) conta como em andamento até ser enviada.
+                RespostaAdiada adiada = RespostaAdiada.de(exchange);
+                if (adiada == null || !adiada.aoConcluir(() -> METRICAS.concluirRequisicao(inicio))) {
+                    METRICAS.concluirRequisicao(inicio);
+                }
+            }
+        }
+    }
+
+    /**
+     * Manipulador do endpoint /metrics: as métricas de todos os transportes desta JVM no formato
+     * de texto do Prometheus (ver Metricas.exportarTexto).
+     */
+    static class MetricasHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            byte[] bytes = Metricas.exportarTexto().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=UTF-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        }
     }
 
     /**
      * Manipulador de requisições HTTP (Handler) para o endpoint /calcular.
      */
     static class CalculadoraHandler implements HttpHandler {
+
+        // Nome de cada operação, pelo código (1 a 4).
+        static final String[] NOMES_OPERACOES = {"", "Soma", "Subtração", "Multiplicação", "Divisão"};
+        // Operador correspondente a cada código de operação (o índice 0 não é usado).
+        private static final char[] OPERADORES = {' ', '+', '-', '*', '/'};
+        static final String ERRO_PARAMETROS = "Parâmetros numéricos ou de operação inválidos ou ausentes.";
+
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             String response = "";
@@ -46,10 +258,11 @@ public class CalculadoraServerHTTP {
             if (!exchange.getRequestMethod().equalsIgnoreCase("POST")) {
                 statusCode = 405; // Método Não Permitido
                 response = "{\"erro\": \"Apenas requisições POST são permitidas.\"}";
+                METRICAS.registrarErro(Metricas.TipoErro.PROTOCOLO);
             } else {
                 // Lê o corpo da requisição POST (onde estão os parâmetros oper1, oper2, operacao).
                 InputStream is = exchange.getRequestBody();
-                String requestBody = new String(is.readAllBytes());
+                String requestBody = new String(is.readAllBytes(), StandardCharsets.UTF_8);
 
                 // Processa a requisição e calcula o resultado.
                 response = processarRequisicao(requestBody);
@@ -58,11 +271,14 @@ public class CalculadoraServerHTTP {
             // Define o tipo de conteúdo da resposta como JSON.
             exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
 
-            // Envia o status e o corpo da resposta de volta ao cliente.
-            exchange.sendResponseHeaders(statusCode, response.getBytes().length);
+            // Envia o status e o corpo da resposta de volta ao cliente (codificado uma única vez, em UTF-8).
+            byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+            long envio = System.nanoTime();
+            exchange.sendResponseHeaders(statusCode, bytes.length);
             OutputStream os = exchange.getResponseBody();
-            os.write(response.getBytes());
+            os.write(bytes);
             os.close();
+            METRICAS.registrarFase(Metricas.Fase.REDE, System.nanoTime() - envio);
         }
 
         /**
@@ -71,6 +287,7 @@ public class CalculadoraServerHTTP {
          * @return String JSON com o resultado ou erro.
          */
         private String processarRequisicao(String requestBody) {
+            long inicio = System.nanoTime();
             Map<String, String> params = parseQuery(requestBody);
 
             try {
@@ -78,64 +295,350 @@ public class CalculadoraServerHTTP {
                 double oper2 = Double.parseDouble(params.get("oper2"));
                 int operacao = Integer.parseInt(params.get("operacao"));
 
-                double resultado;
-                String operacaoString;
-
-                switch (operacao) {
-                    case 1:
-                        resultado = oper1 + oper2;
-                        operacaoString = "Soma";
-                        break;
-                    case 2:
-                        resultado = oper1 - oper2;
-                        operacaoString = "Subtração";
-                        break;
-                    case 3:
-                        resultado = oper1 * oper2;
-                        operacaoString = "Multiplicação";
-                        break;
-                    case 4:
-                        if (oper2 == 0) {
-                            return "{\"erro\": \"Divisão por zero não é permitida.\"}";
-                        }
-                        resultado = oper1 / oper2;
-                        operacaoString = "Divisão";
-                        break;
-                    default:
-                        return "{\"erro\": \"Operação inválida. Use 1 (soma), 2 (subtração), 3 (multiplicação) ou 4 (divisão).\"}";
-                }
+                // Análise: a leitura dos parâmetros; avaliação: a operação.
+                long analisado = System.nanoTime();
+                double resultado = calcular(oper1, oper2, operacao);
+                METRICAS.registrarFases(analisado - inicio, System.nanoTime() - analisado);
+                LOG.requisicao("http", requestBody, inicio, null);
 
                 // Retorna o resultado no formato JSON
                 return String.format("{\"oper1\": %f, \"oper2\": %f, \"operacao\": \"%s\", \"resultado\": %f}",
-                        oper1, oper2, operacaoString, resultado);
+                        oper1, oper2, NOMES_OPERACOES[operacao], resultado);
 
             } catch (NumberFormatException | NullPointerException e) {
-                return "{\"erro\": \"Parâmetros numéricos ou de operação inválidos ou ausentes.\"}";
+                METRICAS.registrarErro(Metricas.TipoErro.PROTOCOLO);
+                LOG.requisicao("http", requestBody, inicio, ERRO_PARAMETROS);
+                return "{\"erro\": \"" + ERRO_PARAMETROS + "\"}";
+            } catch (ArithmeticException | IllegalArgumentException e) {
+                METRICAS.registrarErro(e);
+                LOG.requisicao("http", requestBody, inicio, e.getMessage());
+                return "{\"erro\": \"" + e.getMessage() + "\"}";
             }
         }
 
         /**
-         * Converte a string de query (ex: "a=1&b=2") em um Map de chave/valor.
+         * Realiza uma das quatro operações (também usado pelo /calcular/lote).
+         * @param operacao 1 (soma), 2 (subtração), 3 (multiplicação) ou 4 (divisão).
+         * @throws ArithmeticException Em uma divisão por zero.
+         * @throws IllegalArgumentException Se a operação não existir.
          */
-        private Map<String, String> parseQuery(String query) {
-            Map<String, String> result = new HashMap<>();
-            if (query == null || query.isEmpty()) {
-                return result;
+        static double calcular(double oper1, double oper2, int operacao) {
+            if (operacao < 1 || operacao >= OPERADORES.length) {
+                throw new IllegalArgumentException("Operação inválida. Use 1 (soma), 2 (subtração), 3 (multiplicação) ou 4 (divisão).");
+            }
+            // As operações (e o erro de divisão por zero) são as mesmas dos motores de cálculo.
+            return AvaliadorExpressoes.aplicar(OPERADORES[operacao], oper1, oper2);
+        }
+
+    }
+
+    /**
+     * Manipulador de requisições HTTP (Handler) para o endpoint /avaliar.
+     * Recebe "expressao=..." (ou o JSON {"expressao": "..."}) no corpo do POST e devolve o resultado
+     * da expressão em JSON. No caso comum (sucesso), a leitura e a resposta são feitas direto em bytes
+     * pelo RequisicaoAvaliar; as respostas de erro, menos frequentes, são montadas como texto.
+     * A expressão passa pelo ESCALONADOR: fora dos limites é um erro de cálculo como os outros; pesada,
+     * é avaliada no pool das pesadas e respondida pela thread que terminou o cálculo (ver RespostaAdiada),
+     * sem ocupar esta thread; com a fila das pesadas cheia, recebe 503.
+     */
+    static class AvaliarHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            long inicio = System.nanoTime();
+            String erro;
+            int statusCode = 200;
+
+            // O servidor só aceita requisições POST.
+            if (!exchange.getRequestMethod().equalsIgnoreCase("POST")) {
+                statusCode = 405; // Método Não Permitido
+                erro = "Apenas requisições POST são permitidas.";
+            } else {
+                RequisicaoAvaliar requisicao = RequisicaoAvaliar.daThread();
+                String expressao = null;
+                erro = null;
+
+                String declarado = exchange.getRequestHeaders().getFirst("Content-Length");
+                if (!requisicao.lerCorpo(exchange.getRequestBody(), tamanhoDeclarado(declarado))) {
+                    statusCode = 413; // Corpo Grande Demais
+                    erro = "Corpo da requisição maior que " + RequisicaoAvaliar.TAMANHO_MAXIMO_CORPO + " bytes.";
+                } else {
+                    String tipo = exchange.getRequestHeaders().getFirst("Content-Type");
+                    try {
+                        expressao = (tipo != null && tipo.regionMatches(true, 0, "application/json", 0, 16))
+                                ? requisicao.expressaoDoJson()
+                                : requisicao.expressaoDoFormulario();
+                    } catch (IllegalArgumentException e) {
+                        statusCode = 400; // Requisição Inválida
+                        erro = e.getMessage();
+                    }
+                }
+
+                if (erro == null && expressao == null) {
+                    statusCode = 400; // Requisição Inválida
+                    erro = "Parâmetro 'expressao' ausente.";
+                } else if (erro == null) {
+                    CompletableFuture<Double> resultado = avaliar(expressao);
+                    if (resultado.isDone()) {
+                        // Expressão barata (ou recusada): já avaliada nesta thread.
+                        responder(exchange, expressao, inicio, resultado);
+                        return;
+                    }
+                    RespostaAdiada adiada = RespostaAdiada.adiar(exchange);
+                    String avaliada = expressao;
+                    resultado.whenComplete((valor, falha) -> {
+                        try {
+                            responder(exchange, avaliada, inicio, resultado);
+                        } catch (IOException e) {
+                            METRICAS.registrarErro(Metricas.TipoErro.REDE);
+                            exchange.close();
+                        } catch (RuntimeException e) {
+                            LOG.erro("http", "Falha ao responder o /avaliar", e);
+                            exchange.close();
+                        } finally {
+                            adiada.concluir();
+                        }
+                    });
+                    return;
+                }
+                LOG.requisicao("http", expressao, inicio, erro);
+            }
+            // Erros de cálculo já foram contados pelo avaliador medido; os demais (400, 405, 413) são de protocolo.
+            if (statusCode != 200) {
+                METRICAS.registrarErro(Metricas.TipoErro.PROTOCOLO);
+            }
+            responderErro(exchange, statusCode, erro);
+        }
+
+        /** Verifica os limites e avalia sem esperar (ver EscalonadorAvaliacao.avaliarAsync). */
+        private static CompletableFuture<Double> avaliar(String expressao) {
+            try {
+                return ESCALONADOR.avaliarAsync(expressao, ESCALONADOR.verificar(expressao));
+            } catch (IllegalArgumentException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        /**
+         * Envia a resposta de uma avaliação já terminada: o resultado, o erro de cálculo ou, com a fila
+         * das pesadas cheia, 503. Roda na thread do servidor ou na que terminou uma avaliação pesada.
+         */
+        private static void responder(HttpExchange exchange, String expressao, long inicio,
+                                      CompletableFuture<Double> resultado) throws IOException {
+            double valor;
+            try {
+                valor = resultado.join();
+            } catch (CompletionException e) {
+                Throwable causa = e.getCause();
+                if (causa instanceof ControleAdmissao.Recusada) {
+                    // Fila das pesadas cheia (já contada como sobrecarga pelo escalonador).
+                    LOG.requisicao("http", expressao, inicio, causa.getMessage());
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    responderErro(exchange, 503, causa.getMessage()); // Serviço Indisponível
+                    return;
+                }
+                if (causa instanceof IllegalArgumentException || causa instanceof ArithmeticException) {
+                    // Erro de cálculo: já contado pelo avaliador medido (ou pela verificação dos limites).
+                    LOG.requisicao("http", expressao, inicio, causa.getMessage());
+                    responderErro(exchange, 200, causa.getMessage());
+                    return;
+                }
+                throw e;
+            }
+            long envio = System.nanoTime();
+            // A instância da thread atual: a da thread que recebeu a requisição pode já estar em outra.
+            RequisicaoAvaliar.daThread().responder(exchange, valor);
+            METRICAS.registrarFase(Metricas.Fase.REDE, System.nanoTime() - envio);
+            LOG.requisicao("http", expressao, inicio, null);
+        }
+
+        /** O Content-Length declarado, ou -1 se ausente ou inválido. */
+        private static long tamanhoDeclarado(String cabecalho) {
+            if (cabecalho == null) {
+                return -1;
             }
             try {
-                String[] pairs = query.split("&");
-                for (String pair : pairs) {
-                    int idx = pair.indexOf("=");
-                    if (idx > 0) {
-                        String key = URLDecoder.decode(pair.substring(0, idx), "UTF-8");
-                        String value = URLDecoder.decode(pair.substring(idx + 1), "UTF-8");
-                        result.put(key, value);
+                return Long.parseLong(cabecalho.trim());
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Manipulador de requisições HTTP (Handler) para o endpoint /calcular/lote.
+     * Recebe muitos cálculos num único POST (ver LeitorLote para os formatos aceitos) e devolve
+     * um resultado por item, na mesma ordem, cada um com o seu "indice".
+     *
+     * O corpo é lido e respondido em blocos: cada bloco é avaliado (em paralelo, se for grande)
+     * e enviado imediatamente com "chunked transfer encoding", então nem a requisição nem a
+     * resposta precisam ficar inteiras na memória. A resposta segue o formato da requisição:
+     * um array JSON (Content-Type application/json) ou um objeto JSON por linha (NDJSON).
+     */
+    static class LoteHandler implements HttpHandler {
+
+        // Quantidade de itens lidos, avaliados e enviados de cada vez.
+        private static final int TAMANHO_BLOCO = 1024;
+        // A partir de quantos itens um bloco é avaliado em paralelo.
+        private static final int LIMIAR_PARALELO = 256;
+
+        private final AvaliadorExpressoes interpretador = METRICAS.medir(MOTOR_CALCULO);
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            long inicio = System.nanoTime();
+            if (!exchange.getRequestMethod().equalsIgnoreCase("POST")) {
+                METRICAS.registrarErro(Metricas.TipoErro.PROTOCOLO);
+                responderErro(exchange, 405, "Apenas requisições POST são permitidas.");
+                return;
+            }
+
+            String tipo = exchange.getRequestHeaders().getFirst("Content-Type");
+            boolean json = tipo != null && tipo.toLowerCase().startsWith("application/json");
+            LeitorLote leitor = new LeitorLote(
+                    new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8), json);
+
+            LeitorLote.Item[] itens = new LeitorLote.Item[TAMANHO_BLOCO];
+            String[] resultados = new String[TAMANHO_BLOCO];
+
+            // O primeiro bloco é lido antes de responder: um corpo malformado desde o início ainda recebe 400.
+            int quantidade;
+            String erroLeitura = null;
+            try {
+                quantidade = lerBloco(leitor, itens);
+            } catch (IllegalArgumentException e) {
+                METRICAS.registrarErro(Metricas.TipoErro.PROTOCOLO);
+                LOG.requisicao("http/lote", null, inicio, e.getMessage());
+                responderErro(exchange, 400, e.getMessage());
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type",
+                    (json ? "application/json" : "application/x-ndjson") + "; charset=UTF-8");
+            exchange.sendResponseHeaders(200, 0); // Tamanho 0: resposta "chunked", enviada aos poucos.
+
+            try (Writer saida = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+                if (json) saida.write('[');
+                int indice = 0;
+                while (quantidade > 0) {
+                    avaliarBloco(itens, resultados, quantidade, indice);
+                    for (int i = 0; i < quantidade; i++) {
+                        if (json && indice + i > 0) saida.write(',');
+                        saida.write(resultados[i]);
+                        if (!json) saida.write('\n');
+                    }
+                    saida.flush();
+                    indice += quantidade;
+
+                    if (quantidade < TAMANHO_BLOCO) {
+                        break; // O corpo terminou.
                     }
+                    try {
+                        quantidade = lerBloco(leitor, itens);
+                    } catch (IllegalArgumentException e) {
+                        // A resposta já começou: o erro vai como último item e o lote termina.
+                        METRICAS.registrarErro(Metricas.TipoErro.PROTOCOLO);
+                        erroLeitura = e.getMessage();
+                        quantidade = 0;
+                    }
+                }
+                if (erroLeitura != null) {
+                    if (json && indice > 0) saida.write(',');
+                    saida.write("{\"erro\": \"" + Registrador.escaparJson(erroLeitura) + "\"}");
+                    if (!json) saida.write('\n');
+                }
+                if (json) saida.write(']');
+                // Um evento por lote (com a latência do lote inteiro), não um por item.
+                LOG.registrar(erroLeitura == null ? Registrador.Nivel.INFO : Registrador.Nivel.AVISO,
+                        "http/lote", "lote", indice + " itens em " + (System.nanoTime() - inicio) / 1000 + " us"
+                                + (erroLeitura == null ? "" : ", erro: " + erroLeitura));
+            }
+        }
+
+        /** Lê até TAMANHO_BLOCO itens; devolve quantos foram lidos (menos que o bloco só no fim do corpo). */
+        private static int lerBloco(LeitorLote leitor, LeitorLote.Item[] itens) throws IOException {
+            int quantidade = 0;
+            LeitorLote.Item item;
+            while (quantidade < itens.length && (item = leitor.proximo()) != null) {
+                itens[quantidade++] = item;
+            }
+            return quantidade;
+        }
+
+        private void avaliarBloco(LeitorLote.Item[] itens, String[] resultados, int quantidade, int primeiroIndice) {
+            if (quantidade >= LIMIAR_PARALELO) {
+                IntStream.range(0, quantidade).parallel()
+                        .forEach(i -> resultados[i] = avaliarItem(itens[i], primeiroIndice + i));
+            } else {
+                for (int i = 0; i < quantidade; i++) {
+                    resultados[i] = avaliarItem(itens[i], primeiroIndice + i);
                 }
-            } catch (Exception e) {
-                // Ignora o erro de decodificação para manter a robustez.
             }
+        }
+
+        /** Avalia um item e devolve o objeto JSON da resposta correspondente. */
+        private String avaliarItem(LeitorLote.Item item, int indice) {
+            try {
+                double resultado;
+                if (item.expressao != null) {
+                    // Os limites de complexidade valem para cada item; a faixa das pesadas, não (o lote já é
+                    // avaliado em blocos, em paralelo quando grande).
+                    ESCALONADOR.verificar(item.expressao);
+                    resultado = interpretador.avaliarExpressao(item.expressao);
+                } else {
+                    Map<String, String> params = item.parametros;
+                    double oper1, oper2;
+                    int operacao;
+                    try {
+                        oper1 = Double.parseDouble(params.get("oper1"));
+                        oper2 = Double.parseDouble(params.get("oper2"));
+                        operacao = Integer.parseInt(params.get("operacao"));
+                    } catch (NumberFormatException | NullPointerException e) {
+                        throw new IllegalArgumentException(CalculadoraHandler.ERRO_PARAMETROS);
+                    }
+                    resultado = CalculadoraHandler.calcular(oper1, oper2, operacao);
+                }
+                return "{\"indice\": " + indice + ", \"resultado\": " + resultado + "}";
+            } catch (IllegalArgumentException | ArithmeticException e) {
+                // Os erros das expressões já foram contados pelo avaliador medido; os dos itens com parâmetros, não.
+                if (item.expressao == null) METRICAS.registrarErro(e);
+                return "{\"indice\": " + indice + ", \"erro\": \"" + Registrador.escaparJson(e.getMessage()) + "\"}";
+            }
+        }
+
+    }
+
+    /** Envia {"erro": mensagem} com o status indicado. */
+    static void responderErro(HttpExchange exchange, int statusCode, String mensagem) throws IOException {
+        byte[] bytes = ("{\"erro\": \"" + Registrador.escaparJson(mensagem) + "\"}").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    /**
+     * Converte a string de query (ex: "a=1&b=2") em um Map de chave/valor.
+     */
+    static Map<String, String> parseQuery(String query) {
+        Map<String, String> result = new HashMap<>();
+        if (query == null || query.isEmpty()) {
             return result;
         }
+        try {
+            String[] pairs = query.split("&");
+            for (String pair : pairs) {
+                int idx = pair.indexOf("=");
+                if (idx > 0) {
+                    String key = URLDecoder.decode(pair.substring(0, idx), "UTF-8");
+                    String value = URLDecoder.decode(pair.substring(idx + 1), "UTF-8");
+                    result.put(key, value);
+                }
+            }
+        } catch (Exception e) {
+            // Ignora o erro de decodificação para manter a robustez.
+        }
+        return result;
     }
-}
\ No newline at end of file
+}
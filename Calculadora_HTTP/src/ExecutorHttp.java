@@ -0,0 +1,141 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor das requisições do servidor HTTP, com limite de requisições simultâneas.
+ *
+ * Modelos disponíveis:
+ *   - "fixo":   pool com número fixo de threads e fila limitada;
+ *   - "roubo":  pool "work-stealing" (ForkJoinPool), cada thread com a sua fila;
+ *   - "virtual": uma thread virtual por requisição (Java 21 ou superior; em versões
+ *               anteriores, usa o modelo "fixo").
+ *
+ * Em todos os modelos, no máximo 'limite' requisições podem estar em andamento ou na fila.
+ * Quando o limite é atingido, a requisição não entra no pool: ela é executada na própria
+ * thread do HttpServer marcada como "descartada", e o SobrecargaHandler responde 503 na hora,
+ * sem ler o corpo nem calcular nada. Assim o servidor recusa o excesso rapidamente em vez de
+ * acumular uma fila cada vez maior (e respostas cada vez mais lentas).
+ */
+public class ExecutorHttp implements Executor {
+
+    // Indica, na thread atual, que a requisição em execução deve ser recusada com 503.
+    private static final ThreadLocal<Boolean> DESCARTANDO = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    private final ExecutorService pool;
+    private final Semaphore vagas;
+    private final String descricao;
+
+    /**
+     * @param modelo "fixo", "roubo" ou "virtual".
+     * @param threads Quantidade de threads dos modelos "fixo" e "roubo".
+     * @param fila Quantas requisições podem esperar por uma thread além das que estão em execução.
+     *             No modelo "virtual" (sem espera por threads), o limite de simultâneas é threads + fila.
+     */
+    public ExecutorHttp(String modelo, int threads, int fila) {
+        ExecutorService escolhido = null;
+        String nome = modelo.toLowerCase();
+
+        if (nome.equals("virtual")) {
+            escolhido = criarExecutorVirtual();
+            if (escolhido == null) {
+                System.err.println("Threads virtuais exigem Java 21 ou superior; usando o modelo 'fixo'.");
+                nome = "fixo";
+            }
+        } else if (nome.equals("roubo")) {
+            escolhido = Executors.newWorkStealingPool(threads);
+        } else if (!nome.equals("fixo")) {
+            throw new IllegalArgumentException("Modelo de executor desconhecido: " + modelo
+                    + " (use fixo, roubo ou virtual).");
+        }
+
+        if (escolhido == null) {
+            escolhido = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, fila)), new FabricaThreads());
+        }
+
+        this.pool = escolhido;
+        // O semáforo garante que o pool nunca receba mais tarefas do que cabe nas threads + fila.
+        this.vagas = new Semaphore(threads + fila);
+        this.descricao = nome + " (" + threads + " threads, fila de " + fila + ")";
+    }
+
+    @Override
+    public void execute(Runnable tarefa) {
+        if (vagas.tryAcquire()) {
+            pool.execute(() -> {
+                try {
+                    tarefa.run();
+                } finally {
+                    vagas.release();
+                }
+            });
+        } else {
+            // Saturado: executa aqui mesmo, mas só para responder 503 (ver SobrecargaHandler).
+            DESCARTANDO.set(Boolean.TRUE);
+            try {
+                tarefa.run();
+            } finally {
+                DESCARTANDO.set(Boolean.FALSE);
+            }
+        }
+    }
+
+    /** Indica se a requisição em execução na thread atual deve ser recusada por sobrecarga. */
+    public static boolean isDescartando() {
+        return DESCARTANDO.get();
+    }
+
+    /** Quantidade de requisições que ainda podem ser aceitas antes de o servidor recusar com 503. */
+    public int getVagasLivres() {
+        return vagas.availablePermits();
+    }
+
+    /** Quantidade de requisições esperando por uma thread (para as métricas). */
+    public int getNaFila() {
+        if (pool instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) pool).getQueue().size();
+        }
+        if (pool instanceof ForkJoinPool) {
+            return ((ForkJoinPool) pool).getQueuedSubmissionCount();
+        }
+        return 0; // Threads virtuais: nenhuma requisição espera por uma thread.
+    }
+
+    @Override
+    public String toString() {
+        return descricao;
+    }
+
+    /**
+     * Cria o executor de threads virtuais (Executors.newVirtualThreadPerTaskExecutor) por reflexão,
+     * para o código continuar compilando e rodando em versões do Java anteriores à 21.
+     * @return O executor, ou null se a versão do Java não tiver threads virtuais.
+     */
+    private static ExecutorService criarExecutorVirtual() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /** Cria as threads do modelo "fixo", com nomes que facilitam a depuração. */
+    private static final class FabricaThreads implements ThreadFactory {
+        private final AtomicInteger contador = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable tarefa) {
+            Thread thread = new Thread(tarefa, "calculadora-http-" + contador.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lê, um de cada vez, os itens do corpo de uma requisição de /calcular/lote, sem carregar o corpo inteiro.
+ *
+ * Formatos aceitos:
+ *   - um array JSON:  ["1 + 2", {"oper1": 1, "oper2": 2, "operacao": 3}, {"expressao": "4 / 2"}]
+ *   - um item por linha (texto ou NDJSON), onde cada linha é uma expressão ("1 + 2"),
+ *     parâmetros como os do /calcular ("oper1=1&oper2=2&operacao=3") ou um valor JSON como os do array.
+ *
+ * Só o necessário de JSON é suportado: strings e objetos simples (sem objetos ou arrays aninhados).
+ */
+class LeitorLote {
+
+    // Tamanho máximo de um texto dentro do JSON ou de uma linha (protege contra corpos malformados enormes):
+    // o limite de caracteres das expressões (ver LimitesExpressao), verificado enquanto o texto chega.
+    private static final int TAMANHO_MAXIMO_TEXTO = LimitesExpressao.configurados().getMaxCaracteres();
+    // Campos de um objeto do lote: os do /calcular (oper1, oper2, operacao) ou expressao, com folga.
+    private static final int MAXIMO_CAMPOS = 16;
+
+    /**
+     * Um item do lote: uma expressão completa ou os parâmetros de uma operação do /calcular.
+     * Exatamente um dos dois campos é diferente de null.
+     */
+    static final class Item {
+        final String expressao;
+        final Map<String, String> parametros;
+
+        private Item(String expressao, Map<String, String> parametros) {
+            this.expressao = expressao;
+            this.parametros = parametros;
+        }
+    }
+
+    private final BufferedReader entrada;
+    private final boolean json;
+    // Próximo caractere ainda não consumido (-1 no fim do corpo).
+    private int atual;
+    private boolean iniciado;
+    private boolean terminado; // O ']' do array já foi lido.
+    // Linha atual do formato "um item por linha" (reaproveitada).
+    private final StringBuilder linha = new StringBuilder();
+
+    /**
+     * @param entrada O corpo da requisição.
+     * @param json true para um array JSON; false para um item por linha.
+     */
+    LeitorLote(Reader entrada, boolean json) {
+        this.entrada = entrada instanceof BufferedReader ? (BufferedReader) entrada : new BufferedReader(entrada);
+        this.json = json;
+    }
+
+    /**
+     * Lê o próximo item.
+     * @return O item, ou null quando o corpo termina.
+     * @throws IllegalArgumentException Se o corpo estiver malformado.
+     */
+    Item proximo() throws IOException {
+        return json ? proximoDoArray() : proximaLinha();
+    }
+
+    private Item proximaLinha() throws IOException {
+        String linha;
+        while ((linha = lerLinha()) != null) {
+            linha = linha.strip();
+            if (linha.isEmpty()) {
+                continue;
+            }
+            char primeiro = linha.charAt(0);
+            if (primeiro == '{' || primeiro == '"') {
+                LeitorLote leitor = new LeitorLote(new StringReader(linha), true);
+                leitor.avancar();
+                Item item = leitor.lerItem();
+                leitor.pularEspacos();
+                if (leitor.atual != -1) {
+                    throw new IllegalArgumentException("Conteúdo inesperado depois do item JSON.");
+                }
+                return item;
+            }
+            if (linha.contains("operacao=")) {
+                return new Item(null, CalculadoraServerHTTP.parseQuery(linha));
+            }
+            return new Item(linha, null);
+        }
+        return null;
+    }
+
+    /**
+     * Lê uma linha como o readLine(), mas sem guardar mais que TAMANHO_MAXIMO_TEXTO caracteres.
+     * @return A linha (com um eventual '\r' final, removido pelo strip), ou null no fim do corpo.
+     */
+    private String lerLinha() throws IOException {
+        linha.setLength(0);
+        int c;
+        while ((c = entrada.read()) != -1 && c != '\n') {
+            if (linha.length() >= TAMANHO_MAXIMO_TEXTO) {
+                throw new IllegalArgumentException("Linha maior que " + TAMANHO_MAXIMO_TEXTO + " caracteres.");
+            }
+            linha.append((char) c);
+        }
+        return (c == -1 && linha.length() == 0) ? null : linha.toString();
+    }
+
+    private Item proximoDoArray() throws IOException {
+        if (terminado) {
+            return null;
+        }
+        if (!iniciado) {
+            iniciado = true;
+            avancar();
+            pularEspacos();
+            esperar('[');
+            pularEspacos();
+            if (atual != ']') {
+                return lerItem();
+            }
+        } else {
+            pularEspacos();
+        }
+        if (atual == ']') {
+            terminado = true; // Ignora o que vier depois do array.
+            return null;
+        }
+        if (atual == -1) {
+            throw new IllegalArgumentException("JSON inválido: esperado ']' antes do fim do corpo.");
+        }
+        esperar(',');
+        pularEspacos();
+        return lerItem();
+    }
+
+    /** Lê um item JSON: uma string (expressão) ou um objeto simples. */
+    private Item lerItem() throws IOException {
+        pularEspacos();
+        if (atual == '"') {
+            return new Item(lerTexto(), null);
+        }
+        esperar('{');
+        Map<String, String> campos = new HashMap<>();
+        pularEspacos();
+        if (atual != '}') {
+            while (true) {
+                if (campos.size() >= MAXIMO_CAMPOS) {
+                    throw new IllegalArgumentException("Objeto JSON com mais de " + MAXIMO_CAMPOS + " campos.");
+                }
+                pularEspacos();
+                String chave = lerTexto();
+                pularEspacos();
+                esperar(':');
+                pularEspacos();
+                campos.put(chave, atual == '"' ? lerTexto() : lerLiteral());
+                pularEspacos();
+                if (atual == ',') {
+                    avancar();
+                    continue;
+                }
+                break;
+            }
+        }
+        esperar('}');
+
+        String expressao = campos.get("expressao");
+        return expressao != null ? new Item(expressao, null) : new Item(null, campos);
+    }
+
+    /** Lê uma string JSON (com as sequências de escape mais comuns). */
+    private String lerTexto() throws IOException {
+        esperar('"');
+        StringBuilder texto = new StringBuilder();
+        while (atual != '"') {
+            if (atual == -1) {
+                throw new IllegalArgumentException("Texto JSON não terminado.");
+            }
+            if (texto.length() >= TAMANHO_MAXIMO_TEXTO) {
+                throw new IllegalArgumentException("Texto JSON maior que " + TAMANHO_MAXIMO_TEXTO + " caracteres.");
+            }
+            char c = (char) atual;
+            if (c == '\\') {
+                avancar();
+                switch (atual) {
+                    case 'n': c = '\n'; break;
+                    case 't': c = '\t'; break;
+                    case 'r': c = '\r'; break;
+                    case 'b': c = '\b'; break;
+                    case 'f': c = '\f'; break;
+                    case 'u':
+                        char[] hex = new char[4];
+                        for (int i = 0; i < 4; i++) {
+                            avancar();
+                            hex[i] = (char) atual;
+                        }
+                        try {
+                            c = (char) Integer.parseInt(new String(hex), 16);
+                        } catch (NumberFormatException e) {
+                            throw new IllegalArgumentException("Escape \\u inválido no JSON.");
+                        }
+                        break;
+                    case -1:
+                        throw new IllegalArgumentException("Texto JSON não terminado.");
+                    default:
+                        c = (char) atual; // \" \\ \/
+                }
+            }
+            texto.append(c);
+            avancar();
+        }
+        avancar();
+        return texto.toString();
+    }
+
+    /** Lê um valor JSON que não é string (número, true, false, null) como texto. */
+    private String lerLiteral() throws IOException {
+        StringBuilder literal = new StringBuilder();
+        while (atual != -1 && atual != ',' && atual != '}' && atual != ']' && !Character.isWhitespace(atual)) {
+            if (atual == '{' || atual == '[') {
+                throw new IllegalArgumentException("Objetos e arrays aninhados não são suportados.");
+            }
+            if (literal.length() >= TAMANHO_MAXIMO_TEXTO) {
+                throw new IllegalArgumentException("Valor JSON maior que " + TAMANHO_MAXIMO_TEXTO + " caracteres.");
+            }
+            literal.append((char) atual);
+            avancar();
+        }
+        if (literal.length() == 0) {
+            throw new IllegalArgumentException("Valor JSON ausente.");
+        }
+        return literal.toString();
+    }
+
+    private void esperar(char esperado) throws IOException {
+        if (atual != esperado) {
+            throw new IllegalArgumentException("JSON inválido: esperado '" + esperado + "'"
+                    + (atual == -1 ? " antes do fim do corpo." : ", encontrado '" + (char) atual + "'."));
+        }
+        avancar();
+    }
+
+    private void pularEspacos() throws IOException {
+        while (atual != -1 && Character.isWhitespace(atual)) {
+            avancar();
+        }
+    }
+
+    private void avancar() throws IOException {
+        atual = entrada.read();
+    }
+}
@@ -0,0 +1,352 @@
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Caminho rápido do endpoint /avaliar: lê a expressão direto dos bytes do corpo e escreve a
+ * resposta direto em bytes, sem HashMap, String.format nem conversões intermediárias.
+ *
+ * Cada thread reaproveita a sua instância (e os seus arrays) de uma requisição para a outra,
+ * então uma requisição comum só aloca a String da expressão.
+ */
+final class RequisicaoAvaliar {
+
+    // Maior corpo aceito pelo /avaliar: o suficiente para a maior expressão aceita (ver LimitesExpressao)
+    // mesmo toda codificada (até 6 bytes por caractere, como em "\\u00e9"), mais os outros campos; no máximo 1 MB.
+    static final int TAMANHO_MAXIMO_CORPO = (int) Math.min(1024 * 1024,
+            LimitesExpressao.configurados().getMaxCaracteres() * 6L + 1024);
+
+    private static final byte[] CHAVE = "expressao".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PREFIXO_RESULTADO = "{\"resultado\": ".getBytes(StandardCharsets.US_ASCII);
+    // Lista imutável reaproveitada no cabeçalho de todas as respostas.
+    private static final List<String> TIPO_JSON = List.of("application/json; charset=UTF-8");
+
+    private static final ThreadLocal<RequisicaoAvaliar> DA_THREAD = ThreadLocal.withInitial(RequisicaoAvaliar::new);
+
+    private byte[] corpo = new byte[1024];
+    private int tamanho;
+    private byte[] texto = new byte[256];         // Expressão decodificada (UTF-8).
+    private final byte[] resposta = new byte[64]; // Resposta de sucesso (cabe sempre em 64 bytes).
+
+    private RequisicaoAvaliar() {
+    }
+
+    /** A instância reaproveitada pela thread atual. */
+    static RequisicaoAvaliar daThread() {
+        return DA_THREAD.get();
+    }
+
+    /**
+     * Lê o corpo inteiro da requisição para o array reaproveitado.
+     * @param tamanhoDeclarado O Content-Length (ou -1 se ausente): acima do limite, nada é lido.
+     * @return false se o corpo for maior que TAMANHO_MAXIMO_CORPO.
+     */
+    boolean lerCorpo(InputStream entrada, long tamanhoDeclarado) throws IOException {
+        tamanho = 0;
+        if (tamanhoDeclarado > TAMANHO_MAXIMO_CORPO) {
+            return false;
+        }
+        int lidos;
+        while ((lidos = entrada.read(corpo, tamanho, corpo.length - tamanho)) >= 0) {
+            tamanho += lidos;
+            if (tamanho == corpo.length) {
+                if (corpo.length >= TAMANHO_MAXIMO_CORPO) {
+                    return entrada.read() < 0; // Exatamente no limite ainda é aceito.
+                }
+                byte[] maior = new byte[Math.min(corpo.length * 2, TAMANHO_MAXIMO_CORPO)];
+                System.arraycopy(corpo, 0, maior, 0, tamanho);
+                corpo = maior;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Extrai o parâmetro "expressao" de um corpo "chave=valor&chave=valor" (application/x-www-form-urlencoded).
+     * Casos incomuns (chaves codificadas, '%' malformado, bytes não ASCII) usam o parseQuery tradicional,
+     * para o resultado ser sempre igual ao dele.
+     * @return A expressão, ou null se o parâmetro não existir.
+     */
+    String expressaoDoFormulario() {
+        int inicioValor = -1;
+        int fimValor = -1;
+
+        int inicio = 0;
+        while (inicio < tamanho) {
+            int fim = indiceDe('&', inicio, tamanho);
+            int igual = indiceDe('=', inicio, fim);
+            for (int i = inicio; i < fim; i++) {
+                byte b = corpo[i];
+                if (b < 0 || (b == '%' && (i + 2 >= fim || !isHex(corpo[i + 1]) || !isHex(corpo[i + 2])))
+                        || (i < igual && (b == '%' || b == '+'))) {
+                    return parseQueryTradicional();
+                }
+            }
+            if (igual > inicio && igual < fim && igual - inicio == CHAVE.length && igualA(CHAVE, inicio)) {
+                // Como no parseQuery, a última ocorrência do parâmetro prevalece.
+                inicioValor = igual + 1;
+                fimValor = fim;
+            }
+            inicio = fim + 1;
+        }
+        if (inicioValor < 0) {
+            return null;
+        }
+
+        garantirTexto(fimValor - inicioValor);
+        int n = 0;
+        for (int i = inicioValor; i < fimValor; i++) {
+            byte b = corpo[i];
+            if (b == '+') {
+                texto[n++] = ' ';
+            } else if (b == '%') {
+                texto[n++] = (byte) ((Character.digit(corpo[i + 1], 16) << 4) | Character.digit(corpo[i + 2], 16));
+                i += 2;
+            } else {
+                texto[n++] = b;
+            }
+        }
+        return new String(texto, 0, n, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Extrai o campo "expressao" de um objeto JSON simples: {"expressao": "1 + 2"}.
+     * @return A expressão, ou null se o campo não existir.
+     * @throws IllegalArgumentException Se o JSON for inválido ou o campo não for um texto.
+     */
+    String expressaoDoJson() {
+        int i = pularEspacos(0);
+        i = esperar('{', i);
+        String expressao = null;
+        i = pularEspacos(i);
+        if (i < tamanho && corpo[i] == '}') {
+            return null;
+        }
+        while (true) {
+            i = pularEspacos(i);
+            int inicioChave = i + 1;
+            i = pularTexto(i);
+            boolean ehExpressao = i - 1 - inicioChave == CHAVE.length && igualA(CHAVE, inicioChave);
+            i = esperar(':', pularEspacos(i));
+            i = pularEspacos(i);
+            if (ehExpressao) {
+                if (i >= tamanho || corpo[i] != '"') {
+                    throw new IllegalArgumentException("O campo 'expressao' deve ser um texto.");
+                }
+                int fim = pularTexto(i);
+                expressao = decodificarTextoJson(i + 1, fim - 1);
+                i = fim;
+            } else if (i < tamanho && corpo[i] == '"') {
+                i = pularTexto(i);
+            } else {
+                while (i < tamanho && corpo[i] != ',' && corpo[i] != '}' && !isEspaco(corpo[i])) {
+                    if (corpo[i] == '{' || corpo[i] == '[') {
+                        throw new IllegalArgumentException("Objetos e arrays aninhados não são suportados.");
+                    }
+                    i++;
+                }
+            }
+            i = pularEspacos(i);
+            if (i < tamanho && corpo[i] == ',') {
+                i++;
+                continue;
+            }
+            esperar('}', i);
+            return expressao;
+        }
+    }
+
+    /**
+     * Envia a resposta de sucesso {"resultado": X}, com X igual a String.valueOf(resultado).
+     */
+    void responder(HttpExchange exchange, double resultado) throws IOException {
+        int n = PREFIXO_RESULTADO.length;
+        System.arraycopy(PREFIXO_RESULTADO, 0, resposta, 0, n);
+        n = escreverNumero(resultado, n);
+        resposta[n++] = '}';
+
+        exchange.getResponseHeaders().put("Content-Type", TIPO_JSON);
+        exchange.sendResponseHeaders(200, n);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(resposta, 0, n);
+        }
+    }
+
+    /**
+     * Escreve o número no mesmo formato de Double.toString. Inteiros pequenos (o caso mais comum)
+     * são escritos dígito a dígito, sem criar nenhuma String.
+     */
+    private int escreverNumero(double valor, int n) {
+        long inteiro = (long) valor;
+        boolean zeroNegativo = valor == 0 && Double.doubleToRawLongBits(valor) != 0;
+        if (inteiro == valor && Math.abs(valor) < 1e7 && !zeroNegativo) {
+            if (inteiro < 0) {
+                resposta[n++] = '-';
+                inteiro = -inteiro;
+            }
+            int inicio = n;
+            do {
+                resposta[n++] = (byte) ('0' + inteiro % 10);
+                inteiro /= 10;
+            } while (inteiro > 0);
+            // Os dígitos saíram do menos para o mais significativo: inverte.
+            for (int a = inicio, b = n - 1; a < b; a++, b--) {
+                byte t = resposta[a];
+                resposta[a] = resposta[b];
+                resposta[b] = t;
+            }
+            resposta[n++] = '.';
+            resposta[n++] = '0';
+            return n;
+        }
+        String texto = Double.toString(valor); // Sempre ASCII, no máximo 24 caracteres.
+        for (int i = 0; i < texto.length(); i++) {
+            resposta[n++] = (byte) texto.charAt(i);
+        }
+        return n;
+    }
+
+    private String parseQueryTradicional() {
+        return CalculadoraServerHTTP.parseQuery(new String(corpo, 0, tamanho, StandardCharsets.UTF_8)).get("expressao");
+    }
+
+    /** Decodifica o conteúdo de um texto JSON (sem as aspas), tratando as sequências de escape. */
+    private String decodificarTextoJson(int inicio, int fim) {
+        garantirTexto((fim - inicio) * 3);
+        int n = 0;
+        for (int i = inicio; i < fim; i++) {
+            byte b = corpo[i];
+            if (b != '\\') {
+                texto[n++] = b;
+                continue;
+            }
+            byte c = corpo[++i];
+            switch (c) {
+                case 'n': texto[n++] = '\n'; break;
+                case 't': texto[n++] = '\t'; break;
+                case 'r': texto[n++] = '\r'; break;
+                case 'b': texto[n++] = '\b'; break;
+                case 'f': texto[n++] = '\f'; break;
+                case 'u':
+                    char codigo = lerEscapeU(i, fim);
+                    i += 4;
+                    if (Character.isHighSurrogate(codigo)) {
+                        // Caractere fora do BMP (ex: emoji): o par de escapes (alto e baixo) vira um único código de 4 bytes.
+                        char baixo = i + 2 < fim && corpo[i + 1] == '\\' && corpo[i + 2] == 'u' ? lerEscapeU(i + 2, fim) : 0;
+                        if (!Character.isLowSurrogate(baixo)) {
+                            throw new IllegalArgumentException("Escape \\u inválido no JSON: surrogate sem o seu par.");
+                        }
+                        i += 6;
+                        n = escreverUtf8(Character.toCodePoint(codigo, baixo), n);
+                    } else if (Character.isLowSurrogate(codigo)) {
+                        throw new IllegalArgumentException("Escape \\u inválido no JSON: surrogate sem o seu par.");
+                    } else {
+                        n = escreverUtf8(codigo, n);
+                    }
+                    break;
+                default:
+                    texto[n++] = c; // \" \\ \/
+            }
+        }
+        return new String(texto, 0, n, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Lê os 4 dígitos hexadecimais de um escape \\u.
+     * @param i Posição do 'u'.
+     */
+    private char lerEscapeU(int i, int fim) {
+        if (i + 4 >= fim) {
+            throw new IllegalArgumentException("Escape \\u inválido no JSON.");
+        }
+        int codigo = 0;
+        for (int k = 1; k <= 4; k++) {
+            int digito = Character.digit(corpo[i + k], 16);
+            if (digito < 0) {
+                throw new IllegalArgumentException("Escape \\u inválido no JSON.");
+            }
+            codigo = (codigo << 4) | digito;
+        }
+        return (char) codigo;
+    }
+
+    /** Escreve um código Unicode (nunca um surrogate isolado) em UTF-8. */
+    private int escreverUtf8(int c, int n) {
+        if (c < 0x80) {
+            texto[n++] = (byte) c;
+        } else if (c < 0x800) {
+            texto[n++] = (byte) (0xC0 | (c >> 6));
+            texto[n++] = (byte) (0x80 | (c & 0x3F));
+        } else if (c < 0x10000) {
+            texto[n++] = (byte) (0xE0 | (c >> 12));
+            texto[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            texto[n++] = (byte) (0x80 | (c & 0x3F));
+        } else {
+            texto[n++] = (byte) (0xF0 | (c >> 18));
+            texto[n++] = (byte) (0x80 | ((c >> 12) & 0x3F));
+            texto[n++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            texto[n++] = (byte) (0x80 | (c & 0x3F));
+        }
+        return n;
+    }
+
+    /** Pula um texto JSON começando nas aspas de abertura; devolve a posição depois das aspas de fechamento. */
+    private int pularTexto(int i) {
+        i = esperar('"', i);
+        while (i < tamanho && corpo[i] != '"') {
+            i += (corpo[i] == '\\') ? 2 : 1;
+        }
+        return esperar('"', i);
+    }
+
+    private int esperar(char esperado, int i) {
+        if (i >= tamanho || corpo[i] != esperado) {
+            throw new IllegalArgumentException("JSON inválido: esperado '" + esperado + "'"
+                    + (i >= tamanho ? " antes do fim do corpo." : ", encontrado '" + (char) corpo[i] + "'."));
+        }
+        return i + 1;
+    }
+
+    private int pularEspacos(int i) {
+        while (i < tamanho && isEspaco(corpo[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isEspaco(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private static boolean isHex(byte b) {
+        return Character.digit(b, 16) >= 0;
+    }
+
+    private int indiceDe(char c, int inicio, int fim) {
+        for (int i = inicio; i < fim; i++) {
+            if (corpo[i] == c) {
+                return i;
+            }
+        }
+        return fim;
+    }
+
+    private boolean igualA(byte[] esperado, int inicio) {
+        for (int i = 0; i < esperado.length; i++) {
+            if (corpo[inicio + i] != esperado[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void garantirTexto(int necessario) {
+        if (texto.length < necessario) {
+            texto = new byte[Math.max(necessario, texto.length * 2)];
+        }
+    }
+}
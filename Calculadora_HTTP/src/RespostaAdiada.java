@@ -0,0 +1,69 @@
+import com.sun.net.httpserver.HttpExchange;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Requisição que será respondida depois que o handle retornar (ex: uma expressão pesada do /avaliar,
+ * respondida pela thread que terminou o cálculo). A thread do servidor HTTP fica livre enquanto isso.
+ *
+ * Os handlers que envolvem outro (medição, admissão) fazem o seu fechamento quando o handle retorna;
+ * se a requisição foi adiada, esse fechamento é registrado aqui e só roda quando ela for concluída.
+ *
+ * O handler que adia e os que o envolvem rodam na mesma thread, então a requisição adiada é
+ * encontrada por essa thread (ThreadLocal), e não por um atributo do HttpExchange.
+ */
+final class RespostaAdiada {
+
+    private static final ThreadLocal<RespostaAdiada> DA_THREAD = new ThreadLocal<>();
+
+    // A requisição adiada (null depois de concluída).
+    private HttpExchange exchange;
+    private final List<Runnable> aoConcluir = new ArrayList<>(2);
+
+    private RespostaAdiada(HttpExchange exchange) {
+        this.exchange = exchange;
+    }
+
+    /**
+     * Adia a resposta da requisição: quem adiou deve chamar concluir() depois de responder
+     * (ou de desistir de responder), em qualquer thread.
+     */
+    static RespostaAdiada adiar(HttpExchange exchange) {
+        RespostaAdiada adiada = new RespostaAdiada(exchange);
+        DA_THREAD.set(adiada);
+        return adiada;
+    }
+
+    /** A resposta adiada da requisição, ou null se ela foi respondida dentro do handle (ou já foi concluída). */
+    static RespostaAdiada de(HttpExchange exchange) {
+        RespostaAdiada adiada = DA_THREAD.get();
+        return adiada != null && adiada.isDe(exchange) ? adiada : null;
+    }
+
+    private synchronized boolean isDe(HttpExchange exchange) {
+        return this.exchange == exchange;
+    }
+
+    /**
+     * Registra o que fazer quando a requisição for concluída.
+     * @return false se ela já foi concluída: nesse caso quem chamou faz o fechamento na hora.
+     */
+    synchronized boolean aoConcluir(Runnable acao) {
+        if (exchange == null) {
+            return false;
+        }
+        aoConcluir.add(acao);
+        return true;
+    }
+
+    /** Marca a requisição como concluída e faz os fechamentos registrados, na ordem do registro. */
+    void concluir() {
+        synchronized (this) {
+            exchange = null;
+        }
+        for (Runnable acao : aoConcluir) {
+            acao.run();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Testes do LeitorLote: os dois formatos do corpo de /calcular/lote, os escapes das strings JSON e
+ * a recusa de corpos truncados, malformados ou grandes demais.
+ */
+class LeitorLoteTest {
+
+    private static final int TAMANHO_MAXIMO = LimitesExpressao.configurados().getMaxCaracteres();
+
+    /** Lê todos os itens, cada um como a expressão ou o mapa de parâmetros. */
+    private static List<Object> itens(String corpo, boolean json) throws IOException {
+        LeitorLote leitor = new LeitorLote(new StringReader(corpo), json);
+        List<Object> itens = new ArrayList<>();
+        LeitorLote.Item item;
+        while ((item = leitor.proximo()) != null) {
+            itens.add(item.expressao != null ? item.expressao : item.parametros);
+        }
+        return itens;
+    }
+
+    private static String erro(String corpo, boolean json) {
+        return assertThrows(IllegalArgumentException.class, () -> itens(corpo, json)).getMessage();
+    }
+
+    @Test
+    void arrayJsonComTextosEObjetos() throws IOException {
+        List<Object> itens = itens(" [\"1 + 2\", {\"oper1\": 1, \"oper2\": 2.5, \"operacao\": 3},"
+                + " {\"expressao\": \"4 / 2\"} ] ignorado", true);
+        assertEquals(List.of("1 + 2", Map.of("oper1", "1", "oper2", "2.5", "operacao", "3"), "4 / 2"), itens);
+        assertEquals(List.of(), itens("[ ]", true));
+    }
+
+    @Test
+    void escapesDasStringsJson() throws IOException {
+        assertEquals(List.of("a\"b\\c/\n\t", "é😀"), itens("[\"a\\\"b\\\\c\\/\\n\\t\", \"\\u00e9\\ud83d\\ude00\"]", true));
+        assertEquals("Escape \\u inválido no JSON.", erro("[\"\\u12g4\"]", true));
+        assertEquals("Texto JSON não terminado.", erro("[\"1 + 2", true));
+    }
+
+    @Test
+    void arrayTruncadoNaoEhRespondidoComoCompleto() throws IOException {
+        LeitorLote leitor = new LeitorLote(new StringReader("[\"1+1\", \"2+2\""), true);
+        assertEquals("1+1", leitor.proximo().expressao);
+        assertEquals("2+2", leitor.proximo().expressao);
+        IllegalArgumentException erro = assertThrows(IllegalArgumentException.class, leitor::proximo);
+        assertEquals("JSON inválido: esperado ']' antes do fim do corpo.", erro.getMessage());
+
+        assertEquals("JSON inválido: esperado '{' antes do fim do corpo.", erro("[\"1+1\",   ", true));
+        assertEquals("JSON inválido: esperado '[' antes do fim do corpo.", erro("", true));
+    }
+
+    @Test
+    void jsonMalformado() {
+        assertEquals("JSON inválido: esperado ',', encontrado '\"'.", erro("[\"1\" \"2\"]", true));
+        assertEquals("Objetos e arrays aninhados não são suportados.", erro("[{\"a\": [1]}]", true));
+        assertEquals("Valor JSON ausente.", erro("[{\"a\": }]", true));
+    }
+
+    @Test
+    void valoresECamposSemLimiteSaoRecusados() {
+        String literal = "1".repeat(TAMANHO_MAXIMO + 1);
+        assertEquals("Valor JSON maior que " + TAMANHO_MAXIMO + " caracteres.", erro("[{\"a\": " + literal + "}]", true));
+        assertEquals("Texto JSON maior que " + TAMANHO_MAXIMO + " caracteres.",
+                erro("[\"" + "1".repeat(TAMANHO_MAXIMO + 1) + "\"]", true));
+
+        StringBuilder objeto = new StringBuilder("[{");
+        for (int i = 0; i < 17; i++) {
+            objeto.append(i == 0 ? "" : ", ").append("\"c").append(i).append("\": ").append(i);
+        }
+        assertEquals("Objeto JSON com mais de 16 campos.", erro(objeto.append("}]").toString(), true));
+    }
+
+    @Test
+    void umItemPorLinha() throws IOException {
+        List<Object> itens = itens("1 + 2\r\n\n  oper1=3&oper2=4&operacao=1\n{\"expressao\": \"5*5\"}\n\"6 - 1\"", false);
+        assertEquals(List.of("1 + 2", Map.of("oper1", "3", "oper2", "4", "operacao", "1"), "5*5", "6 - 1"), itens);
+
+        assertEquals("Conteúdo inesperado depois do item JSON.", erro("\"1 + 2\" 3\n", false));
+        assertEquals("Linha maior que " + TAMANHO_MAXIMO + " caracteres.", erro("1".repeat(TAMANHO_MAXIMO + 1), false));
+    }
+
+    @Test
+    void mensagensComCaracteresDeControleViramStringsJsonValidas() {
+        // As mensagens de erro repetem a entrada (ex: "Caractere desconhecido: ..."), que vai para a resposta JSON.
+        assertEquals("Caractere desconhecido: \\u0001 \\n\\r\\t \\\"\\\\",
+                Registrador.escaparJson("Caractere desconhecido: \u0001 \n\r\t \"\\"));
+    }
+
+    @Test
+    void fimDoCorpoDepoisDoArrayEhDefinitivo() throws IOException {
+        LeitorLote leitor = new LeitorLote(new StringReader("[\"1\"]"), true);
+        assertEquals("1", leitor.proximo().expressao);
+        assertNull(leitor.proximo());
+        assertNull(leitor.proximo());
+    }
+}
@@ -0,0 +1,101 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Testes do caminho rápido do /avaliar: a leitura do corpo com o limite de tamanho e a extração da
+ * expressão dos corpos de formulário e JSON, com os escapes e os corpos malformados ou truncados.
+ */
+class RequisicaoAvaliarTest {
+
+    private static RequisicaoAvaliar corpo(String corpo) throws IOException {
+        byte[] bytes = corpo.getBytes(StandardCharsets.UTF_8);
+        RequisicaoAvaliar requisicao = RequisicaoAvaliar.daThread();
+        assertTrue(requisicao.lerCorpo(new ByteArrayInputStream(bytes), bytes.length));
+        return requisicao;
+    }
+
+    private static String json(String corpo) throws IOException {
+        return corpo(corpo).expressaoDoJson();
+    }
+
+    private static String erroJson(String corpo) throws IOException {
+        RequisicaoAvaliar requisicao = corpo(corpo);
+        return assertThrows(IllegalArgumentException.class, requisicao::expressaoDoJson).getMessage();
+    }
+
+    @Test
+    void formularioIgualAoParseQuery() throws IOException {
+        assertEquals("1 + 2", corpo("expressao=1+%2B+2").expressaoDoFormulario());
+        assertEquals("1 + 2", corpo("a=1&expressao=1%20%2B%202").expressaoDoFormulario());
+        assertEquals("3", corpo("expressao=1&expressao=3").expressaoDoFormulario(), "a última ocorrência prevalece");
+        assertNull(corpo("outro=1").expressaoDoFormulario());
+
+        // Casos incomuns vão para o parseQuery: chave codificada e bytes não ASCII.
+        assertEquals("2*2", corpo("expr%65ssao=2*2").expressaoDoFormulario());
+        assertEquals("é", corpo("expressao=é").expressaoDoFormulario());
+        assertEquals("é", corpo("expressao=%C3%A9").expressaoDoFormulario());
+    }
+
+    @Test
+    void jsonComEscapes() throws IOException {
+        assertEquals("1 + 2", json(" {\"outro\": 5, \"expressao\": \"1 + 2\", \"x\": \"a\\\"b\"} "));
+        assertEquals("a\"b\\c/\n\t\r\b\f", json("{\"expressao\": \"a\\\"b\\\\c\\/\\n\\t\\r\\b\\f\"}"));
+        assertEquals("é€", json("{\"expressao\": \"\\u00e9\\u20AC\"}"));
+        assertEquals("é", json("{\"expressao\": \"é\"}"));
+        assertNull(json("{}"));
+        assertNull(json("{\"outro\": true}"));
+    }
+
+    @Test
+    void paresDeSurrogatesViramUmSoCaractere() throws IOException {
+        assertEquals("😀 + 1", json("{\"expressao\": \"\\ud83d\\ude00 + 1\"}"));
+        assertEquals("x😀", json("{\"expressao\": \"x\\uD83D\\uDE00\"}"));
+
+        String mensagem = "Escape \\u inválido no JSON: surrogate sem o seu par.";
+        assertEquals(mensagem, erroJson("{\"expressao\": \"\\ud83d\"}"));
+        assertEquals(mensagem, erroJson("{\"expressao\": \"\\ud83d + 1\"}"));
+        assertEquals(mensagem, erroJson("{\"expressao\": \"\\ud83d\\u0041\"}"));
+        assertEquals(mensagem, erroJson("{\"expressao\": \"\\ude00\"}"));
+        assertEquals("Escape \\u inválido no JSON.", erroJson("{\"expressao\": \"\\ud83d\\ude0\"}"));
+    }
+
+    @Test
+    void jsonMalformadoOuTruncado() throws IOException {
+        assertEquals("Escape \\u inválido no JSON.", erroJson("{\"expressao\": \"\\u00g9\"}"));
+        assertEquals("Escape \\u inválido no JSON.", erroJson("{\"expressao\": \"\\u00\"}"));
+        assertEquals("O campo 'expressao' deve ser um texto.", erroJson("{\"expressao\": 12}"));
+        assertEquals("Objetos e arrays aninhados não são suportados.", erroJson("{\"a\": {\"b\": 1}}"));
+        assertEquals("JSON inválido: esperado '{', encontrado '['.", erroJson("[\"1 + 2\"]"));
+        assertEquals("JSON inválido: esperado '}' antes do fim do corpo.", erroJson("{\"expressao\": \"1 + 2\""));
+        assertEquals("JSON inválido: esperado '\"' antes do fim do corpo.", erroJson("{\"expressao\": \"1 + 2"));
+        assertEquals("JSON inválido: esperado '{' antes do fim do corpo.", erroJson(""));
+    }
+
+    @Test
+    void corpoAcimaDoLimiteEhRecusado() throws IOException {
+        int limite = RequisicaoAvaliar.TAMANHO_MAXIMO_CORPO;
+        RequisicaoAvaliar requisicao = RequisicaoAvaliar.daThread();
+
+        // Pelo Content-Length, sem ler nada.
+        ByteArrayInputStream entrada = new ByteArrayInputStream(new byte[10]);
+        assertFalse(requisicao.lerCorpo(entrada, limite + 1L));
+        assertEquals(10, entrada.available());
+
+        // Sem Content-Length (ex: chunked): para de ler ao passar do limite.
+        assertFalse(requisicao.lerCorpo(new ByteArrayInputStream(new byte[limite + 1]), -1));
+
+        // Exatamente no limite ainda é aceito.
+        byte[] noLimite = ("expressao=" + "1".repeat(limite - 10)).getBytes(StandardCharsets.US_ASCII);
+        assertTrue(requisicao.lerCorpo(new ByteArrayInputStream(noLimite), -1));
+        assertEquals(limite - 10, requisicao.expressaoDoFormulario().length());
+    }
+}
@@ -0,0 +1,274 @@
+import java.rmi.ConnectException;
+import java.rmi.Naming;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribui as chamadas entre várias réplicas da calculadora remota (ver ServidorRMI).
+ *
+ * Implementa a própria ICalculadoraRemota, então pode ser usado no lugar de um Stub comum.
+ * Cada chamada vai para uma réplica escolhida pela estratégia; se a réplica falhar por um
+ * problema de rede (ClienteRMI.FALHA_TEMPORARIA), a mesma chamada é repetida em outra réplica
+ * ("failover"). Erros de cálculo são devolvidos na hora, sem trocar de réplica.
+ *
+ * Cada réplica tem o seu Disjuntor: uma réplica fora do ar deixa de ser escolhida por alguns
+ * segundos e depois é testada de novo, enquanto as outras continuam atendendo.
+ */
+public class BalanceadorRMI implements ICalculadoraRemota {
+
+    public enum Estrategia {
+        /** Uma réplica de cada vez, em sequência. */
+        ROUND_ROBIN,
+        /** A réplica com menos chamadas em andamento (neste cliente). */
+        MENOS_PENDENTES,
+        /** Sorteia duas réplicas e usa a com menos chamadas em andamento ("power of two choices"). */
+        DUAS_ESCOLHAS
+    }
+
+    private final Replica[] replicas;
+    private final Estrategia estrategia;
+    private final AtomicInteger proxima = new AtomicInteger();
+
+    /**
+     * Descobre as réplicas registradas num Registry ("CalculadoraRemota-0", "CalculadoraRemota-1", ...).
+     * Se não houver nenhuma réplica numerada, usa o nome original ("CalculadoraRemota").
+     * @param endereco Endereço do RMI Registry.
+     * @param porta Porta do RMI Registry.
+     */
+    public static BalanceadorRMI descobrir(String endereco, int porta, Estrategia estrategia) throws RemoteException {
+        Registry registry = LocateRegistry.getRegistry(endereco, porta);
+        String prefixo = ServidorRMI.NOME_SERVICO + "-";
+        List<String> nomes = new ArrayList<>();
+        for (String nome : registry.list()) {
+            if (nome.startsWith(prefixo)) {
+                nomes.add(nome);
+            }
+        }
+        if (nomes.isEmpty()) {
+            nomes.add(ServidorRMI.NOME_SERVICO);
+        }
+        // Ordena pelo índice (CalculadoraRemota-10 depois de CalculadoraRemota-9).
+        nomes.sort(Comparator.comparingInt(String::length).thenComparing(Comparator.naturalOrder()));
+
+        List<String> urls = new ArrayList<>();
+        for (String nome : nomes) {
+            urls.add("//" + endereco + ":" + porta + "/" + nome);
+        }
+        return new BalanceadorRMI(urls, estrategia);
+    }
+
+    /**
+     * @param urls URL de cada réplica (ex: "//localhost:1099/CalculadoraRemota-0"); podem estar em
+     *             Registries e computadores diferentes.
+     */
+    public BalanceadorRMI(List<String> urls, Estrategia estrategia) {
+        if (urls.isEmpty()) {
+            throw new IllegalArgumentException("Informe pelo menos uma réplica.");
+        }
+        this.replicas = new Replica[urls.size()];
+        for (int i = 0; i < replicas.length; i++) {
+            replicas[i] = new Replica(urls.get(i));
+        }
+        this.estrategia = estrategia;
+    }
+
+    @Override
+    public double avaliarExpressao(String expressao) throws RemoteException {
+        return executar(stub -> stub.avaliarExpressao(expressao));
+    }
+
+    @Override
+    public ResultadoAvaliacao avaliar(String expressao) throws RemoteException {
+        return executar(stub -> stub.avaliar(expressao));
+    }
+
+    @Override
+    public double[] avaliarLote(String[] expressoes) throws RemoteException {
+        return executar(stub -> stub.avaliarLote(expressoes));
+    }
+
+    @Override
+    public double[] avaliarComVariaveis(String expressao, String[] variaveis, double[][] valores) throws RemoteException {
+        return executar(stub -> stub.avaliarComVariaveis(expressao, variaveis, valores));
+    }
+
+    @Override
+    public void avaliarLoteAsync(long id, String[] expressoes, IOuvinteLote ouvinte) throws RemoteException {
+        executar(stub -> {
+            stub.avaliarLoteAsync(id, expressoes, ouvinte);
+            return null;
+        });
+    }
+
+    /**
+     * Faz a chamada numa réplica e, se ela falhar por problema de rede, nas seguintes,
+     * até dar certo ou todas terem sido tentadas.
+     * @throws RemoteException O erro da chamada (ex: de cálculo), ou um ConnectException se nenhuma réplica respondeu.
+     */
+    private <T> T executar(ChamadaReplica<T> chamada) throws RemoteException {
+        boolean[] tentadas = new boolean[replicas.length];
+        Exception ultimaFalha = null;
+        for (int tentativa = 0; tentativa < replicas.length; tentativa++) {
+            Replica replica = escolher(tentadas);
+            if (replica == null) {
+                break; // Todas já tentadas ou com o disjuntor aberto.
+            }
+            replica.pendentes.incrementAndGet();
+            try {
+                T resultado = chamada.executar(replica.stub());
+                replica.disjuntor.registrarSucesso();
+                return resultado;
+            } catch (Exception e) {
+                if (!ClienteRMI.FALHA_TEMPORARIA.test(e)) {
+                    replica.disjuntor.registrarSucesso(); // A réplica respondeu (com um erro de cálculo).
+                    if (e instanceof RemoteException) {
+                        throw (RemoteException) e;
+                    }
+                    if (e instanceof RuntimeException) {
+                        throw (RuntimeException) e; // Ex: ErroCalculoRemoto.
+                    }
+                    throw new RemoteException("Falha ao chamar " + replica.url, e);
+                }
+                replica.disjuntor.registrarFalha();
+                replica.descartarStub();
+                replica.falhas.increment();
+                ultimaFalha = e;
+            } finally {
+                replica.pendentes.decrementAndGet();
+                replica.chamadas.increment();
+            }
+        }
+        throw new ConnectException("Nenhuma réplica disponível entre " + replicas.length + ".", ultimaFalha);
+    }
+
+    /**
+     * Escolhe uma réplica ainda não tentada nesta chamada, conforme a estratégia, e a marca como tentada.
+     * Réplicas com o disjuntor aberto são puladas.
+     * @return A réplica, ou null se não restar nenhuma.
+     */
+    private Replica escolher(boolean[] tentadas) {
+        while (true) {
+            int indice = escolherIndice(tentadas);
+            if (indice < 0) {
+                return null;
+            }
+            tentadas[indice] = true;
+            if (replicas[indice].disjuntor.permitirChamada()) {
+                return replicas[indice];
+            }
+        }
+    }
+
+    private int escolherIndice(boolean[] tentadas) {
+        int n = replicas.length;
+        switch (estrategia) {
+            case ROUND_ROBIN: {
+                int inicio = Math.floorMod(proxima.getAndIncrement(), n);
+                for (int i = 0; i < n; i++) {
+                    int indice = (inicio + i) % n;
+                    if (!tentadas[indice]) {
+                        return indice;
+                    }
+                }
+                return -1;
+            }
+            case MENOS_PENDENTES: {
+                // Começa de uma posição sorteada para os empates não caírem sempre na mesma réplica.
+                int inicio = ThreadLocalRandom.current().nextInt(n);
+                int melhor = -1;
+                for (int i = 0; i < n; i++) {
+                    int indice = (inicio + i) % n;
+                    if (!tentadas[indice] && (melhor < 0
+                            || replicas[indice].pendentes.get() < replicas[melhor].pendentes.get())) {
+                        melhor = indice;
+                    }
+                }
+                return melhor;
+            }
+            default: { // DUAS_ESCOLHAS
+                int restantes = 0;
+                for (boolean tentada : tentadas) {
+                    if (!tentada) restantes++;
+                }
+                if (restantes <= 2) {
+                    // Sobram no máximo duas: compara as que restam (ou devolve a única).
+                    int melhor = -1;
+                    for (int i = 0; i < n; i++) {
+                        if (!tentadas[i] && (melhor < 0 || replicas[i].pendentes.get() < replicas[melhor].pendentes.get())) {
+                            melhor = i;
+                        }
+                    }
+                    return melhor;
+                }
+                ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+                int a, b;
+                do {
+                    a = aleatorio.nextInt(n);
+                } while (tentadas[a]);
+                do {
+                    b = aleatorio.nextInt(n);
+                } while (tentadas[b] || b == a);
+                return replicas[b].pendentes.get() < replicas[a].pendentes.get() ? b : a;
+            }
+        }
+    }
+
+    /** Quantidade de réplicas conhecidas. */
+    public int getQuantidadeReplicas() {
+        return replicas.length;
+    }
+
+    @Override
+    public String toString() {
+        return "BalanceadorRMI[" + estrategia + ", " + Arrays.toString(replicas) + "]";
+    }
+
+    /** Uma chamada feita pelo Stub de uma réplica. */
+    @FunctionalInterface
+    private interface ChamadaReplica<T> {
+        T executar(ICalculadoraRemota stub) throws Exception;
+    }
+
+    /** Uma réplica: o seu Stub (obtido sob demanda), chamadas em andamento e disjuntor. */
+    private static final class Replica {
+        final String url;
+        final Disjuntor disjuntor;
+        final AtomicInteger pendentes = new AtomicInteger();
+        final LongAdder chamadas = new LongAdder();
+        final LongAdder falhas = new LongAdder();
+        private volatile ICalculadoraRemota stub;
+
+        Replica(String url) {
+            this.url = url;
+            // Janela curta: com poucas chamadas por réplica, uma réplica fora do ar é detectada rápido.
+            this.disjuntor = new Disjuntor(url, 10, 3, 50, 5000, 1);
+        }
+
+        ICalculadoraRemota stub() throws Exception {
+            ICalculadoraRemota atual = stub;
+            if (atual == null) {
+                atual = (ICalculadoraRemota) Naming.lookup(url);
+                stub = atual;
+            }
+            return atual;
+        }
+
+        void descartarStub() {
+            stub = null; // A próxima chamada refaz o lookup (ex: réplica reiniciada).
+        }
+
+        @Override
+        public String toString() {
+            return url + " (chamadas=" + chamadas.sum() + ", falhas=" + falhas.sum()
+                    + ", em andamento=" + pendentes.get() + ", " + disjuntor.getEstado() + ")";
+        }
+    }
+}
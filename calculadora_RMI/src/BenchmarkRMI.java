@@ -0,0 +1,104 @@
+import java.rmi.server.RemoteObject;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Arrays;
+
+/**
+ * Compara as fábricas de sockets do RMI: os sockets padrão, os ajustados (TCP_NODELAY e buffers
+ * maiores) e os ajustados com compressão das mensagens grandes (ver FabricaSocketsRMI).
+ *
+ * Cada modo exporta a sua própria CalculadoraRemota nesta JVM e a chama pelo Stub (as chamadas
+ * passam pelo TCP do loopback, como num servidor separado). Para cada modo mede:
+ *   - chamadas:  avaliarExpressao, uma de cada vez (latência p50/p99 e chamadas/s);
+ *   - lote:      avaliarLote com TAMANHO_LOTE expressões por chamada (expressões/s);
+ *   - variáveis: avaliarComVariaveis com TAMANHO_LOTE linhas por chamada (linhas/s);
+ * e as conexões abertas (poucas conexões para muitas chamadas = o RMI as reaproveitou) e,
+ * com compressão, os bytes antes e depois de compactar.
+ *
+ * No loopback a rede não é o gargalo, então a compressão tende a só custar CPU; ela compensa
+ * em redes lentas, com lotes grandes. Uso: java BenchmarkRMI [chamadas] [lotes]
+ */
+public class BenchmarkRMI {
+
+    private static final int TAMANHO_LOTE = 10_000;
+    private static final int RODADAS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int chamadas = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        int lotes = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        String[] expressoes = new String[TAMANHO_LOTE];
+        double[][] valores = new double[TAMANHO_LOTE][];
+        for (int i = 0; i < TAMANHO_LOTE; i++) {
+            expressoes[i] = (i + 1) + " * (3.25 + " + (i % 17) + ") / 7 - 2.5";
+            valores[i] = new double[] {i + 1, i % 17};
+        }
+        String[] variaveis = {"x", "y"};
+
+        String[] nomes = {"padrão", "ajustado", "compactado"};
+        FabricaSocketsRMI[] fabricas = {
+                null,
+                new FabricaSocketsRMI(true, 256 * 1024, 256 * 1024, false, 0),
+                new FabricaSocketsRMI(true, 256 * 1024, 256 * 1024, true, 1024)
+        };
+        CalculadoraRemota[] servidores = new CalculadoraRemota[fabricas.length];
+        ICalculadoraRemota[] stubs = new ICalculadoraRemota[fabricas.length];
+        for (int m = 0; m < fabricas.length; m++) {
+            servidores[m] = new CalculadoraRemota(0, fabricas[m]);
+            stubs[m] = (ICalculadoraRemota) RemoteObject.toStub(servidores[m]);
+        }
+
+        try {
+            for (int rodada = 1; rodada <= RODADAS; rodada++) {
+                System.out.println("--- Rodada " + rodada + " ---");
+                for (int m = 0; m < stubs.length; m++) {
+                    ICalculadoraRemota stub = stubs[m];
+                    long conexoes = FabricaSocketsRMI.getSocketsCriados();
+                    long originais = FabricaSocketsRMI.getBytesOriginais();
+                    long enviados = FabricaSocketsRMI.getBytesEnviados();
+
+                    long[] latencias = new long[chamadas];
+                    long inicio = System.nanoTime();
+                    for (int i = 0; i < chamadas; i++) {
+                        long t = System.nanoTime();
+                        stub.avaliarExpressao(expressoes[i % TAMANHO_LOTE]);
+                        latencias[i] = System.nanoTime() - t;
+                    }
+                    double segundosChamadas = (System.nanoTime() - inicio) / 1e9;
+                    Arrays.sort(latencias);
+
+                    inicio = System.nanoTime();
+                    for (int i = 0; i < lotes; i++) {
+                        stub.avaliarLote(expressoes);
+                    }
+                    double segundosLote = (System.nanoTime() - inicio) / 1e9;
+
+                    inicio = System.nanoTime();
+                    for (int i = 0; i < lotes; i++) {
+                        stub.avaliarComVariaveis("x * (3.25 + y) / 7 - 2.5", variaveis, valores);
+                    }
+                    double segundosVariaveis = (System.nanoTime() - inicio) / 1e9;
+
+                    System.out.printf("%-11s chamadas %8.0f/s (p50 %5.1f µs, p99 %6.1f µs) | lote %9.0f expr/s"
+                                    + " | variáveis %9.0f linhas/s | conexões %s",
+                            nomes[m], chamadas / segundosChamadas,
+                            latencias[chamadas / 2] / 1e3, latencias[(int) (chamadas * 0.99)] / 1e3,
+                            (double) lotes * TAMANHO_LOTE / segundosLote,
+                            (double) lotes * TAMANHO_LOTE / segundosVariaveis,
+                            // Os sockets padrão não passam pela fábrica: não há como contá-los.
+                            fabricas[m] == null ? "-" : "+" + (FabricaSocketsRMI.getSocketsCriados() - conexoes));
+                    long deltaOriginais = FabricaSocketsRMI.getBytesOriginais() - originais;
+                    if (deltaOriginais > 0) {
+                        System.out.printf(" | bytes %.1f MB -> %.1f MB", deltaOriginais / 1e6,
+                                (FabricaSocketsRMI.getBytesEnviados() - enviados) / 1e6);
+                    }
+                    System.out.println();
+                }
+            }
+            System.out.println("Sockets: " + FabricaSocketsRMI.estatisticas());
+        } finally {
+            for (CalculadoraRemota servidor : servidores) {
+                UnicastRemoteObject.unexportObject(servidor, true);
+            }
+        }
+    }
+}
@@ -1,5 +1,14 @@
 import java.rmi.RemoteException;
+import java.rmi.server.RemoteServer;
+import java.rmi.server.ServerNotActiveException;
 import java.rmi.server.UnicastRemoteObject;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 /**
  * Classe que implementa a Interface Remota (ICalculadoraRemota).
@@ -7,13 +16,73 @@ import java.rmi.server.UnicastRemoteObject;
  */
 public class CalculadoraRemota extends UnicastRemoteObject implements ICalculadoraRemota {
 
-    // Reutiliza a lógica de cálculo existente.
-    private InterpretadorAritmetico interpretador = new InterpretadorAritmetico();
+    private static final long serialVersionUID = 1L;
+
+    // A partir de quantas expressões um lote é avaliado em paralelo.
+    private static final int LIMIAR_PARALELO = 256;
+    // Threads e fila dos lotes enviados com avaliarLoteAsync.
+    private static final int THREADS_LOTE = Integer.getInteger("calculadora.rmi.lote.threads",
+            Runtime.getRuntime().availableProcessors());
+    private static final int FILA_LOTE = Integer.getInteger("calculadora.rmi.lote.fila", 256);
+
+    // Log assíncrono: as threads que atendem as chamadas remotas não fazem I/O de console (ver Registrador).
+    private static final Registrador LOG = Registrador.compartilhado();
+
+    // Métricas das chamadas remotas (latências, lotes na fila, erros), publicadas como MBean no JMX (ver Metricas).
+    static final Metricas METRICAS = Metricas.de("rmi");
+
+    // Controle de admissão (limite de taxa por cliente e de chamadas simultâneas; ver ControleAdmissao),
+    // configurado por -Dcalculadora.admissao.* e compartilhado pelas réplicas.
+    static final ControleAdmissao ADMISSAO = ControleAdmissao.configurado(METRICAS);
+
+    // Motor de cálculo configurado (-Dcalculadora.avaliador), compartilhado pelas réplicas.
+    static final AvaliadorExpressoes AVALIADOR = AvaliadorExpressoes.configurado();
+
+    // Reutiliza a lógica de cálculo existente: o motor configurado (medido pelas métricas) avalia as
+    // expressões; a compilação com variáveis (avaliarComVariaveis) depende sempre do InterpretadorAritmetico.
+    private final AvaliadorExpressoes interpretador = METRICAS.medir(AVALIADOR);
+    private final InterpretadorAritmetico compilador = new InterpretadorAritmetico();
+
+    // Limites de complexidade das expressões e faixa das pesadas (ver EscalonadorAvaliacao), configurados
+    // por -Dcalculadora.limites.* e -Dcalculadora.escalonador.* e compartilhados pelas réplicas. As strings
+    // chegam inteiras (o RMI as desserializa antes da chamada): os limites são verificados depois disso.
+    static final EscalonadorAvaliacao ESCALONADOR = EscalonadorAvaliacao.configurado(METRICAS.medir(AVALIADOR), METRICAS);
+
+    // Executa os lotes assíncronos. A fila é limitada: com ela cheia, o lote é recusado na hora.
+    private final ThreadPoolExecutor executorLotes;
 
     // Construtor. Deve declarar RemoteException.
     public CalculadoraRemota() throws RemoteException {
-        super();
+        this(0);
+    }
+
+    /**
+     * @param porta Porta em que o objeto recebe as chamadas (0 = uma porta livre qualquer).
+     *              Réplicas na mesma JVM podem usar portas diferentes para separar o tráfego.
+     */
+    public CalculadoraRemota(int porta) throws RemoteException {
+        this(porta, null);
+    }
+
+    /**
+     * @param porta Porta em que o objeto recebe as chamadas (0 = uma porta livre qualquer).
+     * @param fabrica Fábrica dos sockets do servidor e dos clientes (ver FabricaSocketsRMI);
+     *                null = sockets padrão do RMI.
+     */
+    public CalculadoraRemota(int porta, FabricaSocketsRMI fabrica) throws RemoteException {
+        super(porta, fabrica, fabrica);
         // Chama o construtor do UnicastRemoteObject, que exporta este objeto.
+        // A fábrica do cliente vai junto com o Stub: os clientes usam os mesmos ajustes sem configurar nada.
+
+        AtomicInteger contador = new AtomicInteger();
+        executorLotes = new ThreadPoolExecutor(THREADS_LOTE, THREADS_LOTE, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(FILA_LOTE), tarefa -> {
+                    Thread t = new Thread(tarefa, "calculadora-rmi-lote-" + contador.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        // Lotes assíncronos esperando uma thread (somados entre as réplicas desta JVM).
+        METRICAS.registrarMedidor("filaLotes", () -> executorLotes.getQueue().size());
     }
 
     /**
@@ -21,17 +90,219 @@ public class CalculadoraRemota extends UnicastRemoteObject implements ICalculado
      */
     @Override
     public double avaliarExpressao(String expressao) throws RemoteException {
-        // Log para mostrar que a chamada remota chegou.
-        System.out.println("Chamada remota recebida: " + expressao);
-
+        exigirAdmissao();
+        long inicio = METRICAS.iniciarRequisicao();
+        boolean calculada = true;
         try {
-            // Delega o cálculo à lógica local (InterpretadorAritmetico).
-            return interpretador.avaliarExpressao(expressao);
+            // Delega o cálculo à lógica local (o motor configurado), na faixa do custo da expressão.
+            double resultado = ESCALONADOR.avaliarExpressao(expressao);
+            // Registra a chamada no log (amostrada; sem I/O nesta thread).
+            LOG.requisicao("rmi", expressao, inicio, null);
+            return resultado;
         } catch (IllegalArgumentException | ArithmeticException e) {
-            // Se houver um erro de cálculo, lançamos uma RemoteException para que 
+            // Se houver um erro de cálculo, lançamos uma exceção para que 
             // a mensagem de erro chegue ao cliente.
-            System.err.println("Erro no cálculo: " + e.getMessage());
-            throw new RemoteException("ERRO NO SERVIDOR: " + e.getMessage());
+            LOG.requisicao("rmi", expressao, inicio, e.getMessage());
+            // ErroCalculoRemoto não captura a pilha e, por não ser uma RemoteException, não faz o RMI
+            // descartar a conexão do cliente.
+            throw new ErroCalculoRemoto(ResultadoAvaliacao.codigoDo(e), "ERRO NO SERVIDOR: " + e.getMessage());
+        } catch (ControleAdmissao.Recusada e) {
+            // Fila das pesadas cheia: volta como as recusas do controle de admissão.
+            calculada = false;
+            throw new ErroSobrecargaRemota(e.getRecusa());
+        } finally {
+            concluir(inicio, calculada);
+        }
+    }
+
+    @Override
+    public ResultadoAvaliacao avaliar(String expressao) {
+        ControleAdmissao.Recusa recusa = admitir();
+        if (recusa != null) {
+            // Como os erros de cálculo, a recusa volta como um resultado comum.
+            return ResultadoAvaliacao.erro(ResultadoAvaliacao.Codigo.SOBRECARGA, recusa.getMensagem());
+        }
+        long inicio = METRICAS.iniciarRequisicao();
+        boolean calculada = true;
+        try {
+            double resultado = ESCALONADOR.avaliarExpressao(expressao);
+            LOG.requisicao("rmi", expressao, inicio, null);
+            return ResultadoAvaliacao.ok(resultado);
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            // O erro volta como um resultado comum, sem nenhuma exceção remota.
+            LOG.requisicao("rmi", expressao, inicio, e.getMessage());
+            return ResultadoAvaliacao.erro(ResultadoAvaliacao.codigoDo(e), e.getMessage());
+        } catch (ControleAdmissao.Recusada e) {
+            calculada = false;
+            return ResultadoAvaliacao.erro(ResultadoAvaliacao.Codigo.SOBRECARGA, e.getMessage());
+        } finally {
+            concluir(inicio, calculada);
+        }
+    }
+
+    /**
+     * Encerra uma chamada de uma expressão só: a duração serve de amostra para o limite adaptativo,
+     * a não ser que a fila das pesadas a tenha recusado (nada foi calculado).
+     */
+    private static void concluir(long inicio, boolean calculada) {
+        if (calculada) {
+            ADMISSAO.concluir(inicio);
+        } else {
+            ADMISSAO.liberar();
+        }
+        METRICAS.concluirRequisicao(inicio);
+    }
+
+    @Override
+    public double[] avaliarLote(String[] expressoes) throws RemoteException {
+        exigirAdmissao();
+        long inicio = METRICAS.iniciarRequisicao();
+        try {
+            double[] resultados = calcularLote(expressoes);
+            LOG.requisicao("rmi/lote", null, inicio, null);
+            return resultados;
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            LOG.requisicao("rmi/lote", null, inicio, e.getMessage());
+            throw new ErroCalculoRemoto(ResultadoAvaliacao.codigoDo(e), "ERRO NO SERVIDOR: " + e.getMessage());
+        } finally {
+            // A duração de um lote depende do tamanho dele: não serve de amostra para o limite adaptativo.
+            ADMISSAO.liberar();
+            METRICAS.concluirRequisicao(inicio);
+        }
+    }
+
+    @Override
+    public double[] avaliarComVariaveis(String expressao, String[] variaveis, double[][] valores) throws RemoteException {
+        exigirAdmissao();
+        long inicio = METRICAS.iniciarRequisicao();
+        try {
+            ESCALONADOR.getLimites().verificar(expressao);
+            ExpressaoCompilada compilada = compilador.compilar(expressao, variaveis);
+            long compilado = System.nanoTime();
+            if (variaveis.length == 0) {
+                double[] resultados = new double[valores.length];
+                Arrays.fill(resultados, compilada.avaliar());
+                METRICAS.registrarFases(compilado - inicio, System.nanoTime() - compilado);
+                return resultados;
+            }
+            // A avaliação em lote trabalha com colunas (uma por variável): transpõe as linhas recebidas.
+            double[][] colunas = new double[variaveis.length][valores.length];
+            for (int linha = 0; linha < valores.length; linha++) {
+                if (valores[linha].length != variaveis.length) {
+                    throw new IllegalArgumentException("Linha " + linha + ": esperados " + variaveis.length
+                            + " valores, recebidos " + valores[linha].length + ".");
+                }
+                for (int v = 0; v < variaveis.length; v++) {
+                    colunas[v][linha] = valores[linha][v];
+                }
+            }
+            double[] resultados = compilada.avaliarLote(colunas);
+            // Uma avaliação por chamada (o lote inteiro de valores), como nos lotes de expressões.
+            METRICAS.registrarFases(compilado - inicio, System.nanoTime() - compilado);
+            LOG.requisicao("rmi/variaveis", expressao, inicio, null);
+            return resultados;
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            METRICAS.registrarErro(e);
+            LOG.requisicao("rmi/variaveis", expressao, inicio, e.getMessage());
+            throw new ErroCalculoRemoto(ResultadoAvaliacao.codigoDo(e), "ERRO NO SERVIDOR: " + e.getMessage());
+        } finally {
+            ADMISSAO.liberar();
+            METRICAS.concluirRequisicao(inicio);
+        }
+    }
+
+    @Override
+    public void avaliarLoteAsync(long id, String[] expressoes, IOuvinteLote ouvinte) throws RemoteException {
+        // A requisição só termina quando o lote é avaliado: enquanto espera na fila, conta como em andamento.
+        exigirAdmissao();
+        long inicio = METRICAS.iniciarRequisicao();
+        try {
+            executorLotes.execute(() -> {
+                try {
+                    double[] resultados;
+                    try {
+                        resultados = calcularLote(expressoes);
+                    } catch (IllegalArgumentException | ArithmeticException e) {
+                        LOG.requisicao("rmi/lote", null, inicio, e.getMessage());
+                        ouvinte.falhou(id, "ERRO NO SERVIDOR: " + e.getMessage());
+                        return;
+                    }
+                    LOG.requisicao("rmi/lote", null, inicio, null);
+                    ouvinte.concluido(id, resultados);
+                } catch (RemoteException e) {
+                    // O cliente não está mais acessível: não há a quem entregar o resultado.
+                    METRICAS.registrarErro(Metricas.TipoErro.REDE);
+                    LOG.aviso("rmi", "Não foi possível entregar o lote " + id, e.getMessage());
+                } finally {
+                    ADMISSAO.liberar();
+                    METRICAS.concluirRequisicao(inicio);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            METRICAS.registrarErro(Metricas.TipoErro.SOBRECARGA);
+            ADMISSAO.liberar();
+            METRICAS.concluirRequisicao(inicio);
+            LOG.aviso("rmi", "Lote recusado: fila de lotes cheia", id);
+            // Como as recusas do controle de admissão: sem RemoteException, a conexão do cliente continua valendo.
+            throw new ErroSobrecargaRemota(ControleAdmissao.Recusa.FILA_LOTES);
+        }
+    }
+
+    /**
+     * Passa a chamada pelo controle de admissão.
+     * @return null se admitida (ela conta como em andamento até ADMISSAO.concluir ou liberar),
+     *         senão o motivo da recusa.
+     */
+    private static ControleAdmissao.Recusa admitir() {
+        String cliente = null;
+        if (ADMISSAO.isPorCliente()) {
+            try {
+                cliente = RemoteServer.getClientHost();
+            } catch (ServerNotActiveException e) {
+                cliente = "local"; // Chamada feita na própria JVM, fora do RMI.
+            }
+        }
+        ControleAdmissao.Recusa recusa = ADMISSAO.admitir(cliente);
+        if (recusa != null) {
+            LOG.aviso("rmi", "Chamada recusada pelo controle de admissão", recusa);
+        }
+        return recusa;
+    }
+
+    /** Como admitir(), para os métodos que devolvem valores: a recusa vira ErroSobrecargaRemota. */
+    private static void exigirAdmissao() {
+        ControleAdmissao.Recusa recusa = admitir();
+        if (recusa != null) {
+            throw new ErroSobrecargaRemota(recusa);
+        }
+    }
+
+    /**
+     * Avalia as expressões do lote (em paralelo, se forem muitas). Cada expressão passa pelos limites de
+     * complexidade, mas não pela faixa das pesadas: o lote já é a unidade de trabalho (e os assíncronos
+     * já têm o seu próprio pool).
+     * @throws IllegalArgumentException Com o índice da primeira expressão inválida.
+     */
+    private double[] calcularLote(String[] expressoes) {
+        double[] resultados = new double[expressoes.length];
+        String[] erros = new String[expressoes.length];
+        IntStream indices = IntStream.range(0, expressoes.length);
+        if (expressoes.length >= LIMIAR_PARALELO) {
+            indices = indices.parallel();
+        }
+        indices.forEach(i -> {
+            try {
+                ESCALONADOR.verificar(expressoes[i]);
+                resultados[i] = interpretador.avaliarExpressao(expressoes[i]);
+            } catch (IllegalArgumentException | ArithmeticException e) {
+                erros[i] = e.getMessage();
+            }
+        });
+        for (int i = 0; i < erros.length; i++) {
+            if (erros[i] != null) {
+                throw new IllegalArgumentException("expressão " + i + ": " + erros[i]);
+            }
         }
+        return resultados;
     }
-}
\ No newline at end of file
+}
@@ -1,27 +1,81 @@
+import java.io.IOException;
+import java.rmi.ConnectException;
+import java.rmi.ConnectIOException;
 import java.rmi.Naming;
+import java.rmi.NoSuchObjectException;
+import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
+import java.rmi.UnknownHostException;
+import java.rmi.UnmarshalException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 /**
  * Classe Cliente RMI.
  * Localiza o objeto remoto no Registry e chama seu método 'avaliarExpressao'.
+ *
+ * Também pode ser usada como biblioteca: new ClienteRMI(endereco, porta).avaliar("1 + 2").
+ * O Stub é guardado e reaproveitado entre as chamadas; se a chamada falhar por um problema
+ * de rede (ex: servidor reiniciado), o Stub é descartado e a próxima tentativa faz um novo lookup.
+ * As chamadas passam pela Resiliencia (disjuntor e retentativas com backoff).
+ *
+ * Para muitas expressões, os métodos de lote fazem uma única chamada remota para todas.
+ * avaliarLoteAsync não espera o cálculo: o servidor devolve o resultado chamando um objeto
+ * remoto exportado por este cliente (por isso o cliente deve ser fechado depois de usado).
+ *
+ * Com uma Estrategia de balanceamento, o cliente descobre as réplicas registradas (ver ServidorRMI)
+ * e distribui as chamadas entre elas com um BalanceadorRMI, no lugar de um único Stub.
+ *
+ * Os sockets das chamadas são os do servidor: se ele exportou a calculadora com uma FabricaSocketsRMI,
+ * o Stub já traz a fábrica (TCP_NODELAY, buffers, compressão), sem nenhuma configuração no cliente.
  */
-public class ClienteRMI {
+public class ClienteRMI implements AutoCloseable {
 
     private static final String NOME_SERVICO = "CalculadoraRemota";
     private static final String ENDERECO_SERVIDOR = "localhost";
     private static final int PORTA_REGISTRY = 1099;
+    // Balanceamento entre réplicas no programa interativo (ex: -Dcalculadora.rmi.estrategia=DUAS_ESCOLHAS).
+    private static final String ESTRATEGIA = System.getProperty("calculadora.rmi.estrategia");
+    // Sockets do ouvinte de lotes assíncronos (as chamadas ao servidor usam a fábrica que vem no Stub).
+    private static final FabricaSocketsRMI FABRICA = FabricaSocketsRMI.daConfiguracao();
 
-    public static void main(String[] args) {
-        try {
-            // 1. Forma o URL completo para buscar o objeto remoto.
-            String url = "//" + ENDERECO_SERVIDOR + ":" + PORTA_REGISTRY + "/" + NOME_SERVICO;
+    /**
+     * Falhas que valem uma nova tentativa: o servidor (ou o Registry) não pôde ser alcançado,
+     * o objeto remoto não existe mais (servidor reiniciado) ou ainda não foi registrado, ou a conexão
+     * caiu no meio da chamada. Neste último caso o servidor pode já ter calculado a expressão, mas
+     * repetir é seguro: avaliar uma expressão não altera nada no servidor.
+     * Erros de cálculo ("ERRO NO SERVIDOR: ...") chegam como ErroCalculoRemoto e não são repetidos.
+     */
+    public static final Predicate<Throwable> FALHA_TEMPORARIA = e -> e instanceof ConnectException
+            || e instanceof ConnectIOException
+            || e instanceof NoSuchObjectException
+            || e instanceof UnknownHostException
+            || e instanceof NotBoundException
+            || (e instanceof UnmarshalException && e.getCause() instanceof IOException)
+            || (e instanceof ErroSobrecargaRemota && ((ErroSobrecargaRemota) e).isTemporaria());
 
-            // 2. Localiza o objeto remoto (o Stub) no RMI Registry.
-            // O objeto retornado é o Stub, que implementa a ICalculadoraRemota.
-            ICalculadoraRemota calculadoraRemota = (ICalculadoraRemota) Naming.lookup(url);
+    private final String endereco;
+    private final int porta;
+    private final String url;
+    private final BalanceadorRMI.Estrategia estrategia; // null = sem balanceamento (um único Stub).
+    private final Resiliencia resiliencia;
+    // Stub do último lookup, ou o balanceador das réplicas (null = fazer o lookup na próxima chamada).
+    private volatile ICalculadoraRemota calculadoraRemota;
 
-            System.out.println("Conectado ao Servidor RMI em " + ENDERECO_SERVIDOR + ":" + PORTA_REGISTRY);
+    // Recebe os resultados dos lotes assíncronos (exportado só no primeiro uso).
+    private final OuvinteLote ouvinte = new OuvinteLote();
+    private boolean ouvinteExportado;
+    private final AtomicLong proximoIdLote = new AtomicLong();
+
+    public static void main(String[] args) {
+        BalanceadorRMI.Estrategia estrategia = ESTRATEGIA == null ? null : BalanceadorRMI.Estrategia.valueOf(ESTRATEGIA);
+        try (ClienteRMI cliente = new ClienteRMI(ENDERECO_SERVIDOR, PORTA_REGISTRY, estrategia)) {
+            System.out.println("Cliente RMI para o servidor em " + ENDERECO_SERVIDOR + ":" + PORTA_REGISTRY);
             System.out.println("Digite a expressão completa (suporta múltiplos valores e parênteses).");
             System.out.println("Exemplo: 5 + 3 * (10 / 2 - 1)");
             System.out.print("> ");
@@ -30,21 +84,207 @@ public class ClienteRMI {
             try (Scanner scanner = new Scanner(System.in)) {
                 String operacao = scanner.nextLine();
 
-                // 3. Chama o método remoto. A complexidade da rede é escondida.
-                double resultado = calculadoraRemota.avaliarExpressao(operacao);
+                // Chama o método remoto. A complexidade da rede (e as retentativas) fica escondida.
+                double resultado = cliente.avaliar(operacao);
 
-                // 4. Exibe o resultado.
+                // Exibe o resultado.
                 System.out.println("\n--- RESULTADO DO SERVIDOR RMI ---");
                 System.out.println("Resultado: " + resultado);
                 System.out.println("---------------------------------\n");
             }
 
+        } catch (ErroCalculoRemoto ec) {
+            // Erro de cálculo no servidor (ex: divisão por zero).
+            System.err.println("Erro no cálculo: " + ec.getMessage());
         } catch (RemoteException re) {
-            // Captura exceções da chamada remota (ex: erro de cálculo no servidor).
+            // Captura exceções da chamada remota (ex: falha de comunicação).
             System.err.println("Erro na comunicação remota: " + re.getMessage());
         } catch (Exception e) {
             // Captura exceções gerais (ex: Registry não encontrado ou nome de serviço incorreto).
             System.err.println("Erro ao conectar ou executar o cliente RMI: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * @param endereco Endereço do servidor RMI.
+     * @param porta Porta do RMI Registry.
+     */
+    public ClienteRMI(String endereco, int porta) {
+        this(endereco, porta, null);
+    }
+
+    /**
+     * @param endereco Endereço do servidor RMI.
+     * @param porta Porta do RMI Registry.
+     * @param estrategia Como distribuir as chamadas entre as réplicas registradas
+     *                   (null = usar só o objeto "CalculadoraRemota").
+     */
+    public ClienteRMI(String endereco, int porta, BalanceadorRMI.Estrategia estrategia) {
+        this.endereco = endereco;
+        this.porta = porta;
+        this.estrategia = estrategia;
+        // 1. Forma o URL completo para buscar o objeto remoto.
+        this.url = "//" + endereco + ":" + porta + "/" + NOME_SERVICO;
+
+        Disjuntor disjuntor = new Disjuntor(url);
+        disjuntor.adicionarOuvinte((anterior, atual) ->
+                System.err.println("[DISJUNTOR] " + url + ": " + anterior + " -> " + atual));
+        this.resiliencia = new Resiliencia(disjuntor, new OrcamentoRetentativas());
+    }
+
+    /**
+     * Avalia a expressão no servidor, com disjuntor e retentativas.
+     * @return O resultado do cálculo.
+     * @throws ErroCalculoRemoto Erro de cálculo no servidor (ex: divisão por zero).
+     * @throws RemoteException Falha de rede depois de todas as tentativas.
+     * @throws NotBoundException Se o serviço não estiver registrado no Registry.
+     * @throws Disjuntor.CircuitoAberto Se o servidor estiver falhando e as chamadas estiverem suspensas.
+     */
+    public double avaliar(String expressao) throws Exception {
+        return resiliencia.executar(() -> chamar(stub -> stub.avaliarExpressao(expressao)), FALHA_TEMPORARIA);
+    }
+
+    /**
+     * Avalia a expressão no servidor e devolve o valor ou o erro de cálculo, sem exceção
+     * (só falhas de rede, depois das retentativas, viram exceção).
+     * Para tráfego com muitas expressões inválidas, é bem mais barato que avaliar.
+     */
+    public ResultadoAvaliacao avaliarResultado(String expressao) throws Exception {
+        return resiliencia.executar(() -> chamar(stub -> stub.avaliar(expressao)), FALHA_TEMPORARIA);
+    }
+
+    /**
+     * Avalia várias expressões numa única chamada remota.
+     * @return O resultado de cada expressão, na mesma ordem.
+     * @throws ErroCalculoRemoto Se alguma expressão for inválida (a mensagem indica qual).
+     * @throws RemoteException Por falha de rede.
+     */
+    public double[] avaliarLote(String... expressoes) throws Exception {
+        return resiliencia.executar(() -> chamar(stub -> stub.avaliarLote(expressoes)), FALHA_TEMPORARIA);
+    }
+
+    /**
+     * Avalia uma expressão com variáveis para vários conjuntos de valores (compilada uma única vez no servidor).
+     * @param variaveis Os nomes das variáveis (ex: {"x", "y"}).
+     * @param valores Uma linha por avaliação; valores[linha][v] é o valor da variável v.
+     * @return O resultado de cada linha.
+     */
+    public double[] avaliarComVariaveis(String expressao, String[] variaveis, double[][] valores) throws Exception {
+        return resiliencia.executar(() -> chamar(stub -> stub.avaliarComVariaveis(expressao, variaveis, valores)),
+                FALHA_TEMPORARIA);
+    }
+
+    /**
+     * Envia um lote para o servidor avaliar em segundo plano.
+     * Só o envio passa pelas retentativas; depois de aceito, o resultado chega pelo ouvinte.
+     * @return Um CompletableFuture com os resultados, ou com uma RemoteException se alguma expressão for inválida.
+     */
+    public CompletableFuture<double[]> avaliarLoteAsync(String... expressoes) {
+        long id = proximoIdLote.incrementAndGet();
+        CompletableFuture<double[]> resultado = new CompletableFuture<>();
+        ouvinte.pendentes.put(id, resultado);
+        try {
+            IOuvinteLote remoto = exportarOuvinte();
+            resiliencia.executar(() -> chamar(stub -> {
+                stub.avaliarLoteAsync(id, expressoes, remoto);
+                return null;
+            }), FALHA_TEMPORARIA);
+        } catch (Exception e) {
+            ouvinte.pendentes.remove(id);
+            resultado.completeExceptionally(e);
+        }
+        return resultado;
+    }
+
+    /** Chama o servidor pelo Stub e, se a falha for de rede, descarta o Stub para a retentativa refazer o lookup. */
+    private <T> T chamar(ChamadaRemota<T> chamada) throws Exception {
+        try {
+            // 2. Chama o método remoto pelo Stub (faz o lookup se ainda não houver um).
+            return chamada.executar(stub());
+        } catch (Exception e) {
+            // Uma recusa por sobrecarga veio do próprio servidor: o Stub continua válido.
+            if (FALHA_TEMPORARIA.test(e) && !(e instanceof ErroSobrecargaRemota)) {
+                calculadoraRemota = null; // Stub possivelmente inválido: refaz o lookup na retentativa.
+            }
+            throw e;
+        }
+    }
+
+    private synchronized IOuvinteLote exportarOuvinte() throws RemoteException {
+        if (!ouvinteExportado) {
+            UnicastRemoteObject.exportObject(ouvinte, 0, FABRICA, FABRICA); // Porta 0: qualquer porta livre.
+            ouvinteExportado = true;
+        }
+        return ouvinte;
+    }
+
+    /**
+     * Retira o ouvinte de lotes do RMI (enquanto exportado, ele mantém a JVM ativa).
+     * Lotes ainda pendentes falham.
+     */
+    @Override
+    public synchronized void close() {
+        if (ouvinteExportado) {
+            try {
+                UnicastRemoteObject.unexportObject(ouvinte, true);
+            } catch (NoSuchObjectException e) {
+                // Já não estava exportado.
+            }
+            ouvinteExportado = false;
+        }
+        RemoteException fechado = new RemoteException("Cliente RMI fechado.");
+        ouvinte.pendentes.values().forEach(f -> f.completeExceptionally(fechado));
+        ouvinte.pendentes.clear();
+    }
+
+    /** O Stub guardado, ou um novo, localizado no RMI Registry (ou o balanceador das réplicas). */
+    private ICalculadoraRemota stub() throws Exception {
+        ICalculadoraRemota stub = calculadoraRemota;
+        if (stub == null) {
+            if (estrategia != null) {
+                // Descobre as réplicas de novo: depois de uma falha geral, a lista pode ter mudado.
+                stub = BalanceadorRMI.descobrir(endereco, porta, estrategia);
+            } else {
+                // O objeto retornado é o Stub, que implementa a ICalculadoraRemota.
+                stub = (ICalculadoraRemota) Naming.lookup(url);
+            }
+            calculadoraRemota = stub;
+        }
+        return stub;
+    }
+
+    /** A camada de resiliência deste cliente (ex: para ler as métricas do disjuntor). */
+    public Resiliencia getResiliencia() {
+        return resiliencia;
+    }
+
+    /** Uma chamada feita pelo Stub do servidor. */
+    @FunctionalInterface
+    private interface ChamadaRemota<T> {
+        T executar(ICalculadoraRemota stub) throws Exception;
+    }
+
+    /**
+     * Objeto remoto do lado do cliente: o servidor o chama quando um lote assíncrono termina.
+     * Cada lote pendente é encontrado pelo seu id.
+     */
+    private static class OuvinteLote implements IOuvinteLote {
+        final Map<Long, CompletableFuture<double[]>> pendentes = new ConcurrentHashMap<>();
+
+        @Override
+        public void concluido(long id, double[] resultados) {
+            CompletableFuture<double[]> futuro = pendentes.remove(id);
+            if (futuro != null) {
+                futuro.complete(resultados);
+            }
+        }
+
+        @Override
+        public void falhou(long id, String mensagem) {
+            CompletableFuture<double[]> futuro = pendentes.remove(id);
+            if (futuro != null) {
+                futuro.completeExceptionally(new RemoteException(mensagem));
+            }
+        }
+    }
+}
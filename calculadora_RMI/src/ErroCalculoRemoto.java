@@ -0,0 +1,30 @@
+/**
+ * Erro de cálculo (expressão inválida, divisão por zero...) lançado pelos métodos remotos
+ * que devolvem double, como avaliarExpressao. A mensagem começa com "ERRO NO SERVIDOR: ".
+ *
+ * É barato de propósito, porque um erro de cálculo é uma resposta esperada, não uma falha do servidor:
+ *   - não captura a pilha de chamadas (dezenas de quadros do próprio RMI, que iriam pela rede);
+ *   - não é uma RemoteException: o RMI trata qualquer RemoteException vinda do servidor como possível
+ *     corrupção da conexão e a descarta, então cada erro custaria uma nova conexão TCP. Exceções não
+ *     verificadas lançadas pelo servidor chegam ao cliente como estão, e a conexão é reaproveitada.
+ * Para tráfego com muitos erros, ICalculadoraRemota.avaliar é ainda mais barato: nem usa exceções.
+ */
+public class ErroCalculoRemoto extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ResultadoAvaliacao.Codigo codigo;
+
+    /**
+     * @param codigo O tipo do erro (nunca OK).
+     * @param mensagem A mensagem mostrada ao cliente (ex: "ERRO NO SERVIDOR: Divisão por zero!").
+     */
+    public ErroCalculoRemoto(ResultadoAvaliacao.Codigo codigo, String mensagem) {
+        super(mensagem, null, false, false); // Sem exceções suprimidas e sem pilha.
+        this.codigo = codigo;
+    }
+
+    public ResultadoAvaliacao.Codigo getCodigo() {
+        return codigo;
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * Chamada recusada pelo controle de admissão do servidor (ver ControleAdmissao), antes de qualquer cálculo:
+ * o cliente passou do seu limite de requisições por segundo, o servidor está no limite de
+ * requisições simultâneas, ou a fila das expressões pesadas ou dos lotes assíncronos está cheia.
+ * A mensagem começa com "ERRO NO SERVIDOR: sobrecarga".
+ *
+ * Como ErroCalculoRemoto, é barata (sem pilha) e não é uma RemoteException, para que a recusa não
+ * faça o RMI descartar a conexão do cliente justamente quando o servidor está sobrecarregado.
+ */
+public class ErroSobrecargaRemota extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ControleAdmissao.Recusa recusa;
+
+    public ErroSobrecargaRemota(ControleAdmissao.Recusa recusa) {
+        super("ERRO NO SERVIDOR: " + recusa.getMensagem(), null, false, false); // Sem exceções suprimidas e sem pilha.
+        this.recusa = recusa;
+    }
+
+    public ControleAdmissao.Recusa getRecusa() {
+        return recusa;
+    }
+
+    /**
+     * Indica se vale tentar de novo: sim para o limite de requisições simultâneas e para as filas
+     * cheias (passam logo); não para o limite de taxa do cliente (repetir só gastaria mais fichas).
+     */
+    public boolean isTemporaria() {
+        return recusa != ControleAdmissao.Recusa.TAXA;
+    }
+}
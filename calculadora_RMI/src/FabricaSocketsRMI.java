@@ -0,0 +1,464 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.rmi.server.RMIClientSocketFactory;
+import java.rmi.server.RMIServerSocketFactory;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Fábrica de sockets para o RMI, usada na exportação da CalculadoraRemota (e do ouvinte de lotes
+ * do ClienteRMI) no lugar dos sockets padrão.
+ *
+ * Permite ajustar o TCP (TCP_NODELAY e tamanhos dos buffers do sistema operacional) e, opcionalmente,
+ * compactar com Deflate as mensagens grandes (ex: lotes com milhares de expressões ou resultados).
+ * A compactação é por mensagem: cada flush do RMI vira um quadro [tipo][tamanho][dados], e só os
+ * quadros com pelo menos limiarCompressao bytes são compactados; chamadas pequenas continuam sem
+ * o custo do Deflate.
+ *
+ * A mesma instância serve de fábrica do servidor e do cliente: o RMI envia a fábrica do cliente
+ * (serializada) junto com o Stub, então o cliente usa automaticamente a mesma configuração do servidor.
+ * O RMI só reaproveita conexões de fábricas iguais, por isso equals/hashCode comparam a configuração.
+ */
+public final class FabricaSocketsRMI implements RMIClientSocketFactory, RMIServerSocketFactory, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // Tipos de quadro quando a compactação está ativa.
+    private static final int QUADRO_DIRETO = 0;
+    private static final int QUADRO_COMPACTADO = 1;
+    // Quadros maiores que isso são divididos (limita a memória usada por conexão).
+    private static final int TAMANHO_MAXIMO_QUADRO = 256 * 1024;
+
+    // --- Estatísticas da JVM (compartilhadas por todas as fábricas) ---
+    private static final LongAdder SOCKETS_CRIADOS = new LongAdder();
+    private static final LongAdder SOCKETS_ACEITOS = new LongAdder();
+    private static final LongAdder SOCKETS_FECHADOS = new LongAdder();
+    private static final LongAdder MENSAGENS = new LongAdder();
+    private static final LongAdder MENSAGENS_COMPACTADAS = new LongAdder();
+    private static final LongAdder BYTES_ORIGINAIS = new LongAdder();
+    private static final LongAdder BYTES_ENVIADOS = new LongAdder();
+
+    private final boolean tcpNoDelay;
+    private final int bufferEnvio;        // 0 = padrão do sistema operacional.
+    private final int bufferRecepcao;     // 0 = padrão do sistema operacional.
+    private final boolean compressao;
+    private final int limiarCompressao;
+
+    /**
+     * A fábrica configurada pelas propriedades calculadora.rmi.*, ou null para usar os sockets padrão do RMI
+     * (calculadora.rmi.sockets=padrao, a menos que a compressão esteja ligada).
+     */
+    public static FabricaSocketsRMI daConfiguracao() {
+        boolean compressao = Boolean.getBoolean("calculadora.rmi.compressao");
+        if (!compressao && !System.getProperty("calculadora.rmi.sockets", "padrao").equalsIgnoreCase("ajustado")) {
+            return null;
+        }
+        return new FabricaSocketsRMI(
+                Boolean.parseBoolean(System.getProperty("calculadora.rmi.tcpNoDelay", "true")),
+                Integer.getInteger("calculadora.rmi.bufferEnvio", 0),
+                Integer.getInteger("calculadora.rmi.bufferRecepcao", 0),
+                compressao,
+                Integer.getInteger("calculadora.rmi.limiarCompressao", 1024));
+    }
+
+    /**
+     * @param tcpNoDelay Desliga o algoritmo de Nagle (envia mensagens pequenas na hora).
+     * @param bufferEnvio Tamanho do buffer de envio do socket (SO_SNDBUF); 0 = padrão.
+     * @param bufferRecepcao Tamanho do buffer de recepção do socket (SO_RCVBUF); 0 = padrão.
+     * @param compressao Compacta as mensagens grandes com Deflate.
+     * @param limiarCompressao Tamanho mínimo (bytes) de uma mensagem para ser compactada.
+     */
+    public FabricaSocketsRMI(boolean tcpNoDelay, int bufferEnvio, int bufferRecepcao,
+                             boolean compressao, int limiarCompressao) {
+        this.tcpNoDelay = tcpNoDelay;
+        this.bufferEnvio = bufferEnvio;
+        this.bufferRecepcao = bufferRecepcao;
+        this.compressao = compressao;
+        this.limiarCompressao = limiarCompressao;
+    }
+
+    @Override
+    public Socket createSocket(String host, int porta) throws IOException {
+        Socket socket = compressao ? new SocketCompactado(limiarCompressao) : new SocketContado();
+        // O buffer de recepção precisa ser definido antes de conectar para valer na negociação do TCP.
+        if (bufferRecepcao > 0) {
+            socket.setReceiveBufferSize(bufferRecepcao);
+        }
+        socket.connect(new InetSocketAddress(host, porta));
+        ajustar(socket);
+        SOCKETS_CRIADOS.increment();
+        return socket;
+    }
+
+    @Override
+    public ServerSocket createServerSocket(int porta) throws IOException {
+        ServerSocket servidor = new ServerSocket() {
+            @Override
+            public Socket accept() throws IOException {
+                Socket socket = compressao ? new SocketCompactado(limiarCompressao) : new SocketContado();
+                implAccept(socket);
+                ajustar(socket);
+                SOCKETS_ACEITOS.increment();
+                return socket;
+            }
+        };
+        if (bufferRecepcao > 0) {
+            servidor.setReceiveBufferSize(bufferRecepcao); // Herdado pelos sockets aceitos.
+        }
+        servidor.bind(new InetSocketAddress(porta));
+        return servidor;
+    }
+
+    private void ajustar(Socket socket) throws IOException {
+        socket.setTcpNoDelay(tcpNoDelay);
+        if (bufferEnvio > 0) {
+            socket.setSendBufferSize(bufferEnvio);
+        }
+    }
+
+    @Override
+    public boolean equals(Object outro) {
+        if (!(outro instanceof FabricaSocketsRMI)) {
+            return false;
+        }
+        FabricaSocketsRMI f = (FabricaSocketsRMI) outro;
+        return tcpNoDelay == f.tcpNoDelay && bufferEnvio == f.bufferEnvio && bufferRecepcao == f.bufferRecepcao
+                && compressao == f.compressao && limiarCompressao == f.limiarCompressao;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(tcpNoDelay, bufferEnvio, bufferRecepcao, compressao, limiarCompressao);
+    }
+
+    @Override
+    public String toString() {
+        return "FabricaSocketsRMI[tcpNoDelay=" + tcpNoDelay + ", bufferEnvio=" + bufferEnvio
+                + ", bufferRecepcao=" + bufferRecepcao + ", compressao=" + (compressao ? "acima de " + limiarCompressao + " bytes" : "não") + "]";
+    }
+
+    /**
+     * Estatísticas dos sockets desta JVM: conexões criadas (cliente) e aceitas (servidor), e, com compressão,
+     * mensagens e bytes antes e depois de compactar. Poucas conexões para muitas chamadas indicam que
+     * o RMI está reaproveitando as conexões.
+     */
+    public static String estatisticas() {
+        long originais = BYTES_ORIGINAIS.sum();
+        long enviados = BYTES_ENVIADOS.sum();
+        return "conexões criadas=" + SOCKETS_CRIADOS.sum() + ", aceitas=" + SOCKETS_ACEITOS.sum()
+                + ", fechadas=" + SOCKETS_FECHADOS.sum()
+                + ", mensagens=" + MENSAGENS.sum() + " (" + MENSAGENS_COMPACTADAS.sum() + " compactadas)"
+                + ", bytes=" + originais + " -> " + enviados
+                + (originais > 0 ? String.format(" (%.0f%%)", 100.0 * enviados / originais) : "");
+    }
+
+    /** Conexões abertas por fábricas de cliente nesta JVM. */
+    public static long getSocketsCriados() {
+        return SOCKETS_CRIADOS.sum();
+    }
+
+    /** Conexões aceitas por fábricas de servidor nesta JVM. */
+    public static long getSocketsAceitos() {
+        return SOCKETS_ACEITOS.sum();
+    }
+
+    /** Bytes escritos nas conexões compactadas desta JVM, antes da compressão. */
+    public static long getBytesOriginais() {
+        return BYTES_ORIGINAIS.sum();
+    }
+
+    /** Bytes efetivamente enviados pelas conexões compactadas desta JVM (com os cabeçalhos dos quadros). */
+    public static long getBytesEnviados() {
+        return BYTES_ENVIADOS.sum();
+    }
+
+    /** Socket comum que só conta o próprio fechamento (para as estatísticas). */
+    private static class SocketContado extends Socket {
+        private boolean fechado;
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (!fechado) {
+                fechado = true;
+                SOCKETS_FECHADOS.increment();
+            }
+            super.close();
+        }
+    }
+
+    /** Socket cujos streams trocam quadros, compactando os grandes. */
+    private static final class SocketCompactado extends SocketContado {
+        private final int limiar;
+        private InputStream entrada;
+        private OutputStream saida;
+
+        SocketCompactado(int limiar) {
+            this.limiar = limiar;
+        }
+
+        // O RMI pode pedir os streams mais de uma vez: devolve sempre os mesmos.
+        @Override
+        public synchronized InputStream getInputStream() throws IOException {
+            if (entrada == null) {
+                entrada = new EntradaQuadros(super.getInputStream());
+            }
+            return entrada;
+        }
+
+        @Override
+        public synchronized OutputStream getOutputStream() throws IOException {
+            if (saida == null) {
+                saida = new SaidaQuadros(super.getOutputStream(), limiar);
+            }
+            return saida;
+        }
+    }
+
+    /**
+     * Acumula o que é escrito e, a cada flush (fim de uma mensagem do RMI), envia um quadro:
+     * [1 byte tipo][4 bytes tamanho][dados], onde os dados de um quadro compactado começam
+     * com o tamanho original (4 bytes).
+     */
+    private static final class SaidaQuadros extends FilterOutputStream {
+        private final int limiar;
+        private final Acumulador pendente = new Acumulador();
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private byte[] compactado = new byte[1024];
+
+        SaidaQuadros(OutputStream destino, int limiar) {
+            // Com buffer, o cabeçalho e os dados de um quadro pequeno saem numa única escrita no socket.
+            super(new BufferedOutputStream(destino, 8192));
+            this.limiar = limiar;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            pendente.write(b);
+            if (pendente.size() >= TAMANHO_MAXIMO_QUADRO) {
+                enviarQuadro();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int inicio, int tamanho) throws IOException {
+            // Divide escritas grandes para nenhum quadro passar do tamanho máximo.
+            while (tamanho > 0) {
+                int n = Math.min(tamanho, TAMANHO_MAXIMO_QUADRO - pendente.size());
+                pendente.write(b, inicio, n);
+                inicio += n;
+                tamanho -= n;
+                if (pendente.size() >= TAMANHO_MAXIMO_QUADRO) {
+                    enviarQuadro();
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            enviarQuadro();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                deflater.end();
+                out.close();
+            }
+        }
+
+        private void enviarQuadro() throws IOException {
+            int tamanho = pendente.size();
+            if (tamanho == 0) {
+                return;
+            }
+            byte[] dados = pendente.buffer(); // Sem cópia: só os primeiros 'tamanho' bytes valem.
+            MENSAGENS.increment();
+            BYTES_ORIGINAIS.add(tamanho);
+            if (tamanho >= limiar) {
+                deflater.reset();
+                deflater.setInput(dados, 0, tamanho);
+                deflater.finish();
+                if (compactado.length < tamanho + 64) {
+                    compactado = new byte[tamanho + 64];
+                }
+                int n = 0;
+                while (!deflater.finished() && n < compactado.length) {
+                    n += deflater.deflate(compactado, n, compactado.length - n);
+                }
+                if (deflater.finished() && n < tamanho) {
+                    escreverCabecalho(QUADRO_COMPACTADO, n + 4);
+                    escreverInt(tamanho);
+                    out.write(compactado, 0, n);
+                    MENSAGENS_COMPACTADAS.increment();
+                    BYTES_ENVIADOS.add(n + 9);
+                    pendente.reset();
+                    return;
+                }
+                // Não compactou o suficiente (dados aleatórios): envia direto.
+            }
+            escreverCabecalho(QUADRO_DIRETO, tamanho);
+            out.write(dados, 0, tamanho);
+            BYTES_ENVIADOS.add(tamanho + 5);
+            pendente.reset();
+        }
+
+
+        private void escreverCabecalho(int tipo, int tamanho) throws IOException {
+            out.write(tipo);
+            escreverInt(tamanho);
+        }
+
+        private void escreverInt(int valor) throws IOException {
+            out.write(valor >>> 24);
+            out.write(valor >>> 16);
+            out.write(valor >>> 8);
+            out.write(valor);
+        }
+    }
+
+    /** ByteArrayOutputStream que expõe o próprio array (evita uma cópia por mensagem). */
+    private static final class Acumulador extends ByteArrayOutputStream {
+        Acumulador() {
+            super(1024);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+    }
+
+    /** Lê os quadros de SaidaQuadros e entrega os dados (descompactados) como um stream contínuo. */
+    private static final class EntradaQuadros extends FilterInputStream {
+        private final DataInputStream dados;
+        private final Inflater inflater = new Inflater();
+        private byte[] quadro = new byte[1024];
+        private byte[] buffer = new byte[1024];
+        private int posicao;
+        private int limite;
+
+        EntradaQuadros(InputStream origem) {
+            super(origem);
+            this.dados = new DataInputStream(new BufferedInputStream(origem, 8192));
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (posicao == limite && !lerQuadro()) {
+                return -1;
+            }
+            return buffer[posicao++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int inicio, int tamanho) throws IOException {
+            if (tamanho == 0) {
+                return 0;
+            }
+            if (posicao == limite && !lerQuadro()) {
+                return -1;
+            }
+            int n = Math.min(tamanho, limite - posicao);
+            System.arraycopy(buffer, posicao, b, inicio, n);
+            posicao += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return limite - posicao; // Só o que já foi decodificado (não bloqueia).
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long pulados = 0;
+            while (pulados < n && read() >= 0) {
+                pulados++;
+            }
+            return pulados;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            inflater.end();
+            super.close();
+        }
+
+        /** Lê o próximo quadro para o buffer; devolve false no fim do stream. */
+        private boolean lerQuadro() throws IOException {
+            int tipo = dados.read();
+            if (tipo < 0) {
+                return false;
+            }
+            int tamanho = dados.readInt();
+            if (tamanho < 0 || tamanho > TAMANHO_MAXIMO_QUADRO + 64) {
+                throw new IOException("Quadro RMI com tamanho inválido: " + tamanho);
+            }
+            if (tipo == QUADRO_DIRETO) {
+                garantir(tamanho);
+                dados.readFully(buffer, 0, tamanho);
+                posicao = 0;
+                limite = tamanho;
+                return true;
+            }
+            if (tipo != QUADRO_COMPACTADO) {
+                throw new IOException("Tipo de quadro RMI desconhecido: " + tipo);
+            }
+            int original = dados.readInt();
+            if (original < 0 || original > TAMANHO_MAXIMO_QUADRO) {
+                throw new IOException("Quadro RMI com tamanho original inválido: " + original);
+            }
+            int compactadoTamanho = tamanho - 4;
+            if (quadro.length < compactadoTamanho) {
+                quadro = new byte[compactadoTamanho];
+            }
+            dados.readFully(quadro, 0, compactadoTamanho);
+            garantir(original);
+            inflater.reset();
+            inflater.setInput(quadro, 0, compactadoTamanho);
+            try {
+                int n = 0;
+                while (n < original && !inflater.finished()) {
+                    int lidos = inflater.inflate(buffer, n, original - n);
+                    if (lidos == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new EOFException("Quadro RMI compactado incompleto.");
+                    }
+                    n += lidos;
+                }
+                posicao = 0;
+                limite = n;
+            } catch (DataFormatException e) {
+                throw new IOException("Quadro RMI compactado inválido.", e);
+            }
+            return true;
+        }
+
+        private void garantir(int tamanho) {
+            if (buffer.length < tamanho) {
+                buffer = new byte[Math.max(tamanho, buffer.length * 2)];
+            }
+        }
+    }
+}
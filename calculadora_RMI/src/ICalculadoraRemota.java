@@ -4,6 +4,12 @@ import java.rmi.RemoteException;
 /**
  * Interface Remota que define os métodos acessíveis pelo cliente RMI.
  * Todo método que pode ser chamado remotamente DEVE lançar RemoteException.
+ *
+ * Cada chamada remota custa uma ida e volta pela rede e a serialização dos argumentos;
+ * os métodos de lote dividem esse custo entre milhares de expressões.
+ *
+ * Com o controle de admissão do servidor ligado (ver ControleAdmissao), qualquer método pode ser
+ * recusado na hora com ErroSobrecargaRemota; avaliar devolve um resultado com o código SOBRECARGA.
  */
 public interface ICalculadoraRemota extends Remote {
 
@@ -12,6 +18,48 @@ public interface ICalculadoraRemota extends Remote {
      * @param expressao A string da expressão a ser calculada.
      * @return O resultado do cálculo (double).
      * @throws RemoteException Obrigatório para comunicação de rede.
+     * @throws ErroCalculoRemoto Se a expressão for inválida ou o cálculo falhar ("ERRO NO SERVIDOR: ...").
      */
     double avaliarExpressao(String expressao) throws RemoteException;
-}
\ No newline at end of file
+
+    /**
+     * Avalia uma expressão e devolve o valor ou o erro como um resultado comum, sem exceção.
+     * Mais barato que avaliarExpressao quando muitas expressões são inválidas.
+     * @param expressao A string da expressão a ser calculada.
+     * @return O valor (isSucesso) ou o código e a mensagem do erro de cálculo.
+     * @throws RemoteException Só por falha de comunicação.
+     */
+    ResultadoAvaliacao avaliar(String expressao) throws RemoteException;
+
+    /**
+     * Avalia várias expressões numa única chamada remota.
+     * @param expressoes As expressões a serem calculadas.
+     * @return O resultado de cada expressão, na mesma ordem.
+     * @throws RemoteException Por falha de comunicação.
+     * @throws ErroCalculoRemoto Se alguma expressão for inválida ("ERRO NO SERVIDOR: expressão i: ...").
+     */
+    double[] avaliarLote(String[] expressoes) throws RemoteException;
+
+    /**
+     * Compila uma expressão com variáveis uma única vez e a avalia para vários conjuntos de valores.
+     * Ex: avaliarComVariaveis("a * (b + 2)", {"a", "b"}, {{1, 2}, {3, 4}}) devolve {4, 18}.
+     * @param expressao A expressão, com variáveis.
+     * @param variaveis Os nomes das variáveis.
+     * @param valores Uma linha por avaliação; valores[linha][v] é o valor da variável v.
+     * @return O resultado de cada linha.
+     * @throws RemoteException Por falha de comunicação.
+     * @throws ErroCalculoRemoto Se a expressão ou os valores forem inválidos.
+     */
+    double[] avaliarComVariaveis(String expressao, String[] variaveis, double[][] valores) throws RemoteException;
+
+    /**
+     * Envia um lote para ser avaliado em segundo plano. A chamada volta assim que o lote é aceito,
+     * e o resultado é entregue depois, ao ouvinte (um objeto remoto exportado pelo cliente).
+     * @param id Identificador escolhido pelo cliente, repassado ao ouvinte.
+     * @param expressoes As expressões a serem calculadas.
+     * @param ouvinte Quem recebe o resultado (concluido) ou o erro (falhou).
+     * @throws RemoteException Por falha de comunicação.
+     * @throws ErroSobrecargaRemota Se a fila de lotes do servidor estiver cheia (Recusa.FILA_LOTES).
+     */
+    void avaliarLoteAsync(long id, String[] expressoes, IOuvinteLote ouvinte) throws RemoteException;
+}
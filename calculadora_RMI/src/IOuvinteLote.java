@@ -0,0 +1,23 @@
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * Interface Remota implementada pelo CLIENTE para receber o resultado de um lote enviado
+ * com avaliarLoteAsync. Aqui os papéis se invertem: o servidor chama o cliente.
+ */
+public interface IOuvinteLote extends Remote {
+
+    /**
+     * Chamado quando o lote termina sem erros.
+     * @param id O identificador informado em avaliarLoteAsync.
+     * @param resultados O resultado de cada expressão, na ordem do lote.
+     */
+    void concluido(long id, double[] resultados) throws RemoteException;
+
+    /**
+     * Chamado quando alguma expressão do lote é inválida.
+     * @param id O identificador informado em avaliarLoteAsync.
+     * @param mensagem A mensagem de erro ("ERRO NO SERVIDOR: expressão i: ...").
+     */
+    void falhou(long id, String mensagem) throws RemoteException;
+}
@@ -0,0 +1,120 @@
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * Resultado de uma avaliação remota: o valor calculado ou o erro (código e mensagem).
+ *
+ * Devolvido por ICalculadoraRemota.avaliar, é a alternativa às exceções para expressões inválidas:
+ * um erro viaja como um resultado comum, sem captura de pilha no servidor nem a serialização
+ * de uma cadeia de exceções. Por ser Externalizable, vai pela rede como um byte (o código)
+ * seguido do valor ou da mensagem.
+ */
+public final class ResultadoAvaliacao implements Externalizable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Situação da avaliação. */
+    public enum Codigo {
+        /** Calculado com sucesso. */
+        OK,
+        /** A expressão é mal formada (sintaxe, caractere desconhecido, parênteses...). */
+        EXPRESSAO_INVALIDA,
+        /** A expressão é válida, mas o cálculo falhou (ex: divisão por zero). */
+        ERRO_ARITMETICO,
+        /** A chamada foi recusada pelo controle de admissão do servidor, sem cálculo (ver ControleAdmissao). */
+        SOBRECARGA
+    }
+
+    private static final Codigo[] CODIGOS = Codigo.values();
+
+    private Codigo codigo;
+    private double valor;
+    private String mensagem;
+
+    /** Usado apenas pela desserialização (Externalizable exige um construtor público sem argumentos). */
+    public ResultadoAvaliacao() {
+    }
+
+    private ResultadoAvaliacao(Codigo codigo, double valor, String mensagem) {
+        this.codigo = codigo;
+        this.valor = valor;
+        this.mensagem = mensagem;
+    }
+
+    /** Um resultado de sucesso. */
+    public static ResultadoAvaliacao ok(double valor) {
+        return new ResultadoAvaliacao(Codigo.OK, valor, null);
+    }
+
+    /** Um resultado de erro. */
+    public static ResultadoAvaliacao erro(Codigo codigo, String mensagem) {
+        if (codigo == Codigo.OK) {
+            throw new IllegalArgumentException("Um erro não pode ter o código OK.");
+        }
+        return new ResultadoAvaliacao(codigo, Double.NaN, mensagem);
+    }
+
+    /**
+     * O código correspondente a um erro do InterpretadorAritmetico: ArithmeticException é um erro
+     * de cálculo; as demais (IllegalArgumentException), uma expressão inválida.
+     */
+    public static Codigo codigoDo(RuntimeException erro) {
+        return erro instanceof ArithmeticException ? Codigo.ERRO_ARITMETICO : Codigo.EXPRESSAO_INVALIDA;
+    }
+
+    public boolean isSucesso() {
+        return codigo == Codigo.OK;
+    }
+
+    public Codigo getCodigo() {
+        return codigo;
+    }
+
+    /**
+     * O valor calculado.
+     * @throws IllegalStateException Se a avaliação falhou (consulte isSucesso antes).
+     */
+    public double getValor() {
+        if (codigo != Codigo.OK) {
+            throw new IllegalStateException(mensagem);
+        }
+        return valor;
+    }
+
+    /** A mensagem de erro, ou null em caso de sucesso. */
+    public String getMensagem() {
+        return mensagem;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput saida) throws IOException {
+        saida.writeByte(codigo.ordinal());
+        if (codigo == Codigo.OK) {
+            saida.writeDouble(valor);
+        } else {
+            saida.writeUTF(mensagem == null ? "" : mensagem);
+        }
+    }
+
+    @Override
+    public void readExternal(ObjectInput entrada) throws IOException {
+        int ordinal = entrada.readUnsignedByte();
+        if (ordinal >= CODIGOS.length) {
+            throw new IOException("Código de resultado desconhecido: " + ordinal);
+        }
+        codigo = CODIGOS[ordinal];
+        if (codigo == Codigo.OK) {
+            valor = entrada.readDouble();
+        } else {
+            valor = Double.NaN;
+            mensagem = entrada.readUTF();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return codigo == Codigo.OK ? String.valueOf(valor) : codigo + ": " + mensagem;
+    }
+}
@@ -1,36 +1,107 @@
-import java.rmi.Naming;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.rmi.server.ExportException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
- * Classe principal do Servidor RMI. 
+ * Classe principal do Servidor RMI.
  * Responsável por criar a instância remota e registrá-la no RMI Registry.
+ *
+ * Também pode registrar várias réplicas (ex: java -Dcalculadora.rmi.replicas=4 ServidorRMI),
+ * com os nomes "CalculadoraRemota-0", "CalculadoraRemota-1", ...; o BalanceadorRMI do cliente
+ * as encontra pelo nome e distribui as chamadas entre elas. Várias JVMs no mesmo computador
+ * podem registrar réplicas no mesmo Registry: a primeira cria o Registry e as outras o reaproveitam
+ * (cada uma com o seu calculadora.rmi.primeiraReplica, para os índices não se repetirem).
  */
 public class ServidorRMI {
 
     // Nome pelo qual o objeto será encontrado pelo cliente (chave no Registry).
-    private static final String NOME_SERVICO = "CalculadoraRemota";
+    static final String NOME_SERVICO = "CalculadoraRemota";
     private static final int PORTA_REGISTRY = 1099; // Porta padrão do RMI Registry
 
+    // --- Réplicas (ex: java -Dcalculadora.rmi.replicas=2 -Dcalculadora.rmi.primeiraReplica=2 ServidorRMI) ---
+    // Quantas réplicas esta JVM registra.
+    private static final int REPLICAS = Integer.getInteger("calculadora.rmi.replicas", 1);
+    // Índice da primeira réplica desta JVM.
+    private static final int PRIMEIRA_REPLICA = Integer.getInteger("calculadora.rmi.primeiraReplica", 0);
+    // Porta da primeira réplica (a réplica i usa porta + i); 0 = uma porta livre qualquer.
+    private static final int PORTA_OBJETOS = Integer.getInteger("calculadora.rmi.portaObjetos", 0);
+    // Sockets ajustados/compactados (calculadora.rmi.sockets=ajustado, calculadora.rmi.compressao=true); null = padrão.
+    private static final FabricaSocketsRMI FABRICA = FabricaSocketsRMI.daConfiguracao();
+
     public static void main(String[] args) {
         try {
             // 1. Cria ou obtém referência ao RMI Registry na porta 1099.
-            // Para garantir que o Registry esteja rodando, podemos criá-lo:
-            LocateRegistry.createRegistry(PORTA_REGISTRY);
+            // Para garantir que o Registry esteja rodando, podemos criá-lo
+            // (se outra JVM deste computador já o criou, as réplicas desta são registradas nele):
+            Registry registry = obterRegistry();
+
+            List<String> nomes = new ArrayList<>();
+            for (int i = 0; i < REPLICAS; i++) {
+                int indice = PRIMEIRA_REPLICA + i;
+
+                // 2. Cria a instância do objeto que fará o trabalho.
+                ICalculadoraRemota calculadora = new CalculadoraRemota(PORTA_OBJETOS == 0 ? 0 : PORTA_OBJETOS + i, FABRICA);
 
-            // 2. Cria a instância do objeto que fará o trabalho.
-            ICalculadoraRemota calculadora = new CalculadoraRemota();
+                // 3. Registra o objeto remoto no RMI Registry.
+                // O cliente usará este nome ("CalculadoraRemota-i") para fazer o lookup.
+                registry.rebind(nomeReplica(indice), calculadora);
+                nomes.add(nomeReplica(indice));
 
-            // 3. Registra o objeto remoto no RMI Registry.
-            // O cliente usará este nome ("CalculadoraRemota") para fazer o lookup.
-            Naming.rebind("//localhost:" + PORTA_REGISTRY + "/" + NOME_SERVICO, calculadora);
+                // A réplica 0 também atende pelo nome original, usado pelos clientes sem balanceamento.
+                if (indice == 0) {
+                    registry.rebind(NOME_SERVICO, calculadora);
+                    nomes.add(NOME_SERVICO);
+                }
+            }
 
-            System.out.println("Servidor RMI iniciado com sucesso!");
-            System.out.println("Objeto remoto '" + NOME_SERVICO + "' registrado na porta " + PORTA_REGISTRY + ".");
+            // Ao encerrar, retira os nomes do Registry (que pode pertencer a outra JVM e continuar ativo).
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                for (String nome : nomes) {
+                    try {
+                        registry.unbind(nome);
+                    } catch (Exception e) {
+                        // O Registry pode já ter sido encerrado junto com esta JVM.
+                    }
+                }
+            }, "calculadora-rmi-encerramento"));
+
+            System.out.println("Servidor RMI iniciado com sucesso! Avaliador: " + CalculadoraRemota.AVALIADOR.getNome() + ".");
+            if (CalculadoraRemota.ADMISSAO.isAtivo()) {
+                System.out.println("Controle de admissão: " + CalculadoraRemota.ADMISSAO + ".");
+            }
+            System.out.println("Escalonador: " + CalculadoraRemota.ESCALONADOR + ".");
+            if (REPLICAS == 1 && PRIMEIRA_REPLICA == 0) {
+                System.out.println("Objeto remoto '" + NOME_SERVICO + "' registrado na porta " + PORTA_REGISTRY + ".");
+            } else {
+                System.out.println("Réplicas registradas na porta " + PORTA_REGISTRY + ": " + String.join(", ", nomes) + ".");
+            }
+            if (FABRICA != null) {
+                System.out.println("Sockets: " + FABRICA);
+                // Com a fábrica própria, as conexões aceitas também entram nas métricas.
+                CalculadoraRemota.METRICAS.registrarMedidor("socketsAceitos", FabricaSocketsRMI::getSocketsAceitos);
+            }
 
         } catch (Exception e) {
             System.err.println("Erro fatal no Servidor RMI: " + e.getMessage());
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+
+    /** Nome da réplica no Registry (ex: "CalculadoraRemota-3"). */
+    static String nomeReplica(int indice) {
+        return NOME_SERVICO + "-" + indice;
+    }
+
+    private static Registry obterRegistry() throws Exception {
+        try {
+            return LocateRegistry.createRegistry(PORTA_REGISTRY);
+        } catch (ExportException e) {
+            // A porta já está em uso: normalmente, pelo Registry criado por outra JVM de réplicas.
+            Registry registry = LocateRegistry.getRegistry(PORTA_REGISTRY);
+            registry.list(); // Confirma que é mesmo um Registry.
+            return registry;
+        }
+    }
+}
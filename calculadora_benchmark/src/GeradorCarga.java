@@ -0,0 +1,315 @@
+import benchmark.Avaliador;
+import benchmark.Transporte;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Gerador de carga para os três transportes (socket, RMI e HTTP), pelo loopback, em dois modos:
+ *
+ * - laço fechado ("fechado"): N clientes, cada um envia a próxima expressão assim que recebe a
+ *   resposta da anterior. Mede a vazão máxima com N requisições simultâneas, mas, quando o servidor
+ *   fica lento, os clientes também passam a enviar menos (a carga se ajusta ao servidor);
+ * - laço aberto ("aberto"): as requisições seguem uma agenda fixa (uma a cada 1/taxa segundos),
+ *   não importa quanto o servidor demore. A latência é medida a partir do instante em que a
+ *   requisição DEVERIA ter sido enviada, não de quando foi enviada: se o servidor trava por 1 s,
+ *   as requisições que ficaram esperando nesse tempo aparecem com a espera incluída. Medir a partir
+ *   do envio esconderia justamente essas (a "omissão coordenada") e deixaria os percentis altos
+ *   otimistas.
+ *
+ * As expressões vêm de um arquivo (uma por linha, ou "peso;expressão") ou, sem arquivo, de uma
+ * mistura padrão. O resultado é a vazão e os percentis de latência (p50, p90, p99, p99,9), com uma
+ * linha de progresso por segundo. O tempo de aquecimento fica fora das contas.
+ *
+ * Uso: java [-Dcalculadora.carga.X=...] GeradorCarga socket|rmi|http [arquivo de expressões]
+ * (as propriedades estão em main()). Por padrão o servidor deve estar rodando nas portas de sempre;
+ * com -Dcalculadora.carga.servidorLocal=true ele é iniciado nesta JVM.
+ */
+public class GeradorCarga {
+
+    // Usada sem arquivo: expressões curtas, médias e longas, com mais das curtas.
+    private static final String[] MISTURA_PADRAO = {
+            "6;1 + 2",
+            "6;10 / 4 - 3",
+            "3;2 * (3 + 4) - 5 / 2",
+            "3;((1 + 2) * (3 + 4) - 5) / (6 - 7 * 8)",
+            "1;1.5 + 2 - (3 - 0.5) * 4 / 5 + 6 - 7 * 8 / 9 + (10 - 0.5) - 11 * 12 / 13 + 14 - 15 * 16 / (17 - 0.5) + 18 - 19 * 20 / 21",
+    };
+
+    private final Transporte transporte;
+    private final String[] expressoes;
+    private final long[] pesosAcumulados;
+    private final boolean aberto;
+    private final double taxa;
+    private final int clientes;
+    private final long aquecimentoNanos;
+    private final long duracaoNanos;
+
+    // Todas as requisições medidas, e as do último segundo (para o progresso).
+    private final HistogramaLatencia total = new HistogramaLatencia();
+    private final HistogramaLatencia intervalo = new HistogramaLatencia();
+    private final LongAdder falhasMedidas = new LongAdder();
+    private final Map<String, LongAdder> falhasPorTipo = new ConcurrentHashMap<>();
+    // Laço aberto: próxima posição da agenda e o maior atraso entre o horário previsto e o envio.
+    private final AtomicLong proxima = new AtomicLong();
+    private final AtomicLong maiorAtrasoEnvio = new AtomicLong();
+
+    private volatile long inicio;
+
+    GeradorCarga(Transporte transporte, List<String> linhas, boolean aberto, double taxa, int clientes,
+                 long aquecimentoNanos, long duracaoNanos) {
+        this.transporte = transporte;
+        this.aberto = aberto;
+        this.taxa = taxa;
+        this.clientes = clientes;
+        this.aquecimentoNanos = aquecimentoNanos;
+        this.duracaoNanos = duracaoNanos;
+
+        List<String> lidas = new ArrayList<>();
+        List<Long> acumulados = new ArrayList<>();
+        long soma = 0;
+        for (String linha : linhas) {
+            linha = linha.strip();
+            if (linha.isEmpty() || linha.startsWith("#")) {
+                continue;
+            }
+            long peso = 1;
+            int separador = linha.indexOf(';');
+            if (separador >= 0) {
+                peso = Long.parseLong(linha.substring(0, separador).strip());
+                linha = linha.substring(separador + 1).strip();
+            }
+            if (peso <= 0) {
+                continue;
+            }
+            soma += peso;
+            lidas.add(linha);
+            acumulados.add(soma);
+        }
+        if (lidas.isEmpty()) {
+            throw new IllegalArgumentException("Nenhuma expressão para enviar.");
+        }
+        this.expressoes = lidas.toArray(new String[0]);
+        this.pesosAcumulados = acumulados.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * Propriedades (todas opcionais):
+     * - calculadora.carga.modo: "fechado" (padrão) ou "aberto";
+     * - calculadora.carga.taxa: requisições por segundo no laço aberto (padrão 1000);
+     * - calculadora.carga.clientes: clientes/conexões simultâneos (padrão 16). No laço aberto é o
+     *   máximo de requisições em andamento: se todos estiverem ocupados, as próximas atrasam (e o
+     *   atraso entra na latência);
+     * - calculadora.carga.duracao / calculadora.carga.aquecimento: segundos medidos (padrão 30) e
+     *   descartados antes (padrão 5);
+     * - calculadora.carga.servidorLocal: inicia o servidor nesta JVM (padrão false).
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Uso: java GeradorCarga socket|rmi|http [arquivo de expressões]");
+            System.exit(1);
+        }
+        String classe;
+        switch (args[0]) {
+            case "socket": classe = "TransporteSocket"; break;
+            case "rmi": classe = "TransporteRMI"; break;
+            case "http": classe = "TransporteHTTP"; break;
+            default: throw new IllegalArgumentException("Transporte desconhecido: " + args[0]);
+        }
+        List<String> linhas = args.length > 1
+                ? Files.readAllLines(Path.of(args[1]), StandardCharsets.UTF_8)
+                : List.of(MISTURA_PADRAO);
+
+        String modo = System.getProperty("calculadora.carga.modo", "fechado");
+        if (!modo.equals("aberto") && !modo.equals("fechado")) {
+            throw new IllegalArgumentException("Modo desconhecido: " + modo + " (use aberto ou fechado).");
+        }
+        double taxa = Double.parseDouble(System.getProperty("calculadora.carga.taxa", "1000"));
+        int clientes = Integer.getInteger("calculadora.carga.clientes", 16);
+        long duracao = Long.getLong("calculadora.carga.duracao", 30);
+        long aquecimento = Long.getLong("calculadora.carga.aquecimento", 5);
+
+        Transporte transporte = Avaliador.carregar(classe, Transporte.class);
+        if (Boolean.getBoolean("calculadora.carga.servidorLocal")) {
+            transporte.iniciarServidor();
+        }
+        GeradorCarga gerador = new GeradorCarga(transporte, linhas, modo.equals("aberto"), taxa, clientes,
+                aquecimento * 1_000_000_000L, duracao * 1_000_000_000L);
+
+        System.out.printf("Transporte %s, laço %s%s, %d cliente(s), %d s (+%d s de aquecimento), %d expressão(ões).%n",
+                args[0], modo, modo.equals("aberto") ? String.format(" a %.0f req/s", taxa) : "", clientes,
+                duracao, aquecimento, gerador.expressoes.length);
+        gerador.executar();
+        gerador.imprimirRelatorio();
+        System.exit(0); // Os servidores iniciados nesta JVM não são daemon.
+    }
+
+    /** Abre os clientes, roda o aquecimento e a medição e espera todos terminarem. */
+    void executar() throws Exception {
+        List<Avaliador> avaliadores = new ArrayList<>();
+        for (int i = 0; i < clientes; i++) {
+            avaliadores.add(transporte.novoCliente());
+        }
+
+        inicio = System.nanoTime();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < clientes; i++) {
+            Avaliador avaliador = avaliadores.get(i);
+            Runnable laco = aberto ? () -> lacoAberto(avaliador) : () -> lacoFechado(avaliador);
+            Thread thread = new Thread(laco, "carga-cliente-" + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+
+        Thread progresso = new Thread(this::imprimirProgresso, "carga-progresso");
+        progresso.setDaemon(true);
+        progresso.start();
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        progresso.interrupt();
+        for (Avaliador avaliador : avaliadores) {
+            try {
+                avaliador.close();
+            } catch (Exception e) {
+                // Encerramento: a conexão pode já ter sido fechada pelo servidor.
+            }
+        }
+    }
+
+    /** Envia a próxima expressão assim que recebe a resposta, até o fim da medição. */
+    private void lacoFechado(Avaliador avaliador) {
+        long fim = inicio + aquecimentoNanos + duracaoNanos;
+        long inicioMedicao = inicio + aquecimentoNanos;
+        long envio;
+        while ((envio = System.nanoTime()) < fim) {
+            enviar(avaliador, envio, envio >= inicioMedicao);
+        }
+    }
+
+    /**
+     * Pega a próxima posição da agenda (compartilhada pelos clientes), espera o seu horário e envia.
+     * Um cliente atrasado não "pula" posições: envia na hora, e o atraso conta na latência.
+     */
+    private void lacoAberto(Avaliador avaliador) {
+        double intervalo = 1e9 / taxa;
+        long fim = inicio + aquecimentoNanos + duracaoNanos;
+        long inicioMedicao = inicio + aquecimentoNanos;
+        while (true) {
+            long previsto = inicio + (long) (proxima.getAndIncrement() * intervalo);
+            if (previsto >= fim) {
+                return;
+            }
+            long agora;
+            while ((agora = System.nanoTime()) < previsto) {
+                LockSupport.parkNanos(previsto - agora);
+            }
+            boolean medir = previsto >= inicioMedicao;
+            if (medir) {
+                long atraso = agora - previsto;
+                long atual;
+                while (atraso > (atual = maiorAtrasoEnvio.get()) && !maiorAtrasoEnvio.compareAndSet(atual, atraso)) {
+                    // Outro cliente mudou o máximo ao mesmo tempo: tenta de novo.
+                }
+            }
+            enviar(avaliador, previsto, medir);
+        }
+    }
+
+    /**
+     * Envia uma expressão sorteada da mistura e registra a latência a partir de 'referencia'
+     * (o envio, no laço fechado; o horário previsto, no aberto).
+     */
+    private void enviar(Avaliador avaliador, long referencia, boolean medir) {
+        String expressao = sortear();
+        try {
+            avaliador.avaliar(expressao);
+            long latencia = System.nanoTime() - referencia;
+            intervalo.registrar(latencia);
+            if (medir) {
+                total.registrar(latencia);
+            }
+        } catch (Exception e) {
+            if (medir) {
+                falhasMedidas.increment();
+                falhasPorTipo.computeIfAbsent(descrever(e), tipo -> new LongAdder()).increment();
+            }
+        }
+    }
+
+    /** Uma expressão da mistura, com a probabilidade proporcional ao peso. */
+    private String sortear() {
+        long sorteio = ThreadLocalRandom.current().nextLong(pesosAcumulados[pesosAcumulados.length - 1]);
+        int esquerda = 0;
+        int direita = pesosAcumulados.length - 1;
+        while (esquerda < direita) {
+            int meio = (esquerda + direita) >>> 1;
+            if (pesosAcumulados[meio] > sorteio) {
+                direita = meio;
+            } else {
+                esquerda = meio + 1;
+            }
+        }
+        return expressoes[esquerda];
+    }
+
+    /** Uma linha por segundo com a vazão e a latência do último segundo. */
+    private void imprimirProgresso() {
+        try {
+            for (int segundo = 1; ; segundo++) {
+                long proximoSegundo = inicio + segundo * 1_000_000_000L;
+                long espera;
+                while ((espera = proximoSegundo - System.nanoTime()) > 0) {
+                    Thread.sleep(espera / 1_000_000, (int) (espera % 1_000_000));
+                }
+                HistogramaLatencia.Resumo resumo = intervalo.resumo();
+                intervalo.zerar();
+                boolean aquecendo = segundo * 1_000_000_000L <= aquecimentoNanos;
+                System.out.printf("[%3d s%s] %7d req/s  p50 %8.1f µs  p99 %8.1f µs  máx %8.1f µs%n",
+                        segundo, aquecendo ? ", aquecimento" : "", resumo.getContagem(),
+                        resumo.percentil(50) / 1e3, resumo.percentil(99) / 1e3, resumo.getMaximo() / 1e3);
+            }
+        } catch (InterruptedException e) {
+            // Fim da medição.
+        }
+    }
+
+    void imprimirRelatorio() {
+        HistogramaLatencia.Resumo resumo = total.resumo();
+        double segundos = duracaoNanos / 1e9;
+        long falhas = falhasMedidas.sum();
+        System.out.println();
+        System.out.printf("Requisições: %d (%d com sucesso, %d falha(s)); vazão: %.1f req/s%n",
+                resumo.getContagem() + falhas, resumo.getContagem(), falhas, resumo.getContagem() / segundos);
+        System.out.printf("Latência (µs): p50 %.1f | p90 %.1f | p99 %.1f | p99,9 %.1f | máx %.1f | média %.1f%n",
+                resumo.percentil(50) / 1e3, resumo.percentil(90) / 1e3, resumo.percentil(99) / 1e3,
+                resumo.percentil(99.9) / 1e3, resumo.getMaximo() / 1e3, resumo.getMedia() / 1e3);
+        if (aberto) {
+            long atraso = maiorAtrasoEnvio.get();
+            System.out.printf("Maior atraso de envio: %.1f ms%s%n", atraso / 1e6,
+                    atraso > 1_000_000_000L / taxa * clientes
+                            ? " (os clientes não deram conta da taxa: aumente calculadora.carga.clientes ou o servidor está saturado)"
+                            : "");
+        }
+        falhasPorTipo.forEach((tipo, quantidade) -> System.out.printf("Falha: %s (%d)%n", tipo, quantidade.sum()));
+    }
+
+    /** Tipo e mensagem da falha; algumas exceções de rede não têm mensagem, só o tipo. */
+    private static String descrever(Throwable falha) {
+        while (falha.getCause() != null && falha.getMessage() == null) {
+            falha = falha.getCause();
+        }
+        return falha.getClass().getSimpleName() + (falha.getMessage() != null ? ": " + falha.getMessage() : "");
+    }
+}
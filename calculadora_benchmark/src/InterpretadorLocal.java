@@ -0,0 +1,31 @@
+import benchmark.Avaliador;
+
+/**
+ * Os motores de cálculo do calculadora_core vistos pelos benchmarks (ver benchmark.Avaliador).
+ */
+public class InterpretadorLocal implements Avaliador {
+
+    private final AvaliadorExpressoes interpretador;
+
+    /**
+     * @param modo "comCache" = InterpretadorAritmetico com o cache compartilhado; "semCache" = com um cache
+     *             mínimo, para medir a compilação; "pilha" = InterpretadorPilha (o interpretador original).
+     */
+    public InterpretadorLocal(String modo) {
+        switch (modo) {
+            case "comCache":
+                this.interpretador = new InterpretadorAritmetico();
+                break;
+            case "semCache":
+                this.interpretador = new InterpretadorAritmetico(new CacheExpressoes(1));
+                break;
+            default:
+                this.interpretador = AvaliadorExpressoes.porNome(modo);
+        }
+    }
+
+    @Override
+    public Object avaliar(String expressao) {
+        return interpretador.avaliarExpressao(expressao);
+    }
+}
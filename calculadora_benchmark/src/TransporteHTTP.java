@@ -0,0 +1,23 @@
+import benchmark.Avaliador;
+import benchmark.Transporte;
+
+/**
+ * Servidor HTTP (CalculadoraServerHTTP, porta 8080) e um CalculadoraClientHTTP por thread,
+ * chamando o endpoint /avaliar.
+ */
+public class TransporteHTTP implements Transporte {
+
+    private static final int PORTA = 8080;
+
+    @Override
+    public void iniciarServidor() throws Exception {
+        CalculadoraServerHTTP.main(new String[0]); // Inicia o servidor e volta.
+        TransporteSocket.esperarPorta(PORTA);
+    }
+
+    @Override
+    public Avaliador novoCliente() {
+        CalculadoraClientHTTP cliente = new CalculadoraClientHTTP();
+        return expressao -> cliente.avaliarAsync(expressao).join();
+    }
+}
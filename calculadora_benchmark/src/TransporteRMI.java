@@ -0,0 +1,34 @@
+import benchmark.Avaliador;
+import benchmark.Transporte;
+
+/**
+ * Servidor RMI (ServidorRMI, com o Registry na porta 1099) e um ClienteRMI por thread
+ * (com o disjuntor e as retentativas, como numa aplicação real).
+ */
+public class TransporteRMI implements Transporte {
+
+    private static final int PORTA_REGISTRY = 1099;
+
+    @Override
+    public void iniciarServidor() throws Exception {
+        ServidorRMI.main(new String[0]); // Registra o objeto e volta.
+        TransporteSocket.esperarPorta(PORTA_REGISTRY);
+    }
+
+    @Override
+    public Avaliador novoCliente() throws Exception {
+        ClienteRMI cliente = new ClienteRMI("localhost", PORTA_REGISTRY);
+        cliente.avaliar("1 + 1"); // Faz o lookup antes da medição.
+        return new Avaliador() {
+            @Override
+            public Object avaliar(String expressao) throws Exception {
+                return cliente.avaliar(expressao);
+            }
+
+            @Override
+            public void close() {
+                cliente.close();
+            }
+        };
+    }
+}
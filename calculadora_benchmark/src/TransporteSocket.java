@@ -0,0 +1,54 @@
+import benchmark.Avaliador;
+import benchmark.Transporte;
+
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * Servidor de sockets (ServidorCalculadora, protocolo de texto) e um ClienteCalculadora por thread.
+ */
+public class TransporteSocket implements Transporte {
+
+    private static final int PORTA = 12345;
+
+    @Override
+    public void iniciarServidor() throws Exception {
+        // O main do servidor fica no loop de aceitação: roda numa thread separada.
+        Thread servidor = new Thread(() -> ServidorCalculadora.main(new String[0]), "benchmark-servidor-socket");
+        servidor.setDaemon(true);
+        servidor.start();
+        esperarPorta(PORTA);
+    }
+
+    @Override
+    public Avaliador novoCliente() throws IOException {
+        ClienteCalculadora cliente = new ClienteCalculadora("localhost", PORTA);
+        return new Avaliador() {
+            @Override
+            public Object avaliar(String expressao) throws IOException {
+                return cliente.avaliar(expressao);
+            }
+
+            @Override
+            public void close() throws IOException {
+                cliente.close();
+            }
+        };
+    }
+
+    /** Espera (até 10 s) o servidor aceitar conexões na porta. */
+    static void esperarPorta(int porta) throws InterruptedException, IOException {
+        long limite = System.nanoTime() + 10_000_000_000L;
+        while (true) {
+            try {
+                new Socket("localhost", porta).close();
+                return;
+            } catch (IOException e) {
+                if (System.nanoTime() > limite) {
+                    throw new IOException("O servidor não abriu a porta " + porta + ".", e);
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package benchmark;
+
+import java.io.IOException;
+
+/**
+ * Algo que avalia expressões: o interpretador local ou um cliente de um dos transportes.
+ *
+ * Os benchmarks ficam no pacote "benchmark" porque o JMH não aceita benchmarks no pacote padrão,
+ * e um pacote nomeado não enxerga as classes do pacote padrão (onde está todo o código da calculadora).
+ * Por isso as implementações (InterpretadorLocal, TransporteSocket...) ficam no pacote padrão e são
+ * carregadas pelo nome.
+ */
+public interface Avaliador extends AutoCloseable {
+
+    /**
+     * @return O resultado, no formato do transporte (ex: o JSON da resposta HTTP).
+     */
+    Object avaliar(String expressao) throws Exception;
+
+    @Override
+    default void close() throws IOException {
+    }
+
+    /** Cria a implementação do pacote padrão com o nome informado (ex: "TransporteSocket"). */
+    static <T> T carregar(String classe, Class<T> tipo, Object... argumentos) throws Exception {
+        for (var construtor : Class.forName(classe).getConstructors()) {
+            if (construtor.getParameterCount() == argumentos.length) {
+                return tipo.cast(construtor.newInstance(argumentos));
+            }
+        }
+        throw new IllegalArgumentException("Construtor de " + classe + " com " + argumentos.length + " argumentos não encontrado.");
+    }
+}
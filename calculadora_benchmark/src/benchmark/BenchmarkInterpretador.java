@@ -0,0 +1,73 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Os motores de cálculo (AvaliadorExpressoes.avaliarExpressao) para expressões de vários tamanhos:
+ *   - comCache: a mesma expressão repetida (só a avaliação do programa compilado, vindo do cache);
+ *   - semCache: expressões que nunca estão no cache (análise, compilação e avaliação);
+ *   - pilha: o motor original (InterpretadorPilha), que analisa a expressão a cada chamada.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dcalculadora.log.nivel=AVISO")
+public class BenchmarkInterpretador {
+
+    // Variações da expressão no modo semCache; mais que a capacidade do cache usado nele.
+    private static final int VARIACOES = 64;
+
+    /** Quantidade de operadores da expressão. */
+    @Param({"3", "30", "300"})
+    public int operadores;
+
+    private Avaliador comCache;
+    private Avaliador semCache;
+    private Avaliador pilha;
+    private String expressao;
+    private String[] variacoes;
+    private int proxima;
+
+    @Setup
+    public void preparar() throws Exception {
+        comCache = Avaliador.carregar("InterpretadorLocal", Avaliador.class, "comCache");
+        semCache = Avaliador.carregar("InterpretadorLocal", Avaliador.class, "semCache");
+        pilha = Avaliador.carregar("InterpretadorLocal", Avaliador.class, "pilha");
+        expressao = Expressoes.gerar(operadores, 1);
+        variacoes = new String[VARIACOES];
+        for (int i = 0; i < VARIACOES; i++) {
+            variacoes[i] = Expressoes.gerar(operadores, i + 1);
+        }
+    }
+
+    @Benchmark
+    public Object comCache() throws Exception {
+        return comCache.avaliar(expressao);
+    }
+
+    @Benchmark
+    public Object semCache() throws Exception {
+        String atual = variacoes[proxima];
+        proxima = (proxima + 1) % VARIACOES;
+        return semCache.avaliar(atual);
+    }
+
+    @Benchmark
+    public Object pilha() throws Exception {
+        return pilha.avaliar(expressao);
+    }
+}
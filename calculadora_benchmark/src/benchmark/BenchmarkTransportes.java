@@ -0,0 +1,91 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vazão (operações/s) e latência (percentis do modo SampleTime) de ponta a ponta pelo loopback,
+ * para cada transporte, com 1, 4 e 16 threads chamando ao mesmo tempo (uma conexão/cliente por thread).
+ *
+ * Cada combinação roda num fork próprio, que inicia o servidor do transporte nas portas de sempre
+ * (12345, 1099 e 8080): elas precisam estar livres durante o benchmark.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dcalculadora.log.nivel=AVISO")
+public class BenchmarkTransportes {
+
+    private static final String EXPRESSAO = Expressoes.gerar(10, 1);
+
+    /** O servidor do transporte, um por fork. */
+    @State(Scope.Benchmark)
+    public static class Servidor {
+        @Param({"socket", "rmi", "http"})
+        public String transporte;
+
+        Transporte implementacao;
+
+        @Setup(Level.Trial)
+        public void iniciar() throws Exception {
+            String classe;
+            switch (transporte) {
+                case "socket": classe = "TransporteSocket"; break;
+                case "rmi": classe = "TransporteRMI"; break;
+                case "http": classe = "TransporteHTTP"; break;
+                default: throw new IllegalArgumentException("Transporte desconhecido: " + transporte);
+            }
+            implementacao = Avaliador.carregar(classe, Transporte.class);
+            implementacao.iniciarServidor();
+        }
+    }
+
+    /** O cliente de cada thread. */
+    @State(Scope.Thread)
+    public static class Cliente {
+        Avaliador avaliador;
+
+        @Setup(Level.Trial)
+        public void abrir(Servidor servidor) throws Exception {
+            avaliador = servidor.implementacao.novoCliente();
+        }
+
+        @TearDown(Level.Trial)
+        public void fechar() throws Exception {
+            avaliador.close();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object concorrencia01(Cliente cliente) throws Exception {
+        return cliente.avaliador.avaliar(EXPRESSAO);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object concorrencia04(Cliente cliente) throws Exception {
+        return cliente.avaliador.avaliar(EXPRESSAO);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Object concorrencia16(Cliente cliente) throws Exception {
+        return cliente.avaliador.avaliar(EXPRESSAO);
+    }
+}
@@ -0,0 +1,28 @@
+package benchmark;
+
+/** Gera as expressões usadas nos benchmarks. */
+final class Expressoes {
+
+    private static final char[] OPERADORES = {'+', '-', '*', '/'};
+
+    private Expressoes() {
+    }
+
+    /**
+     * Uma expressão com a quantidade de operadores informada, alternando +, -, * e / e com
+     * alguns parênteses (ex: com 3 operadores, "1.5 + 2 - (3 - 0.5) * 4"). Nunca divide por zero.
+     * @param inicio O primeiro número (permite gerar expressões diferentes do mesmo tamanho).
+     */
+    static String gerar(int operadores, int inicio) {
+        StringBuilder sb = new StringBuilder().append(inicio).append(".5");
+        for (int k = 0; k < operadores; k++) {
+            sb.append(' ').append(OPERADORES[k % OPERADORES.length]).append(' ');
+            if (k % 7 == 1) {
+                sb.append('(').append(k + 2).append(" - 0.5)");
+            } else {
+                sb.append(k + 2);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,14 @@
+package benchmark;
+
+/**
+ * Um dos transportes da calculadora (socket, RMI ou HTTP), com servidor e clientes na mesma JVM.
+ * As chamadas passam pelo loopback, como entre processos separados.
+ */
+public interface Transporte {
+
+    /** Inicia o servidor nesta JVM e espera até ele aceitar conexões. */
+    void iniciarServidor() throws Exception;
+
+    /** Cria um cliente (cada thread do benchmark usa o seu). */
+    Avaliador novoCliente() throws Exception;
+}
@@ -0,0 +1,75 @@
+/**
+ * Motor de cálculo usado pelos servidores da calculadora (socket, RMI e HTTP): avalia uma expressão
+ * aritmética com números, +, -, *, / e parênteses (ex: "3 * (5 + 2) - 1").
+ *
+ * Implementações:
+ *   - InterpretadorAritmetico ("compilado", o padrão): compila a expressão para um programa em notação
+ *     polonesa reversa e o guarda num cache, então expressões repetidas não são analisadas de novo;
+ *   - InterpretadorPilha ("pilha"): o interpretador original, que analisa a expressão a cada chamada.
+ *     Serve de referência para comparar resultados e desempenho.
+ * Os servidores escolhem o motor com -Dcalculadora.avaliador=compilado|pilha (ver configurado()).
+ * Recursos que dependem da compilação (variáveis, programas recebidos já compilados) sempre usam
+ * o InterpretadorAritmetico.
+ *
+ * Segurança entre threads: toda implementação pode ser usada por várias threads ao mesmo tempo,
+ * sem sincronização externa (os servidores compartilham uma única instância).
+ */
+public interface AvaliadorExpressoes {
+
+    /**
+     * Avalia uma expressão aritmética.
+     * @param expressao A string da expressão.
+     * @return O resultado do cálculo.
+     * @throws IllegalArgumentException Se a expressão for mal formada ou inválida.
+     * @throws ArithmeticException Em uma divisão por zero.
+     */
+    double avaliarExpressao(String expressao);
+
+    /** Nome do motor, como em calculadora.avaliador (ex: "compilado"). */
+    String getNome();
+
+    /** O motor escolhido pela propriedade calculadora.avaliador ("compilado", o padrão, ou "pilha"). */
+    static AvaliadorExpressoes configurado() {
+        return porNome(System.getProperty("calculadora.avaliador", "compilado"));
+    }
+
+    /**
+     * @param nome "compilado" ou "pilha".
+     * @throws IllegalArgumentException Se o motor não existir.
+     */
+    static AvaliadorExpressoes porNome(String nome) {
+        switch (nome.toLowerCase()) {
+            case "compilado":
+                return new InterpretadorAritmetico();
+            case "pilha":
+                return new InterpretadorPilha();
+            default:
+                throw new IllegalArgumentException("Motor de cálculo desconhecido: " + nome + " (use compilado ou pilha).");
+        }
+    }
+
+    /**
+     * Aplica um dos quatro operadores: a única definição das operações (e dos seus erros) para os motores
+     * e para o endpoint /calcular do servidor HTTP. O laço de ExpressaoCompilada.avaliar repete estas
+     * regras diretamente, por desempenho.
+     * @throws ArithmeticException Em uma divisão por zero.
+     * @throws IllegalArgumentException Se o operador não for +, -, * ou /.
+     */
+    static double aplicar(char operador, double a, double b) {
+        switch (operador) {
+            case '+':
+                return a + b;
+            case '-':
+                return a - b;
+            case '*':
+                return a * b;
+            case '/':
+                if (b == 0) {
+                    throw new ArithmeticException("Divisão por zero!");
+                }
+                return a / b;
+            default:
+                throw new IllegalArgumentException("Operador desconhecido: " + operador);
+        }
+    }
+}
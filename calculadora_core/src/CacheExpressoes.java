@@ -0,0 +1,129 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache limitado de expressões compiladas, com política LRU (remove a menos usada recentemente).
+ *
+ * Para reduzir a disputa entre threads, o cache é dividido em segmentos independentes,
+ * cada um com o seu próprio lock e a sua parte da capacidade total. A chave é a expressão
+ * normalizada (sem espaços), então "1 + 2" e "1+2" ocupam a mesma entrada.
+ */
+public class CacheExpressoes {
+
+    // Capacidade do cache compartilhado (pode ser alterada com -Dcalculadora.cache.capacidade=N).
+    private static final int CAPACIDADE_PADRAO = Integer.getInteger("calculadora.cache.capacidade", 1024);
+    // Quantidade de segmentos (potência de 2, para escolher o segmento com uma máscara de bits).
+    private static final int SEGMENTOS = 16;
+
+    // Instância única usada por todos os interpretadores que não recebem um cache próprio.
+    private static final CacheExpressoes COMPARTILHADO = new CacheExpressoes(CAPACIDADE_PADRAO);
+
+    private final Segmento[] segmentos = new Segmento[SEGMENTOS];
+
+    // --- Contadores (LongAdder evita disputa entre threads a cada incremento) ---
+    private final LongAdder acertos = new LongAdder();
+    private final LongAdder faltas = new LongAdder();
+    private final LongAdder despejos = new LongAdder();
+
+    /**
+     * Cria um cache com a capacidade total informada (dividida igualmente entre os segmentos).
+     * @param capacidade Número máximo de expressões guardadas.
+     */
+    public CacheExpressoes(int capacidade) {
+        int capacidadePorSegmento = Math.max(1, (capacidade + SEGMENTOS - 1) / SEGMENTOS);
+        for (int i = 0; i < SEGMENTOS; i++) {
+            segmentos[i] = new Segmento(capacidadePorSegmento);
+        }
+    }
+
+    /** Devolve o cache compartilhado por toda a aplicação. */
+    public static CacheExpressoes compartilhado() {
+        return COMPARTILHADO;
+    }
+
+    /**
+     * Procura uma expressão compilada no cache.
+     * @param chave A expressão normalizada.
+     * @return A expressão compilada, ou null se ela não estiver no cache.
+     */
+    public ExpressaoCompilada obter(String chave) {
+        Segmento segmento = segmentoDa(chave);
+        ExpressaoCompilada compilada;
+        synchronized (segmento) {
+            compilada = segmento.get(chave);
+        }
+        (compilada != null ? acertos : faltas).increment();
+        return compilada;
+    }
+
+    /**
+     * Guarda uma expressão compilada, removendo a menos usada do segmento se ele estiver cheio.
+     * @param chave A expressão normalizada.
+     * @param compilada A forma compilada da expressão.
+     */
+    public void guardar(String chave, ExpressaoCompilada compilada) {
+        Segmento segmento = segmentoDa(chave);
+        synchronized (segmento) {
+            segmento.put(chave, compilada);
+        }
+    }
+
+    public long getAcertos() {
+        return acertos.sum();
+    }
+
+    public long getFaltas() {
+        return faltas.sum();
+    }
+
+    public long getDespejos() {
+        return despejos.sum();
+    }
+
+    /** Quantidade de expressões guardadas no momento. */
+    public int tamanho() {
+        int total = 0;
+        for (Segmento segmento : segmentos) {
+            synchronized (segmento) {
+                total += segmento.size();
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheExpressoes{tamanho=" + tamanho() + ", acertos=" + getAcertos()
+                + ", faltas=" + getFaltas() + ", despejos=" + getDespejos() + "}";
+    }
+
+    private Segmento segmentoDa(String chave) {
+        int hash = chave.hashCode();
+        return segmentos[(hash ^ (hash >>> 16)) & (SEGMENTOS - 1)];
+    }
+
+    /**
+     * Um segmento do cache: LinkedHashMap em ordem de acesso, que remove a entrada mais antiga
+     * quando passa da capacidade. Deve ser acessado com o lock do próprio segmento.
+     */
+    private final class Segmento extends LinkedHashMap<String, ExpressaoCompilada> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacidade;
+
+        Segmento(int capacidade) {
+            super(16, 0.75f, true);
+            this.capacidade = capacidade;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ExpressaoCompilada> maisAntiga) {
+            if (size() > capacidade) {
+                despejos.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Controle de admissão dos servidores: decide, antes de qualquer cálculo, se uma requisição é atendida
+ * ou recusada na hora, para que um cliente pesado (ex: um job de lote descontrolado) não tome o
+ * servidor dos demais e a latência de quem é atendido continue estável mesmo com sobrecarga.
+ *
+ * São duas verificações, ambas desligadas por padrão:
+ * - taxa por cliente (endereço ou chave de API): um balde de fichas por cliente, reposto a N fichas
+ *   por segundo; cada requisição gasta uma. Os baldes ficam num array fixo de faixas (o cliente
+ *   escolhe a faixa pelo hash), então a memória não cresce com o número de clientes; dois clientes
+ *   na mesma faixa dividem o limite, o que é raro com faixas suficientes;
+ * - limite de requisições simultâneas: fixo ou adaptativo (AIMD). No adaptativo, a cada janela de
+ *   100 ms a latência média é comparada com a latência de referência (a menor média dos últimos
+ *   10 s): se passou de 'tolerancia' vezes a referência, o servidor está enfileirando trabalho e o
+ *   limite cai 10%; se não, e o limite estava de fato sendo usado, sobe 1. Como no TCP, ele começa
+ *   baixo e sobe aos poucos, para que a referência seja medida sem sobrecarga. Assim o limite
+ *   acompanha a capacidade real da máquina, e o excesso é recusado em vez de esperar numa fila.
+ *
+ * Uso nos servidores: admitir(cliente) antes de atender; se devolver null, concluir(inicio) ao
+ * terminar (ou liberar(), se a duração não deve servir de amostra, como nos lotes).
+ */
+public final class ControleAdmissao {
+
+    /** Motivo de uma recusa, com a mensagem enviada ao cliente. */
+    public enum Recusa {
+        /** O cliente passou do seu limite de requisições por segundo. */
+        TAXA("sobrecarga: limite de requisições por segundo do cliente excedido."),
+        /** O servidor está no limite de requisições simultâneas. */
+        CONCORRENCIA("sobrecarga: servidor no limite de requisições simultâneas, tente novamente."),
+        /** A fila das expressões pesadas está cheia (ver EscalonadorAvaliacao). */
+        FILA_PESADAS("sobrecarga: fila de expressões pesadas cheia, tente novamente."),
+        /** A fila dos lotes assíncronos do servidor RMI está cheia. */
+        FILA_LOTES("sobrecarga: fila de lotes assíncronos cheia, tente novamente.");
+
+        private final String mensagem;
+
+        Recusa(String mensagem) {
+            this.mensagem = mensagem;
+        }
+
+        /** A mensagem de erro (começa com "sobrecarga"). */
+        public String getMensagem() {
+            return mensagem;
+        }
+    }
+
+    /**
+     * Exceção para recusas que acontecem no meio do atendimento (ex: a fila das expressões pesadas),
+     * quando já não dá para devolver a Recusa. Não captura a pilha: é uma resposta esperada.
+     */
+    public static final class Recusada extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final Recusa recusa;
+
+        public Recusada(Recusa recusa) {
+            super(recusa.getMensagem(), null, false, false);
+            this.recusa = recusa;
+        }
+
+        public Recusa getRecusa() {
+            return recusa;
+        }
+    }
+
+    private final Metricas metricas;
+    private final BaldesPorCliente baldes;       // null = sem limite de taxa.
+    private final LimiteConcorrencia limite;     // null = sem limite de requisições simultâneas.
+    private final LongAdder recusadasTaxa = new LongAdder();
+    private final LongAdder recusadasConcorrencia = new LongAdder();
+
+    /**
+     * @param metricas Onde as recusas são contadas (como erros de SOBRECARGA) e os medidores registrados.
+     * @param taxa Requisições por segundo por cliente (0 = sem limite de taxa).
+     * @param rajada Fichas que cabem no balde de cada cliente (requisições seguidas acima da taxa).
+     * @param faixas Quantidade de baldes (arredondada para uma potência de 2).
+     * @param concorrencia "desligada", "fixa" ou "adaptativa".
+     * @param limiteInicial O limite fixo, ou o ponto de partida do adaptativo.
+     * @param limiteMinimo Menor limite do adaptativo.
+     * @param limiteMaximo Maior limite do adaptativo.
+     * @param tolerancia Quantas vezes a latência pode passar da referência antes de o adaptativo reduzir o limite.
+     */
+    public ControleAdmissao(Metricas metricas, double taxa, double rajada, int faixas, String concorrencia,
+                            int limiteInicial, int limiteMinimo, int limiteMaximo, double tolerancia) {
+        this.metricas = metricas;
+        this.baldes = taxa > 0 ? new BaldesPorCliente(taxa, Math.max(1, rajada), faixas) : null;
+        switch (concorrencia) {
+            case "desligada":
+                this.limite = null;
+                break;
+            case "fixa":
+                this.limite = new LimiteConcorrencia(limiteInicial, limiteInicial, limiteInicial, 0);
+                break;
+            case "adaptativa":
+                this.limite = new LimiteConcorrencia(limiteInicial, limiteMinimo, limiteMaximo, tolerancia);
+                break;
+            default:
+                throw new IllegalArgumentException("Concorrência desconhecida: " + concorrencia
+                        + " (use desligada, fixa ou adaptativa).");
+        }
+        if (limite != null) {
+            metricas.registrarMedidor("limiteConcorrencia", () -> limite.limite);
+        }
+        metricas.registrarMedidor("recusadasTaxa", recusadasTaxa::sum);
+        metricas.registrarMedidor("recusadasConcorrencia", recusadasConcorrencia::sum);
+    }
+
+    /**
+     * O controle configurado pelas propriedades do sistema (ver o README do calculadora_core):
+     * calculadora.admissao.taxa, .rajada, .faixas, .concorrencia, .limite, .limiteMinimo,
+     * .limiteMaximo e .tolerancia.
+     */
+    public static ControleAdmissao configurado(Metricas metricas) {
+        double taxa = Double.parseDouble(System.getProperty("calculadora.admissao.taxa", "0"));
+        double rajada = Double.parseDouble(System.getProperty("calculadora.admissao.rajada", String.valueOf(taxa)));
+        return new ControleAdmissao(metricas, taxa, rajada,
+                Integer.getInteger("calculadora.admissao.faixas", 1024),
+                System.getProperty("calculadora.admissao.concorrencia", "desligada"),
+                Integer.getInteger("calculadora.admissao.limite", 8),
+                Integer.getInteger("calculadora.admissao.limiteMinimo", 4),
+                Integer.getInteger("calculadora.admissao.limiteMaximo", 1024),
+                Double.parseDouble(System.getProperty("calculadora.admissao.tolerancia", "2")));
+    }
+
+    /** Indica se alguma verificação está ligada. */
+    public boolean isAtivo() {
+        return baldes != null || limite != null;
+    }
+
+    /** Indica se há limite por cliente (só então vale a pena descobrir a chave do cliente). */
+    public boolean isPorCliente() {
+        return baldes != null;
+    }
+
+    /**
+     * Verifica se a requisição pode ser atendida. Se puder, ela passa a contar como em andamento
+     * até concluir() ou liberar().
+     * @param cliente O endereço ou a chave de API do cliente (pode ser null se não isPorCliente()).
+     * @return null se admitida; senão, o motivo da recusa (já contada nas métricas).
+     */
+    public Recusa admitir(String cliente) {
+        if (baldes != null && !baldes.consumir(cliente == null ? "" : cliente)) {
+            recusadasTaxa.increment();
+            metricas.registrarErro(Metricas.TipoErro.SOBRECARGA);
+            return Recusa.TAXA;
+        }
+        if (limite != null && !limite.adquirir()) {
+            recusadasConcorrencia.increment();
+            metricas.registrarErro(Metricas.TipoErro.SOBRECARGA);
+            return Recusa.CONCORRENCIA;
+        }
+        return null;
+    }
+
+    /**
+     * Termina uma requisição admitida, usando a sua duração como amostra para o limite adaptativo.
+     * @param inicio O System.nanoTime() do início da requisição (depois de admitida).
+     */
+    public void concluir(long inicio) {
+        if (limite != null) {
+            limite.liberar(System.nanoTime() - inicio);
+        }
+    }
+
+    /**
+     * Termina uma requisição admitida sem usar a duração como amostra: para requisições que demoram
+     * por serem grandes (lotes), não porque o servidor está sobrecarregado.
+     */
+    public void liberar() {
+        if (limite != null) {
+            limite.liberar(-1);
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (!isAtivo()) {
+            return "desligado";
+        }
+        String texto = baldes != null ? String.format("%.0f req/s por cliente", baldes.fichasPorNano * 1e9) : "sem limite de taxa";
+        if (limite == null) {
+            return texto + ", sem limite de concorrência";
+        }
+        return texto + (limite.tolerancia > 0
+                ? ", limite adaptativo de concorrência (" + limite.minimo + " a " + limite.maximo + ", início " + limite.limite + ")"
+                : ", limite de " + limite.limite + " requisições simultâneas");
+    }
+
+    /**
+     * Um balde de fichas por faixa de clientes. Cada balde tem o seu próprio lock, então clientes
+     * diferentes quase nunca disputam o mesmo.
+     */
+    private static final class BaldesPorCliente {
+        private final double fichasPorNano;
+        private final double capacidade;
+        private final Balde[] faixas;
+        private final int mascara;
+
+        BaldesPorCliente(double porSegundo, double capacidade, int quantidade) {
+            this.fichasPorNano = porSegundo / 1e9;
+            this.capacidade = capacidade;
+            int tamanho = Integer.highestOneBit(Math.max(1, quantidade - 1)) << 1;
+            this.faixas = new Balde[tamanho];
+            this.mascara = tamanho - 1;
+            long agora = System.nanoTime();
+            for (int i = 0; i < tamanho; i++) {
+                faixas[i] = new Balde(capacidade, agora);
+            }
+        }
+
+        boolean consumir(String cliente) {
+            int hash = cliente.hashCode();
+            hash ^= hash >>> 16; // Espalha os bits altos (endereços parecidos diferem no fim).
+            return faixas[hash & mascara].consumir(fichasPorNano, capacidade);
+        }
+    }
+
+    private static final class Balde {
+        // --- Estado (protegido pelo lock do balde) ---
+        private double fichas;
+        private long ultimaReposicao;
+
+        Balde(double fichas, long agora) {
+            this.fichas = fichas;
+            this.ultimaReposicao = agora;
+        }
+
+        synchronized boolean consumir(double fichasPorNano, double capacidade) {
+            long agora = System.nanoTime();
+            fichas = Math.min(capacidade, fichas + (agora - ultimaReposicao) * fichasPorNano);
+            ultimaReposicao = agora;
+            if (fichas < 1) {
+                return false;
+            }
+            fichas -= 1;
+            return true;
+        }
+    }
+
+    /**
+     * Limite de requisições simultâneas, fixo (tolerancia = 0) ou ajustado por AIMD a cada janela.
+     * Admitir e liberar só usam operações atômicas; o ajuste roda uma vez por janela, na thread
+     * que a encerrar (as outras não esperam: tryLock).
+     */
+    private static final class LimiteConcorrencia {
+        private static final long JANELA_NANOS = 100_000_000L;
+        private static final int AMOSTRAS_MINIMAS = 10;
+        // A referência é a menor média entre as últimas 100 janelas (10 s): se a latência aumenta de vez
+        // (ex: expressões mais longas), ela acompanha depois de 10 s, e o limite não fica preso no mínimo.
+        private static final int JANELAS_REFERENCIA = 100;
+
+        private final int minimo;
+        private final int maximo;
+        private final double tolerancia;
+
+        private final AtomicInteger emAndamento = new AtomicInteger();
+        private volatile int limite;
+        // Indica se, na janela atual, o uso chegou à metade do limite (só então vale aumentá-lo).
+        private volatile boolean usado;
+
+        private final LongAdder somaJanela = new LongAdder();
+        private final LongAdder amostrasJanela = new LongAdder();
+        private final ReentrantLock ajuste = new ReentrantLock();
+        private volatile long fimJanela = System.nanoTime() + JANELA_NANOS;
+        // Média (ns) de cada uma das últimas janelas, em rodízio (protegidas por 'ajuste').
+        private final double[] medias = new double[JANELAS_REFERENCIA];
+        private int proximaMedia;
+
+        LimiteConcorrencia(int inicial, int minimo, int maximo, double tolerancia) {
+            this.minimo = Math.max(1, minimo);
+            this.maximo = Math.max(this.minimo, maximo);
+            this.tolerancia = tolerancia;
+            this.limite = Math.max(this.minimo, Math.min(this.maximo, inicial));
+            Arrays.fill(medias, Double.MAX_VALUE);
+        }
+
+        boolean adquirir() {
+            int atual = emAndamento.incrementAndGet();
+            int limiteAtual = limite;
+            if (atual > limiteAtual) {
+                emAndamento.decrementAndGet();
+                usado = true;
+                return false;
+            }
+            if (atual * 2 >= limiteAtual && !usado) {
+                usado = true;
+            }
+            return true;
+        }
+
+        /** @param latencia A duração da requisição (ns), ou negativa para não usá-la como amostra. */
+        void liberar(long latencia) {
+            emAndamento.decrementAndGet();
+            if (tolerancia <= 0 || latencia < 0) {
+                return;
+            }
+            somaJanela.add(latencia);
+            amostrasJanela.increment();
+            long agora = System.nanoTime();
+            if (agora >= fimJanela && ajuste.tryLock()) {
+                try {
+                    if (agora >= fimJanela) {
+                        ajustar(agora);
+                    }
+                } finally {
+                    ajuste.unlock();
+                }
+            }
+        }
+
+        private void ajustar(long agora) {
+            long amostras = amostrasJanela.sum();
+            if (amostras < AMOSTRAS_MINIMAS) {
+                return; // Poucas amostras: a janela continua até juntar o suficiente.
+            }
+            double media = (double) somaJanela.sumThenReset() / amostrasJanela.sumThenReset();
+            fimJanela = agora + JANELA_NANOS;
+
+            medias[proximaMedia] = media;
+            proximaMedia = (proximaMedia + 1) % medias.length;
+            double referencia = Double.MAX_VALUE;
+            for (double anterior : medias) {
+                referencia = Math.min(referencia, anterior);
+            }
+            if (media > tolerancia * referencia) {
+                limite = Math.max(minimo, (int) (limite * 0.9)); // Diminuição multiplicativa.
+            } else if (usado) {
+                limite = Math.min(maximo, limite + 1);           // Aumento aditivo.
+            }
+            usado = false;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Disjuntor ("circuit breaker") para chamadas a um servidor da calculadora.
+ *
+ * Enquanto o servidor responde bem, o disjuntor fica FECHADO e deixa todas as chamadas passarem.
+ * Se a proporção de falhas entre as últimas chamadas passar do limite, ele ABRE: durante um tempo,
+ * as chamadas falham na hora (CircuitoAberto), sem chegar ao servidor, que ganha folga para se
+ * recuperar. Passado esse tempo, fica MEIO_ABERTO: deixa passar algumas chamadas de teste; se todas
+ * derem certo, volta a FECHADO, e se alguma falhar, abre de novo.
+ *
+ * Só falhas temporárias (de rede, sobrecarga) devem ser registradas como falha: um erro de cálculo
+ * devolvido pelo servidor mostra que ele está respondendo normalmente.
+ */
+public class Disjuntor {
+
+    public enum Estado { FECHADO, ABERTO, MEIO_ABERTO }
+
+    // Valores padrão usados pelo construtor sem parâmetros.
+    private static final int JANELA_PADRAO = 20;
+    private static final int MINIMO_CHAMADAS_PADRAO = 10;
+    private static final int TAXA_FALHAS_PADRAO = 50;
+    private static final long TEMPO_ABERTO_MS_PADRAO = 5000;
+    private static final int CHAMADAS_TESTE_PADRAO = 3;
+
+    private final String nome;
+    private final int minimoChamadas;
+    private final int taxaFalhasPercentual;
+    private final long tempoAbertoNanos;
+    private final int chamadasTeste;
+
+    // --- Estado (protegido pelo lock da instância) ---
+    private Estado estado = Estado.FECHADO;
+    // Resultados das últimas chamadas (true = falha), num buffer circular.
+    private final boolean[] janela;
+    private int posicao;
+    private int preenchidas;
+    private int falhasNaJanela;
+    private long abertoDesde;
+    private int testesIniciados;
+    private int testesComSucesso;
+
+    // --- Métricas ---
+    private final LongAdder aberturas = new LongAdder();
+    private final LongAdder meioAberturas = new LongAdder();
+    private final LongAdder fechamentos = new LongAdder();
+    private final LongAdder rejeitadas = new LongAdder();
+    private final List<BiConsumer<Estado, Estado>> ouvintes = new CopyOnWriteArrayList<>();
+
+    /** Cria um disjuntor com os valores padrão (abre com 50% de falhas em 20 chamadas, por 5 segundos). */
+    public Disjuntor(String nome) {
+        this(nome, JANELA_PADRAO, MINIMO_CHAMADAS_PADRAO, TAXA_FALHAS_PADRAO, TEMPO_ABERTO_MS_PADRAO, CHAMADAS_TESTE_PADRAO);
+    }
+
+    /**
+     * @param nome Nome usado nas mensagens e métricas (ex: "http://localhost:8080").
+     * @param janela Quantas das últimas chamadas são consideradas no cálculo da taxa de falhas.
+     * @param minimoChamadas Quantas chamadas a janela precisa ter antes de o disjuntor poder abrir.
+     * @param taxaFalhasPercentual Percentual de falhas na janela que abre o disjuntor.
+     * @param tempoAbertoMs Quanto tempo o disjuntor fica aberto antes de testar o servidor de novo.
+     * @param chamadasTeste Quantas chamadas de teste passam no estado MEIO_ABERTO.
+     */
+    public Disjuntor(String nome, int janela, int minimoChamadas, int taxaFalhasPercentual,
+                     long tempoAbertoMs, int chamadasTeste) {
+        this.nome = nome;
+        this.janela = new boolean[janela];
+        this.minimoChamadas = Math.min(minimoChamadas, janela);
+        this.taxaFalhasPercentual = taxaFalhasPercentual;
+        this.tempoAbertoNanos = TimeUnit.MILLISECONDS.toNanos(tempoAbertoMs);
+        this.chamadasTeste = chamadasTeste;
+    }
+
+    /**
+     * Verifica se uma chamada pode ser feita agora. Quem recebe true deve depois chamar
+     * registrarSucesso() ou registrarFalha() com o resultado.
+     * @return false se o disjuntor estiver aberto (ou se já houver testes suficientes em andamento).
+     */
+    public boolean permitirChamada() {
+        Estado anterior, atual;
+        boolean permitida;
+        synchronized (this) {
+            anterior = estado;
+            if (estado == Estado.ABERTO && System.nanoTime() - abertoDesde >= tempoAbertoNanos) {
+                mudarPara(Estado.MEIO_ABERTO);
+            }
+            if (estado == Estado.FECHADO) {
+                permitida = true;
+            } else if (estado == Estado.MEIO_ABERTO && testesIniciados < chamadasTeste) {
+                testesIniciados++;
+                permitida = true;
+            } else {
+                permitida = false;
+            }
+            atual = estado;
+        }
+        if (!permitida) {
+            rejeitadas.increment();
+        }
+        avisarSeMudou(anterior, atual);
+        return permitida;
+    }
+
+    /** Registra uma chamada que terminou bem (ou com um erro que não é culpa do servidor). */
+    public void registrarSucesso() {
+        registrar(false);
+    }
+
+    /** Registra uma chamada que terminou com uma falha temporária (rede, timeout, sobrecarga). */
+    public void registrarFalha() {
+        registrar(true);
+    }
+
+    private void registrar(boolean falha) {
+        Estado anterior, atual;
+        synchronized (this) {
+            anterior = estado;
+            if (estado == Estado.MEIO_ABERTO) {
+                if (falha) {
+                    abrir();
+                } else if (++testesComSucesso >= chamadasTeste) {
+                    mudarPara(Estado.FECHADO);
+                }
+            } else if (estado == Estado.FECHADO) {
+                if (preenchidas == janela.length) {
+                    if (janela[posicao]) falhasNaJanela--;
+                } else {
+                    preenchidas++;
+                }
+                janela[posicao] = falha;
+                if (falha) falhasNaJanela++;
+                posicao = (posicao + 1) % janela.length;
+
+                if (preenchidas >= minimoChamadas && falhasNaJanela * 100 >= taxaFalhasPercentual * preenchidas) {
+                    abrir();
+                }
+            }
+            // No estado ABERTO, resultados de chamadas que começaram antes da abertura são ignorados.
+            atual = estado;
+        }
+        avisarSeMudou(anterior, atual);
+    }
+
+    private void abrir() {
+        abertoDesde = System.nanoTime();
+        mudarPara(Estado.ABERTO);
+    }
+
+    private void mudarPara(Estado novo) {
+        estado = novo;
+        switch (novo) {
+            case ABERTO:
+                aberturas.increment();
+                break;
+            case MEIO_ABERTO:
+                meioAberturas.increment();
+                testesIniciados = 0;
+                testesComSucesso = 0;
+                break;
+            case FECHADO:
+                fechamentos.increment();
+                posicao = 0;
+                preenchidas = 0;
+                falhasNaJanela = 0;
+                break;
+        }
+    }
+
+    /** Avisa os ouvintes (fora do lock) se o estado mudou. */
+    private void avisarSeMudou(Estado anterior, Estado atual) {
+        if (atual != anterior) {
+            for (BiConsumer<Estado, Estado> ouvinte : ouvintes) {
+                ouvinte.accept(anterior, atual);
+            }
+        }
+    }
+
+    /**
+     * Registra um ouvinte chamado a cada mudança de estado, com o estado anterior e o novo
+     * (ex: para registrar em log ou exportar como métrica).
+     */
+    public void adicionarOuvinte(BiConsumer<Estado, Estado> ouvinte) {
+        ouvintes.add(ouvinte);
+    }
+
+    public synchronized Estado getEstado() {
+        return estado;
+    }
+
+    /** Quantas vezes o disjuntor abriu. */
+    public long getAberturas() {
+        return aberturas.sum();
+    }
+
+    /** Quantas vezes o disjuntor passou para MEIO_ABERTO. */
+    public long getMeioAberturas() {
+        return meioAberturas.sum();
+    }
+
+    /** Quantas vezes o disjuntor voltou a fechar depois de aberto. */
+    public long getFechamentos() {
+        return fechamentos.sum();
+    }
+
+    /** Quantas chamadas foram recusadas sem chegar ao servidor. */
+    public long getRejeitadas() {
+        return rejeitadas.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "Disjuntor[" + nome + ": " + getEstado() + ", aberturas=" + getAberturas()
+                + ", fechamentos=" + getFechamentos() + ", rejeitadas=" + getRejeitadas() + "]";
+    }
+
+    /**
+     * Erro devolvido, sem chamar o servidor, enquanto o disjuntor está aberto.
+     */
+    public static class CircuitoAberto extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public CircuitoAberto(String nome) {
+            super("Circuito aberto para " + nome + ": chamadas suspensas temporariamente.");
+        }
+    }
+
+    /** Cria o erro usado quando este disjuntor recusa uma chamada. */
+    CircuitoAberto circuitoAberto() {
+        return new CircuitoAberto(nome);
+    }
+}
@@ -0,0 +1,194 @@
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Escalonador das avaliações por custo, com duas faixas:
+ * - expressões baratas (custo abaixo do limiar) são avaliadas na hora, na própria thread que atende
+ *   a requisição: nenhuma fila, nenhuma troca de thread;
+ * - expressões pesadas vão para um pool separado e limitado (poucas threads e uma fila curta). Assim
+ *   elas nunca ocupam mais que essas threads, as pequenas nunca esperam atrás delas e, com a fila
+ *   cheia, a pesada é recusada (ControleAdmissao.Recusa.FILA_PESADAS) em vez de acumular.
+ *
+ * O custo é a quantidade de tokens da expressão (ver LimitesExpressao), conhecido antes de qualquer
+ * análise. Como também é um AvaliadorExpressoes, o escalonador pode substituir o motor nos servidores:
+ * avaliarExpressao verifica os limites, calcula o custo e escolhe a faixa.
+ */
+public final class EscalonadorAvaliacao implements AvaliadorExpressoes {
+
+    private final AvaliadorExpressoes motor;
+    private final LimitesExpressao limites;
+    private final Metricas metricas;
+    private final int limiarCusto;
+    private final ThreadPoolExecutor pesadas; // null = sem faixa separada (tudo na hora).
+    private final LongAdder avaliacoesPesadas = new LongAdder();
+
+    /**
+     * @param motor O motor de cálculo (normalmente já medido pelas métricas).
+     * @param limites Os limites verificados por avaliarExpressao.
+     * @param metricas Onde as expressões fora dos limites são contadas e os medidores registrados.
+     * @param limiarCusto A partir de quantos tokens a expressão é pesada (0 = nunca).
+     * @param threads Threads da faixa das pesadas.
+     * @param fila Expressões pesadas que podem esperar por uma dessas threads.
+     */
+    public EscalonadorAvaliacao(AvaliadorExpressoes motor, LimitesExpressao limites, Metricas metricas,
+                                int limiarCusto, int threads, int fila) {
+        this.motor = motor;
+        this.limites = limites;
+        this.metricas = metricas;
+        this.limiarCusto = limiarCusto;
+        if (limiarCusto > 0) {
+            AtomicInteger contador = new AtomicInteger();
+            this.pesadas = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, fila)), tarefa -> {
+                        Thread thread = new ThreadPesada(tarefa, "calculadora-pesadas-" + metricas.getTransporte()
+                                + "-" + contador.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            metricas.registrarMedidor("filaPesadas", () -> pesadas.getQueue().size());
+        } else {
+            this.pesadas = null;
+        }
+        metricas.registrarMedidor("avaliacoesPesadas", avaliacoesPesadas::sum);
+    }
+
+    /**
+     * O escalonador configurado pelas propriedades do sistema, com os LimitesExpressao configurados:
+     * calculadora.escalonador.limiar (tokens, padrão 1000; 0 desliga a faixa das pesadas),
+     * calculadora.escalonador.threads (padrão: metade das CPUs, no mínimo 1) e
+     * calculadora.escalonador.fila (padrão 64).
+     */
+    public static EscalonadorAvaliacao configurado(AvaliadorExpressoes motor, Metricas metricas) {
+        return new EscalonadorAvaliacao(motor, LimitesExpressao.configurados(), metricas,
+                Integer.getInteger("calculadora.escalonador.limiar", 1000),
+                Integer.getInteger("calculadora.escalonador.threads",
+                        Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+                Integer.getInteger("calculadora.escalonador.fila", 64));
+    }
+
+    public LimitesExpressao getLimites() {
+        return limites;
+    }
+
+    /**
+     * Verifica os limites de uma expressão já recebida por inteiro.
+     * @return O custo (tokens).
+     * @throws IllegalArgumentException Se algum limite for ultrapassado (contado como expressão inválida).
+     */
+    public int verificar(String expressao) {
+        try {
+            return limites.verificar(expressao);
+        } catch (IllegalArgumentException e) {
+            metricas.registrarErro(Metricas.TipoErro.EXPRESSAO_INVALIDA);
+            throw e;
+        }
+    }
+
+    /** Indica se uma expressão com esse custo vai para a faixa das pesadas. */
+    public boolean isPesada(int custo) {
+        return pesadas != null && custo >= limiarCusto && !(Thread.currentThread() instanceof ThreadPesada);
+    }
+
+    /** Verifica os limites e avalia na faixa certa (esperando o resultado, se for pesada). */
+    @Override
+    public double avaliarExpressao(String expressao) {
+        return avaliar(expressao, verificar(expressao));
+    }
+
+    /**
+     * Avalia uma expressão já verificada, na faixa do seu custo, e espera o resultado.
+     * @throws ControleAdmissao.Recusada Se for pesada e a fila das pesadas estiver cheia.
+     */
+    public double avaliar(String expressao, int custo) {
+        if (!isPesada(custo)) {
+            return motor.avaliarExpressao(expressao);
+        }
+        Future<Double> resultado = executarPesada(() -> motor.avaliarExpressao(expressao));
+        try {
+            return resultado.get();
+        } catch (ExecutionException e) {
+            // Os erros de cálculo voltam como se a avaliação tivesse sido feita nesta thread.
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            resultado.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Avaliação interrompida.", e);
+        }
+    }
+
+    /**
+     * Avalia uma expressão já verificada sem bloquear quem chama: as baratas na hora (o futuro já
+     * volta completo), as pesadas no pool separado. Para servidores que não podem esperar, como
+     * um laço de seleção NIO ou as threads do servidor HTTP.
+     * @return O resultado, ou a falha (erro de cálculo ou ControleAdmissao.Recusada).
+     */
+    public CompletableFuture<Double> avaliarAsync(String expressao, int custo) {
+        if (!isPesada(custo)) {
+            try {
+                return CompletableFuture.completedFuture(motor.avaliarExpressao(expressao));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return executarPesada(() -> motor.avaliarExpressao(expressao));
+    }
+
+    /**
+     * Executa uma tarefa qualquer na faixa das pesadas (ex: um quadro binário inteiro). Sem essa faixa
+     * (limiar 0), a tarefa é executada na hora, nesta thread.
+     * @return O resultado, ou a falha (ControleAdmissao.Recusada com a fila cheia).
+     */
+    public <T> CompletableFuture<T> executarPesada(Supplier<T> tarefa) {
+        CompletableFuture<T> resultado = new CompletableFuture<>();
+        if (pesadas == null) {
+            try {
+                resultado.complete(tarefa.get());
+            } catch (RuntimeException e) {
+                resultado.completeExceptionally(e);
+            }
+            return resultado;
+        }
+        try {
+            pesadas.execute(() -> {
+                avaliacoesPesadas.increment();
+                try {
+                    resultado.complete(tarefa.get());
+                } catch (RuntimeException e) {
+                    resultado.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            metricas.registrarErro(Metricas.TipoErro.SOBRECARGA);
+            resultado.completeExceptionally(new ControleAdmissao.Recusada(ControleAdmissao.Recusa.FILA_PESADAS));
+        }
+        return resultado;
+    }
+
+    @Override
+    public String getNome() {
+        return motor.getNome();
+    }
+
+    @Override
+    public String toString() {
+        return pesadas == null ? "sem faixa de expressões pesadas"
+                : "expressões a partir de " + limiarCusto + " tokens em " + pesadas.getCorePoolSize()
+                + " thread(s) separada(s), fila de " + (pesadas.getQueue().size() + pesadas.getQueue().remainingCapacity());
+    }
+
+    /** As threads da faixa das pesadas: uma pesada avaliada nelas não é reenviada ao pool. */
+    private static final class ThreadPesada extends Thread {
+        ThreadPesada(Runnable tarefa, String nome) {
+            super(tarefa, nome);
+        }
+    }
+}
@@ -0,0 +1,305 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Forma compilada de uma expressão aritmética: um programa em notação polonesa reversa (RPN).
+ * Cada instrução empilha uma constante ou variável, ou aplica um operador aos dois valores do topo da pilha.
+ *
+ * A classe é imutável (os arrays nunca são alterados depois da construção), por isso uma mesma
+ * instância pode ser guardada no cache e avaliada por várias threads ao mesmo tempo.
+ */
+public final class ExpressaoCompilada {
+
+    // --- Códigos das instruções ---
+    static final byte CONSTANTE = 0;     // Empilha constantes[i].
+    static final byte SOMA = 1;
+    static final byte SUBTRACAO = 2;
+    static final byte MULTIPLICACAO = 3;
+    static final byte DIVISAO = 4;
+    static final byte DESCARTE = 5;      // Remove os dois valores do topo sem empilhar nada.
+    static final byte VARIAVEL = 6;      // Empilha o valor da variável de índice indices[i].
+
+    // Quantidade de linhas processadas de cada vez na avaliação em lote (mantém os vetores no cache da CPU).
+    private static final int TAMANHO_BLOCO = 1024;
+
+    // Usado por avaliar() quando a expressão não tem variáveis.
+    private static final double[] SEM_VALORES = new double[0];
+
+    // Pilha de execução reaproveitada por cada thread.
+    private static final ThreadLocal<double[]> PILHA = ThreadLocal.withInitial(() -> new double[16]);
+
+    private final byte[] codigos;
+    private final double[] constantes;   // Paralelo a 'codigos': o valor usado pelas instruções CONSTANTE.
+    private final int[] indices;         // Paralelo a 'codigos': a variável usada pelas instruções VARIAVEL.
+    private final int quantidadeVariaveis;
+    private final int profundidadeMaxima;
+
+    ExpressaoCompilada(byte[] codigos, double[] constantes, int[] indices,
+                       int quantidadeVariaveis, int profundidadeMaxima) {
+        this.codigos = codigos;
+        this.constantes = constantes;
+        this.indices = indices;
+        this.quantidadeVariaveis = quantidadeVariaveis;
+        this.profundidadeMaxima = profundidadeMaxima;
+    }
+
+    /**
+     * Executa o programa de uma expressão sem variáveis e devolve o resultado.
+     * @return O resultado do cálculo.
+     * @throws ArithmeticException Se ocorrer uma divisão por zero.
+     */
+    public double avaliar() {
+        return avaliar(SEM_VALORES);
+    }
+
+    /**
+     * Executa o programa com os valores informados para as variáveis.
+     * @param valores O valor de cada variável, na ordem em que foram declaradas na compilação.
+     * @return O resultado do cálculo.
+     * @throws IllegalArgumentException Se a quantidade de valores não corresponder às variáveis.
+     * @throws ArithmeticException Se ocorrer uma divisão por zero.
+     */
+    public double avaliar(double[] valores) {
+        verificarQuantidade(valores.length);
+
+        // Expressões só com constantes são resolvidas na compilação e viram uma única instrução.
+        if (codigos.length == 1 && codigos[0] == CONSTANTE) {
+            return constantes[0];
+        }
+
+        double[] pilha = PILHA.get();
+        if (pilha.length < profundidadeMaxima) {
+            pilha = new double[Math.max(profundidadeMaxima, pilha.length * 2)];
+            PILHA.set(pilha);
+        }
+
+        int topo = 0; // Quantidade de valores na pilha.
+        for (int i = 0; i < codigos.length; i++) {
+            switch (codigos[i]) {
+                case CONSTANTE:
+                    pilha[topo++] = constantes[i];
+                    break;
+                case VARIAVEL:
+                    pilha[topo++] = valores[indices[i]];
+                    break;
+                case SOMA:
+                    topo--;
+                    pilha[topo - 1] = pilha[topo - 1] + pilha[topo];
+                    break;
+                case SUBTRACAO:
+                    topo--;
+                    pilha[topo - 1] = pilha[topo - 1] - pilha[topo];
+                    break;
+                case MULTIPLICACAO:
+                    topo--;
+                    pilha[topo - 1] = pilha[topo - 1] * pilha[topo];
+                    break;
+                case DIVISAO:
+                    topo--;
+                    if (pilha[topo] == 0) {
+                        throw new ArithmeticException("Divisão por zero!");
+                    }
+                    pilha[topo - 1] = pilha[topo - 1] / pilha[topo];
+                    break;
+                case DESCARTE:
+                    topo -= 2;
+                    break;
+            }
+        }
+        return pilha[0];
+    }
+
+    /**
+     * Avalia a expressão para muitas linhas de uma vez, com os valores organizados em colunas:
+     * colunas[v][linha] é o valor da variável v naquela linha.
+     *
+     * Em vez de percorrer o programa uma vez por linha, cada instrução é aplicada a um bloco
+     * inteiro de linhas (laços simples sobre arrays, que a JVM consegue vetorizar).
+     * @param colunas Uma coluna por variável, todas com o mesmo número de linhas.
+     * @return O resultado de cada linha.
+     * @throws IllegalArgumentException Se as colunas não corresponderem às variáveis ou tiverem tamanhos diferentes.
+     * @throws ArithmeticException Se ocorrer uma divisão por zero em alguma linha.
+     */
+    public double[] avaliarLote(double[][] colunas) {
+        verificarQuantidade(colunas.length);
+        if (quantidadeVariaveis == 0) {
+            throw new IllegalArgumentException("A expressão não tem variáveis; use avaliar().");
+        }
+        int linhas = colunas[0].length;
+        for (double[] coluna : colunas) {
+            if (coluna.length != linhas) {
+                throw new IllegalArgumentException("Todas as colunas devem ter o mesmo número de linhas.");
+            }
+        }
+
+        double[] resultados = new double[linhas];
+        if (codigos.length == 1 && codigos[0] == CONSTANTE) {
+            Arrays.fill(resultados, constantes[0]);
+            return resultados;
+        }
+
+        // Uma "pilha de vetores": cada posição da pilha guarda os valores de um bloco de linhas.
+        int tamanhoBloco = Math.min(linhas, TAMANHO_BLOCO);
+        double[][] pilha = new double[profundidadeMaxima][tamanhoBloco];
+
+        for (int inicio = 0; inicio < linhas; inicio += tamanhoBloco) {
+            int n = Math.min(tamanhoBloco, linhas - inicio);
+            int topo = 0;
+
+            for (int i = 0; i < codigos.length; i++) {
+                byte codigo = codigos[i];
+                if (codigo == CONSTANTE) {
+                    Arrays.fill(pilha[topo++], 0, n, constantes[i]);
+                } else if (codigo == VARIAVEL) {
+                    System.arraycopy(colunas[indices[i]], inicio, pilha[topo++], 0, n);
+                } else if (codigo == DESCARTE) {
+                    topo -= 2;
+                } else {
+                    topo--;
+                    aplicarEmBloco(codigo, pilha[topo - 1], pilha[topo], n);
+                }
+            }
+            System.arraycopy(pilha[0], 0, resultados, inicio, n);
+        }
+        return resultados;
+    }
+
+    /** Quantidade de instruções do programa. */
+    public int tamanho() {
+        return codigos.length;
+    }
+
+    /** Quantidade de variáveis declaradas na compilação. */
+    public int getQuantidadeVariaveis() {
+        return quantidadeVariaveis;
+    }
+
+    /**
+     * Quantidade de bytes que o programa ocupa no formato binário (ver escreverBytecode).
+     */
+    public int tamanhoBytecode() {
+        int tamanho = 8; // quantidade de instruções + quantidade de variáveis
+        for (byte codigo : codigos) {
+            tamanho += 1;
+            if (codigo == CONSTANTE) tamanho += 8;
+            else if (codigo == VARIAVEL) tamanho += 4;
+        }
+        return tamanho;
+    }
+
+    /**
+     * Escreve o programa num formato binário compacto, para ser enviado já compilado pela rede:
+     * [int instruções][int variáveis] e, para cada instrução, [byte código] seguido de
+     * [double constante] (CONSTANTE) ou [int índice] (VARIAVEL).
+     * @param destino O buffer de destino, com pelo menos tamanhoBytecode() bytes livres.
+     */
+    public void escreverBytecode(ByteBuffer destino) {
+        destino.putInt(codigos.length);
+        destino.putInt(quantidadeVariaveis);
+        for (int i = 0; i < codigos.length; i++) {
+            destino.put(codigos[i]);
+            if (codigos[i] == CONSTANTE) destino.putDouble(constantes[i]);
+            else if (codigos[i] == VARIAVEL) destino.putInt(indices[i]);
+        }
+    }
+
+    /**
+     * Lê um programa escrito por escreverBytecode. Como os bytes vêm de fora (da rede),
+     * o programa é verificado antes de ser aceito: códigos conhecidos, índices de variáveis
+     * válidos e a pilha nunca fica sem operandos, terminando com exatamente um valor.
+     * @param origem O buffer posicionado no início do programa.
+     * @return O programa lido.
+     * @throws IllegalArgumentException Se o programa for inválido.
+     */
+    public static ExpressaoCompilada lerBytecode(ByteBuffer origem) {
+        int quantidade = origem.getInt();
+        int variaveis = origem.getInt();
+        // Cada instrução ocupa pelo menos 1 byte: impede alocar arrays enormes com um cabeçalho falso.
+        if (quantidade <= 0 || quantidade > origem.remaining() || variaveis < 0) {
+            throw new IllegalArgumentException("Programa inválido: cabeçalho inconsistente.");
+        }
+
+        byte[] codigos = new byte[quantidade];
+        double[] constantes = new double[quantidade];
+        int[] indices = new int[quantidade];
+        int profundidade = 0;
+        int profundidadeMaxima = 0;
+
+        for (int i = 0; i < quantidade; i++) {
+            byte codigo = origem.get();
+            codigos[i] = codigo;
+            switch (codigo) {
+                case CONSTANTE:
+                    constantes[i] = origem.getDouble();
+                    profundidade++;
+                    break;
+                case VARIAVEL:
+                    indices[i] = origem.getInt();
+                    if (indices[i] < 0 || indices[i] >= variaveis) {
+                        throw new IllegalArgumentException("Programa inválido: variável " + indices[i] + " inexistente.");
+                    }
+                    profundidade++;
+                    break;
+                case SOMA:
+                case SUBTRACAO:
+                case MULTIPLICACAO:
+                case DIVISAO:
+                case DESCARTE:
+                    if (profundidade < 2) {
+                        throw new IllegalArgumentException("Programa inválido: faltam operandos na instrução " + i + ".");
+                    }
+                    profundidade -= (codigo == DESCARTE) ? 2 : 1;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Programa inválido: código " + codigo + " desconhecido.");
+            }
+            profundidadeMaxima = Math.max(profundidadeMaxima, profundidade);
+        }
+        if (profundidade != 1) {
+            throw new IllegalArgumentException("Programa inválido: deve deixar exatamente um resultado.");
+        }
+        return new ExpressaoCompilada(codigos, constantes, indices, variaveis, profundidadeMaxima);
+    }
+
+    /** Converte um operador da expressão ('+', '-', '*', '/' ou '(') no código da instrução. */
+    static byte codigoDoOperador(char op) {
+        switch (op) {
+            case '+': return SOMA;
+            case '-': return SUBTRACAO;
+            case '*': return MULTIPLICACAO;
+            case '/': return DIVISAO;
+            default:  return DESCARTE;
+        }
+    }
+
+    /** Aplica a operação elemento a elemento: a[k] = a[k] (op) b[k], para as n primeiras posições. */
+    private static void aplicarEmBloco(byte codigo, double[] a, double[] b, int n) {
+        switch (codigo) {
+            case SOMA:
+                for (int k = 0; k < n; k++) a[k] += b[k];
+                break;
+            case SUBTRACAO:
+                for (int k = 0; k < n; k++) a[k] -= b[k];
+                break;
+            case MULTIPLICACAO:
+                for (int k = 0; k < n; k++) a[k] *= b[k];
+                break;
+            case DIVISAO:
+                // Verifica os divisores antes, deixando o laço da divisão sem desvios.
+                for (int k = 0; k < n; k++) {
+                    if (b[k] == 0) {
+                        throw new ArithmeticException("Divisão por zero!");
+                    }
+                }
+                for (int k = 0; k < n; k++) a[k] /= b[k];
+                break;
+        }
+    }
+
+    private void verificarQuantidade(int recebidos) {
+        if (recebidos != quantidadeVariaveis) {
+            throw new IllegalArgumentException("A expressão tem " + quantidadeVariaveis
+                    + " variável(is), mas foram informados " + recebidos + " valor(es).");
+        }
+    }
+}
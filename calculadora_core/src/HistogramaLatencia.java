@@ -0,0 +1,141 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latências (em nanossegundos) no estilo do HdrHistogram: faixas logarítmicas,
+ * cada uma dividida em 32 partes iguais, então qualquer valor é guardado com erro relativo de
+ * no máximo ~3%, de 1 ns a centenas de anos, em um array fixo de ~1900 contadores.
+ *
+ * Registrar um valor não usa lock nem aloca: é um cálculo de índice com operações de bits e um
+ * incremento atômico. Os percentis são calculados sobre uma cópia (ver resumo()), fora do caminho
+ * das requisições.
+ */
+public final class HistogramaLatencia {
+
+    // Cada potência de 2 é dividida em 2^BITS_SUBFAIXA partes (32): define a precisão (~1/32).
+    private static final int BITS_SUBFAIXA = 5;
+    private static final int SUBFAIXAS = 1 << BITS_SUBFAIXA;
+    // Valores abaixo deste limite têm um contador cada um (precisão exata).
+    private static final long LIMITE_LINEAR = 2L * SUBFAIXAS;
+    // Índice do maior valor possível (Long.MAX_VALUE) + 1.
+    private static final int CONTADORES = indice(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray contagens = new AtomicLongArray(CONTADORES);
+    private final LongAdder soma = new LongAdder();
+    private final AtomicLong maximo = new AtomicLong();
+
+    /** Registra uma latência (valores negativos, de relógios que voltaram, contam como 0). */
+    public void registrar(long nanos) {
+        long valor = Math.max(0, nanos);
+        contagens.incrementAndGet(indice(valor));
+        soma.add(valor);
+        // O CAS só é tentado quando o valor é de fato um novo máximo (raro depois do aquecimento).
+        long atual;
+        while (valor > (atual = maximo.get()) && !maximo.compareAndSet(atual, valor)) {
+            // Outra thread mudou o máximo ao mesmo tempo: tenta de novo.
+        }
+    }
+
+    /**
+     * Zera o histograma. Valores registrados durante a limpeza podem ser perdidos ou contados
+     * pela metade (ex: na contagem e não na soma), o que é aceitável para métricas.
+     */
+    public void zerar() {
+        for (int i = 0; i < CONTADORES; i++) {
+            contagens.set(i, 0);
+        }
+        soma.reset();
+        maximo.set(0);
+    }
+
+    /** Uma cópia do histograma neste instante, para calcular percentis sem disputar com os registros. */
+    public Resumo resumo() {
+        long[] copia = new long[CONTADORES];
+        long total = 0;
+        for (int i = 0; i < CONTADORES; i++) {
+            copia[i] = contagens.get(i);
+            total += copia[i];
+        }
+        return new Resumo(copia, total, soma.sum(), maximo.get());
+    }
+
+    /**
+     * Índice do contador de um valor: valores pequenos têm um contador cada; os demais, o da
+     * sua potência de 2 (expoente) e da subfaixa dentro dela (os 5 bits seguintes ao mais alto).
+     */
+    static int indice(long valor) {
+        if (valor < LIMITE_LINEAR) {
+            return (int) valor;
+        }
+        int deslocamento = 63 - Long.numberOfLeadingZeros(valor) - BITS_SUBFAIXA;
+        return deslocamento * SUBFAIXAS + (int) (valor >>> deslocamento);
+    }
+
+    /** Maior valor guardado no contador de índice 'indice' (o inverso de indice()). */
+    static long limiteSuperior(int indice) {
+        if (indice < LIMITE_LINEAR) {
+            return indice;
+        }
+        int deslocamento = indice / SUBFAIXAS - 1;
+        long subfaixa = indice % SUBFAIXAS + SUBFAIXAS;
+        long limite = ((subfaixa + 1) << deslocamento) - 1;
+        return limite < 0 ? Long.MAX_VALUE : limite;
+    }
+
+    /**
+     * Cópia imutável de um histograma: contagem, média, máximo e percentis.
+     */
+    public static final class Resumo {
+        private final long[] contagens;
+        private final long total;
+        private final long soma;
+        private final long maximo;
+
+        private Resumo(long[] contagens, long total, long soma, long maximo) {
+            this.contagens = contagens;
+            this.total = total;
+            this.soma = soma;
+            this.maximo = maximo;
+        }
+
+        public long getContagem() {
+            return total;
+        }
+
+        /** Soma de todas as latências (ns). */
+        public long getSoma() {
+            return soma;
+        }
+
+        /** Média (ns), ou 0 sem registros. */
+        public double getMedia() {
+            return total == 0 ? 0 : (double) soma / total;
+        }
+
+        /** Maior latência registrada (ns). */
+        public long getMaximo() {
+            return maximo;
+        }
+
+        /**
+         * O percentil pedido (ns), com a precisão do histograma: o maior valor da faixa em que ele cai,
+         * limitado ao máximo registrado.
+         * @param percentil Entre 0 e 100 (ex: 99.9).
+         */
+        public long percentil(double percentil) {
+            if (total == 0) {
+                return 0;
+            }
+            long posicao = Math.max(1, (long) Math.ceil(percentil / 100.0 * total));
+            long acumulado = 0;
+            for (int i = 0; i < contagens.length; i++) {
+                acumulado += contagens[i];
+                if (acumulado >= posicao) {
+                    return Math.min(limiteSuperior(i), maximo);
+                }
+            }
+            return maximo;
+        }
+    }
+}
@@ -0,0 +1,457 @@
+import java.util.Arrays;
+
+/**
+ * Classe responsável por avaliar expressões aritméticas complexas
+ * que incluem múltiplos números, operadores (+, -, *, /) e parênteses.
+ * Utiliza o algoritmo baseado em pilhas para respeitar a ordem de precedência.
+ *
+ * A expressão é primeiro compilada para um programa em notação polonesa reversa
+ * (ExpressaoCompilada), que fica guardado num cache compartilhado. Pedidos repetidos
+ * da mesma expressão não precisam ser analisados novamente.
+ *
+ * Expressões também podem ter variáveis com nome (ex: "a * (b + 2) / c"): a expressão é
+ * compilada uma vez com compilar(expressao, "a", "b", "c") e depois avaliada para quantos
+ * conjuntos de valores forem necessários, um a um ou em lote.
+ *
+ * É o motor "compilado" dos servidores (ver AvaliadorExpressoes) e pode ser usado por várias threads:
+ * o estado de compilação é por thread e o cache é segmentado.
+ */
+public class InterpretadorAritmetico implements AvaliadorExpressoes {
+
+    // Potências de 10 exatamente representáveis em double, usadas na conversão rápida de números.
+    private static final double[] POTENCIAS_DE_DEZ = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+
+    // Lista vazia de variáveis, usada pelas expressões puramente numéricas.
+    private static final String[] SEM_VARIAVEIS = new String[0];
+
+    // Cada thread (ex: cada conexão atendida pelo servidor) reaproveita o seu próprio estado de compilação.
+    private static final ThreadLocal<EstadoCompilacao> ESTADO = ThreadLocal.withInitial(EstadoCompilacao::new);
+
+    // Cache de expressões compiladas. Por padrão é o cache único da JVM, compartilhado por todos os interpretadores.
+    private final CacheExpressoes cache;
+
+    /**
+     * Cria um interpretador que usa o cache compartilhado da aplicação.
+     */
+    public InterpretadorAritmetico() {
+        this(CacheExpressoes.compartilhado());
+    }
+
+    /**
+     * Cria um interpretador que usa um cache específico.
+     * @param cache O cache onde as expressões compiladas serão guardadas.
+     */
+    public InterpretadorAritmetico(CacheExpressoes cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Avalia uma expressão aritmética complexa (ex: "3 * (5 + 2) - 1").
+     * @param expressao A string da expressão.
+     * @return O resultado do cálculo.
+     * @throws IllegalArgumentException Se a expressão for mal formada ou inválida.
+     */
+    @Override
+    public double avaliarExpressao(String expressao) {
+        return compilar(expressao).avaliar();
+    }
+
+    @Override
+    public String getNome() {
+        return "compilado";
+    }
+
+    /**
+     * Obtém a forma compilada de uma expressão, consultando o cache antes de compilar.
+     * A chave do cache é a expressão normalizada (sem espaços em branco).
+     * @param expressao A string da expressão.
+     * @return A expressão compilada, imutável e segura para uso por várias threads.
+     * @throws IllegalArgumentException Se a expressão for mal formada ou inválida.
+     */
+    public ExpressaoCompilada compilar(String expressao) {
+        return compilar(expressao, SEM_VARIAVEIS);
+    }
+
+    /**
+     * Compila uma expressão com variáveis (ex: compilar("a * (b + 2) / c", "a", "b", "c")).
+     * Na avaliação, o valor da variável de índice i é a posição i do array de valores.
+     * @param expressao A string da expressão.
+     * @param variaveis Os nomes das variáveis que podem aparecer na expressão.
+     * @return A expressão compilada, imutável e segura para uso por várias threads.
+     * @throws IllegalArgumentException Se a expressão ou o nome de alguma variável for inválido.
+     */
+    public ExpressaoCompilada compilar(String expressao, String... variaveis) {
+        for (String nome : variaveis) {
+            if (!isNomeVariavel(nome)) {
+                throw new IllegalArgumentException("Nome de variável inválido: " + nome);
+            }
+        }
+
+        // As variáveis fazem parte da chave: a mesma expressão com outra lista de nomes é outro programa.
+        String normalizada = normalizar(expressao);
+        String chave = normalizada;
+        if (variaveis.length > 0) {
+            chave = normalizada + '\u0000' + String.join(",", variaveis);
+        }
+
+        ExpressaoCompilada compilada = cache.obter(chave);
+        if (compilada == null) {
+            compilada = compilarSemCache(normalizada, variaveis);
+            cache.guardar(chave, compilada);
+        }
+        return compilada;
+    }
+
+    /**
+     * Compila a expressão (algoritmo de pilhas) sem passar pelo cache.
+     * Em vez de calcular os valores, cada operação aplicada gera uma instrução do programa.
+     * Operações entre constantes são calculadas já na compilação (na mesma ordem de antes),
+     * por isso os erros, como a divisão por zero, continuam aparecendo no mesmo ponto.
+     */
+    private ExpressaoCompilada compilarSemCache(String expressao, String[] variaveis) {
+        // Pilha de operadores e programa em construção, reaproveitados pela thread atual.
+        EstadoCompilacao estado = ESTADO.get();
+        estado.limpar();
+        estado.variaveis = variaveis;
+
+        // --- 1. Varredura e Compilação em Passagem Única (caractere a caractere, sem regex) ---
+        // Cada token é identificado e aplicado ao algoritmo de pilhas no mesmo instante em que é lido.
+        // Espaços em branco são ignorados em qualquer posição, inclusive no meio de um número
+        // (ex: "1 2" equivale a "12"), exatamente como na antiga remoção de espaços por regex.
+        int tamanho = expressao.length();
+        int i = 0;
+        while (i < tamanho) {
+            char c = expressao.charAt(i);
+
+            if (isEspaco(c)) {
+                i++;
+                continue;
+            }
+
+            // Caso 1: Parêntese de abertura.
+            if (c == '(') {
+                estado.empilharOperador(c); // Parênteses de abertura vão direto para a pilha de operadores.
+                i++;
+            }
+            // Caso 2: Parêntese de fechamento.
+            else if (c == ')') {
+                // Enquanto não encontrar o parêntese de abertura correspondente, resolve as operações internas.
+                while (!estado.semOperadores() && estado.topoOperador() != '(') {
+                    aplicarOperacao(estado);
+                }
+                // Verifica se faltou parêntese de abertura.
+                if (estado.semOperadores()) throw new IllegalArgumentException("Parênteses não balanceados.");
+
+                estado.desempilharOperador(); // Remove o parêntese de abertura da pilha.
+                i++;
+            }
+            // Caso 3: O token é um operador (+, -, *, /).
+            else if (isOperador(c)) {
+                // Aplica operações anteriores que têm precedência maior ou igual (da esquerda para a direita).
+                while (!estado.semOperadores() && temPrecedencia(c, estado.topoOperador())) {
+                    aplicarOperacao(estado);
+                }
+                estado.empilharOperador(c); // Coloca o operador atual na pilha.
+                i++;
+            }
+            // Caso 4: Qualquer outro caractere inicia um token (número, variável ou texto inválido).
+            else {
+                i = lerToken(expressao, i, estado);
+            }
+        }
+
+        // --- 2. Finalização ---
+
+        // Aplica todas as operações restantes na pilha.
+        while (!estado.semOperadores()) {
+            aplicarOperacao(estado);
+        }
+
+        // Se a expressão foi válida, o programa deve deixar exatamente um resultado na pilha.
+        if (estado.profundidade != 1 || !estado.semOperadores()) {
+            throw new IllegalArgumentException("Estrutura da expressão inválida.");
+        }
+
+        return estado.gerarPrograma();
+    }
+
+    // --- Métodos Auxiliares ---
+
+    /**
+     * Remove os espaços em branco da expressão, que não têm significado na linguagem.
+     * Se não houver nenhum espaço, devolve a própria string (sem alocar).
+     */
+    private String normalizar(String expressao) {
+        int tamanho = expressao.length();
+        int i = 0;
+        while (i < tamanho && !isEspaco(expressao.charAt(i))) {
+            i++;
+        }
+        if (i == tamanho) {
+            return expressao;
+        }
+
+        StringBuilder normalizada = new StringBuilder(tamanho);
+        normalizada.append(expressao, 0, i);
+        for (; i < tamanho; i++) {
+            char c = expressao.charAt(i);
+            if (!isEspaco(c)) normalizada.append(c);
+        }
+        return normalizada.toString();
+    }
+
+    /**
+     * Lê o token que começa na posição 'inicio' e o adiciona ao programa (constante ou variável).
+     * O token vai até o próximo operador/parêntese (ou o fim da expressão), ignorando espaços.
+     * O caso comum ("123" ou "12.5") é convertido no próprio lugar, sem criar substrings;
+     * qualquer outro formato cai no caminho lento, que reproduz a validação original.
+     * @return A posição logo após o fim do token.
+     */
+    private int lerToken(String expressao, int inicio, EstadoCompilacao estado) {
+        int tamanho = expressao.length();
+        int i = inicio;
+        long mantissa = 0;
+        int digitos = 0;         // Total de dígitos lidos (parte inteira + fracionária).
+        int casasDecimais = 0;   // Dígitos após o ponto.
+        boolean temPonto = false;
+        boolean simples = true;  // Continua true enquanto o token tiver o formato \d+(\.\d+)?
+
+        for (; i < tamanho; i++) {
+            char c = expressao.charAt(i);
+            if (isOperador(c) || c == '(' || c == ')') {
+                break;
+            }
+            if (isEspaco(c) || !simples) {
+                continue;
+            }
+            if (c >= '0' && c <= '9') {
+                mantissa = mantissa * 10 + (c - '0');
+                digitos++;
+                if (temPonto) casasDecimais++;
+            } else if (c == '.' && !temPonto && digitos > 0) {
+                temPonto = true;
+            } else {
+                simples = false;
+            }
+        }
+
+        // Caminho rápido: até 15 dígitos cabem exatamente num double e 10^casas também é exato,
+        // então uma única divisão produz o mesmo valor (corretamente arredondado) que Double.parseDouble.
+        if (simples && (!temPonto || casasDecimais > 0) && digitos <= 15) {
+            double valor = mantissa;
+            if (casasDecimais > 0) {
+                valor /= POTENCIAS_DE_DEZ[casasDecimais];
+            }
+            estado.emitirConstante(valor);
+            return i;
+        }
+
+        // Caminho lento (formatos raros ou inválidos): monta o token sem espaços e valida como antes.
+        StringBuilder token = new StringBuilder(i - inicio);
+        for (int j = inicio; j < i; j++) {
+            char c = expressao.charAt(j);
+            if (!isEspaco(c)) token.append(c);
+        }
+        String texto = token.toString();
+        if (!Character.isDigit(texto.charAt(0))) {
+            // Um token que não começa com dígito só é válido se for uma das variáveis declaradas.
+            int indice = indiceDaVariavel(estado.variaveis, texto);
+            if (indice < 0) {
+                throw new IllegalArgumentException("Caractere desconhecido: " + texto);
+            }
+            estado.emitirVariavel(indice);
+            return i;
+        }
+        try {
+            estado.emitirConstante(Double.parseDouble(texto)); // Coloca o número no programa.
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Token inválido na expressão: " + texto);
+        }
+        return i;
+    }
+
+    /** Procura o nome na lista de variáveis declaradas; devolve -1 se não encontrar. */
+    private int indiceDaVariavel(String[] variaveis, String nome) {
+        for (int i = 0; i < variaveis.length; i++) {
+            if (variaveis[i].equals(nome)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Verifica se o nome é um identificador válido: letra ou '_' seguida de letras, dígitos ou '_'. */
+    private boolean isNomeVariavel(String nome) {
+        if (nome == null || nome.isEmpty() || !(Character.isLetter(nome.charAt(0)) || nome.charAt(0) == '_')) {
+            return false;
+        }
+        for (int i = 1; i < nome.length(); i++) {
+            char c = nome.charAt(i);
+            if (!(Character.isLetterOrDigit(c) || c == '_')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Verifica se um caractere é espaço em branco (mesmo conjunto do '\\s' das expressões regulares).
+     * Também usado pelos LimitesExpressao, para os espaços não contarem como tokens.
+     */
+    static boolean isEspaco(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /** Verifica se um caractere é um operador aritmético básico. */
+    private boolean isOperador(char c) {
+        return c == '+' || c == '-' || c == '*' || c == '/';
+    }
+
+    /**
+     * Determina se o operador op2 tem precedência (ou igualdade, para associatividade) sobre op1.
+     * Isso define se op2 (no topo da pilha) deve ser executado antes de op1 (o novo operador).
+     */
+    private boolean temPrecedencia(char op1, char op2) {
+        // Parênteses de abertura e fechamento não afetam a precedência diretamente.
+        if (op2 == '(' || op2 == ')') {
+            return false;
+        }
+        // Multiplicação e Divisão (op1) NÃO têm precedência sobre Soma e Subtração (op2) no topo da pilha.
+        // *Na verdade, a lógica é: se op1 é mais fraco (ex: '+') e op2 é mais forte (ex: '*'), op2 deve ser executado PRIMEIRO.
+        if ((op1 == '*' || op1 == '/') && (op2 == '+' || op2 == '-')) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Aplica o operador do topo da pilha de operadores aos dois valores do topo da pilha do programa.
+     * Se os dois valores forem constantes, a operação é calculada agora; caso contrário (ex: há uma
+     * variável envolvida) vira uma instrução do programa. Um '(' sem par "aplicado" nunca é calculado:
+     * como no interpretador original, ele só descarta os dois valores (instrução DESCARTE).
+     */
+    private void aplicarOperacao(EstadoCompilacao estado) {
+        char op = estado.desempilharOperador();
+        if (estado.profundidade < 2) {
+            throw new IllegalArgumentException("Faltam operandos para o operador " + op);
+        }
+
+        if (op == '(' || !estado.doisUltimosSaoConstantes()) {
+            estado.emitirOperacao(op);
+            return;
+        }
+
+        // A ordem é importante: b é o segundo operando (removido primeiro), a é o primeiro.
+        double b = estado.removerUltimaConstante();
+        double a = estado.removerUltimaConstante();
+
+        estado.emitirConstante(AvaliadorExpressoes.aplicar(op, a, b));
+    }
+
+    /**
+     * Estado de uma compilação: a pilha de operadores (char) e o programa sendo gerado.
+     * Os arrays crescem sob demanda e são mantidos entre chamadas, por isso não são thread-safe:
+     * cada thread usa a sua instância (ver ESTADO).
+     */
+    private static final class EstadoCompilacao {
+        private char[] operadores = new char[16];
+        private int totalOperadores;
+
+        // Nomes das variáveis aceitas pela expressão sendo compilada.
+        String[] variaveis;
+
+        // Programa em construção (ver ExpressaoCompilada para o significado de cada array).
+        private byte[] codigos = new byte[16];
+        private double[] constantes = new double[16];
+        private int[] indices = new int[16];
+        private int totalInstrucoes;
+
+        // Quantos valores o programa deixa na pilha até aqui, e o máximo atingido.
+        int profundidade;
+        int profundidadeMaxima;
+
+        /** Esvazia o estado (uma compilação anterior pode ter terminado com erro no meio). */
+        void limpar() {
+            totalOperadores = 0;
+            totalInstrucoes = 0;
+            profundidade = 0;
+            profundidadeMaxima = 0;
+        }
+
+        void empilharOperador(char operador) {
+            if (totalOperadores == operadores.length) {
+                operadores = Arrays.copyOf(operadores, operadores.length * 2);
+            }
+            operadores[totalOperadores++] = operador;
+        }
+
+        char desempilharOperador() {
+            return operadores[--totalOperadores];
+        }
+
+        char topoOperador() {
+            return operadores[totalOperadores - 1];
+        }
+
+        boolean semOperadores() {
+            return totalOperadores == 0;
+        }
+
+        void emitirConstante(double valor) {
+            emitir(ExpressaoCompilada.CONSTANTE, valor, 0);
+            profundidade++;
+            profundidadeMaxima = Math.max(profundidadeMaxima, profundidade);
+        }
+
+        void emitirVariavel(int indice) {
+            emitir(ExpressaoCompilada.VARIAVEL, 0, indice);
+            profundidade++;
+            profundidadeMaxima = Math.max(profundidadeMaxima, profundidade);
+        }
+
+        void emitirOperacao(char op) {
+            emitir(ExpressaoCompilada.codigoDoOperador(op), 0, 0);
+            // O parêntese "aplicado" descarta os dois operandos sem produzir resultado (comportamento original).
+            profundidade -= (op == '(') ? 2 : 1;
+        }
+
+        /**
+         * Se as duas últimas instruções empilham constantes, elas são exatamente os dois valores
+         * do topo da pilha e a operação entre elas pode ser resolvida durante a compilação.
+         */
+        boolean doisUltimosSaoConstantes() {
+            return totalInstrucoes >= 2
+                    && codigos[totalInstrucoes - 1] == ExpressaoCompilada.CONSTANTE
+                    && codigos[totalInstrucoes - 2] == ExpressaoCompilada.CONSTANTE;
+        }
+
+        double removerUltimaConstante() {
+            profundidade--;
+            return constantes[--totalInstrucoes];
+        }
+
+        private void emitir(byte codigo, double constante, int indice) {
+            if (totalInstrucoes == codigos.length) {
+                codigos = Arrays.copyOf(codigos, codigos.length * 2);
+                constantes = Arrays.copyOf(constantes, constantes.length * 2);
+                indices = Arrays.copyOf(indices, indices.length * 2);
+            }
+            codigos[totalInstrucoes] = codigo;
+            constantes[totalInstrucoes] = constante;
+            indices[totalInstrucoes] = indice;
+            totalInstrucoes++;
+        }
+
+        /** Copia o programa gerado para uma ExpressaoCompilada imutável. */
+        ExpressaoCompilada gerarPrograma() {
+            return new ExpressaoCompilada(
+                    Arrays.copyOf(codigos, totalInstrucoes),
+                    Arrays.copyOf(constantes, totalInstrucoes),
+                    Arrays.copyOf(indices, totalInstrucoes),
+                    variaveis.length,
+                    profundidadeMaxima);
+        }
+    }
+}
@@ -1,18 +1,17 @@
-import java.util.Stack;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
 /**
- * Classe responsável por avaliar expressões aritméticas complexas
- * que incluem múltiplos números, operadores (+, -, *, /) e parênteses.
- * Utiliza o algoritmo baseado em pilhas para respeitar a ordem de precedência.
+ * O interpretador original da calculadora (motor "pilha"): a cada chamada, separa a expressão em tokens
+ * com expressões regulares e a avalia com duas pilhas (valores e operadores), respeitando a precedência.
+ *
+ * Não guarda nada entre chamadas, por isso é seguro para várias threads. É bem mais lento que o
+ * InterpretadorAritmetico, mas continua disponível como referência (-Dcalculadora.avaliador=pilha),
+ * por exemplo para conferir se uma otimização do motor compilado mudou algum resultado.
  */
-public class InterpretadorAritmetico {
+public class InterpretadorPilha implements AvaliadorExpressoes {
 
-    /**
-     * Avalia uma expressão aritmética complexa (ex: "3 * (5 + 2) - 1").
-     * @param expressao A string da expressão.
-     * @return O resultado do cálculo.
-     * @throws IllegalArgumentException Se a expressão for mal formada ou inválida.
-     */
+    @Override
     public double avaliarExpressao(String expressao) {
         // --- 1. Pré-processamento e Tokenização (preparar para análise) ---
 
@@ -34,13 +33,11 @@ public class InterpretadorAritmetico {
         // --- 2. Algoritmo de Avaliação Baseado em Pilhas ---
 
         // Pilha para armazenar os valores numéricos (operandos).
-        Stack<Double> valores = new Stack<>();
+        Deque<Double> valores = new ArrayDeque<>();
         // Pilha para armazenar os operadores e parênteses.
-        Stack<Character> operadores = new Stack<>();
-
-        for (int i = 0; i < tokens.length; i++) {
-            String token = tokens[i];
+        Deque<Character> operadores = new ArrayDeque<>();
 
+        for (String token : tokens) {
             if (token.isEmpty()) {
                 continue;
             }
@@ -72,12 +69,11 @@ public class InterpretadorAritmetico {
             }
             // Caso 4: O token é um operador (+, -, *, /).
             else if (isOperador(primeiroChar)) {
-                char op = primeiroChar;
                 // Aplica operações anteriores que têm precedência maior ou igual (da esquerda para a direita).
-                while (!operadores.isEmpty() && temPrecedencia(op, operadores.peek())) {
+                while (!operadores.isEmpty() && temPrecedencia(primeiroChar, operadores.peek())) {
                     aplicarOperacao(valores, operadores);
                 }
-                operadores.push(op); // Coloca o operador atual na pilha.
+                operadores.push(primeiroChar); // Coloca o operador atual na pilha.
             } else {
                 throw new IllegalArgumentException("Caractere desconhecido: " + token);
             }
@@ -91,41 +87,43 @@ public class InterpretadorAritmetico {
         }
 
         // Se a expressão foi válida, a pilha de valores deve ter exatamente um resultado.
-        if (valores.size() != 1 || !operadores.isEmpty()) {
+        if (valores.size() != 1) {
             throw new IllegalArgumentException("Estrutura da expressão inválida.");
         }
 
         return valores.pop();
     }
 
+    @Override
+    public String getNome() {
+        return "pilha";
+    }
+
     // --- Métodos Auxiliares ---
 
     /** Verifica se um caractere é um operador aritmético básico. */
-    private boolean isOperador(char c) {
+    private static boolean isOperador(char c) {
         return c == '+' || c == '-' || c == '*' || c == '/';
     }
 
     /**
-     * Determina se o operador op2 tem precedência (ou igualdade, para associatividade) sobre op1.
-     * Isso define se op2 (no topo da pilha) deve ser executado antes de op1 (o novo operador).
+     * Determina se o operador op2 (no topo da pilha) deve ser executado antes de op1 (o novo operador):
+     * op2 tem precedência maior ou igual (igual: associatividade da esquerda para a direita).
      */
-    private boolean temPrecedencia(char op1, char op2) {
+    private static boolean temPrecedencia(char op1, char op2) {
         // Parênteses de abertura e fechamento não afetam a precedência diretamente.
         if (op2 == '(' || op2 == ')') {
             return false;
         }
-        // Multiplicação e Divisão (op1) NÃO têm precedência sobre Soma e Subtração (op2) no topo da pilha.
-        // *Na verdade, a lógica é: se op1 é mais fraco (ex: '+') e op2 é mais forte (ex: '*'), op2 deve ser executado PRIMEIRO.
-        if ((op1 == '*' || op1 == '/') && (op2 == '+' || op2 == '-')) {
-            return false;
-        }
-        return true;
+        // Um '+' ou '-' no topo não é executado antes de um '*' ou '/' novo.
+        return !((op1 == '*' || op1 == '/') && (op2 == '+' || op2 == '-'));
     }
 
     /**
      * Executa a operação no topo da pilha de operadores, usando os dois valores do topo da pilha de valores.
+     * Um '(' sem par "aplicado" só descarta os dois valores, sem empilhar nada (comportamento original).
      */
-    private void aplicarOperacao(Stack<Double> valores, Stack<Character> operadores) {
+    private static void aplicarOperacao(Deque<Double> valores, Deque<Character> operadores) {
         char op = operadores.pop();
         if (valores.size() < 2) {
             throw new IllegalArgumentException("Faltam operandos para o operador " + op);
@@ -133,23 +131,8 @@ public class InterpretadorAritmetico {
         // A ordem é importante: b é o segundo operando (removido primeiro), a é o primeiro.
         double b = valores.pop();
         double a = valores.pop();
-
-        switch (op) {
-            case '+':
-                valores.push(a + b);
-                break;
-            case '-':
-                valores.push(a - b);
-                break;
-            case '*':
-                valores.push(a * b);
-                break;
-            case '/':
-                if (b == 0) {
-                    throw new ArithmeticException("Divisão por zero!");
-                }
-                valores.push(a / b);
-                break;
+        if (op != '(') {
+            valores.push(AvaliadorExpressoes.aplicar(op, a, b));
         }
     }
-}
\ No newline at end of file
+}
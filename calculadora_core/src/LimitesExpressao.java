@@ -0,0 +1,140 @@
+/**
+ * Limites de complexidade das expressões aceitas pelos servidores: tamanho (caracteres), quantidade
+ * de tokens (números, nomes, operadores e parênteses) e profundidade de parênteses.
+ *
+ * A verificação é incremental (ver Verificacao): os servidores que leem a expressão aos poucos
+ * (linha do socket, corpo do HTTP) passam cada caractere assim que ele chega e param de guardar a
+ * entrada no primeiro limite ultrapassado, sem esperar o fim da linha nem montar a String inteira.
+ * A contagem de tokens também serve de custo estimado da avaliação (ver EscalonadorAvaliacao).
+ */
+public final class LimitesExpressao {
+
+    private static final LimitesExpressao CONFIGURADOS = new LimitesExpressao(
+            Integer.getInteger("calculadora.limites.caracteres", 64 * 1024),
+            Integer.getInteger("calculadora.limites.tokens", 16 * 1024),
+            Integer.getInteger("calculadora.limites.profundidade", 256));
+
+    private final int maxCaracteres;
+    private final int maxTokens;
+    private final int maxProfundidade;
+
+    /**
+     * @param maxCaracteres Maior expressão aceita, em caracteres.
+     * @param maxTokens Maior quantidade de tokens.
+     * @param maxProfundidade Maior quantidade de parênteses abertos ao mesmo tempo.
+     */
+    public LimitesExpressao(int maxCaracteres, int maxTokens, int maxProfundidade) {
+        this.maxCaracteres = maxCaracteres;
+        this.maxTokens = maxTokens;
+        this.maxProfundidade = maxProfundidade;
+    }
+
+    /**
+     * Os limites das propriedades do sistema: calculadora.limites.caracteres (padrão 65536),
+     * calculadora.limites.tokens (16384) e calculadora.limites.profundidade (256).
+     */
+    public static LimitesExpressao configurados() {
+        return CONFIGURADOS;
+    }
+
+    public int getMaxCaracteres() {
+        return maxCaracteres;
+    }
+
+    /** Uma verificação incremental nova (reaproveitável com reiniciar()). */
+    public Verificacao iniciar() {
+        return new Verificacao();
+    }
+
+    /**
+     * Verifica uma expressão inteira (para quem já a recebeu pronta, como o RMI).
+     * @return O custo estimado (a quantidade de tokens).
+     * @throws IllegalArgumentException Se algum limite for ultrapassado.
+     */
+    public int verificar(CharSequence expressao) {
+        if (expressao.length() > maxCaracteres) {
+            throw new IllegalArgumentException(mensagemTamanho());
+        }
+        Verificacao verificacao = new Verificacao();
+        for (int i = 0; i < expressao.length(); i++) {
+            if (!verificacao.aceitar(expressao.charAt(i))) {
+                throw new IllegalArgumentException(verificacao.getErro());
+            }
+        }
+        return verificacao.getCusto();
+    }
+
+    private String mensagemTamanho() {
+        return "Expressão muito longa (máximo de " + maxCaracteres + " caracteres).";
+    }
+
+    /**
+     * Verificação de uma expressão que chega aos poucos, um caractere por vez. Não guarda a expressão:
+     * só os contadores, então o custo por caractere é constante.
+     */
+    public final class Verificacao {
+        private int caracteres;
+        private int tokens;
+        private int profundidade;
+        private boolean dentroDeNumero; // O caractere anterior faz parte de um número ou nome.
+        private String erro;
+
+        private Verificacao() {
+        }
+
+        /** Volta ao estado inicial, para verificar a próxima expressão. */
+        public void reiniciar() {
+            caracteres = 0;
+            tokens = 0;
+            profundidade = 0;
+            dentroDeNumero = false;
+            erro = null;
+        }
+
+        /**
+         * Conta mais um caractere da expressão.
+         * @return false se algum limite foi ultrapassado (agora ou antes); o motivo fica em getErro().
+         */
+        public boolean aceitar(char c) {
+            if (erro != null) {
+                return false;
+            }
+            if (++caracteres > maxCaracteres) {
+                erro = mensagemTamanho();
+                return false;
+            }
+            if (Character.isLetterOrDigit(c) || c == '.' || c == '_') {
+                if (!dentroDeNumero) {
+                    dentroDeNumero = true;
+                    tokens++;
+                }
+            } else {
+                dentroDeNumero = false;
+                if (!InterpretadorAritmetico.isEspaco(c)) {
+                    tokens++;
+                }
+                if (c == '(' && ++profundidade > maxProfundidade) {
+                    erro = "Parênteses aninhados demais (máximo de " + maxProfundidade + " níveis).";
+                    return false;
+                } else if (c == ')') {
+                    profundidade--;
+                }
+            }
+            if (tokens > maxTokens) {
+                erro = "Expressão com termos demais (máximo de " + maxTokens + " números, operadores e parênteses).";
+                return false;
+            }
+            return true;
+        }
+
+        /** O limite ultrapassado, ou null se a expressão está dentro dos limites. */
+        public String getErro() {
+            return erro;
+        }
+
+        /** O custo estimado da avaliação: a quantidade de tokens vistos até agora. */
+        public int getCusto() {
+            return tokens;
+        }
+    }
+}
@@ -0,0 +1,423 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Métricas de um transporte da calculadora ("socket", "rmi", "http"): latências, vazão, saturação e erros.
+ *
+ * O que é medido:
+ *   - latência por fase (HistogramaLatencia): análise da expressão, avaliação, escrita da resposta na
+ *     rede (onde o transporte permite) e a requisição inteira no servidor;
+ *   - requisições concluídas e em andamento, avaliações e conexões ativas;
+ *   - erros por tipo (ver TipoErro);
+ *   - medidores registrados pelo servidor (ex: tamanho da fila do pool), lidos só na exportação.
+ *
+ * Tudo é atualizado sem lock (LongAdder e contadores atômicos), na própria thread da requisição.
+ * As métricas são expostas de duas formas: exportarTexto(), no formato de texto do Prometheus
+ * (o servidor HTTP o publica em /metrics), e um MBean por transporte (sd.calculadora:type=Metricas,
+ * transporte=...), visível no JConsole/VisualVM. O MBean pode ser desligado com
+ * -Dcalculadora.metricas.jmx=false.
+ */
+public final class Metricas {
+
+    /** Fases de uma requisição com histograma de latência próprio. */
+    public enum Fase {
+        /** Análise (compilação) da expressão, incluindo a consulta ao cache. */
+        ANALISE,
+        /** Avaliação da expressão já analisada (no motor "pilha", análise e avaliação juntas). */
+        AVALIACAO,
+        /** Escrita da resposta na rede (socket e HTTP; no RMI a serialização é feita pelo próprio RMI). */
+        REDE,
+        /** A requisição inteira, do início do atendimento até a resposta. */
+        REQUISICAO;
+
+        final String nome = name().toLowerCase(Locale.ROOT);
+    }
+
+    /** Tipos de erro contados. */
+    public enum TipoErro {
+        /** Expressão mal formada (IllegalArgumentException do motor de cálculo). */
+        EXPRESSAO_INVALIDA,
+        /** Expressão válida cujo cálculo falhou, como a divisão por zero (ArithmeticException). */
+        ERRO_ARITMETICO,
+        /** Requisição fora do protocolo (método HTTP, corpo grande demais, quadro binário inválido...). */
+        PROTOCOLO,
+        /** Requisição ou conexão recusada porque o servidor estava no limite. */
+        SOBRECARGA,
+        /** Falha de comunicação com o cliente (conexão interrompida, erro de I/O). */
+        REDE;
+
+        final String nome = name().toLowerCase(Locale.ROOT);
+    }
+
+    // Percentis exportados de cada histograma, com o nome usado no MBean e o quantil do formato de texto.
+    private static final double[] PERCENTIS = {50, 90, 99, 99.9};
+    private static final String[] NOMES_PERCENTIS = {"p50", "p90", "p99", "p999"};
+    private static final String[] QUANTIS = {"0.5", "0.9", "0.99", "0.999"};
+    private static final boolean JMX = Boolean.parseBoolean(System.getProperty("calculadora.metricas.jmx", "true"));
+
+    // Um conjunto de métricas por transporte, criado no primeiro uso.
+    private static final Map<String, Metricas> TRANSPORTES = new ConcurrentHashMap<>();
+
+    private final String transporte;
+    private final HistogramaLatencia[] fases = new HistogramaLatencia[Fase.values().length];
+    private final LongAdder[] erros = new LongAdder[TipoErro.values().length];
+    private final LongAdder requisicoes = new LongAdder();
+    private final LongAdder emAndamento = new LongAdder();
+    private final LongAdder avaliacoes = new LongAdder();
+    private final LongAdder conexoesAtivas = new LongAdder();
+    private final LongAdder conexoesAceitas = new LongAdder();
+    // Medidores pelo nome; vários registrados com o mesmo nome (ex: um por réplica) são somados.
+    private final Map<String, List<LongSupplier>> medidores = new ConcurrentHashMap<>();
+
+    private Metricas(String transporte) {
+        this.transporte = transporte;
+        for (int i = 0; i < fases.length; i++) {
+            fases[i] = new HistogramaLatencia();
+        }
+        for (int i = 0; i < erros.length; i++) {
+            erros[i] = new LongAdder();
+        }
+    }
+
+    /** As métricas do transporte (criadas, e registradas no JMX, na primeira chamada). */
+    public static Metricas de(String transporte) {
+        return TRANSPORTES.computeIfAbsent(transporte, nome -> {
+            Metricas metricas = new Metricas(nome);
+            if (JMX) {
+                metricas.registrarMBean();
+            }
+            return metricas;
+        });
+    }
+
+    public String getTransporte() {
+        return transporte;
+    }
+
+    // --- Requisições ---
+
+    /**
+     * Marca o início de uma requisição.
+     * @return O instante de início (System.nanoTime()), a ser passado para concluirRequisicao.
+     */
+    public long iniciarRequisicao() {
+        emAndamento.increment();
+        return System.nanoTime();
+    }
+
+    /** Marca o fim de uma requisição iniciada com iniciarRequisicao (com sucesso ou não). */
+    public void concluirRequisicao(long inicio) {
+        fases[Fase.REQUISICAO.ordinal()].registrar(System.nanoTime() - inicio);
+        emAndamento.decrement();
+        requisicoes.increment();
+    }
+
+    /** Registra a duração de uma fase medida pelo servidor (ex: a escrita da resposta). */
+    public void registrarFase(Fase fase, long nanos) {
+        fases[fase.ordinal()].registrar(nanos);
+    }
+
+    /**
+     * Registra uma avaliação bem-sucedida medida pelo servidor, para caminhos que não passam por medir()
+     * (ex: programas já compilados recebidos pela rede).
+     */
+    public void registrarFases(long nanosAnalise, long nanosAvaliacao) {
+        avaliacoes.increment();
+        fases[Fase.ANALISE.ordinal()].registrar(nanosAnalise);
+        fases[Fase.AVALIACAO.ordinal()].registrar(nanosAvaliacao);
+    }
+
+    // --- Erros ---
+
+    public void registrarErro(TipoErro tipo) {
+        erros[tipo.ordinal()].increment();
+    }
+
+    /** Registra um erro do motor de cálculo: ArithmeticException é um erro aritmético; as demais, expressão inválida. */
+    public void registrarErro(RuntimeException erro) {
+        registrarErro(erro instanceof ArithmeticException ? TipoErro.ERRO_ARITMETICO : TipoErro.EXPRESSAO_INVALIDA);
+    }
+
+    // --- Conexões e medidores ---
+
+    public void conexaoAberta() {
+        conexoesAtivas.increment();
+        conexoesAceitas.increment();
+    }
+
+    public void conexaoFechada() {
+        conexoesAtivas.decrement();
+    }
+
+    /**
+     * Registra um medidor (valor instantâneo lido só na exportação, ex: o tamanho de uma fila).
+     * Medidores com o mesmo nome são somados.
+     */
+    public void registrarMedidor(String nome, LongSupplier medidor) {
+        medidores.computeIfAbsent(nome, n -> new CopyOnWriteArrayList<>()).add(medidor);
+    }
+
+    // --- Avaliação medida ---
+
+    /**
+     * Envolve um motor de cálculo para medir as fases de cada avaliação e contar avaliações e erros.
+     * No motor "compilado" a análise (compilação ou consulta ao cache) e a avaliação são medidas
+     * separadamente; nos demais, a avaliação inteira conta como AVALIACAO.
+     */
+    public AvaliadorExpressoes medir(AvaliadorExpressoes motor) {
+        return new AvaliadorMedido(motor);
+    }
+
+    private final class AvaliadorMedido implements AvaliadorExpressoes {
+        private final AvaliadorExpressoes motor;
+        // O motor compilado, quando é ele: permite separar a análise da avaliação.
+        private final InterpretadorAritmetico compilado;
+
+        AvaliadorMedido(AvaliadorExpressoes motor) {
+            this.motor = motor;
+            this.compilado = motor instanceof InterpretadorAritmetico ? (InterpretadorAritmetico) motor : null;
+        }
+
+        @Override
+        public double avaliarExpressao(String expressao) {
+            long inicio = System.nanoTime();
+            try {
+                if (compilado == null) {
+                    double resultado = motor.avaliarExpressao(expressao);
+                    avaliacoes.increment();
+                    fases[Fase.AVALIACAO.ordinal()].registrar(System.nanoTime() - inicio);
+                    return resultado;
+                }
+                ExpressaoCompilada programa = compilado.compilar(expressao);
+                long analisada = System.nanoTime();
+                double resultado = programa.avaliar();
+                registrarFases(analisada - inicio, System.nanoTime() - analisada);
+                return resultado;
+            } catch (IllegalArgumentException | ArithmeticException e) {
+                avaliacoes.increment();
+                registrarErro(e);
+                throw e;
+            }
+        }
+
+        @Override
+        public String getNome() {
+            return motor.getNome();
+        }
+    }
+
+    // --- Exportação ---
+
+    /** Zera os histogramas (os contadores continuam acumulando desde o início). */
+    public void zerarHistogramas() {
+        for (HistogramaLatencia fase : fases) {
+            fase.zerar();
+        }
+    }
+
+    /**
+     * Os valores atuais, com nomes planos (ex: "latencia.requisicao.p99Us"): os atributos do MBean.
+     * Latências em microssegundos.
+     */
+    public Map<String, Object> valores() {
+        Map<String, Object> valores = new LinkedHashMap<>();
+        valores.put("requisicoes", requisicoes.sum());
+        valores.put("emAndamento", emAndamento.sum());
+        valores.put("avaliacoes", avaliacoes.sum());
+        valores.put("conexoesAtivas", conexoesAtivas.sum());
+        valores.put("conexoesAceitas", conexoesAceitas.sum());
+        for (TipoErro tipo : TipoErro.values()) {
+            valores.put("erros." + tipo.nome, erros[tipo.ordinal()].sum());
+        }
+        // Fração das avaliações que terminaram em erro de cálculo (expressão inválida ou erro aritmético).
+        long avaliadas = avaliacoes.sum();
+        long errosCalculo = erros[TipoErro.EXPRESSAO_INVALIDA.ordinal()].sum() + erros[TipoErro.ERRO_ARITMETICO.ordinal()].sum();
+        valores.put("erros.taxaAvaliacoes", avaliadas == 0 ? 0.0 : (double) errosCalculo / avaliadas);
+        for (Map.Entry<String, List<LongSupplier>> medidor : medidores.entrySet()) {
+            valores.put("medidor." + medidor.getKey(), somar(medidor.getValue()));
+        }
+        for (Fase fase : Fase.values()) {
+            HistogramaLatencia.Resumo resumo = fases[fase.ordinal()].resumo();
+            String prefixo = "latencia." + fase.nome + ".";
+            valores.put(prefixo + "contagem", resumo.getContagem());
+            valores.put(prefixo + "mediaUs", resumo.getMedia() / 1000.0);
+            for (int i = 0; i < PERCENTIS.length; i++) {
+                valores.put(prefixo + NOMES_PERCENTIS[i] + "Us", resumo.percentil(PERCENTIS[i]) / 1000.0);
+            }
+            valores.put(prefixo + "maximoUs", resumo.getMaximo() / 1000.0);
+        }
+        return valores;
+    }
+
+    /** Todas as métricas de todos os transportes desta JVM, no formato de texto do Prometheus. */
+    public static String exportarTexto() {
+        StringBuilder texto = new StringBuilder(4096);
+        List<Metricas> todas = new ArrayList<>(TRANSPORTES.values());
+        todas.sort((a, b) -> a.transporte.compareTo(b.transporte));
+
+        cabecalho(texto, "calculadora_requisicoes_total", "counter", "Requisições concluídas.");
+        for (Metricas m : todas) linha(texto, "calculadora_requisicoes_total", m.rotulo(), m.requisicoes.sum());
+        cabecalho(texto, "calculadora_requisicoes_em_andamento", "gauge", "Requisições em atendimento agora.");
+        for (Metricas m : todas) linha(texto, "calculadora_requisicoes_em_andamento", m.rotulo(), m.emAndamento.sum());
+        cabecalho(texto, "calculadora_avaliacoes_total", "counter", "Expressões avaliadas (um lote tem várias).");
+        for (Metricas m : todas) linha(texto, "calculadora_avaliacoes_total", m.rotulo(), m.avaliacoes.sum());
+        cabecalho(texto, "calculadora_conexoes_ativas", "gauge", "Conexões abertas (nos transportes que as controlam, como o socket).");
+        for (Metricas m : todas) linha(texto, "calculadora_conexoes_ativas", m.rotulo(), m.conexoesAtivas.sum());
+        cabecalho(texto, "calculadora_erros_total", "counter", "Erros por tipo.");
+        for (Metricas m : todas) {
+            for (TipoErro tipo : TipoErro.values()) {
+                linha(texto, "calculadora_erros_total", m.rotulo() + ",tipo=\"" + tipo.nome + "\"",
+                        m.erros[tipo.ordinal()].sum());
+            }
+        }
+        cabecalho(texto, "calculadora_medidor", "gauge", "Medidores dos servidores (filas, vagas...).");
+        for (Metricas m : todas) {
+            for (Map.Entry<String, List<LongSupplier>> medidor : m.medidores.entrySet()) {
+                linha(texto, "calculadora_medidor", m.rotulo() + ",nome=\"" + medidor.getKey() + "\"",
+                        somar(medidor.getValue()));
+            }
+        }
+        cabecalho(texto, "calculadora_latencia_us", "summary", "Latência por fase, em microssegundos.");
+        for (Metricas m : todas) {
+            for (Fase fase : Fase.values()) {
+                HistogramaLatencia.Resumo resumo = m.fases[fase.ordinal()].resumo();
+                if (resumo.getContagem() == 0) {
+                    continue;
+                }
+                String rotulo = m.rotulo() + ",fase=\"" + fase.nome + "\"";
+                for (int i = 0; i < PERCENTIS.length; i++) {
+                    linha(texto, "calculadora_latencia_us", rotulo + ",quantile=\"" + QUANTIS[i] + "\"",
+                            resumo.percentil(PERCENTIS[i]) / 1000.0);
+                }
+                linha(texto, "calculadora_latencia_us_sum", rotulo, resumo.getSoma() / 1000.0);
+                linha(texto, "calculadora_latencia_us_count", rotulo, resumo.getContagem());
+            }
+        }
+        cabecalho(texto, "calculadora_latencia_maxima_us", "gauge", "Maior latência por fase, em microssegundos.");
+        for (Metricas m : todas) {
+            for (Fase fase : Fase.values()) {
+                HistogramaLatencia.Resumo resumo = m.fases[fase.ordinal()].resumo();
+                if (resumo.getContagem() > 0) {
+                    linha(texto, "calculadora_latencia_maxima_us", m.rotulo() + ",fase=\"" + fase.nome + "\"",
+                            resumo.getMaximo() / 1000.0);
+                }
+            }
+        }
+        return texto.toString();
+    }
+
+    private String rotulo() {
+        return "transporte=\"" + transporte + "\"";
+    }
+
+    private static void cabecalho(StringBuilder texto, String nome, String tipo, String ajuda) {
+        texto.append("# HELP ").append(nome).append(' ').append(ajuda).append('\n');
+        texto.append("# TYPE ").append(nome).append(' ').append(tipo).append('\n');
+    }
+
+    private static void linha(StringBuilder texto, String nome, String rotulos, long valor) {
+        texto.append(nome).append('{').append(rotulos).append("} ").append(valor).append('\n');
+    }
+
+    private static void linha(StringBuilder texto, String nome, String rotulos, double valor) {
+        texto.append(nome).append('{').append(rotulos).append("} ").append(valor).append('\n');
+    }
+
+    private static long somar(List<LongSupplier> medidores) {
+        long soma = 0;
+        for (LongSupplier medidor : medidores) {
+            soma += medidor.getAsLong();
+        }
+        return soma;
+    }
+
+    // --- JMX ---
+
+    private void registrarMBean() {
+        try {
+            ObjectName nome = new ObjectName("sd.calculadora:type=Metricas,transporte=" + transporte);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new MBean(), nome);
+        } catch (Exception e) {
+            // Sem JMX (ou nome já registrado): as métricas continuam disponíveis por exportarTexto().
+            Registrador.compartilhado().aviso("metricas", "MBean não registrado", e.getMessage());
+        }
+    }
+
+    /**
+     * O MBean das métricas: os atributos são os de valores(), lidos no momento da consulta,
+     * e a operação "zerarHistogramas" recomeça a contagem das latências.
+     */
+    private final class MBean implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(String atributo) throws AttributeNotFoundException {
+            Object valor = valores().get(atributo);
+            if (valor == null) {
+                throw new AttributeNotFoundException(atributo);
+            }
+            return valor;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] atributos) {
+            Map<String, Object> valores = valores();
+            AttributeList lista = new AttributeList();
+            for (String atributo : atributos) {
+                if (valores.containsKey(atributo)) {
+                    lista.add(new Attribute(atributo, valores.get(atributo)));
+                }
+            }
+            return lista;
+        }
+
+        @Override
+        public void setAttribute(Attribute atributo) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Atributo somente leitura: " + atributo.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList atributos) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String operacao, Object[] parametros, String[] assinatura) throws ReflectionException {
+            if (operacao.equals("zerarHistogramas")) {
+                zerarHistogramas();
+                return null;
+            }
+            throw new ReflectionException(new NoSuchMethodException(operacao));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            // Recalculado a cada consulta: medidores podem ser registrados depois do MBean.
+            List<MBeanAttributeInfo> atributos = new ArrayList<>();
+            for (Map.Entry<String, Object> valor : valores().entrySet()) {
+                atributos.add(new MBeanAttributeInfo(valor.getKey(), valor.getValue().getClass().getName(),
+                        valor.getKey(), true, false, false));
+            }
+            MBeanOperationInfo zerar = new MBeanOperationInfo("zerarHistogramas",
+                    "Zera os histogramas de latência.", null, "void", MBeanOperationInfo.ACTION);
+            return new MBeanInfo(Metricas.class.getName(), "Métricas do transporte " + transporte,
+                    atributos.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[]{zerar}, null);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Orçamento de retentativas: limita quantas chamadas podem ser repetidas em relação ao total.
+ *
+ * Repetir chamadas que falharam ajuda quando as falhas são raras, mas, com o servidor sobrecarregado,
+ * repetir tudo multiplica a carga justamente na pior hora. Aqui, cada chamada nova deposita uma
+ * fração de "ficha" (ex: 0,2) e cada retentativa (ou pedido de cobertura) gasta uma ficha inteira;
+ * assim as retentativas nunca passam de ~20% das chamadas. Um mínimo de fichas por segundo garante
+ * que clientes com pouco tráfego ainda possam repetir alguma coisa.
+ */
+public class OrcamentoRetentativas {
+
+    private static final double PROPORCAO_PADRAO = 0.2;
+    private static final int MINIMO_POR_SEGUNDO_PADRAO = 10;
+    private static final int SALDO_MAXIMO_PADRAO = 100;
+
+    private final double proporcao;
+    private final int minimoPorSegundo;
+    private final double saldoMaximo;
+
+    // --- Estado (protegido pelo lock da instância) ---
+    private double saldo;
+    private long ultimaReposicao = System.nanoTime();
+
+    // --- Métricas ---
+    private final LongAdder concedidas = new LongAdder();
+    private final LongAdder negadas = new LongAdder();
+
+    /** Orçamento padrão: retentativas de até 20% das chamadas, com no mínimo 10 por segundo. */
+    public OrcamentoRetentativas() {
+        this(PROPORCAO_PADRAO, MINIMO_POR_SEGUNDO_PADRAO, SALDO_MAXIMO_PADRAO);
+    }
+
+    /**
+     * @param proporcao Fração de ficha depositada por chamada (a proporção máxima de retentativas).
+     * @param minimoPorSegundo Fichas repostas por segundo, independentemente do tráfego.
+     * @param saldoMaximo Máximo de fichas acumuladas (limita rajadas de retentativas).
+     */
+    public OrcamentoRetentativas(double proporcao, int minimoPorSegundo, int saldoMaximo) {
+        this.proporcao = proporcao;
+        this.minimoPorSegundo = minimoPorSegundo;
+        this.saldoMaximo = saldoMaximo;
+        this.saldo = Math.min(minimoPorSegundo, saldoMaximo);
+    }
+
+    /** Registra uma chamada nova (não uma retentativa). */
+    public synchronized void depositar() {
+        saldo = Math.min(saldoMaximo, saldo + proporcao);
+    }
+
+    /**
+     * Tenta gastar uma ficha para repetir uma chamada.
+     * @return true se a retentativa está dentro do orçamento.
+     */
+    public boolean sacar() {
+        boolean concedida;
+        synchronized (this) {
+            long agora = System.nanoTime();
+            saldo = Math.min(saldoMaximo, saldo + (agora - ultimaReposicao) / 1e9 * minimoPorSegundo);
+            ultimaReposicao = agora;
+            concedida = saldo >= 1;
+            if (concedida) {
+                saldo -= 1;
+            }
+        }
+        (concedida ? concedidas : negadas).increment();
+        return concedida;
+    }
+
+    /** Quantas retentativas foram permitidas. */
+    public long getConcedidas() {
+        return concedidas.sum();
+    }
+
+    /** Quantas retentativas foram recusadas por falta de orçamento. */
+    public long getNegadas() {
+        return negadas.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "OrcamentoRetentativas[concedidas=" + getConcedidas() + ", negadas=" + getNegadas() + "]";
+    }
+}
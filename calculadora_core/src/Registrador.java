@@ -0,0 +1,366 @@
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Registro (log) assíncrono dos servidores da calculadora.
+ *
+ * Escrever no console a cada requisição (System.out.println é sincronizado) trava as threads
+ * de atendimento umas nas outras. Aqui, a thread da requisição só preenche uma posição de um
+ * buffer circular pré-alocado (sem lock e sem I/O); uma thread separada formata os eventos como
+ * JSON (uma linha por evento) e os grava num arquivo com rotação por tamanho.
+ *
+ * - Níveis: eventos abaixo do nível configurado são ignorados antes de qualquer trabalho.
+ * - Amostragem: só uma fração das requisições bem-sucedidas é registrada; erros sempre são.
+ * - Se o buffer encher (a gravação não acompanha o ritmo), o evento é descartado e contado:
+ *   a requisição nunca espera pelo log.
+ * - Das requisições é gravado o hash da expressão (não o texto), a latência e o resultado.
+ *
+ * Configuração (propriedades de sistema):
+ *   calculadora.log.nivel         DEPURACAO, INFO, AVISO ou ERRO (padrão INFO)
+ *   calculadora.log.amostragem    fração das requisições bem-sucedidas registradas (padrão 0.01)
+ *   calculadora.log.arquivo       arquivo de saída (padrão calculadora.log; "-" = console)
+ *   calculadora.log.tamanhoMaximoMb  tamanho que dispara a rotação (padrão 10)
+ *   calculadora.log.arquivos      arquivos antigos mantidos na rotação (padrão 5)
+ *   calculadora.log.capacidade    posições do buffer circular (padrão 8192)
+ */
+public final class Registrador {
+
+    public enum Nivel { DEPURACAO, INFO, AVISO, ERRO }
+
+    private static final Registrador COMPARTILHADO = new Registrador(
+            Nivel.valueOf(System.getProperty("calculadora.log.nivel", "INFO").toUpperCase(Locale.ROOT)),
+            Double.parseDouble(System.getProperty("calculadora.log.amostragem", "0.01")),
+            System.getProperty("calculadora.log.arquivo", "calculadora.log"),
+            Integer.getInteger("calculadora.log.tamanhoMaximoMb", 10) * 1024L * 1024L,
+            Integer.getInteger("calculadora.log.arquivos", 5),
+            Integer.getInteger("calculadora.log.capacidade", 8192));
+
+    // Esperas da thread de gravação quando não há eventos: curta logo depois de gravar, longa em repouso.
+    private static final long ESPERA_CURTA_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long ESPERA_LONGA_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final int ESPERAS_ATE_REPOUSO = 100;
+
+    private final Nivel nivelMinimo;
+    private final double amostragem;
+    private final String arquivo;           // null = console.
+    private final long tamanhoMaximo;
+    private final int arquivosMantidos;
+
+    // --- Buffer circular (vários produtores, um consumidor) ---
+    private final Evento[] anel;
+    private final int mascara;
+    private final AtomicLong proximo = new AtomicLong();  // Próxima posição a ser reservada por um produtor.
+    private volatile long consumido;                      // Próxima posição a ser lida pela thread de gravação.
+
+    // --- Estado da thread de gravação ---
+    private final StringBuilder linha = new StringBuilder(256);
+    private Writer saida;
+    private long tamanhoAtual;
+
+    // --- Métricas ---
+    private final LongAdder gravados = new LongAdder();
+    private final LongAdder descartados = new LongAdder();
+
+    /** O registrador único da JVM, configurado pelas propriedades calculadora.log.*. */
+    public static Registrador compartilhado() {
+        return COMPARTILHADO;
+    }
+
+    private Registrador(Nivel nivelMinimo, double amostragem, String arquivo, long tamanhoMaximo,
+                        int arquivosMantidos, int capacidade) {
+        this.nivelMinimo = nivelMinimo;
+        this.amostragem = amostragem;
+        this.arquivo = arquivo.equals("-") ? null : arquivo;
+        this.tamanhoMaximo = tamanhoMaximo;
+        this.arquivosMantidos = arquivosMantidos;
+
+        // Capacidade arredondada para potência de 2: a posição no anel sai de um AND em vez de uma divisão.
+        int tamanho = Integer.highestOneBit(Math.max(2, capacidade) * 2 - 1);
+        this.anel = new Evento[tamanho];
+        this.mascara = tamanho - 1;
+        for (int i = 0; i < tamanho; i++) {
+            anel[i] = new Evento();
+        }
+
+        Thread gravacao = new Thread(this::gravarEventos, "calculadora-log");
+        gravacao.setDaemon(true);
+        gravacao.start();
+        // Ao encerrar a JVM, grava o que ainda estiver no buffer.
+        Runtime.getRuntime().addShutdownHook(new Thread(this::esvaziar, "calculadora-log-final"));
+    }
+
+    /** Se eventos deste nível são registrados (para evitar montar detalhes que seriam descartados). */
+    public boolean isAtivo(Nivel nivel) {
+        return nivel.compareTo(nivelMinimo) >= 0;
+    }
+
+    public void depuracao(String origem, String mensagem, Object detalhe) {
+        registrar(Nivel.DEPURACAO, origem, mensagem, detalhe);
+    }
+
+    public void info(String origem, String mensagem, Object detalhe) {
+        registrar(Nivel.INFO, origem, mensagem, detalhe);
+    }
+
+    public void aviso(String origem, String mensagem, Object detalhe) {
+        registrar(Nivel.AVISO, origem, mensagem, detalhe);
+    }
+
+    public void erro(String origem, String mensagem, Object detalhe) {
+        registrar(Nivel.ERRO, origem, mensagem, detalhe);
+    }
+
+    /**
+     * Registra um evento. O detalhe só é convertido em texto na thread de gravação.
+     * @param origem Quem gerou o evento (ex: "socket", "http", "rmi").
+     */
+    public void registrar(Nivel nivel, String origem, String mensagem, Object detalhe) {
+        if (isAtivo(nivel)) {
+            publicar(nivel, origem, mensagem, null, -1, null, detalhe);
+        }
+    }
+
+    /**
+     * Registra uma requisição atendida: bem-sucedidas (nível INFO) passam pela amostragem,
+     * erros (nível AVISO) são sempre registrados.
+     * @param origem Quem atendeu (ex: "socket", "http", "rmi").
+     * @param expressao A expressão recebida (só o hash é gravado; pode ser null).
+     * @param inicioNanos System.nanoTime() do início do atendimento.
+     * @param erro A mensagem de erro, ou null se a requisição deu certo.
+     */
+    public void requisicao(String origem, String expressao, long inicioNanos, String erro) {
+        long latencia = System.nanoTime() - inicioNanos;
+        if (erro == null) {
+            if (!isAtivo(Nivel.INFO) || !amostrar()) {
+                return;
+            }
+            publicar(Nivel.INFO, origem, "requisicao", expressao, latencia, null, null);
+        } else if (isAtivo(Nivel.AVISO)) {
+            publicar(Nivel.AVISO, origem, "requisicao", expressao, latencia, erro, null);
+        }
+    }
+
+    private boolean amostrar() {
+        return amostragem >= 1 || ThreadLocalRandom.current().nextDouble() < amostragem;
+    }
+
+    /** Reserva uma posição do anel, preenche e publica. Se o anel estiver cheio, descarta o evento. */
+    private void publicar(Nivel nivel, String origem, String mensagem, String expressao,
+                          long latenciaNanos, String erro, Object detalhe) {
+        long posicao;
+        do {
+            posicao = proximo.get();
+            if (posicao - consumido >= anel.length) {
+                descartados.increment();
+                return;
+            }
+        } while (!proximo.compareAndSet(posicao, posicao + 1));
+
+        Evento evento = anel[(int) (posicao & mascara)];
+        evento.instante = System.currentTimeMillis();
+        evento.nivel = nivel;
+        evento.origem = origem;
+        evento.mensagem = mensagem;
+        evento.expressao = expressao;
+        evento.latenciaNanos = latenciaNanos;
+        evento.erro = erro;
+        evento.detalhe = detalhe;
+        evento.publicado = posicao; // Escrita volatile: torna os campos acima visíveis para a thread de gravação.
+    }
+
+    /** Laço da thread de gravação: consome o anel na ordem e grava em lotes. */
+    private void gravarEventos() {
+        int esperasVazias = 0;
+        while (true) {
+            if (gravarDisponiveis()) {
+                esperasVazias = 0;
+            } else {
+                LockSupport.parkNanos(esperasVazias++ < ESPERAS_ATE_REPOUSO ? ESPERA_CURTA_NANOS : ESPERA_LONGA_NANOS);
+            }
+        }
+    }
+
+    /** Grava os eventos já publicados; devolve false se não havia nenhum. */
+    private synchronized boolean gravarDisponiveis() {
+        boolean gravou = false;
+        try {
+            while (true) {
+                long posicao = consumido;
+                Evento evento = anel[(int) (posicao & mascara)];
+                if (evento.publicado != posicao) {
+                    break; // Vazio, ou o produtor ainda está preenchendo esta posição.
+                }
+                formatar(evento);
+                evento.limpar();
+                consumido = posicao + 1; // Libera a posição para os produtores.
+                escrever();
+                gravados.increment();
+                gravou = true;
+            }
+            if (gravou && saida != null) {
+                saida.flush(); // Um flush por lote de eventos, não por evento.
+            }
+        } catch (IOException e) {
+            System.err.println("Falha ao gravar o log: " + e.getMessage());
+            saida = null; // Tenta abrir o arquivo de novo no próximo evento.
+        }
+        return gravou;
+    }
+
+    /** Grava tudo o que já foi publicado (usado ao encerrar a JVM). */
+    private void esvaziar() {
+        gravarDisponiveis();
+    }
+
+    private void formatar(Evento evento) {
+        StringBuilder l = linha;
+        l.setLength(0);
+        l.append("{\"instante\":\"").append(Instant.ofEpochMilli(evento.instante))
+                .append("\",\"nivel\":\"").append(evento.nivel)
+                .append("\",\"origem\":\"").append(evento.origem)
+                .append("\",\"evento\":\"");
+        escaparJson(l, evento.mensagem);
+        l.append('"');
+        if (evento.expressao != null) {
+            l.append(",\"hash\":\"").append(Integer.toHexString(evento.expressao.hashCode())).append('"');
+        }
+        if (evento.latenciaNanos >= 0) {
+            l.append(",\"latenciaUs\":").append(evento.latenciaNanos / 1000);
+        }
+        if (evento.latenciaNanos >= 0 || evento.erro != null) {
+            l.append(",\"resultado\":\"").append(evento.erro == null ? "ok" : "erro").append('"');
+        }
+        if (evento.erro != null) {
+            l.append(",\"erro\":\"");
+            escaparJson(l, evento.erro);
+            l.append('"');
+        }
+        if (evento.detalhe != null) {
+            l.append(",\"detalhe\":\"");
+            escaparJson(l, String.valueOf(evento.detalhe));
+            l.append('"');
+        }
+        l.append("}\n");
+    }
+
+    private void escrever() throws IOException {
+        if (saida == null) {
+            abrir();
+        }
+        saida.append(linha);
+        if (arquivo != null) {
+            tamanhoAtual += linha.length(); // Aproximado (caracteres, não bytes): suficiente para a rotação.
+            if (tamanhoAtual >= tamanhoMaximo) {
+                rotacionar();
+            }
+        }
+    }
+
+    private void abrir() throws IOException {
+        if (arquivo == null) {
+            saida = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            return;
+        }
+        Path caminho = Paths.get(arquivo);
+        tamanhoAtual = Files.exists(caminho) ? Files.size(caminho) : 0;
+        saida = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(arquivo, true), StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    /** calculadora.log -> calculadora.log.1 -> calculadora.log.2 ... (o mais antigo é apagado). */
+    private void rotacionar() throws IOException {
+        saida.close();
+        saida = null;
+        Files.deleteIfExists(Paths.get(arquivo + "." + arquivosMantidos));
+        for (int i = arquivosMantidos - 1; i >= 1; i--) {
+            Path antigo = Paths.get(arquivo + "." + i);
+            if (Files.exists(antigo)) {
+                Files.move(antigo, Paths.get(arquivo + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (arquivosMantidos > 0) {
+            Files.move(Paths.get(arquivo), Paths.get(arquivo + ".1"), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(Paths.get(arquivo));
+        }
+        abrir();
+    }
+
+    /** O texto pronto para ir dentro de uma string JSON (aspas, barra invertida e caracteres de controle escapados). */
+    public static String escaparJson(String texto) {
+        StringBuilder destino = new StringBuilder(texto.length() + 8);
+        escaparJson(destino, texto);
+        return destino.toString();
+    }
+
+    /** Acrescenta o texto ao destino, escapado como em escaparJson(String). */
+    public static void escaparJson(StringBuilder destino, String texto) {
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            switch (c) {
+                case '"': destino.append("\\\""); break;
+                case '\\': destino.append("\\\\"); break;
+                case '\n': destino.append("\\n"); break;
+                case '\r': destino.append("\\r"); break;
+                case '\t': destino.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        destino.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        destino.append(c);
+                    }
+            }
+        }
+    }
+
+    /** Eventos gravados até agora. */
+    public long getGravados() {
+        return gravados.sum();
+    }
+
+    /** Eventos perdidos porque o buffer estava cheio. */
+    public long getDescartados() {
+        return descartados.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "Registrador[nivel=" + nivelMinimo + ", amostragem=" + amostragem
+                + ", gravados=" + getGravados() + ", descartados=" + getDescartados() + "]";
+    }
+
+    /** Uma posição do anel, reaproveitada (os campos são sobrescritos a cada volta). */
+    private static final class Evento {
+        volatile long publicado = -1; // Posição do anel cujo evento está completo aqui.
+        long instante;
+        Nivel nivel;
+        String origem;
+        String mensagem;
+        String expressao;
+        long latenciaNanos;
+        String erro;
+        Object detalhe;
+
+        /** Solta as referências, para o anel não manter objetos vivos. */
+        void limpar() {
+            expressao = null;
+            erro = null;
+            detalhe = null;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Camada de resiliência usada pelos clientes da calculadora (socket, HTTP e RMI).
+ *
+ * Combina três mecanismos em volta de uma chamada ao servidor:
+ *   - Disjuntor: para de chamar um servidor que está falhando e o testa de novo depois de um tempo;
+ *   - retentativas com backoff exponencial com "jitter", limitadas pelo OrcamentoRetentativas
+ *     (assim as retentativas não multiplicam a carga de um servidor já sobrecarregado);
+ *   - pedidos de cobertura ("hedging", opcional): se a resposta demora mais que um limite,
+ *     uma segunda chamada igual é enviada e vale a que responder primeiro. Corta a cauda da
+ *     latência (ex: uma conexão lenta), ao custo de algumas chamadas a mais, também limitadas
+ *     pelo orçamento.
+ *
+ * Só as falhas consideradas temporárias (predicado informado em cada chamada) contam para o
+ * disjuntor e são repetidas; as demais (ex: expressão inválida) são devolvidas na hora.
+ */
+public class Resiliencia {
+
+    /** Falhas de rede: IOException (inclui RemoteException) e timeouts. */
+    public static final Predicate<Throwable> FALHA_DE_REDE =
+            e -> e instanceof IOException || e instanceof TimeoutException;
+
+    private final Disjuntor disjuntor;
+    private final OrcamentoRetentativas orcamento;
+
+    // --- Configuração (alterável pelos métodos com...) ---
+    private int maxTentativas = 3;
+    private long backoffInicialMs = 100;
+    private long backoffMaximoMs = 5000;
+    private long atrasoCoberturaMs;       // 0 = sem pedidos de cobertura.
+
+    // --- Métricas ---
+    private final LongAdder chamadas = new LongAdder();
+    private final LongAdder retentativas = new LongAdder();
+    private final LongAdder coberturas = new LongAdder();
+    private final LongAdder coberturasVencedoras = new LongAdder();
+
+    public Resiliencia(Disjuntor disjuntor, OrcamentoRetentativas orcamento) {
+        this.disjuntor = disjuntor;
+        this.orcamento = orcamento;
+    }
+
+    /**
+     * Configura as retentativas.
+     * @param maxTentativas Tentativas no total (1 = sem retentativas).
+     * @param backoffInicialMs Espera máxima antes da segunda tentativa (dobra a cada tentativa).
+     * @param backoffMaximoMs Limite da espera entre tentativas.
+     */
+    public Resiliencia comRetentativas(int maxTentativas, long backoffInicialMs, long backoffMaximoMs) {
+        this.maxTentativas = maxTentativas;
+        this.backoffInicialMs = backoffInicialMs;
+        this.backoffMaximoMs = backoffMaximoMs;
+        return this;
+    }
+
+    /**
+     * Ativa os pedidos de cobertura (só nas chamadas assíncronas).
+     * @param atrasoMs Depois de quanto tempo sem resposta a chamada é duplicada
+     *                 (um bom valor é perto do percentil 95 da latência normal).
+     */
+    public Resiliencia comCobertura(long atrasoMs) {
+        this.atrasoCoberturaMs = atrasoMs;
+        return this;
+    }
+
+    /**
+     * Executa uma chamada assíncrona com disjuntor, retentativas e (se configurados) pedidos de cobertura.
+     * @param chamada Inicia uma tentativa (é chamada de novo a cada retentativa ou cobertura).
+     * @param temporaria Diz se uma falha é temporária (conta para o disjuntor e pode ser repetida).
+     * @param limiteNanos Prazo final da chamada, em System.nanoTime(); nenhuma retentativa começa depois dele.
+     * @return O resultado da primeira tentativa bem-sucedida, ou a falha da última tentativa
+     *         (Disjuntor.CircuitoAberto se o disjuntor recusar a chamada).
+     */
+    public <T> CompletableFuture<T> executarAsync(Supplier<CompletableFuture<T>> chamada,
+                                                  Predicate<Throwable> temporaria, long limiteNanos) {
+        chamadas.increment();
+        orcamento.depositar();
+        CompletableFuture<T> resultado = new CompletableFuture<>();
+        tentarAsync(chamada, temporaria, limiteNanos, 1, resultado);
+        return resultado;
+    }
+
+    private <T> void tentarAsync(Supplier<CompletableFuture<T>> chamada, Predicate<Throwable> temporaria,
+                                 long limiteNanos, int tentativa, CompletableFuture<T> resultado) {
+        tentativaComCobertura(chamada, temporaria).whenComplete((valor, erro) -> {
+            if (erro == null) {
+                resultado.complete(valor);
+                return;
+            }
+            Throwable falha = desembrulhar(erro);
+            long espera = calcularBackoff(tentativa);
+            boolean repetir = temporaria.test(falha)
+                    && tentativa < maxTentativas
+                    && System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(espera) < limiteNanos
+                    && orcamento.sacar();
+            if (!repetir) {
+                resultado.completeExceptionally(falha);
+                return;
+            }
+            retentativas.increment();
+            // Agenda a próxima tentativa sem bloquear nenhuma thread durante a espera.
+            CompletableFuture.delayedExecutor(espera, TimeUnit.MILLISECONDS)
+                    .execute(() -> tentarAsync(chamada, temporaria, limiteNanos, tentativa + 1, resultado));
+        });
+    }
+
+    /** Uma tentativa: a chamada original e, se ela demorar, um pedido de cobertura. Vale a primeira resposta boa. */
+    private <T> CompletableFuture<T> tentativaComCobertura(Supplier<CompletableFuture<T>> chamada,
+                                                          Predicate<Throwable> temporaria) {
+        if (atrasoCoberturaMs <= 0) {
+            return chamarProtegido(chamada, temporaria);
+        }
+        CompletableFuture<T> vencedor = new CompletableFuture<>();
+        AtomicInteger emAndamento = new AtomicInteger(1);
+        BiConsumer<T, Throwable> aoTerminar = (valor, erro) -> {
+            if (erro == null) {
+                vencedor.complete(valor);
+            } else if (emAndamento.decrementAndGet() == 0) {
+                vencedor.completeExceptionally(erro); // Todas falharam.
+            }
+        };
+        chamarProtegido(chamada, temporaria).whenComplete(aoTerminar);
+
+        CompletableFuture.delayedExecutor(atrasoCoberturaMs, TimeUnit.MILLISECONDS).execute(() -> {
+            if (vencedor.isDone() || !orcamento.sacar()) {
+                return;
+            }
+            emAndamento.incrementAndGet();
+            coberturas.increment();
+            chamarProtegido(chamada, temporaria).whenComplete((valor, erro) -> {
+                if (erro == null && vencedor.complete(valor)) {
+                    coberturasVencedoras.increment();
+                }
+                aoTerminar.accept(valor, erro);
+            });
+        });
+        return vencedor;
+    }
+
+    /** Faz a chamada se o disjuntor permitir e registra o resultado nele. */
+    private <T> CompletableFuture<T> chamarProtegido(Supplier<CompletableFuture<T>> chamada,
+                                                     Predicate<Throwable> temporaria) {
+        if (!disjuntor.permitirChamada()) {
+            return CompletableFuture.failedFuture(disjuntor.circuitoAberto());
+        }
+        CompletableFuture<T> futuro;
+        try {
+            futuro = chamada.get();
+        } catch (RuntimeException e) {
+            futuro = CompletableFuture.failedFuture(e);
+        }
+        return futuro.whenComplete((valor, erro) -> {
+            if (erro != null && temporaria.test(desembrulhar(erro))) {
+                disjuntor.registrarFalha();
+            } else {
+                disjuntor.registrarSucesso();
+            }
+        });
+    }
+
+    /**
+     * Versão síncrona, para chamadas bloqueantes (ex: RMI). Tem disjuntor e retentativas,
+     * mas não pedidos de cobertura (que exigiriam outra thread bloqueada por chamada).
+     * @param chamada A chamada ao servidor (repetida a cada retentativa).
+     * @param temporaria Diz se uma falha é temporária (conta para o disjuntor e pode ser repetida).
+     * @return O resultado da primeira tentativa bem-sucedida.
+     * @throws Exception A falha da última tentativa, ou Disjuntor.CircuitoAberto.
+     */
+    public <T> T executar(Chamada<T> chamada, Predicate<Throwable> temporaria) throws Exception {
+        chamadas.increment();
+        orcamento.depositar();
+        for (int tentativa = 1; ; tentativa++) {
+            if (!disjuntor.permitirChamada()) {
+                throw disjuntor.circuitoAberto();
+            }
+            try {
+                T valor = chamada.executar();
+                disjuntor.registrarSucesso();
+                return valor;
+            } catch (Exception e) {
+                boolean falhaTemporaria = temporaria.test(e);
+                if (falhaTemporaria) {
+                    disjuntor.registrarFalha();
+                } else {
+                    disjuntor.registrarSucesso();
+                }
+                if (!falhaTemporaria || tentativa >= maxTentativas || !orcamento.sacar()) {
+                    throw e;
+                }
+            }
+            retentativas.increment();
+            Thread.sleep(calcularBackoff(tentativa));
+        }
+    }
+
+    /** Backoff exponencial com "full jitter": um valor aleatório entre 0 e inicial * 2^(tentativa-1). */
+    private long calcularBackoff(int tentativa) {
+        long teto = Math.min(backoffMaximoMs, backoffInicialMs << Math.min(tentativa - 1, 20));
+        return ThreadLocalRandom.current().nextLong(teto + 1);
+    }
+
+    private static Throwable desembrulhar(Throwable erro) {
+        while ((erro instanceof CompletionException || erro instanceof ExecutionException) && erro.getCause() != null) {
+            erro = erro.getCause();
+        }
+        return erro;
+    }
+
+    public Disjuntor getDisjuntor() {
+        return disjuntor;
+    }
+
+    public OrcamentoRetentativas getOrcamento() {
+        return orcamento;
+    }
+
+    /** Chamadas recebidas (sem contar retentativas e coberturas). */
+    public long getChamadas() {
+        return chamadas.sum();
+    }
+
+    public long getRetentativas() {
+        return retentativas.sum();
+    }
+
+    /** Pedidos de cobertura enviados, e quantos deles responderam antes da chamada original. */
+    public long getCoberturas() {
+        return coberturas.sum();
+    }
+
+    public long getCoberturasVencedoras() {
+        return coberturasVencedoras.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "Resiliencia[chamadas=" + getChamadas() + ", retentativas=" + getRetentativas()
+                + ", coberturas=" + getCoberturas() + " (" + getCoberturasVencedoras() + " vencedoras), "
+                + disjuntor + ", " + orcamento + "]";
+    }
+
+    /** Uma chamada bloqueante que pode lançar exceções verificadas (ex: RemoteException). */
+    @FunctionalInterface
+    public interface Chamada<T> {
+        T executar() throws Exception;
+    }
+}
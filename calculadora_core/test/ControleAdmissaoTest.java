@@ -0,0 +1,152 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Testes do ControleAdmissao: balde de fichas por cliente, limite fixo de simultâneas e o ajuste
+ * AIMD do limite adaptativo (janelas de 100 ms, latência comparada com a referência).
+ */
+class ControleAdmissaoTest {
+
+    private static final Metricas METRICAS = Metricas.de("teste-admissao");
+    // Um pouco mais que a janela de ajuste do limite adaptativo (100 ms).
+    private static final long JANELA_MS = 110;
+
+    private static ControleAdmissao porTaxa(double taxa, double rajada) {
+        return new ControleAdmissao(METRICAS, taxa, rajada, 1024, "desligada", 0, 0, 0, 0);
+    }
+
+    private static ControleAdmissao adaptativo(int inicial, int minimo, int maximo) {
+        return new ControleAdmissao(METRICAS, 0, 0, 1024, "adaptativa", inicial, minimo, maximo, 2);
+    }
+
+    /** Quantas requisições simultâneas são admitidas agora (todas são liberadas em seguida, sem amostra). */
+    private static int capacidade(ControleAdmissao controle) {
+        int admitidas = 0;
+        while (controle.admitir(null) == null) {
+            admitidas++;
+        }
+        for (int i = 0; i < admitidas; i++) {
+            controle.liberar();
+        }
+        return admitidas;
+    }
+
+    /**
+     * Espera a janela atual acabar e conclui 'quantidade' requisições com a latência informada.
+     * @param simultaneas Se as requisições ficam em andamento ao mesmo tempo (o limite é "usado")
+     *                    ou uma de cada vez.
+     */
+    private static void janela(ControleAdmissao controle, int quantidade, long latenciaMs, boolean simultaneas)
+            throws InterruptedException {
+        Thread.sleep(JANELA_MS);
+        long latencia = TimeUnit.MILLISECONDS.toNanos(latenciaMs);
+        if (simultaneas) {
+            for (int i = 0; i < quantidade; i++) {
+                assertNull(controle.admitir(null));
+            }
+            for (int i = 0; i < quantidade; i++) {
+                controle.concluir(System.nanoTime() - latencia);
+            }
+        } else {
+            for (int i = 0; i < quantidade; i++) {
+                assertNull(controle.admitir(null));
+                controle.concluir(System.nanoTime() - latencia);
+            }
+        }
+    }
+
+    @Test
+    void desligadoAdmiteTudo() {
+        ControleAdmissao controle = new ControleAdmissao(METRICAS, 0, 0, 1024, "desligada", 8, 4, 1024, 2);
+        assertFalse(controle.isAtivo());
+        for (int i = 0; i < 10_000; i++) {
+            assertNull(controle.admitir("cliente"));
+        }
+        assertEquals("desligado", controle.toString());
+    }
+
+    @Test
+    void baldeDeCadaClienteAceitaARajadaEDepoisATaxa() throws InterruptedException {
+        ControleAdmissao controle = porTaxa(5, 3);
+        for (int i = 0; i < 3; i++) {
+            assertNull(controle.admitir("a"));
+        }
+        assertEquals(ControleAdmissao.Recusa.TAXA, controle.admitir("a"));
+
+        // Outro cliente tem o seu próprio balde.
+        assertNull(controle.admitir("b"));
+
+        // 5 fichas por segundo: em 250 ms volta uma ficha (e um quarto).
+        Thread.sleep(250);
+        assertNull(controle.admitir("a"));
+        assertEquals(ControleAdmissao.Recusa.TAXA, controle.admitir("a"));
+    }
+
+    @Test
+    void limiteFixoRecusaAcimaDasSimultaneas() {
+        ControleAdmissao controle = new ControleAdmissao(METRICAS, 0, 0, 1024, "fixa", 3, 1, 100, 2);
+        assertNull(controle.admitir(null));
+        assertNull(controle.admitir(null));
+        assertNull(controle.admitir(null));
+        assertEquals(ControleAdmissao.Recusa.CONCORRENCIA, controle.admitir(null));
+
+        controle.concluir(System.nanoTime());
+        assertNull(controle.admitir(null), "a vaga liberada volta a ser usada");
+        assertEquals(ControleAdmissao.Recusa.CONCORRENCIA, controle.admitir(null));
+    }
+
+    @Test
+    void limiteAdaptativoSobeDeUmEmUmECaiDezPorCento() throws InterruptedException {
+        ControleAdmissao controle = adaptativo(10, 4, 1000);
+
+        // Latência de referência (1 ms), mas o limite mal foi usado: não sobe.
+        janela(controle, 10, 1, false);
+        assertEquals(10, capacidade(controle));
+
+        // Limite usado (a medição acima chegou a ser recusada) e latência normal: aumento aditivo.
+        janela(controle, 10, 1, true);
+        assertEquals(11, capacidade(controle));
+
+        // Latência acima de 2x a referência: diminuição multiplicativa (11 * 0.9 = 9.9 -> 9).
+        janela(controle, 10, 5, false);
+        assertEquals(9, capacidade(controle));
+
+        // Continua caindo até o mínimo, sem passar dele.
+        for (int i = 0; i < 6; i++) {
+            janela(controle, 10, 5, false);
+        }
+        assertEquals(4, capacidade(controle));
+    }
+
+    @Test
+    void limiteAdaptativoEsperaAmostrasSuficientes() throws InterruptedException {
+        ControleAdmissao controle = adaptativo(10, 4, 1000);
+        // Janela vencida, mas com menos de 10 amostras: nada muda.
+        janela(controle, 9, 5, false);
+        assertEquals(10, capacidade(controle));
+        // A décima amostra completa a janela. A referência é a própria média (5 ms) e a medição de capacidade
+        // acima usou o limite: aumento aditivo.
+        janela(controle, 1, 5, false);
+        assertEquals(11, capacidade(controle));
+        // Lotes (liberar) não contam como amostra.
+        Thread.sleep(JANELA_MS);
+        for (int i = 0; i < 20; i++) {
+            assertNull(controle.admitir(null));
+            controle.liberar();
+        }
+        assertEquals(11, capacidade(controle));
+    }
+
+    @Test
+    void concorrenciaDesconhecidaEhRecusada() {
+        IllegalArgumentException erro = assertThrows(IllegalArgumentException.class,
+                () -> new ControleAdmissao(METRICAS, 0, 0, 1024, "infinita", 8, 4, 1024, 2));
+        assertEquals("Concorrência desconhecida: infinita (use desligada, fixa ou adaptativa).", erro.getMessage());
+    }
+}
@@ -0,0 +1,127 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Testes das transições do Disjuntor: FECHADO -> ABERTO pela taxa de falhas na janela,
+ * ABERTO -> MEIO_ABERTO pelo tempo, e MEIO_ABERTO -> FECHADO ou ABERTO pelas chamadas de teste.
+ */
+class DisjuntorTest {
+
+    private static final long TEMPO_ABERTO_MS = 30;
+
+    private static Disjuntor disjuntor(int janela, int minimoChamadas) {
+        return new Disjuntor("teste", janela, minimoChamadas, 50, TEMPO_ABERTO_MS, 2);
+    }
+
+    private static void falhas(Disjuntor disjuntor, int quantidade) {
+        for (int i = 0; i < quantidade; i++) {
+            assertTrue(disjuntor.permitirChamada());
+            disjuntor.registrarFalha();
+        }
+    }
+
+    private static void sucessos(Disjuntor disjuntor, int quantidade) {
+        for (int i = 0; i < quantidade; i++) {
+            assertTrue(disjuntor.permitirChamada());
+            disjuntor.registrarSucesso();
+        }
+    }
+
+    private static void esperarTempoAberto() throws InterruptedException {
+        Thread.sleep(TEMPO_ABERTO_MS + 20);
+    }
+
+    @Test
+    void naoAbreAntesDoMinimoDeChamadas() {
+        Disjuntor disjuntor = disjuntor(10, 4);
+        falhas(disjuntor, 3);
+        assertEquals(Disjuntor.Estado.FECHADO, disjuntor.getEstado());
+
+        falhas(disjuntor, 1);
+        assertEquals(Disjuntor.Estado.ABERTO, disjuntor.getEstado());
+        assertEquals(1, disjuntor.getAberturas());
+    }
+
+    @Test
+    void taxaDeFalhasConsideraSoAsUltimasChamadas() {
+        Disjuntor disjuntor = disjuntor(4, 4);
+        falhas(disjuntor, 1);
+        sucessos(disjuntor, 4); // A falha sai da janela: 0 de 4.
+        falhas(disjuntor, 1);   // 1 de 4 (25%).
+        assertEquals(Disjuntor.Estado.FECHADO, disjuntor.getEstado());
+
+        falhas(disjuntor, 1);   // 2 de 4 (50%): abre, mesmo com só 3 falhas em 7 chamadas.
+        assertEquals(Disjuntor.Estado.ABERTO, disjuntor.getEstado());
+    }
+
+    @Test
+    void abertoRecusaAsChamadasAteOTempoPassar() throws InterruptedException {
+        Disjuntor disjuntor = disjuntor(4, 2);
+        falhas(disjuntor, 2);
+
+        assertFalse(disjuntor.permitirChamada());
+        assertFalse(disjuntor.permitirChamada());
+        assertEquals(2, disjuntor.getRejeitadas());
+        // Resultados de chamadas que começaram antes da abertura são ignorados.
+        disjuntor.registrarSucesso();
+        assertEquals(Disjuntor.Estado.ABERTO, disjuntor.getEstado());
+
+        esperarTempoAberto();
+        assertTrue(disjuntor.permitirChamada());
+        assertEquals(Disjuntor.Estado.MEIO_ABERTO, disjuntor.getEstado());
+        assertEquals(1, disjuntor.getMeioAberturas());
+    }
+
+    @Test
+    void meioAbertoDeixaPassarSoAsChamadasDeTesteEFechaSeTodasDeremCerto() throws InterruptedException {
+        Disjuntor disjuntor = disjuntor(4, 2);
+        falhas(disjuntor, 2);
+        esperarTempoAberto();
+
+        assertTrue(disjuntor.permitirChamada());
+        assertTrue(disjuntor.permitirChamada());
+        assertFalse(disjuntor.permitirChamada(), "só 2 chamadas de teste");
+
+        disjuntor.registrarSucesso();
+        assertEquals(Disjuntor.Estado.MEIO_ABERTO, disjuntor.getEstado());
+        disjuntor.registrarSucesso();
+        assertEquals(Disjuntor.Estado.FECHADO, disjuntor.getEstado());
+        assertEquals(1, disjuntor.getFechamentos());
+
+        // A janela recomeça vazia: uma falha sozinha não alcança o mínimo de chamadas.
+        falhas(disjuntor, 1);
+        assertEquals(Disjuntor.Estado.FECHADO, disjuntor.getEstado());
+    }
+
+    @Test
+    void falhaNoMeioAbertoAbreDeNovo() throws InterruptedException {
+        Disjuntor disjuntor = disjuntor(4, 2);
+        falhas(disjuntor, 2);
+        esperarTempoAberto();
+
+        assertTrue(disjuntor.permitirChamada());
+        disjuntor.registrarFalha();
+        assertEquals(Disjuntor.Estado.ABERTO, disjuntor.getEstado());
+        assertEquals(2, disjuntor.getAberturas());
+        assertFalse(disjuntor.permitirChamada());
+    }
+
+    @Test
+    void ouvintesRecebemCadaMudancaDeEstado() throws InterruptedException {
+        Disjuntor disjuntor = disjuntor(4, 2);
+        List<String> mudancas = new ArrayList<>();
+        disjuntor.adicionarOuvinte((anterior, novo) -> mudancas.add(anterior + "->" + novo));
+
+        falhas(disjuntor, 2);
+        esperarTempoAberto();
+        sucessos(disjuntor, 2);
+
+        assertEquals(List.of("FECHADO->ABERTO", "ABERTO->MEIO_ABERTO", "MEIO_ABERTO->FECHADO"), mudancas);
+    }
+}
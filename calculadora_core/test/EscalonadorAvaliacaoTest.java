@@ -0,0 +1,150 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Testes do EscalonadorAvaliacao: as expressões baratas são avaliadas na thread de quem chama, as
+ * pesadas (custo a partir do limiar) no pool separado, e a fila cheia das pesadas vira recusa.
+ */
+class EscalonadorAvaliacaoTest {
+
+    private static final Metricas METRICAS = Metricas.de("teste-escalonador");
+    private static final LimitesExpressao LIMITES = new LimitesExpressao(1000, 50, 10);
+
+    /** Motor de teste: devolve o tamanho da expressão e guarda a thread que avaliou. */
+    private static class MotorTeste implements AvaliadorExpressoes {
+        volatile String thread;
+
+        @Override
+        public double avaliarExpressao(String expressao) {
+            thread = Thread.currentThread().getName();
+            if (expressao.contains("/ 0")) {
+                throw new ArithmeticException("Divisão por zero!");
+            }
+            return expressao.length();
+        }
+
+        @Override
+        public String getNome() {
+            return "teste";
+        }
+    }
+
+    /** Motor que só responde depois que o teste liberar. */
+    private static final class MotorBloqueado extends MotorTeste {
+        final CountDownLatch liberar = new CountDownLatch(1);
+
+        @Override
+        public double avaliarExpressao(String expressao) {
+            try {
+                liberar.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.avaliarExpressao(expressao);
+        }
+    }
+
+    private static EscalonadorAvaliacao escalonador(AvaliadorExpressoes motor, int limiar, int threads, int fila) {
+        return new EscalonadorAvaliacao(motor, LIMITES, METRICAS, limiar, threads, fila);
+    }
+
+    @Test
+    void baratasNaThreadDeQuemChamaEPesadasNoPoolSeparado() {
+        MotorTeste motor = new MotorTeste();
+        EscalonadorAvaliacao escalonador = escalonador(motor, 5, 1, 4);
+
+        String barata = "1 + 2";
+        assertEquals(3, escalonador.verificar(barata));
+        assertEquals(5.0, escalonador.avaliarExpressao(barata));
+        assertEquals(Thread.currentThread().getName(), motor.thread);
+
+        String pesada = "1 + 2 + 3";
+        assertEquals(5, escalonador.verificar(pesada));
+        assertEquals(9.0, escalonador.avaliarExpressao(pesada));
+        assertTrue(motor.thread.startsWith("calculadora-pesadas-"), motor.thread);
+        assertEquals("teste", escalonador.getNome());
+    }
+
+    @Test
+    void foraDosLimitesEhExpressaoInvalida() {
+        EscalonadorAvaliacao escalonador = escalonador(new MotorTeste(), 5, 1, 4);
+        IllegalArgumentException erro = assertThrows(IllegalArgumentException.class,
+                () -> escalonador.avaliarExpressao("(((((((((((1)))))))))))"));
+        assertEquals("Parênteses aninhados demais (máximo de 10 níveis).", erro.getMessage());
+        assertEquals(LIMITES, escalonador.getLimites());
+    }
+
+    @Test
+    void errosDaFaixaDasPesadasVoltamComoSeFossemDestaThread() {
+        EscalonadorAvaliacao escalonador = escalonador(new MotorTeste(), 1, 1, 4);
+        ArithmeticException erro = assertThrows(ArithmeticException.class, () -> escalonador.avaliar("1 / 0", 3));
+        assertEquals("Divisão por zero!", erro.getMessage());
+
+        ExecutionException async = assertThrows(ExecutionException.class,
+                () -> escalonador.avaliarAsync("1 / 0", 3).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(ArithmeticException.class, async.getCause());
+    }
+
+    @Test
+    void filaCheiaDasPesadasEhRecusadaSemBloquear() throws Exception {
+        MotorBloqueado motor = new MotorBloqueado();
+        EscalonadorAvaliacao escalonador = escalonador(motor, 1, 1, 1);
+
+        // Uma em avaliação (presa no motor), uma na fila e a terceira já não cabe.
+        CompletableFuture<Double> primeira = escalonador.avaliarAsync("1", 1);
+        CompletableFuture<Double> segunda = escalonador.avaliarAsync("22", 1);
+        CompletableFuture<Double> terceira = escalonador.avaliarAsync("333", 1);
+
+        assertTrue(terceira.isCompletedExceptionally());
+        ExecutionException erro = assertThrows(ExecutionException.class, terceira::get);
+        ControleAdmissao.Recusada recusada = assertInstanceOf(ControleAdmissao.Recusada.class, erro.getCause());
+        assertEquals(ControleAdmissao.Recusa.FILA_PESADAS, recusada.getRecusa());
+        assertThrows(ControleAdmissao.Recusada.class, () -> escalonador.avaliar("4444", 1));
+
+        // A capacidade da fila, mesmo com ela ocupada.
+        assertEquals("expressões a partir de 1 tokens em 1 thread(s) separada(s), fila de 1", escalonador.toString());
+
+        motor.liberar.countDown();
+        assertEquals(1.0, primeira.get(5, TimeUnit.SECONDS));
+        assertEquals(2.0, segunda.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void pesadaDentroDaFaixaDasPesadasNaoEhReenviada() throws Exception {
+        EscalonadorAvaliacao escalonador = escalonador(new MotorTeste(), 1, 1, 1);
+        assertTrue(escalonador.isPesada(1000));
+        // Com uma só thread, reenviar ao pool esperaria por ela mesma.
+        assertFalse(escalonador.executarPesada(() -> escalonador.isPesada(1000)).get(5, TimeUnit.SECONDS));
+        assertEquals(3.0, escalonador.executarPesada(() -> escalonador.avaliar("1+2", 1000)).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void limiarZeroDesligaAFaixaDasPesadas() {
+        MotorTeste motor = new MotorTeste();
+        EscalonadorAvaliacao escalonador = escalonador(motor, 0, 1, 1);
+        assertFalse(escalonador.isPesada(Integer.MAX_VALUE));
+
+        CompletableFuture<Double> resultado = escalonador.avaliarAsync("1 + 2", 1000);
+        assertTrue(resultado.isDone(), "avaliada na hora");
+        assertEquals(Thread.currentThread().getName(), motor.thread);
+        assertEquals("sem faixa de expressões pesadas", escalonador.toString());
+
+        // Quem chama executarPesada direto também é atendido, na própria thread.
+        CompletableFuture<String> tarefa = escalonador.executarPesada(() -> Thread.currentThread().getName());
+        assertEquals(Thread.currentThread().getName(), tarefa.join());
+        CompletableFuture<Object> falha = escalonador.executarPesada(() -> {
+            throw new ArithmeticException("Divisão por zero!");
+        });
+        assertInstanceOf(ArithmeticException.class, assertThrows(ExecutionException.class, falha::get).getCause());
+    }
+}
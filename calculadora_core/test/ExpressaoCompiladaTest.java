@@ -0,0 +1,104 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Testes do formato binário dos programas (escreverBytecode / lerBytecode): ida e volta sem perda
+ * e recusa dos programas inválidos, que chegam de fora pela rede.
+ */
+class ExpressaoCompiladaTest {
+
+    private final InterpretadorAritmetico interpretador = new InterpretadorAritmetico(new CacheExpressoes(64));
+
+    private static ExpressaoCompilada idaEVolta(ExpressaoCompilada programa) {
+        ByteBuffer buffer = ByteBuffer.allocate(programa.tamanhoBytecode());
+        programa.escreverBytecode(buffer);
+        assertFalse(buffer.hasRemaining(), "tamanhoBytecode deve ser exatamente o tamanho escrito");
+        buffer.flip();
+        ExpressaoCompilada lido = ExpressaoCompilada.lerBytecode(buffer);
+        assertFalse(buffer.hasRemaining(), "lerBytecode deve consumir o programa inteiro");
+        return lido;
+    }
+
+    @Test
+    void programaLidoCalculaOMesmoQueOOriginal() {
+        for (String expressao : new String[]{"1 + 2 * 3", "(1.5 + 2) * (3 - 4) / 7", "8/2/2", "42", "9()7(7+86"}) {
+            ExpressaoCompilada programa = interpretador.compilar(expressao);
+            ExpressaoCompilada lido = idaEVolta(programa);
+            assertEquals(programa.tamanho(), lido.tamanho());
+            assertEquals(programa.avaliar(), lido.avaliar(), "expressão: \"" + expressao + "\"");
+        }
+    }
+
+    @Test
+    void programaComVariaveisMantemOsIndices() {
+        ExpressaoCompilada lido = idaEVolta(interpretador.compilar("x * 2 + y / x", "x", "y"));
+        assertEquals(2, lido.getQuantidadeVariaveis());
+        assertEquals(4.0 * 2 + 6.0 / 4.0, lido.avaliar(new double[]{4, 6}));
+        assertThrows(IllegalArgumentException.class, () -> lido.avaliar(new double[]{4}));
+    }
+
+    @Test
+    void divisaoPorZeroContinuaNoProgramaLido() {
+        ExpressaoCompilada lido = idaEVolta(interpretador.compilar("1 / x", "x"));
+        ArithmeticException erro = assertThrows(ArithmeticException.class, () -> lido.avaliar(new double[]{0}));
+        assertEquals("Divisão por zero!", erro.getMessage());
+    }
+
+    @Test
+    void descarteRemoveOsDoisValoresDoTopo() {
+        ByteBuffer programa = ByteBuffer.allocate(64).putInt(4).putInt(0)
+                .put(ExpressaoCompilada.CONSTANTE).putDouble(9)
+                .put(ExpressaoCompilada.CONSTANTE).putDouble(7)
+                .put(ExpressaoCompilada.CONSTANTE).putDouble(5)
+                .put(ExpressaoCompilada.DESCARTE);
+        assertEquals(9.0, ExpressaoCompilada.lerBytecode(programa.flip()).avaliar());
+    }
+
+    @Test
+    void recusaCabecalhoInconsistente() {
+        assertInvalido("Programa inválido: cabeçalho inconsistente.", ByteBuffer.allocate(16).putInt(0).putInt(0));
+        assertInvalido("Programa inválido: cabeçalho inconsistente.",
+                ByteBuffer.allocate(16).putInt(1).putInt(-1).put(ExpressaoCompilada.CONSTANTE));
+        // Mais instruções do que bytes: recusado antes de alocar qualquer array.
+        assertInvalido("Programa inválido: cabeçalho inconsistente.",
+                ByteBuffer.allocate(16).putInt(Integer.MAX_VALUE).putInt(0).put(ExpressaoCompilada.CONSTANTE));
+    }
+
+    @Test
+    void recusaInstrucoesInvalidas() {
+        assertInvalido("Programa inválido: código 9 desconhecido.",
+                ByteBuffer.allocate(16).putInt(1).putInt(0).put((byte) 9));
+        assertInvalido("Programa inválido: faltam operandos na instrução 1.",
+                ByteBuffer.allocate(32).putInt(2).putInt(0)
+                        .put(ExpressaoCompilada.CONSTANTE).putDouble(1).put(ExpressaoCompilada.SOMA));
+        assertInvalido("Programa inválido: variável 1 inexistente.",
+                ByteBuffer.allocate(16).putInt(1).putInt(1).put(ExpressaoCompilada.VARIAVEL).putInt(1));
+        assertInvalido("Programa inválido: variável -1 inexistente.",
+                ByteBuffer.allocate(16).putInt(1).putInt(1).put(ExpressaoCompilada.VARIAVEL).putInt(-1));
+        assertInvalido("Programa inválido: deve deixar exatamente um resultado.",
+                ByteBuffer.allocate(32).putInt(2).putInt(0)
+                        .put(ExpressaoCompilada.CONSTANTE).putDouble(1).put(ExpressaoCompilada.CONSTANTE).putDouble(2));
+        assertInvalido("Programa inválido: deve deixar exatamente um resultado.",
+                ByteBuffer.allocate(32).putInt(3).putInt(0)
+                        .put(ExpressaoCompilada.CONSTANTE).putDouble(1).put(ExpressaoCompilada.CONSTANTE).putDouble(2)
+                        .put(ExpressaoCompilada.DESCARTE));
+    }
+
+    @Test
+    void programaTruncadoNaoEhLidoAlemDoBuffer() {
+        ByteBuffer truncado = ByteBuffer.allocate(16).putInt(2).putInt(0).put(ExpressaoCompilada.CONSTANTE).putInt(0);
+        assertThrows(BufferUnderflowException.class, () -> ExpressaoCompilada.lerBytecode(truncado.flip()));
+    }
+
+    private static void assertInvalido(String mensagem, ByteBuffer programa) {
+        IllegalArgumentException erro = assertThrows(IllegalArgumentException.class,
+                () -> ExpressaoCompilada.lerBytecode(programa.flip()));
+        assertEquals(mensagem, erro.getMessage());
+    }
+}
@@ -0,0 +1,36 @@
+import java.util.Random;
+
+/**
+ * Gerador de expressões aleatórias para os testes de equivalência entre motores: números (inteiros e
+ * decimais), os quatro operadores, parênteses (propositalmente sem balancear) e espaços, em qualquer
+ * ordem. A maioria das expressões geradas é inválida, justamente para comparar também os erros.
+ */
+final class ExpressoesAleatorias {
+
+    private static final String[] SIMBOLOS = {"+", "-", "*", "/", "(", ")", "(", ")"};
+
+    private final Random aleatorio;
+
+    ExpressoesAleatorias(long semente) {
+        this.aleatorio = new Random(semente);
+    }
+
+    String proxima() {
+        int tokens = 1 + aleatorio.nextInt(10);
+        StringBuilder expressao = new StringBuilder();
+        for (int i = 0; i < tokens; i++) {
+            if (aleatorio.nextInt(3) == 0) {
+                expressao.append(' ');
+            }
+            if (aleatorio.nextBoolean()) {
+                expressao.append(aleatorio.nextInt(100));
+                if (aleatorio.nextInt(8) == 0) {
+                    expressao.append('.').append(aleatorio.nextInt(10));
+                }
+            } else {
+                expressao.append(SIMBOLOS[aleatorio.nextInt(SIMBOLOS.length)]);
+            }
+        }
+        return expressao.toString();
+    }
+}
@@ -0,0 +1,122 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Testes do HistogramaLatencia: a conta das faixas (indice / limiteSuperior) e os percentis do resumo.
+ */
+class HistogramaLatenciaTest {
+
+    /** O contador de um valor é o que o contém: limiteSuperior do anterior < valor <= limiteSuperior do seu. */
+    private static void assertFaixaContem(long valor) {
+        int indice = HistogramaLatencia.indice(valor);
+        assertTrue(HistogramaLatencia.limiteSuperior(indice) >= valor, "valor " + valor + " acima da faixa " + indice);
+        if (indice > 0) {
+            assertTrue(HistogramaLatencia.limiteSuperior(indice - 1) < valor, "valor " + valor + " cabia na faixa anterior");
+        }
+        // Precisão: a faixa é no máximo 1/32 do valor.
+        assertTrue(HistogramaLatencia.limiteSuperior(indice) - valor <= valor / 32, "faixa larga demais para " + valor);
+    }
+
+    @Test
+    void valoresPequenosTemContadorProprio() {
+        for (long valor = 0; valor < 64; valor++) {
+            assertEquals(valor, HistogramaLatencia.indice(valor));
+            assertEquals(valor, HistogramaLatencia.limiteSuperior((int) valor));
+        }
+    }
+
+    @Test
+    void cadaValorCaiNaFaixaCertaComErroDeNoMaximoUmTrintaEDoisAvos() {
+        for (int bit = 6; bit < 63; bit++) {
+            long potencia = 1L << bit;
+            assertFaixaContem(potencia - 1);
+            assertFaixaContem(potencia);
+            assertFaixaContem(potencia + 1);
+        }
+        assertFaixaContem(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, HistogramaLatencia.limiteSuperior(HistogramaLatencia.indice(Long.MAX_VALUE)));
+
+        SplittableRandom aleatorio = new SplittableRandom(7);
+        for (int i = 0; i < 100_000; i++) {
+            assertFaixaContem(aleatorio.nextLong(Long.MAX_VALUE) >>> aleatorio.nextInt(63));
+        }
+    }
+
+    @Test
+    void faixasSaoContiguasECrescentes() {
+        int ultimo = HistogramaLatencia.indice(Long.MAX_VALUE);
+        for (int i = 1; i <= ultimo; i++) {
+            long inicio = HistogramaLatencia.limiteSuperior(i - 1) + 1;
+            assertEquals(i, HistogramaLatencia.indice(inicio), "primeiro valor da faixa " + i);
+            assertEquals(i, HistogramaLatencia.indice(HistogramaLatencia.limiteSuperior(i)), "último valor da faixa " + i);
+        }
+    }
+
+    @Test
+    void percentisFicamDentroDaPrecisao() {
+        HistogramaLatencia histograma = new HistogramaLatencia();
+        for (long valor = 1; valor <= 10_000; valor++) {
+            histograma.registrar(valor * 1000);
+        }
+        HistogramaLatencia.Resumo resumo = histograma.resumo();
+        assertEquals(10_000, resumo.getContagem());
+        assertEquals(10_000_000, resumo.getMaximo());
+        assertEquals(5_000_500.0, resumo.getMedia());
+
+        for (double percentil : new double[]{1, 50, 90, 99, 99.9}) {
+            long exato = (long) Math.ceil(percentil / 100 * 10_000) * 1000;
+            long calculado = resumo.percentil(percentil);
+            assertTrue(calculado >= exato && calculado - exato <= exato / 32,
+                    "p" + percentil + ": esperado ~" + exato + ", calculado " + calculado);
+        }
+        // O percentil 100 nunca passa do máximo registrado, mesmo com a faixa indo além dele.
+        assertEquals(10_000_000, resumo.percentil(100));
+        // O menor percentil é o fim da faixa do menor valor (1000 está na faixa 992..1007).
+        assertEquals(HistogramaLatencia.limiteSuperior(HistogramaLatencia.indice(1000)), resumo.percentil(0));
+    }
+
+    @Test
+    void negativosContamComoZeroEZerarLimpaTudo() {
+        HistogramaLatencia histograma = new HistogramaLatencia();
+        assertEquals(0, histograma.resumo().percentil(99));
+        assertEquals(0.0, histograma.resumo().getMedia());
+
+        histograma.registrar(-5);
+        histograma.registrar(100);
+        HistogramaLatencia.Resumo resumo = histograma.resumo();
+        assertEquals(2, resumo.getContagem());
+        assertEquals(100, resumo.getSoma());
+        assertEquals(0, resumo.percentil(50));
+
+        histograma.zerar();
+        resumo = histograma.resumo();
+        assertEquals(0, resumo.getContagem());
+        assertEquals(0, resumo.getSoma());
+        assertEquals(0, resumo.getMaximo());
+    }
+
+    @Test
+    void registrosConcorrentesNaoSePerdem() throws InterruptedException {
+        HistogramaLatencia histograma = new HistogramaLatencia();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            long base = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 50_000; i++) {
+                    histograma.registrar(base * 1_000_000 + i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        HistogramaLatencia.Resumo resumo = histograma.resumo();
+        assertEquals(200_000, resumo.getContagem());
+        assertEquals(3_000_000 + 49_999, resumo.getMaximo());
+    }
+}
@@ -0,0 +1,114 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.function.ToDoubleFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Testes do motor compilado (InterpretadorAritmetico). A referência é sempre o interpretador
+ * original (InterpretadorOriginal): mesmo resultado, ou mesmo erro com a mesma mensagem.
+ */
+class InterpretadorAritmeticoTest {
+
+    private final InterpretadorAritmetico interpretador = new InterpretadorAritmetico(new CacheExpressoes(1024));
+    private final InterpretadorOriginal original = new InterpretadorOriginal();
+
+    /**
+     * O resultado de uma avaliação como texto: o número, ou a classe e a mensagem do erro.
+     * Dois motores são equivalentes numa expressão quando os textos são iguais.
+     */
+    static String resultado(ToDoubleFunction<String> motor, String expressao) {
+        try {
+            return String.valueOf(motor.applyAsDouble(expressao));
+        } catch (RuntimeException e) {
+            return e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+    }
+
+    private void assertIgualAoOriginal(String expressao) {
+        assertEquals(resultado(original::avaliarExpressao, expressao),
+                resultado(interpretador::avaliarExpressao, expressao), "expressão: \"" + expressao + "\"");
+    }
+
+    // --- Varredura (tokens, espaços e números) ---
+
+    @Test
+    void respeitaPrecedenciaEParenteses() {
+        assertEquals(20.0, interpretador.avaliarExpressao("3 * (5 + 2) - 1"));
+        assertEquals(7.0, interpretador.avaliarExpressao("1+2*3"));
+        assertEquals(9.0, interpretador.avaliarExpressao("(1+2)*3"));
+        assertEquals(2.0, interpretador.avaliarExpressao("8/2/2"));
+        assertEquals(-4.0, interpretador.avaliarExpressao("1-2-3"));
+    }
+
+    @Test
+    void ignoraEspacosEmQualquerPosicao() {
+        // Como na antiga remoção de espaços por regex, até no meio de um número.
+        assertEquals(15.0, interpretador.avaliarExpressao("1 2 + 3"));
+        assertEquals(7.0, interpretador.avaliarExpressao(" \t1\n+\r2 *\f3 "));
+        assertIgualAoOriginal("1 . 5 * 2");
+    }
+
+    @Test
+    void converteNumerosComoParseDouble() {
+        String[] numeros = {"0.1", "0.2", "12.5", "3.14159", "123456789012345", "1234567890123456789",
+                "0.30000000000000004", "9.999999999999999", "007", "1e3", "1."};
+        for (String numero : numeros) {
+            assertIgualAoOriginal(numero);
+            assertIgualAoOriginal(numero + "+" + numero);
+        }
+        assertEquals(0.1 + 0.2, interpretador.avaliarExpressao("0.1+0.2"));
+    }
+
+    @Test
+    void rejeitaTokensInvalidosComAsMesmasMensagens() {
+        IllegalArgumentException erro = assertThrows(IllegalArgumentException.class,
+                () -> interpretador.avaliarExpressao("2 + x"));
+        assertEquals("Caractere desconhecido: x", erro.getMessage());
+
+        erro = assertThrows(IllegalArgumentException.class, () -> interpretador.avaliarExpressao("1.2.3 + 1"));
+        assertEquals("Token inválido na expressão: 1.2.3", erro.getMessage());
+
+        for (String expressao : new String[]{"", "   ", "+", "1 +", "* 2", "1 2 3 x", "5*-3", "-3", "2..5",
+                "1)", ")(", "abc", "1 / 0", "0/0", "4 % 2", "1 = 1"}) {
+            assertIgualAoOriginal(expressao);
+        }
+    }
+
+    // --- Compilação, constantes resolvidas na compilação e cache ---
+
+    @Test
+    void parenteseSemParNaoEhCalculadoComoOperador() {
+        // O '(' sem par "aplicado" descarta os dois valores, como no original, em vez de virar uma operação.
+        assertEquals("9.0", resultado(interpretador::avaliarExpressao, "9()7(7+86"));
+        assertIgualAoOriginal("3(8");
+        assertIgualAoOriginal("(16(20*5");
+        assertIgualAoOriginal("1(2(3(4");
+        assertIgualAoOriginal("((1)2)3");
+    }
+
+    @Test
+    void equivaleAoOriginalEmExpressoesAleatorias() {
+        ExpressoesAleatorias expressoes = new ExpressoesAleatorias(20240501L);
+        for (int i = 0; i < 200_000; i++) {
+            assertIgualAoOriginal(expressoes.proxima());
+        }
+    }
+
+    @Test
+    void cacheUsaAExpressaoSemEspacos() {
+        ExpressaoCompilada compilada = interpretador.compilar("1 + 2 * 3");
+        assertSame(compilada, interpretador.compilar("1+2*3"));
+        assertSame(compilada, interpretador.compilar(" 1+2 *3 "));
+        assertEquals(7.0, compilada.avaliar());
+    }
+
+    @Test
+    void divisaoPorZeroContinuaSendoErroAritmetico() {
+        ArithmeticException erro = assertThrows(ArithmeticException.class,
+                () -> interpretador.avaliarExpressao("1 / (2 - 2)"));
+        assertEquals("Divisão por zero!", erro.getMessage());
+    }
+}
@@ -1,11 +1,11 @@
 import java.util.Stack;
 
 /**
- * Classe responsável por avaliar expressões aritméticas complexas
- * que incluem múltiplos números, operadores (+, -, *, /) e parênteses.
- * Utiliza o algoritmo baseado em pilhas para respeitar a ordem de precedência.
+ * Cópia fiel do InterpretadorAritmetico original (antes de todas as otimizações), usada só pelos
+ * testes como referência: os motores atuais devem dar o mesmo resultado, ou o mesmo erro, para
+ * qualquer expressão. Não altere esta classe.
  */
-public class InterpretadorAritmetico {
+public class InterpretadorOriginal {
 
     /**
      * Avalia uma expressão aritmética complexa (ex: "3 * (5 + 2) - 1").
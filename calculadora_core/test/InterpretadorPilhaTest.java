@@ -0,0 +1,39 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * O motor "pilha" é a referência do original: deve se comportar exatamente como ele, inclusive nos erros.
+ */
+class InterpretadorPilhaTest {
+
+    private final InterpretadorPilha pilha = new InterpretadorPilha();
+    private final InterpretadorOriginal original = new InterpretadorOriginal();
+
+    private void assertIgualAoOriginal(String expressao) {
+        assertEquals(InterpretadorAritmeticoTest.resultado(original::avaliarExpressao, expressao),
+                InterpretadorAritmeticoTest.resultado(pilha::avaliarExpressao, expressao),
+                "expressão: \"" + expressao + "\"");
+    }
+
+    @Test
+    void avaliaComPrecedencia() {
+        assertEquals(20.0, pilha.avaliarExpressao("3 * (5 + 2) - 1"));
+        assertEquals(2.5, pilha.avaliarExpressao("10 / 4"));
+    }
+
+    @Test
+    void parenteseSemParDescartaOsDoisValores() {
+        assertEquals(9.0, pilha.avaliarExpressao("9()7(7+86"));
+        assertIgualAoOriginal("3(8");
+        assertIgualAoOriginal("(16(20*5");
+    }
+
+    @Test
+    void equivaleAoOriginalEmExpressoesAleatorias() {
+        ExpressoesAleatorias expressoes = new ExpressoesAleatorias(7L);
+        for (int i = 0; i < 100_000; i++) {
+            assertIgualAoOriginal(expressoes.proxima());
+        }
+    }
+}
@@ -0,0 +1,84 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Testes dos LimitesExpressao: a contagem de tokens (o custo), cada um dos três limites com a sua
+ * mensagem, e a verificação incremental dando o mesmo resultado que a da expressão inteira.
+ */
+class LimitesExpressaoTest {
+
+    private static final LimitesExpressao FOLGADOS = new LimitesExpressao(1000, 1000, 100);
+
+    private static String erro(LimitesExpressao limites, String expressao) {
+        return assertThrows(IllegalArgumentException.class, () -> limites.verificar(expressao)).getMessage();
+    }
+
+    @Test
+    void custoContaNumerosNomesOperadoresEParenteses() {
+        assertEquals(7, FOLGADOS.verificar("12.5 * (3 - x1)"));
+        assertEquals(1, FOLGADOS.verificar("  42\t"));
+        assertEquals(0, FOLGADOS.verificar(""));
+        // Espaços separam números: "1 2" são dois tokens (o erro de sintaxe fica para o motor).
+        assertEquals(2, FOLGADOS.verificar("1 2"));
+        // Os mesmos espaços do interpretador (o '\\s' das expressões regulares) não contam.
+        assertEquals(3, FOLGADOS.verificar("1\f+\u000B2\n"));
+    }
+
+    @Test
+    void cadaLimiteTemASuaMensagem() {
+        LimitesExpressao limites = new LimitesExpressao(20, 5, 2);
+        assertEquals("Expressão muito longa (máximo de 20 caracteres).", erro(limites, "1 +                  1"));
+        assertEquals("Expressão com termos demais (máximo de 5 números, operadores e parênteses).",
+                erro(limites, "1 + 2 + 3 + 4"));
+        assertEquals("Parênteses aninhados demais (máximo de 2 níveis).", erro(limites, "(((1"));
+
+        assertEquals(20, limites.getMaxCaracteres());
+        assertEquals(5, limites.verificar("((1))"));
+    }
+
+    @Test
+    void profundidadeContaSoOsParentesesAbertosAoMesmoTempo() {
+        LimitesExpressao limites = new LimitesExpressao(1000, 1000, 1);
+        assertEquals(11, limites.verificar("(1) + (2) + (3)"));
+        assertEquals("Parênteses aninhados demais (máximo de 1 níveis).", erro(limites, "(1 + (2))"));
+    }
+
+    @Test
+    void verificacaoIncrementalDaOMesmoCustoQueAExpressaoInteira() {
+        ExpressoesAleatorias expressoes = new ExpressoesAleatorias(42);
+        LimitesExpressao.Verificacao verificacao = FOLGADOS.iniciar();
+        for (int i = 0; i < 10_000; i++) {
+            String expressao = expressoes.proxima();
+            verificacao.reiniciar();
+            for (int j = 0; j < expressao.length(); j++) {
+                assertTrue(verificacao.aceitar(expressao.charAt(j)), expressao);
+            }
+            assertNull(verificacao.getErro());
+            assertEquals(FOLGADOS.verificar(expressao), verificacao.getCusto(), expressao);
+        }
+    }
+
+    @Test
+    void verificacaoParaNoPrimeiroLimiteAteSerReiniciada() {
+        LimitesExpressao.Verificacao verificacao = new LimitesExpressao(10, 3, 5).iniciar();
+        assertTrue(verificacao.aceitar('1'));
+        assertTrue(verificacao.aceitar('+'));
+        assertTrue(verificacao.aceitar('2'));
+        assertFalse(verificacao.aceitar('+'));
+        assertEquals("Expressão com termos demais (máximo de 3 números, operadores e parênteses).",
+                verificacao.getErro());
+        // Depois do erro, nada mais é aceito, nem um espaço.
+        assertFalse(verificacao.aceitar(' '));
+
+        verificacao.reiniciar();
+        assertNull(verificacao.getErro());
+        assertEquals(0, verificacao.getCusto());
+        assertTrue(verificacao.aceitar('7'));
+        assertEquals(1, verificacao.getCusto());
+    }
+}
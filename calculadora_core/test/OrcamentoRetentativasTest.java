@@ -0,0 +1,56 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Testes do OrcamentoRetentativas: as retentativas ficam na proporção das chamadas, com o saldo
+ * limitado e a reposição mínima por segundo.
+ */
+class OrcamentoRetentativasTest {
+
+    @Test
+    void retentativasFicamNaProporcaoDasChamadas() {
+        // Sem reposição por tempo: só as chamadas depositam fichas (1/4 de ficha cada).
+        OrcamentoRetentativas orcamento = new OrcamentoRetentativas(0.25, 0, 100);
+        assertFalse(orcamento.sacar(), "começa sem fichas");
+
+        int concedidas = 0;
+        for (int i = 0; i < 100; i++) {
+            orcamento.depositar();
+            if (orcamento.sacar()) {
+                concedidas++;
+            }
+        }
+        assertEquals(25, concedidas);
+        assertEquals(25, orcamento.getConcedidas());
+        assertEquals(76, orcamento.getNegadas());
+    }
+
+    @Test
+    void saldoNaoPassaDoMaximo() {
+        OrcamentoRetentativas orcamento = new OrcamentoRetentativas(0.5, 0, 3);
+        for (int i = 0; i < 1000; i++) {
+            orcamento.depositar();
+        }
+        assertTrue(orcamento.sacar());
+        assertTrue(orcamento.sacar());
+        assertTrue(orcamento.sacar());
+        assertFalse(orcamento.sacar(), "rajada limitada ao saldo máximo");
+    }
+
+    @Test
+    void minimoPorSegundoRepoeAsFichasSemTrafego() throws InterruptedException {
+        // Começa com o mínimo de 1 segundo (limitado pelo saldo máximo), sem nenhuma chamada.
+        OrcamentoRetentativas orcamento = new OrcamentoRetentativas(0.2, 100, 2);
+        assertTrue(orcamento.sacar());
+        assertTrue(orcamento.sacar());
+        assertFalse(orcamento.sacar());
+
+        Thread.sleep(30); // ~3 fichas a 100 por segundo, limitadas a 2.
+        assertTrue(orcamento.sacar());
+        assertTrue(orcamento.sacar());
+        assertFalse(orcamento.sacar());
+    }
+}
@@ -0,0 +1,72 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Compara o protocolo de texto com o binário num servidor já em execução.
+ *
+ * Para cada modo, envia N expressões em lotes (pipelining) por uma única conexão e mede
+ * quantas requisições por segundo foram respondidas:
+ *   - texto:            ClienteCalculadora (linhas de texto);
+ *   - binário/texto:    ClienteBinario enviando a expressão em UTF-8;
+ *   - binário/programa: ClienteBinario enviando o programa já compilado no cliente, com variáveis.
+ *
+ * Uso: java BenchmarkProtocolos [endereco] [porta] [quantidade]
+ */
+public class BenchmarkProtocolos {
+
+    private static final int TAMANHO_LOTE = 256;
+    private static final int RODADAS = 5;
+
+    public static void main(String[] args) throws Exception {
+        String endereco = args.length > 0 ? args[0] : "localhost";
+        int porta = args.length > 1 ? Integer.parseInt(args[1]) : 12345;
+        int quantidade = args.length > 2 ? Integer.parseInt(args[2]) : 200_000;
+
+        // Expressões variadas para o cache não responder sempre a mesma entrada.
+        List<String> expressoes = new ArrayList<>(TAMANHO_LOTE);
+        for (int i = 0; i < TAMANHO_LOTE; i++) {
+            expressoes.add((i + 1) + " * (3.25 + " + (i % 17) + ") / 7 - 2.5");
+        }
+        ExpressaoCompilada programa = new InterpretadorAritmetico().compilar("x * (3.25 + y) / 7 - 2.5", "x", "y");
+        List<double[]> valores = new ArrayList<>(TAMANHO_LOTE);
+        for (int i = 0; i < TAMANHO_LOTE; i++) {
+            valores.add(new double[] {i + 1, i % 17});
+        }
+
+        try (ClienteCalculadora texto = new ClienteCalculadora(endereco, porta);
+             ClienteBinario binario = new ClienteBinario(endereco, porta)) {
+
+            for (int rodada = 1; rodada <= RODADAS; rodada++) {
+                System.out.println("--- Rodada " + rodada + " ---");
+
+                long inicio = System.nanoTime();
+                for (int enviados = 0; enviados < quantidade; enviados += TAMANHO_LOTE) {
+                    esperar(texto.avaliarTodasAsync(expressoes));
+                }
+                imprimir("texto", quantidade, inicio);
+
+                inicio = System.nanoTime();
+                for (int enviados = 0; enviados < quantidade; enviados += TAMANHO_LOTE) {
+                    esperar(binario.avaliarTodasAsync(expressoes));
+                }
+                imprimir("binário/texto", quantidade, inicio);
+
+                inicio = System.nanoTime();
+                for (int enviados = 0; enviados < quantidade; enviados += TAMANHO_LOTE) {
+                    esperar(binario.avaliarTodasAsync(programa, valores));
+                }
+                imprimir("binário/programa", quantidade, inicio);
+            }
+        }
+    }
+
+    private static void esperar(List<CompletableFuture<Double>> futuros) {
+        CompletableFuture.allOf(futuros.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    private static void imprimir(String modo, int quantidade, long inicio) {
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        System.out.printf("%-18s %10.0f req/s (%.2f s)%n", modo, quantidade / segundos, segundos);
+    }
+}
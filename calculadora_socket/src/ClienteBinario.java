@@ -0,0 +1,220 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cliente da calculadora que usa o protocolo binário (ver ProtocoloBinario).
+ *
+ * Funciona como o ClienteCalculadora (conexão persistente, pipelining, API assíncrona),
+ * mas cada requisição leva um id e cada resultado volta como um double binário, sem
+ * conversões de e para texto. Também permite enviar expressões já compiladas no cliente.
+ */
+public class ClienteBinario implements AutoCloseable {
+
+    private final Socket socket;
+    private final BufferedOutputStream saida;
+    private final DataInputStream entrada;
+
+    // Buffer onde os quadros são montados antes do envio (protegido pelo lock de 'saida').
+    private ByteBuffer quadro = ByteBuffer.allocate(256);
+    // Próximo id de requisição (protegido pelo lock de 'saida').
+    private int proximoId;
+
+    // Requisições enviadas que aguardam resposta, pelo id.
+    private final Map<Integer, CompletableFuture<Double>> pendentes = new ConcurrentHashMap<>();
+    // Motivo do encerramento da conexão (null enquanto ela estiver ativa). Protegido pelo lock de 'saida'.
+    private IOException encerramento;
+
+    /**
+     * Conecta ao servidor, envia a saudação do protocolo binário e inicia a thread que lê as respostas.
+     * @param endereco O endereço do servidor.
+     * @param porta A porta do servidor.
+     * @throws IOException Se não for possível conectar.
+     */
+    public ClienteBinario(String endereco, int porta) throws IOException {
+        this.socket = new Socket(endereco, porta);
+        socket.setTcpNoDelay(true);
+        this.saida = new BufferedOutputStream(socket.getOutputStream());
+        this.entrada = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+        saida.write(ProtocoloBinario.SAUDACAO);
+        saida.flush();
+
+        Thread leitor = new Thread(this::lerRespostas, "calculadora-cliente-binario-leitor");
+        leitor.setDaemon(true);
+        leitor.start();
+    }
+
+    /**
+     * Envia uma expressão (em texto) sem esperar a resposta.
+     * @return Um CompletableFuture completado com o resultado, ou com ClienteCalculadora.ErroServidor.
+     */
+    public CompletableFuture<Double> avaliarAsync(String expressao) {
+        return avaliarTodasAsync(List.of(expressao)).get(0);
+    }
+
+    /**
+     * Envia várias expressões num único envio pela rede, sem esperar as respostas.
+     * @return Um CompletableFuture por expressão, na mesma ordem.
+     */
+    public List<CompletableFuture<Double>> avaliarTodasAsync(List<String> expressoes) {
+        List<CompletableFuture<Double>> futuros = new ArrayList<>(expressoes.size());
+        synchronized (saida) {
+            for (String expressao : expressoes) {
+                byte[] texto = expressao.getBytes(StandardCharsets.UTF_8);
+                int id = iniciarQuadro(ProtocoloBinario.TIPO_EXPRESSAO, texto.length);
+                quadro.put(texto);
+                futuros.add(registrarEEscrever(id));
+            }
+            enviar();
+        }
+        return futuros;
+    }
+
+    /**
+     * Envia uma expressão já compilada (ex: com InterpretadorAritmetico.compilar) e os valores das variáveis.
+     * O servidor não precisa analisar texto algum: só verifica e executa o programa.
+     * @return Um CompletableFuture completado com o resultado, ou com ClienteCalculadora.ErroServidor.
+     */
+    public CompletableFuture<Double> avaliarAsync(ExpressaoCompilada programa, double... valores) {
+        return avaliarTodasAsync(programa, List.of(valores)).get(0);
+    }
+
+    /**
+     * Envia o mesmo programa várias vezes, uma para cada conjunto de valores, num único envio pela rede.
+     * @return Um CompletableFuture por conjunto de valores, na mesma ordem.
+     */
+    public List<CompletableFuture<Double>> avaliarTodasAsync(ExpressaoCompilada programa, List<double[]> valores) {
+        List<CompletableFuture<Double>> futuros = new ArrayList<>(valores.size());
+        int tamanhoPrograma = programa.tamanhoBytecode();
+        synchronized (saida) {
+            for (double[] linha : valores) {
+                int id = iniciarQuadro(ProtocoloBinario.TIPO_PROGRAMA, tamanhoPrograma + 4 + 8 * linha.length);
+                programa.escreverBytecode(quadro);
+                quadro.putInt(linha.length);
+                for (double valor : linha) {
+                    quadro.putDouble(valor);
+                }
+                futuros.add(registrarEEscrever(id));
+            }
+            enviar();
+        }
+        return futuros;
+    }
+
+    /**
+     * Envia uma expressão e espera o resultado.
+     * @throws ClienteCalculadora.ErroServidor Se o servidor responder com erro.
+     */
+    public double avaliar(String expressao) throws IOException {
+        try {
+            return avaliarAsync(expressao).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    /** Fecha a conexão. Requisições ainda pendentes falham com IOException. */
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    /** Escreve o cabeçalho de um quadro no buffer e devolve o id usado. */
+    private int iniciarQuadro(byte tipo, int tamanhoConteudo) {
+        if (quadro.remaining() < 4 + 4 + 1 + tamanhoConteudo) {
+            quadro = ProtocoloBinario.garantirEspaco(quadro, 4 + 4 + 1 + tamanhoConteudo);
+        }
+        int id = proximoId++;
+        quadro.putInt(4 + 1 + tamanhoConteudo).putInt(id).put(tipo);
+        return id;
+    }
+
+    private CompletableFuture<Double> registrarEEscrever(int id) {
+        CompletableFuture<Double> futuro = new CompletableFuture<>();
+        if (encerramento != null) {
+            futuro.completeExceptionally(encerramento);
+        } else {
+            pendentes.put(id, futuro);
+        }
+        return futuro;
+    }
+
+    /** Envia os quadros acumulados no buffer. */
+    private void enviar() {
+        try {
+            if (encerramento == null) {
+                saida.write(quadro.array(), 0, quadro.position());
+                saida.flush();
+            }
+        } catch (IOException e) {
+            encerrar(e);
+        } finally {
+            quadro.clear();
+        }
+    }
+
+    /**
+     * Laço da thread leitora: confere a saudação do servidor e entrega cada resposta ao pedido de mesmo id.
+     */
+    private void lerRespostas() {
+        try {
+            byte[] saudacao = new byte[ProtocoloBinario.SAUDACAO.length];
+            entrada.readFully(saudacao);
+            if (!Arrays.equals(saudacao, ProtocoloBinario.SAUDACAO)) {
+                throw new IOException("O servidor não aceitou o protocolo binário.");
+            }
+
+            byte[] mensagem = new byte[256];
+            while (true) {
+                int tamanho = entrada.readInt();
+                int id = entrada.readInt();
+                byte status = entrada.readByte();
+                CompletableFuture<Double> futuro = pendentes.remove(id);
+
+                if (status == ProtocoloBinario.STATUS_OK) {
+                    double resultado = entrada.readDouble();
+                    if (futuro != null) futuro.complete(resultado);
+                } else {
+                    int tamanhoMensagem = tamanho - 5;
+                    if (mensagem.length < tamanhoMensagem) {
+                        mensagem = new byte[tamanhoMensagem];
+                    }
+                    entrada.readFully(mensagem, 0, tamanhoMensagem);
+                    if (futuro != null) {
+                        futuro.completeExceptionally(new ClienteCalculadora.ErroServidor(
+                                new String(mensagem, 0, tamanhoMensagem, StandardCharsets.UTF_8)));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            encerrar(e);
+        }
+    }
+
+    /** Marca a conexão como encerrada e faz falhar todas as requisições pendentes. */
+    private void encerrar(IOException causa) {
+        synchronized (saida) {
+            if (encerramento == null) {
+                encerramento = causa;
+            }
+            for (Integer id : pendentes.keySet()) {
+                CompletableFuture<Double> futuro = pendentes.remove(id);
+                if (futuro != null) futuro.completeExceptionally(causa);
+            }
+        }
+    }
+}
@@ -1,66 +1,252 @@
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * Classe que implementa o cliente da calculadora.
  * Responsável por se conectar ao servidor, enviar a expressão e receber o resultado.
+ *
+ * Uma instância mantém uma conexão aberta e suporta "pipelining": várias expressões podem ser
+ * enviadas seguidas, sem esperar as respostas. Como o servidor responde na mesma ordem em que
+ * recebe, cada resposta lida é entregue ao pedido mais antigo ainda pendente.
  */
-public class ClienteCalculadora {
+public class ClienteCalculadora implements AutoCloseable {
 
     // Endereço do servidor. 'localhost' significa a própria máquina.
     private static final String ENDERECO_SERVIDOR = "localhost";
     // A porta que o cliente tentará se conectar. Deve ser a mesma do servidor.
     private static final int PORTA = 12345;
+    // Prefixo usado pelo servidor nas respostas de erro.
+    private static final String PREFIXO_ERRO = "ERRO: ";
+
+    private final Socket socket;
+    private final BufferedWriter saida;
+    private final BufferedReader entrada;
+
+    // Pedidos já enviados que aguardam resposta, na ordem de envio.
+    private final Queue<CompletableFuture<Double>> pendentes = new ConcurrentLinkedQueue<>();
+    // Motivo do encerramento da conexão (null enquanto ela estiver ativa). Protegido pelo lock de 'saida'.
+    private IOException encerramento;
 
     /**
      * Ponto de entrada do programa Cliente.
      */
     public static void main(String[] args) {
-        new ClienteCalculadora().iniciar();
-    }
-
-    /**
-     * Inicia a conexão com o servidor e gerencia a interação com o usuário.
-     */
-    public void iniciar() {
         // Tenta estabelecer a conexão com o servidor e abrir os streams de I/O.
         try (
-                // Cria o Socket e tenta a conexão.
-                Socket socket = new Socket(ENDERECO_SERVIDOR, PORTA);
-
-                // PrintWriter: Stream de saída para enviar dados ao servidor.
-                PrintWriter saida = new PrintWriter(socket.getOutputStream(), true);
-                // BufferedReader: Stream de entrada para ler a resposta do servidor.
-                BufferedReader entrada = new BufferedReader(
-                        new InputStreamReader(socket.getInputStream()));
+                ClienteCalculadora cliente = new ClienteCalculadora(ENDERECO_SERVIDOR, PORTA);
                 // Scanner: Usado para ler a entrada do teclado do usuário.
                 Scanner scanner = new Scanner(System.in)
         ) {
             System.out.println("Conectado ao Servidor em " + ENDERECO_SERVIDOR + ":" + PORTA);
             System.out.println("Digite a expressão completa (suporta múltiplos valores e parênteses).");
             System.out.println("Exemplo: 5 + 3 * (10 / 2 - 1) ou 10 + 20 - 5");
-            System.out.print("> ");
+            System.out.println("A conexão fica aberta: digite 'sair' (ou uma linha vazia) para encerrar.");
 
-            // 1. Lê a expressão digitada pelo usuário.
-            String operacao = scanner.nextLine();
+            while (true) {
+                System.out.print("> ");
 
-            // 2. Envia a expressão completa como uma string para o servidor.
-            saida.println(operacao);
+                // 1. Lê a expressão digitada pelo usuário.
+                if (!scanner.hasNextLine()) break;
+                String operacao = scanner.nextLine();
+                if (operacao.isBlank() || operacao.equalsIgnoreCase("sair")) break;
 
-            // 3. Aguarda e lê a resposta enviada pelo servidor.
-            String resposta = entrada.readLine();
+                // 2. Envia a expressão e aguarda a resposta do servidor.
+                String resposta;
+                try {
+                    resposta = String.valueOf(cliente.avaliar(operacao));
+                } catch (ErroServidor e) {
+                    resposta = PREFIXO_ERRO + e.getMessage();
+                }
 
-            // 4. Exibe o resultado ou a mensagem de erro.
-            System.out.println("\n--- RESULTADO DO SERVIDOR ---");
-            System.out.println("Resultado: " + resposta);
-            System.out.println("-----------------------------\n");
+                // 3. Exibe o resultado ou a mensagem de erro.
+                System.out.println("\n--- RESULTADO DO SERVIDOR ---");
+                System.out.println("Resultado: " + resposta);
+                System.out.println("-----------------------------\n");
+            }
 
         } catch (Exception e) {
             // Trata erros de conexão (ex: servidor desligado, porta errada).
             System.err.println("Erro ao conectar ou comunicar com o servidor: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Conecta ao servidor e inicia a thread que lê as respostas.
+     * @param endereco O endereço do servidor.
+     * @param porta A porta do servidor.
+     * @throws IOException Se não for possível conectar.
+     */
+    public ClienteCalculadora(String endereco, int porta) throws IOException {
+        this(endereco, porta, 0);
+    }
+
+    /**
+     * Conecta ao servidor, esperando a conexão no máximo o tempo informado, e inicia a thread que lê as respostas.
+     * @param timeoutConexaoMs Tempo máximo (ms) para estabelecer a conexão; 0 espera sem limite.
+     * @throws java.net.SocketTimeoutException Se a conexão não for estabelecida a tempo.
+     */
+    public ClienteCalculadora(String endereco, int porta, int timeoutConexaoMs) throws IOException {
+        // Cria o Socket e tenta a conexão.
+        this.socket = new Socket();
+        socket.connect(new InetSocketAddress(endereco, porta), timeoutConexaoMs);
+        // Com várias requisições pequenas em sequência, não vale a pena o atraso do algoritmo de Nagle.
+        socket.setTcpNoDelay(true);
+
+        // BufferedWriter: Stream de saída para enviar dados ao servidor.
+        this.saida = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        // BufferedReader: Stream de entrada para ler as respostas do servidor.
+        this.entrada = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+
+        Thread leitor = new Thread(this::lerRespostas, "calculadora-cliente-leitor");
+        leitor.setDaemon(true);
+        leitor.start();
+    }
+
+    /**
+     * Envia uma expressão sem esperar a resposta.
+     * @param expressao A expressão a ser calculada.
+     * @return Um CompletableFuture que será completado com o resultado, ou com ErroServidor
+     *         se o servidor responder com erro.
+     */
+    public CompletableFuture<Double> avaliarAsync(String expressao) {
+        return enviar(List.of(expressao)).get(0);
+    }
+
+    /**
+     * Envia várias expressões de uma só vez (um único envio pela rede) sem esperar as respostas.
+     * @param expressoes As expressões a serem calculadas.
+     * @return Um CompletableFuture por expressão, na mesma ordem.
+     */
+    public List<CompletableFuture<Double>> avaliarTodasAsync(List<String> expressoes) {
+        return enviar(expressoes);
+    }
+
+    /**
+     * Envia uma expressão e espera o resultado.
+     * @param expressao A expressão a ser calculada.
+     * @return O resultado do cálculo.
+     * @throws ErroServidor Se o servidor responder com uma mensagem de erro.
+     */
+    public double avaliar(String expressao) throws IOException {
+        try {
+            return avaliarAsync(expressao).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    /** Indica se a conexão ainda está ativa (não foi fechada nem encerrada pelo servidor). */
+    public boolean isAberta() {
+        synchronized (saida) {
+            return encerramento == null && !socket.isClosed();
+        }
+    }
+
+    /** Fecha a conexão. Pedidos ainda pendentes falham com IOException. */
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    /**
+     * Registra os pedidos e escreve as linhas. O lock garante que a ordem da fila de pendentes
+     * seja exatamente a ordem em que as linhas saem pelo socket.
+     */
+    private List<CompletableFuture<Double>> enviar(List<String> expressoes) {
+        List<CompletableFuture<Double>> futuros = new ArrayList<>(expressoes.size());
+        synchronized (saida) {
+            if (encerramento != null) {
+                // A conexão já caiu: nenhum pedido novo pode ser respondido.
+                for (int i = 0; i < expressoes.size(); i++) {
+                    futuros.add(CompletableFuture.failedFuture(encerramento));
+                }
+                return futuros;
+            }
+            try {
+                for (String expressao : expressoes) {
+                    if (expressao.indexOf('\n') >= 0 || expressao.indexOf('\r') >= 0) {
+                        // Uma quebra de linha dividiria a expressão em duas requisições.
+                        futuros.add(CompletableFuture.failedFuture(
+                                new IllegalArgumentException("A expressão não pode conter quebras de linha.")));
+                        continue;
+                    }
+                    CompletableFuture<Double> futuro = new CompletableFuture<>();
+                    pendentes.add(futuro);
+                    futuros.add(futuro);
+                    saida.write(expressao);
+                    saida.newLine();
+                }
+                saida.flush();
+            } catch (IOException e) {
+                encerrar(e);
+            }
+        }
+        return futuros;
+    }
+
+    /**
+     * Laço da thread leitora: cada linha recebida completa o pedido pendente mais antigo.
+     */
+    private void lerRespostas() {
+        try {
+            String resposta;
+            while ((resposta = entrada.readLine()) != null) {
+                CompletableFuture<Double> futuro = pendentes.poll();
+                if (futuro == null) {
+                    continue; // Resposta sem pedido (ex: aviso de servidor ocupado na conexão).
+                }
+                if (resposta.startsWith(PREFIXO_ERRO)) {
+                    futuro.completeExceptionally(new ErroServidor(resposta.substring(PREFIXO_ERRO.length())));
+                } else {
+                    try {
+                        futuro.complete(Double.parseDouble(resposta));
+                    } catch (NumberFormatException e) {
+                        futuro.completeExceptionally(new ErroServidor("Resposta inválida: " + resposta));
+                    }
+                }
+            }
+            encerrar(new IOException("Conexão encerrada pelo servidor."));
+        } catch (IOException e) {
+            encerrar(e);
+        }
+    }
+
+    /** Marca a conexão como encerrada e faz falhar todos os pedidos que ainda aguardavam resposta. */
+    private void encerrar(IOException causa) {
+        synchronized (saida) {
+            if (encerramento == null) {
+                encerramento = causa;
+            }
+            CompletableFuture<Double> futuro;
+            while ((futuro = pendentes.poll()) != null) {
+                futuro.completeExceptionally(causa);
+            }
+        }
+    }
+
+    /**
+     * Erro devolvido pelo servidor (linha começando com "ERRO: "), ex: expressão inválida ou divisão por zero.
+     */
+    public static class ErroServidor extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public ErroServidor(String mensagem) {
+            super(mensagem);
+        }
+    }
+}
@@ -0,0 +1,467 @@
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+
+/**
+ * Pool de conexões (ClienteCalculadora) para programas que usam a calculadora a partir de várias threads.
+ *
+ * Em vez de abrir um Socket novo a cada uso, as conexões são emprestadas e devolvidas ao pool,
+ * continuando abertas entre um uso e outro. O pool:
+ *   - limita a quantidade de conexões por servidor (endereço:porta);
+ *   - faz quem pede uma conexão esperar (com timeout) quando o limite foi atingido;
+ *   - testa conexões que ficaram paradas antes de emprestá-las (verificação de saúde);
+ *   - fecha conexões ociosas há muito tempo (antes que o servidor as feche por inatividade).
+ *
+ * Uso típico:
+ *   try (PoolConexoes.Emprestimo e = pool.adquirir("localhost", 12345, 2, TimeUnit.SECONDS)) {
+ *       double r = e.cliente().avaliar("1 + 2");
+ *   }
+ */
+public class PoolConexoes implements AutoCloseable {
+
+    // --- Valores padrão (ex: java -Dcalculadora.pool.maxPorServidor=16 ...) ---
+    // Número máximo de conexões abertas para um mesmo servidor.
+    private static final int MAX_POR_SERVIDOR = Integer.getInteger("calculadora.pool.maxPorServidor", 8);
+    // Tempo (ms) que uma conexão pode ficar parada no pool antes de ser fechada.
+    // Deve ser menor que o timeout de inatividade do servidor (calculadora.timeoutOcioso).
+    private static final int TEMPO_OCIOSO_MS = Integer.getInteger("calculadora.pool.tempoOcioso", 30000);
+    // Conexões paradas há mais que isso (ms) são testadas antes de serem emprestadas.
+    private static final int INTERVALO_VERIFICACAO_MS = Integer.getInteger("calculadora.pool.verificacao", 5000);
+    // Tempo máximo (ms) de espera pela resposta da verificação de saúde.
+    private static final int TIMEOUT_VERIFICACAO_MS = 1000;
+    // Expressão enviada na verificação de saúde.
+    private static final String EXPRESSAO_VERIFICACAO = "0";
+    // Resposta do servidor quando recusa uma conexão por estar cheio.
+    private static final String MENSAGEM_OCUPADO = "servidor ocupado";
+
+    /**
+     * Falhas que valem uma nova tentativa: rede, timeout, servidor ocupado, no limite de requisições
+     * simultâneas ou com a fila das expressões pesadas cheia. A recusa por limite de taxa do cliente não é repetida: repetir só gastaria mais fichas.
+     */
+    public static final Predicate<Throwable> FALHA_TEMPORARIA = e -> Resiliencia.FALHA_DE_REDE.test(e)
+            || (e instanceof ClienteCalculadora.ErroServidor && (e.getMessage().startsWith(MENSAGEM_OCUPADO)
+                    || e.getMessage().equals(ControleAdmissao.Recusa.CONCORRENCIA.getMensagem())
+                    || e.getMessage().equals(ControleAdmissao.Recusa.FILA_PESADAS.getMensagem())));
+
+    private final int maxPorServidor;
+    private final long tempoOciosoNanos;
+    private final long intervaloVerificacaoNanos;
+
+    // Uma entrada por servidor ("endereco:porta").
+    private final Map<String, Servidor> servidores = new ConcurrentHashMap<>();
+    // Thread que fecha periodicamente as conexões ociosas.
+    private final ScheduledExecutorService limpeza;
+    // Threads que abrem e verificam conexões (operações de rede), fora das threads de quem pede ou devolve.
+    private final ExecutorService conexoes;
+    private volatile boolean fechado;
+
+    /** Cria um pool com os valores padrão (ou os definidos nas propriedades do sistema). */
+    public PoolConexoes() {
+        this(MAX_POR_SERVIDOR, TEMPO_OCIOSO_MS, INTERVALO_VERIFICACAO_MS);
+    }
+
+    /**
+     * @param maxPorServidor Número máximo de conexões abertas para um mesmo servidor.
+     * @param tempoOciosoMs Tempo que uma conexão pode ficar parada no pool antes de ser fechada.
+     * @param intervaloVerificacaoMs Conexões paradas há mais que isso são testadas antes do empréstimo.
+     */
+    public PoolConexoes(int maxPorServidor, long tempoOciosoMs, long intervaloVerificacaoMs) {
+        if (maxPorServidor < 1) {
+            throw new IllegalArgumentException("O pool precisa de pelo menos uma conexão por servidor.");
+        }
+        this.maxPorServidor = maxPorServidor;
+        this.tempoOciosoNanos = TimeUnit.MILLISECONDS.toNanos(tempoOciosoMs);
+        this.intervaloVerificacaoNanos = TimeUnit.MILLISECONDS.toNanos(intervaloVerificacaoMs);
+
+        this.limpeza = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "calculadora-pool-limpeza");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long periodo = Math.max(1, tempoOciosoMs / 2);
+        limpeza.scheduleWithFixedDelay(this::fecharOciosas, periodo, periodo, TimeUnit.MILLISECONDS);
+
+        this.conexoes = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "calculadora-pool-conexao");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Empresta uma conexão, esperando no máximo o tempo informado se o limite do servidor foi atingido.
+     * @return O empréstimo; deve ser fechado (close) para devolver a conexão ao pool.
+     * @throws TimeoutException Se nenhuma conexão ficar disponível a tempo.
+     * @throws IOException Se não for possível abrir uma conexão nova.
+     */
+    public Emprestimo adquirir(String endereco, int porta, long timeout, TimeUnit unidade)
+            throws IOException, TimeoutException, InterruptedException {
+        try {
+            return adquirirAsync(endereco, porta, timeout, unidade).get();
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof IOException) throw (IOException) causa;
+            if (causa instanceof TimeoutException) throw (TimeoutException) causa;
+            if (causa instanceof RuntimeException) throw (RuntimeException) causa;
+            throw new IOException(causa);
+        }
+    }
+
+    /**
+     * Versão assíncrona de adquirir: não bloqueia a thread que pede a conexão. Abrir uma conexão nova e
+     * verificar uma conexão parada são feitos nas threads do pool, dentro do mesmo tempo máximo.
+     * @return Um CompletableFuture completado com o empréstimo, com TimeoutException se o tempo
+     *         acabar, ou com IOException se não for possível conectar.
+     */
+    public CompletableFuture<Emprestimo> adquirirAsync(String endereco, int porta, long timeout, TimeUnit unidade) {
+        if (fechado) {
+            return CompletableFuture.failedFuture(new IllegalStateException("O pool já foi fechado."));
+        }
+        Servidor servidor = servidores.computeIfAbsent(endereco + ":" + porta, k -> new Servidor(endereco, porta));
+        return servidor.adquirir(timeout, unidade);
+    }
+
+    /**
+     * Atalho: empresta uma conexão, avalia a expressão e devolve a conexão ao pool.
+     * @throws ClienteCalculadora.ErroServidor Se o servidor responder com erro.
+     */
+    public double avaliar(String endereco, int porta, String expressao, long timeout, TimeUnit unidade)
+            throws IOException, TimeoutException, InterruptedException {
+        try (Emprestimo emprestimo = adquirir(endereco, porta, timeout, unidade)) {
+            try {
+                return emprestimo.cliente().avaliar(expressao);
+            } catch (IOException e) {
+                emprestimo.invalidar();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Avalia uma expressão com disjuntor, retentativas e pedidos de cobertura (ver Resiliencia).
+     * Cada tentativa usa uma conexão emprestada do pool; conexões que falham são descartadas,
+     * então a retentativa (ou a cobertura) segue por outra conexão.
+     * @param resiliencia A camada de resiliência (normalmente uma por servidor, compartilhada).
+     * @param prazo Tempo máximo da chamada, somando tentativas e esperas.
+     * @return O resultado, ou a falha da última tentativa (TimeoutException se o prazo acabar).
+     */
+    public CompletableFuture<Double> avaliarAsync(String endereco, int porta, String expressao,
+                                                  Resiliencia resiliencia, long prazo, TimeUnit unidade) {
+        long limite = System.nanoTime() + unidade.toNanos(prazo);
+        return resiliencia.executarAsync(() -> {
+            long restante = limite - System.nanoTime();
+            return adquirirAsync(endereco, porta, restante, TimeUnit.NANOSECONDS).thenCompose(emprestimo ->
+                    emprestimo.cliente().avaliarAsync(expressao)
+                            .orTimeout(Math.max(1, limite - System.nanoTime()), TimeUnit.NANOSECONDS)
+                            .whenComplete((resultado, erro) -> {
+                                if (erro != null && FALHA_TEMPORARIA.test(erro instanceof CompletionException ? erro.getCause() : erro)) {
+                                    emprestimo.invalidar(); // Conexão suspeita: não volta para o pool.
+                                }
+                                emprestimo.close();
+                            }));
+        }, FALHA_TEMPORARIA, limite);
+    }
+
+    /** Quantidade de conexões abertas (emprestadas ou paradas no pool) para o servidor. */
+    public int getConexoesAbertas(String endereco, int porta) {
+        Servidor servidor = servidores.get(endereco + ":" + porta);
+        if (servidor == null) return 0;
+        synchronized (servidor) {
+            return servidor.abertas;
+        }
+    }
+
+    /** Fecha todas as conexões paradas e impede novos empréstimos. Conexões emprestadas são fechadas ao serem devolvidas. */
+    @Override
+    public void close() {
+        fechado = true;
+        limpeza.shutdownNow();
+        conexoes.shutdown();
+        for (Servidor servidor : servidores.values()) {
+            servidor.fecharTodas();
+        }
+    }
+
+    /** Executado periodicamente: fecha as conexões paradas há mais que o tempo ocioso. */
+    private void fecharOciosas() {
+        long limite = System.nanoTime() - tempoOciosoNanos;
+        for (Servidor servidor : servidores.values()) {
+            servidor.fecharParadasAntesDe(limite);
+        }
+    }
+
+    /**
+     * Conexão emprestada pelo pool. Ao ser fechada, a conexão volta para o pool (ou é descartada,
+     * se tiver sido invalidada ou estiver quebrada).
+     */
+    public final class Emprestimo implements AutoCloseable {
+        private final Servidor servidor;
+        private final ClienteCalculadora cliente;
+        private boolean invalido;
+        private boolean devolvido;
+
+        private Emprestimo(Servidor servidor, ClienteCalculadora cliente) {
+            this.servidor = servidor;
+            this.cliente = cliente;
+        }
+
+        /** A conexão emprestada. Não deve ser fechada diretamente nem usada depois da devolução. */
+        public ClienteCalculadora cliente() {
+            return cliente;
+        }
+
+        /** Marca a conexão como inutilizável: na devolução ela será fechada em vez de reaproveitada. */
+        public void invalidar() {
+            invalido = true;
+        }
+
+        /** Devolve a conexão ao pool. */
+        @Override
+        public void close() {
+            if (devolvido) return;
+            devolvido = true;
+            servidor.devolver(cliente, invalido || !cliente.isAberta());
+        }
+    }
+
+    /** Pedido de conexão e o momento em que o seu tempo acaba (System.nanoTime). */
+    private static final class Pedido {
+        final CompletableFuture<Emprestimo> futuro = new CompletableFuture<>();
+        final long limite;
+
+        Pedido(long limite) {
+            this.limite = limite;
+        }
+    }
+
+    /** Conexão parada no pool e o momento em que foi devolvida. */
+    private static final class Parada {
+        final ClienteCalculadora cliente;
+        final long desde;
+
+        Parada(ClienteCalculadora cliente, long desde) {
+            this.cliente = cliente;
+            this.desde = desde;
+        }
+    }
+
+    /**
+     * Conexões de um servidor. Todos os campos são protegidos pelo lock da própria instância;
+     * conectar e verificar conexões (operações de rede) é feito sempre fora do lock.
+     */
+    private final class Servidor {
+        private final String endereco;
+        private final int porta;
+        // Conexões paradas, a mais recente no início (a mais antiga é a primeira a ficar ociosa demais).
+        private final Deque<Parada> paradas = new ArrayDeque<>();
+        // Pedidos esperando uma conexão, na ordem de chegada.
+        private final Deque<Pedido> esperando = new ArrayDeque<>();
+        // Conexões abertas (paradas + emprestadas + sendo abertas).
+        private int abertas;
+
+        Servidor(String endereco, int porta) {
+            this.endereco = endereco;
+            this.porta = porta;
+        }
+
+        CompletableFuture<Emprestimo> adquirir(long timeout, TimeUnit unidade) {
+            Pedido pedido = new Pedido(System.nanoTime() + unidade.toNanos(timeout));
+            Parada parada;
+            synchronized (this) {
+                parada = paradas.pollFirst();
+                if (parada == null) {
+                    if (abertas >= maxPorServidor) {
+                        // Limite atingido: espera alguém devolver uma conexão (ou o tempo acabar).
+                        esperando.addLast(pedido);
+                        pedido.futuro.orTimeout(timeout, unidade).whenComplete((e, erro) -> {
+                            if (erro != null) {
+                                synchronized (this) {
+                                    esperando.remove(pedido);
+                                }
+                            }
+                        });
+                        return pedido.futuro;
+                    }
+                    abertas++;
+                }
+            }
+            if (parada != null && dispensaVerificacao(parada)) {
+                // Caso comum: conexão parada há pouco tempo, emprestada sem nenhuma operação de rede.
+                return CompletableFuture.completedFuture(new Emprestimo(this, parada.cliente));
+            }
+            pedido.futuro.orTimeout(timeout, unidade);
+            abrir(pedido, parada);
+            return pedido.futuro;
+        }
+
+        /** true se a conexão parada pode ser emprestada sem antes ser testada (aberta e parada há pouco tempo). */
+        private boolean dispensaVerificacao(Parada parada) {
+            return System.nanoTime() - parada.desde <= intervaloVerificacaoNanos && parada.cliente.isAberta();
+        }
+
+        /**
+         * Prepara, numa thread do pool, a conexão do pedido (que já tem uma vaga): verifica a conexão parada
+         * ou abre uma nova. Se o pedido expirar antes, a conexão é devolvida ao pool como qualquer outra.
+         */
+        private void abrir(Pedido pedido, Parada parada) {
+            try {
+                conexoes.execute(() -> {
+                    Emprestimo emprestimo;
+                    try {
+                        emprestimo = preparar(parada, pedido.limite);
+                    } catch (IOException e) {
+                        pedido.futuro.completeExceptionally(e);
+                        liberarVaga();
+                        return;
+                    }
+                    if (!pedido.futuro.complete(emprestimo)) {
+                        devolver(emprestimo.cliente, false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // O pool foi fechado.
+                if (parada != null) {
+                    fecharSilenciosamente(parada.cliente);
+                }
+                pedido.futuro.completeExceptionally(new IllegalStateException("O pool foi fechado."));
+                liberarVaga();
+            }
+        }
+
+        /**
+         * Verifica uma conexão parada antes de emprestá-la; se estiver quebrada (ou se não houver nenhuma),
+         * abre outra no lugar. A verificação e a conexão terminam até o limite do pedido.
+         */
+        private Emprestimo preparar(Parada parada, long limite) throws IOException {
+            if (parada != null) {
+                ClienteCalculadora cliente = parada.cliente;
+                if (cliente.isAberta() && verificar(cliente, limite)) {
+                    return new Emprestimo(this, cliente);
+                }
+                fecharSilenciosamente(cliente); // A vaga da conexão quebrada passa para a nova.
+            }
+            long restante = TimeUnit.NANOSECONDS.toMillis(limite - System.nanoTime());
+            if (restante <= 0) {
+                throw new SocketTimeoutException("Tempo esgotado antes de conectar a " + endereco + ":" + porta + ".");
+            }
+            return new Emprestimo(this, new ClienteCalculadora(endereco, porta, (int) Math.min(restante, Integer.MAX_VALUE)));
+        }
+
+        /**
+         * Verificação de saúde: envia uma expressão trivial e espera a resposta por pouco tempo.
+         * Qualquer resposta vale, inclusive um erro (ex: "sobrecarga: ..." do controle de admissão): o
+         * servidor respondeu pela conexão. Só o timeout e as falhas de rede a marcam como quebrada.
+         */
+        private boolean verificar(ClienteCalculadora cliente, long limite) {
+            long espera = Math.min(TimeUnit.MILLISECONDS.toNanos(TIMEOUT_VERIFICACAO_MS), limite - System.nanoTime());
+            try {
+                cliente.avaliarAsync(EXPRESSAO_VERIFICACAO).get(Math.max(0, espera), TimeUnit.NANOSECONDS);
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException e) {
+                return e.getCause() instanceof ClienteCalculadora.ErroServidor;
+            } catch (TimeoutException | CompletionException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Recebe uma conexão devolvida: entrega-a ao primeiro pedido que estiver esperando ou,
+         * se não houver nenhum, guarda-a no pool. Conexões quebradas liberam a vaga para uma nova.
+         */
+        void devolver(ClienteCalculadora cliente, boolean descartar) {
+            if (descartar || fechado) {
+                fecharSilenciosamente(cliente);
+                liberarVaga();
+                return;
+            }
+            Emprestimo emprestimo = new Emprestimo(this, cliente);
+            while (true) {
+                Pedido proximo;
+                synchronized (this) {
+                    proximo = esperando.pollFirst();
+                    if (proximo == null) {
+                        paradas.addFirst(new Parada(cliente, System.nanoTime()));
+                        return;
+                    }
+                }
+                // complete() devolve false se o pedido já expirou; nesse caso tenta o próximo.
+                if (proximo.futuro.complete(emprestimo)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Uma conexão foi fechada: a vaga passa para o primeiro pedido à espera, que abre uma conexão nova
+         * numa thread do pool (nunca na thread que fechou a conexão).
+         */
+        private void liberarVaga() {
+            Pedido proximo;
+            synchronized (this) {
+                do {
+                    proximo = esperando.pollFirst();
+                } while (proximo != null && proximo.futuro.isDone());
+                if (proximo == null) {
+                    abertas--;
+                    return;
+                }
+            }
+            abrir(proximo, null);
+        }
+
+        void fecharParadasAntesDe(long limite) {
+            List<ClienteCalculadora> ociosas = new ArrayList<>();
+            synchronized (this) {
+                while (!paradas.isEmpty() && paradas.peekLast().desde - limite < 0) {
+                    ociosas.add(paradas.pollLast().cliente);
+                }
+            }
+            for (ClienteCalculadora cliente : ociosas) {
+                fecharSilenciosamente(cliente);
+                liberarVaga();
+            }
+        }
+
+        void fecharTodas() {
+            List<ClienteCalculadora> todas = new ArrayList<>();
+            List<Pedido> pedidos;
+            synchronized (this) {
+                for (Parada parada : paradas) {
+                    todas.add(parada.cliente);
+                }
+                abertas -= paradas.size();
+                paradas.clear();
+                pedidos = new ArrayList<>(esperando);
+                esperando.clear();
+            }
+            todas.forEach(PoolConexoes::fecharSilenciosamente);
+            pedidos.forEach(p -> p.futuro.completeExceptionally(new IllegalStateException("O pool foi fechado.")));
+        }
+    }
+
+    private static void fecharSilenciosamente(ClienteCalculadora cliente) {
+        try {
+            cliente.close();
+        } catch (IOException e) {
+            // Nada a fazer: a conexão já está sendo descartada.
+        }
+    }
+}
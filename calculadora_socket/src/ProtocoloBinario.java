@@ -0,0 +1,227 @@
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Protocolo binário da calculadora, alternativo às linhas de texto.
+ *
+ * Negociação: o cliente abre a conexão enviando os 4 bytes de SAUDACAO (o primeiro é 0x00,
+ * que nunca inicia uma linha de texto). O servidor responde com os mesmos 4 bytes e, a partir
+ * daí, os dois lados trocam quadros. Clientes de texto continuam funcionando normalmente.
+ *
+ * Quadro de requisição:  [int tamanho][int id][byte tipo][conteúdo]
+ *   - tipo EXPRESSAO: conteúdo é a expressão em UTF-8;
+ *   - tipo PROGRAMA: conteúdo é um programa já compilado (ExpressaoCompilada.escreverBytecode)
+ *     seguido de [int quantidade][double...] com os valores das variáveis.
+ * Quadro de resposta:    [int tamanho][int id][byte status][conteúdo]
+ *   - status OK: conteúdo é o resultado como double IEEE-754 (8 bytes, sem conversão para texto);
+ *   - demais status: conteúdo é a mensagem de erro em UTF-8.
+ * O campo tamanho conta os bytes que vêm depois dele. Todos os inteiros são big-endian.
+ */
+final class ProtocoloBinario {
+
+    // Bytes de abertura do modo binário (versão 1).
+    static final byte[] SAUDACAO = {0x00, 'C', 'B', 0x01};
+    // Maior quadro aceito (protege o servidor contra tamanhos absurdos).
+    static final int TAMANHO_MAXIMO_QUADRO = 512 * 1024;
+
+    // --- Tipos de requisição ---
+    static final byte TIPO_EXPRESSAO = 0;
+    static final byte TIPO_PROGRAMA = 1;
+
+    // --- Status de resposta ---
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_EXPRESSAO_INVALIDA = 1;  // IllegalArgumentException do interpretador.
+    static final byte STATUS_ERRO_ARITMETICO = 2;     // ex: divisão por zero.
+    static final byte STATUS_QUADRO_INVALIDO = 3;     // Tipo desconhecido ou conteúdo malformado.
+    static final byte STATUS_SOBRECARGA = 4;          // Recusada pelo controle de admissão ou pela fila das pesadas.
+
+    // Tamanho de uma resposta de sucesso: tamanho + id + status + double.
+    private static final int TAMANHO_RESPOSTA_OK = 4 + 4 + 1 + 8;
+
+    // Área temporária para decodificar expressões recebidas em buffers diretos (reaproveitada por thread).
+    private static final ThreadLocal<byte[]> AREA_TEXTO = ThreadLocal.withInitial(() -> new byte[256]);
+
+    private ProtocoloBinario() {
+    }
+
+    /** Verifica se os 4 bytes a partir de 'inicio' são a saudação do modo binário. */
+    static boolean isSaudacao(ByteBuffer buffer, int inicio) {
+        for (int i = 0; i < SAUDACAO.length; i++) {
+            if (buffer.get(inicio + i) != SAUDACAO[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Processa o corpo de um quadro de requisição (tudo depois do campo tamanho) e escreve
+     * o quadro de resposta em 'saida'. Se não houver espaço, um buffer maior é criado.
+     * @param corpo O corpo da requisição (id, tipo e conteúdo).
+     * @param saida O buffer de saída (em modo de escrita).
+     * @param cliente O endereço do cliente (para o limite de taxa por cliente).
+     * @return O buffer de saída a ser usado daqui em diante (o mesmo ou um maior).
+     */
+    static ByteBuffer processarQuadro(ByteBuffer corpo, ByteBuffer saida, String cliente) {
+        ControleAdmissao.Recusa recusa = ServidorCalculadora.ADMISSAO.admitir(cliente);
+        if (recusa != null) {
+            // Recusada sem ler o conteúdo: só o id, para o cliente saber qual requisição falhou.
+            return escreverErro(saida, corpo.getInt(corpo.position()), STATUS_SOBRECARGA, recusa.getMensagem());
+        }
+        long inicio = ServidorCalculadora.METRICAS.iniciarRequisicao();
+        int posicao = corpo.position();
+        boolean calculada = true;
+        try {
+            return responderQuadro(corpo, saida, inicio);
+        } catch (ControleAdmissao.Recusada e) {
+            calculada = false;
+            return escreverErro(saida, corpo.getInt(posicao), STATUS_SOBRECARGA, e.getMessage());
+        } finally {
+            // Fila das pesadas cheia: nada foi calculado, então não entra na medição do limite adaptativo.
+            if (calculada) {
+                ServidorCalculadora.ADMISSAO.concluir(inicio);
+            } else {
+                ServidorCalculadora.ADMISSAO.liberar();
+            }
+            ServidorCalculadora.METRICAS.concluirRequisicao(inicio);
+        }
+    }
+
+    private static ByteBuffer responderQuadro(ByteBuffer corpo, ByteBuffer saida, long inicio) {
+        int id = corpo.getInt();
+        byte tipo = corpo.get();
+
+        byte status;
+        String mensagem;
+        String expressao = null; // Só as requisições de texto têm expressão (para o hash do log).
+        try {
+            double resultado;
+            if (tipo == TIPO_EXPRESSAO) {
+                expressao = lerTexto(corpo);
+                // Limites de complexidade e faixa do custo, como no modo texto (ver EscalonadorAvaliacao).
+                resultado = ServidorCalculadora.ESCALONADOR.avaliarExpressao(expressao);
+            } else if (tipo == TIPO_PROGRAMA) {
+                // O programa chega compilado: a "análise" é a leitura e a validação do bytecode.
+                ExpressaoCompilada programa = ExpressaoCompilada.lerBytecode(corpo);
+                double[] valores = lerValores(corpo);
+                long lido = System.nanoTime();
+                resultado = programa.avaliar(valores);
+                ServidorCalculadora.METRICAS.registrarFases(lido - inicio, System.nanoTime() - lido);
+            } else {
+                ServidorCalculadora.METRICAS.registrarErro(Metricas.TipoErro.PROTOCOLO);
+                return escreverErro(saida, id, STATUS_QUADRO_INVALIDO, "Tipo de requisição desconhecido: " + tipo);
+            }
+
+            // Caminho comum: resposta de tamanho fixo, sem nenhuma conversão para texto.
+            saida = garantirEspaco(saida, TAMANHO_RESPOSTA_OK);
+            saida.putInt(TAMANHO_RESPOSTA_OK - 4).putInt(id).put(STATUS_OK).putDouble(resultado);
+            ServidorCalculadora.LOG.requisicao("binario", expressao, inicio, null);
+            return saida;
+
+        } catch (ControleAdmissao.Recusada e) {
+            // Fila das pesadas cheia: processarQuadro responde e libera a vaga.
+            ServidorCalculadora.LOG.requisicao("binario", expressao, inicio, e.getMessage());
+            throw e;
+        } catch (ArithmeticException e) {
+            // As expressões de texto já foram contadas pelo avaliador medido; os programas, não.
+            if (tipo == TIPO_PROGRAMA) ServidorCalculadora.METRICAS.registrarErro(e);
+            status = STATUS_ERRO_ARITMETICO;
+            mensagem = e.getMessage();
+        } catch (IllegalArgumentException e) {
+            if (tipo == TIPO_PROGRAMA) ServidorCalculadora.METRICAS.registrarErro(Metricas.TipoErro.PROTOCOLO);
+            status = (tipo == TIPO_PROGRAMA) ? STATUS_QUADRO_INVALIDO : STATUS_EXPRESSAO_INVALIDA;
+            mensagem = e.getMessage();
+        } catch (BufferUnderflowException e) {
+            ServidorCalculadora.METRICAS.registrarErro(Metricas.TipoErro.PROTOCOLO);
+            status = STATUS_QUADRO_INVALIDO;
+            mensagem = "Conteúdo do quadro incompleto.";
+        }
+        ServidorCalculadora.LOG.requisicao("binario", expressao, inicio, mensagem);
+        return escreverErro(saida, id, status, mensagem);
+    }
+
+    /**
+     * Indica se o quadro pode ser uma expressão pesada (ver EscalonadorAvaliacao), sem decodificá-la:
+     * o custo (tokens) nunca passa da quantidade de bytes do texto, então usa essa quantidade como teto.
+     * Os programas compilados não passam pelo escalonador.
+     */
+    static boolean isPesado(ByteBuffer corpo) {
+        return corpo.remaining() > 5 && corpo.get(corpo.position() + 4) == TIPO_EXPRESSAO
+                && ServidorCalculadora.ESCALONADOR.isPesada(corpo.remaining() - 5);
+    }
+
+    /**
+     * Processa um quadro (possivelmente pesado) inteiro na faixa das pesadas do escalonador, para quem
+     * não pode esperar (o motor NIO). O corpo é copiado antes: o buffer original continua sendo usado.
+     * @return Os bytes do quadro de resposta (uma recusa de sobrecarga, se a fila das pesadas estiver cheia).
+     */
+    static CompletableFuture<byte[]> processarQuadroPesado(ByteBuffer corpo, String cliente) {
+        int id = corpo.getInt(corpo.position());
+        byte[] copia = new byte[corpo.remaining()];
+        corpo.get(corpo.position(), copia);
+        return ServidorCalculadora.ESCALONADOR.executarPesada(() -> {
+            ByteBuffer resposta = processarQuadro(ByteBuffer.wrap(copia), ByteBuffer.allocate(64), cliente);
+            return Arrays.copyOf(resposta.array(), resposta.position());
+        }).exceptionally(e -> {
+            // Só a recusa da fila cheia chega aqui: os erros de cálculo já viram quadros de erro.
+            if (!(e instanceof ControleAdmissao.Recusada)) {
+                throw e instanceof RuntimeException ? (RuntimeException) e : new IllegalStateException(e);
+            }
+            ByteBuffer recusa = escreverErro(ByteBuffer.allocate(128), id, STATUS_SOBRECARGA, e.getMessage());
+            return Arrays.copyOf(recusa.array(), recusa.position());
+        });
+    }
+
+    /** Escreve uma resposta de erro com a mensagem em UTF-8. */
+    private static ByteBuffer escreverErro(ByteBuffer saida, int id, byte status, String mensagem) {
+        byte[] texto = mensagem.getBytes(StandardCharsets.UTF_8);
+        saida = garantirEspaco(saida, 4 + 4 + 1 + texto.length);
+        saida.putInt(4 + 1 + texto.length).putInt(id).put(status).put(texto);
+        return saida;
+    }
+
+    /** Decodifica o restante do corpo como texto UTF-8. */
+    private static String lerTexto(ByteBuffer corpo) {
+        int tamanho = corpo.remaining();
+        if (corpo.hasArray()) {
+            String texto = new String(corpo.array(), corpo.arrayOffset() + corpo.position(), tamanho, StandardCharsets.UTF_8);
+            corpo.position(corpo.limit());
+            return texto;
+        }
+        byte[] area = AREA_TEXTO.get();
+        if (area.length < tamanho) {
+            area = new byte[Math.max(tamanho, area.length * 2)];
+            AREA_TEXTO.set(area);
+        }
+        corpo.get(area, 0, tamanho);
+        return new String(area, 0, tamanho, StandardCharsets.UTF_8);
+    }
+
+    /** Lê [int quantidade][double...] com os valores das variáveis de um programa. */
+    private static double[] lerValores(ByteBuffer corpo) {
+        int quantidade = corpo.getInt();
+        if (quantidade < 0 || quantidade > corpo.remaining() / 8) {
+            throw new IllegalArgumentException("Quantidade de valores inválida: " + quantidade);
+        }
+        double[] valores = new double[quantidade];
+        for (int i = 0; i < quantidade; i++) {
+            valores[i] = corpo.getDouble();
+        }
+        return valores;
+    }
+
+    /** Devolve um buffer com pelo menos 'necessario' bytes livres, preservando o conteúdo já escrito. */
+    static ByteBuffer garantirEspaco(ByteBuffer buffer, int necessario) {
+        if (buffer.remaining() >= necessario) {
+            return buffer;
+        }
+        int capacidade = Math.max(buffer.capacity() * 2, buffer.position() + necessario);
+        ByteBuffer maior = buffer.isDirect() ? ByteBuffer.allocateDirect(capacidade) : ByteBuffer.allocate(capacidade);
+        buffer.flip();
+        maior.put(buffer);
+        return maior;
+    }
+}
@@ -1,90 +1,425 @@
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Classe que implementa o servidor da calculadora usando Sockets.
  * Responsável por escutar conexões, receber a expressão e delegar o cálculo.
+ *
+ * Cada conexão é atendida por uma thread de um pool limitado e permanece aberta
+ * enquanto o cliente enviar expressões (uma por linha), até ficar ociosa por tempo demais.
+ * Com -Dcalculadora.motor=nio, o servidor usa o motor ServidorCalculadoraNIO no lugar do pool.
+ * Os dois motores também aceitam o protocolo binário (ver ProtocoloBinario), negociado na abertura da conexão.
  */
 public class ServidorCalculadora {
 
     // A porta que o servidor irá escutar por requisições de clientes.
     private static final int PORTA = 12345;
 
-    // Instância da lógica de cálculo que interpretará a expressão.
-    private InterpretadorAritmetico interpretador = new InterpretadorAritmetico();
+    // --- Limites configuráveis (ex: java -Dcalculadora.maxConexoes=200 ServidorCalculadora) ---
+    // Número máximo de conexões atendidas ao mesmo tempo (tamanho do pool de threads).
+    private static final int MAX_CONEXOES = Integer.getInteger("calculadora.maxConexoes", 64);
+    // Conexões aceitas que podem esperar na fila por uma thread livre.
+    private static final int TAMANHO_FILA = Integer.getInteger("calculadora.fila", 128);
+    // Tempo máximo (ms) que uma conexão pode ficar sem enviar nada antes de ser fechada.
+    private static final int TIMEOUT_OCIOSO_MS = Integer.getInteger("calculadora.timeoutOcioso", 60000);
+    // Motor de atendimento: "pool" (uma thread por conexão) ou "nio" (poucas threads com Selector).
+    private static final String MOTOR = System.getProperty("calculadora.motor", "pool");
+    // Quantidade de threads de seleção do motor NIO.
+    private static final int SELETORES_NIO = Integer.getInteger("calculadora.nio.seletores",
+            Runtime.getRuntime().availableProcessors());
+
+    // Métricas do servidor (latências, conexões, erros), publicadas como MBean no JMX (ver Metricas).
+    static final Metricas METRICAS = Metricas.de("socket");
+
+    // Motor de cálculo que avaliará as expressões (compartilhado pelos dois motores de atendimento),
+    // escolhido por -Dcalculadora.avaliador (ver AvaliadorExpressoes) e medido pelas métricas.
+    private static final AvaliadorExpressoes interpretador = METRICAS.medir(AvaliadorExpressoes.configurado());
+
+    // Escalonador por custo (ver EscalonadorAvaliacao): verifica os limites de complexidade das expressões
+    // (-Dcalculadora.limites.*) e manda as pesadas para um pool separado (-Dcalculadora.escalonador.*).
+    static final EscalonadorAvaliacao ESCALONADOR = EscalonadorAvaliacao.configurado(interpretador, METRICAS);
+
+    // Controle de admissão (limite de taxa por cliente e de requisições simultâneas; ver ControleAdmissao),
+    // configurado por -Dcalculadora.admissao.* e compartilhado pelos dois motores e pelos dois protocolos.
+    static final ControleAdmissao ADMISSAO = ControleAdmissao.configurado(METRICAS);
+
+    // Log assíncrono: as threads de atendimento não fazem I/O de console (ver Registrador).
+    static final Registrador LOG = Registrador.compartilhado();
+
+    // Pool de threads que atende as conexões. Quando o pool e a fila estão cheios, a conexão é recusada.
+    private final ThreadPoolExecutor pool = new ThreadPoolExecutor(
+            MAX_CONEXOES, MAX_CONEXOES, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(TAMANHO_FILA), new FabricaThreads());
 
     /**
      * Ponto de entrada do programa Servidor.
      */
     public static void main(String[] args) {
-        new ServidorCalculadora().iniciar();
+        if (ADMISSAO.isAtivo()) {
+            System.out.println("Controle de admissão: " + ADMISSAO + ".");
+        }
+        System.out.println("Escalonador: " + ESCALONADOR + ".");
+        if (MOTOR.equalsIgnoreCase("nio")) {
+            try {
+                new ServidorCalculadoraNIO(PORTA, SELETORES_NIO).iniciar();
+            } catch (Exception e) {
+                System.err.println("Erro fatal no servidor: " + e.getMessage());
+            }
+        } else {
+            new ServidorCalculadora().iniciar();
+        }
     }
 
     /**
      * Configura e inicia o socket de escuta do servidor.
-     * O servidor roda em um loop infinito esperando por conexões.
+     * O servidor roda em um loop infinito esperando por conexões e repassando cada uma ao pool.
      */
     public void iniciar() {
+        // Threads ociosas do pool podem ser encerradas; elas são recriadas quando chegam novas conexões.
+        pool.allowCoreThreadTimeOut(true);
+        // Saturação do pool: conexões esperando na fila e threads ocupadas.
+        METRICAS.registrarMedidor("fila", () -> pool.getQueue().size());
+        METRICAS.registrarMedidor("threadsOcupadas", pool::getActiveCount);
+
         // Tenta criar o ServerSocket, que lida com a escuta na porta definida.
         try (ServerSocket serverSocket = new ServerSocket(PORTA)) {
-            System.out.println("Servidor iniciado na porta " + PORTA + ". Aguardando conexão...");
+            System.out.println("Servidor iniciado na porta " + PORTA + " (máx. " + MAX_CONEXOES
+                    + " conexões simultâneas, fila de " + TAMANHO_FILA + ", avaliador " + interpretador.getNome()
+                    + "). Aguardando conexão...");
 
             // Loop principal do servidor (roda indefinidamente).
             while (true) {
                 // 'serverSocket.accept()' bloqueia a execução até que um cliente se conecte.
                 // clientSocket é o Socket específico para comunicação com esse cliente.
-                try (Socket clientSocket = serverSocket.accept()) {
-                    System.out.println("Cliente conectado: " + clientSocket.getInetAddress().getHostAddress());
-
-                    // --- Configuração dos Streams de I/O ---
-                    // BufferedReader: Lê dados enviados pelo cliente (requisição).
-                    BufferedReader entrada = new BufferedReader(
-                            new InputStreamReader(clientSocket.getInputStream()));
-                    // PrintWriter: Envia dados para o cliente (resposta), com autoFlush ativado (true).
-                    PrintWriter saida = new PrintWriter(clientSocket.getOutputStream(), true);
-
-                    // Lê a expressão enviada pelo cliente (o 'protocolo' da nossa aplicação).
-                    String requisicao = entrada.readLine();
-                    if (requisicao != null) {
-                        System.out.println("Requisição recebida: " + requisicao);
-
-                        // Delega a expressão para a lógica de cálculo.
-                        String resultado = processarRequisicao(requisicao);
-
-                        // Envia o resultado ou a mensagem de erro de volta ao cliente.
-                        saida.println(resultado);
-                        System.out.println("Resultado enviado: " + resultado);
-                    }
-                } catch (Exception e) {
-                    // Trata erros que ocorrem durante a comunicação com um cliente específico.
-                    System.err.println("Erro ao lidar com o cliente: " + e.getMessage());
+                Socket clientSocket = serverSocket.accept();
+                try {
+                    pool.execute(() -> atenderCliente(clientSocket));
+                } catch (RejectedExecutionException e) {
+                    // Pool e fila cheios: avisa o cliente e fecha a conexão imediatamente.
+                    recusarCliente(clientSocket);
                 }
             }
         } catch (Exception e) {
             // Trata erros fatais (ex: porta já em uso, falha ao abrir o servidor).
             System.err.println("Erro fatal no servidor: " + e.getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Atende uma conexão: lê expressões (uma por linha) e responde cada uma na mesma ordem,
+     * até o cliente fechar a conexão ou ficar ocioso além do limite.
+     */
+    private void atenderCliente(Socket clientSocket) {
+        METRICAS.conexaoAberta();
+        try (Socket socket = clientSocket) {
+            String endereco = socket.getInetAddress().getHostAddress();
+            LOG.info("socket", "Cliente conectado", endereco);
+
+            // Fecha a conexão se o cliente não enviar nada dentro do tempo limite.
+            socket.setSoTimeout(TIMEOUT_OCIOSO_MS);
+
+            // Espia o primeiro byte (sem consumi-lo) para descobrir se o cliente quer o protocolo binário.
+            BufferedInputStream bruto = new BufferedInputStream(socket.getInputStream());
+            bruto.mark(1);
+            int primeiroByte = bruto.read();
+            bruto.reset();
+            if (primeiroByte == ProtocoloBinario.SAUDACAO[0]) {
+                atenderClienteBinario(bruto, socket.getOutputStream(), endereco);
+                LOG.info("socket", "Cliente desconectado", endereco);
+                return;
+            }
+
+            // --- Configuração dos Streams de I/O ---
+            // LeitorLinhas: Lê as expressões enviadas pelo cliente, verificando os limites enquanto a linha chega.
+            LeitorLinhas entrada = new LeitorLinhas(new InputStreamReader(bruto, StandardCharsets.UTF_8),
+                    ESCALONADOR.getLimites());
+            // PrintWriter: Envia dados para o cliente (resposta). O flush é feito manualmente (ver abaixo).
+            PrintWriter saida = new PrintWriter(
+                    new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), false);
+
+            // Lê as expressões enviadas pelo cliente (o 'protocolo' da nossa aplicação: uma por linha).
+            String requisicao;
+            while ((requisicao = entrada.lerLinha()) != null) {
+                String resultado;
+                if (entrada.getErro() != null) {
+                    // Linha fora dos limites: já foi descartada (sem guardar o excesso) e nem chega a ser avaliada.
+                    METRICAS.registrarErro(Metricas.TipoErro.EXPRESSAO_INVALIDA);
+                    resultado = "ERRO: " + entrada.getErro();
+                } else {
+                    // Delega a expressão para a lógica de cálculo (que também registra a requisição no log).
+                    // Os limites já foram verificados na leitura: o custo vai junto, sem uma segunda verificação.
+                    resultado = processarRequisicao(requisicao, entrada.getCusto(), endereco);
+                }
+
+                // Envia o resultado ou a mensagem de erro de volta ao cliente.
+                saida.println(resultado);
+
+                // Só envia de fato quando não há mais linhas já recebidas esperando resposta:
+                // várias respostas seguidas saem juntas num único envio pela rede.
+                if (!entrada.ready()) {
+                    long envio = System.nanoTime();
+                    saida.flush();
+                    METRICAS.registrarFase(Metricas.Fase.REDE, System.nanoTime() - envio);
+                }
+            }
+            saida.flush();
+            LOG.info("socket", "Cliente desconectado", endereco);
+        } catch (SocketTimeoutException e) {
+            LOG.info("socket", "Conexão encerrada por inatividade", clientSocket.getInetAddress().getHostAddress());
+        } catch (Exception e) {
+            // Trata erros que ocorrem durante a comunicação com um cliente específico.
+            METRICAS.registrarErro(Metricas.TipoErro.REDE);
+            LOG.aviso("socket", "Erro ao lidar com o cliente", e.getMessage());
+        } finally {
+            METRICAS.conexaoFechada();
+        }
+    }
+
+    /**
+     * Atende uma conexão no protocolo binário (ver ProtocoloBinario): confirma a saudação e
+     * responde cada quadro recebido, até o cliente fechar a conexão.
+     */
+    private void atenderClienteBinario(InputStream bruto, OutputStream saidaBruta, String cliente) throws IOException {
+        DataInputStream entrada = new DataInputStream(bruto);
+        OutputStream saida = new BufferedOutputStream(saidaBruta);
+
+        byte[] saudacao = new byte[ProtocoloBinario.SAUDACAO.length];
+        entrada.readFully(saudacao);
+        if (!Arrays.equals(saudacao, ProtocoloBinario.SAUDACAO)) {
+            throw new IOException("Saudação do protocolo binário inválida.");
+        }
+        saida.write(ProtocoloBinario.SAUDACAO);
+        saida.flush();
+
+        byte[] quadro = new byte[256];
+        ByteBuffer resposta = ByteBuffer.allocate(256);
+        while (true) {
+            int tamanho;
+            try {
+                tamanho = entrada.readInt();
+            } catch (EOFException e) {
+                break; // O cliente fechou a conexão.
+            }
+            if (tamanho < 5 || tamanho > ProtocoloBinario.TAMANHO_MAXIMO_QUADRO) {
+                throw new IOException("Tamanho de quadro inválido: " + tamanho);
+            }
+            if (quadro.length < tamanho) {
+                quadro = new byte[Math.max(tamanho, quadro.length * 2)];
+            }
+            entrada.readFully(quadro, 0, tamanho);
+
+            resposta = ProtocoloBinario.processarQuadro(ByteBuffer.wrap(quadro, 0, tamanho), resposta, cliente);
+
+            // Como no modo texto, só envia quando não há mais requisições já recebidas.
+            if (entrada.available() == 0) {
+                long envio = System.nanoTime();
+                saida.write(resposta.array(), 0, resposta.position());
+                saida.flush();
+                METRICAS.registrarFase(Metricas.Fase.REDE, System.nanoTime() - envio);
+                resposta.clear();
+            }
+        }
+        saida.write(resposta.array(), 0, resposta.position());
+        saida.flush();
+    }
+
+    /**
+     * Responde a um cliente que não pôde ser atendido porque o servidor está no limite.
+     */
+    private void recusarCliente(Socket clientSocket) {
+        METRICAS.registrarErro(Metricas.TipoErro.SOBRECARGA);
+        try (Socket socket = clientSocket) {
+            PrintWriter saida = new PrintWriter(
+                    new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+            saida.println("ERRO: servidor ocupado, tente novamente.");
+        } catch (Exception e) {
+            LOG.aviso("socket", "Erro ao recusar o cliente", e.getMessage());
         }
     }
 
     /**
-     * Método responsável por validar e calcular a expressão.
+     * Método responsável por validar e calcular a expressão (esperando a faixa das pesadas, se for o caso).
      * @param expressao A string contendo a expressão a ser calculada.
-     * @return O resultado do cálculo ou uma string de erro.
+     * @param custo O custo da expressão, se os limites já foram verificados enquanto ela chegava
+     *              (ver LeitorLinhas); -1 para verificá-los aqui.
+     * @param cliente O endereço do cliente (para o limite de taxa por cliente).
+     * @return O resultado do cálculo ou uma string de erro ("ERRO: sobrecarga: ..." se a requisição
+     *         for recusada pelo controle de admissão, sem nenhum cálculo).
      */
-    private String processarRequisicao(String expressao) {
+    static String processarRequisicao(String expressao, int custo, String cliente) {
         try {
-            // Chama o método que avalia a expressão completa, respeitando precedência e parênteses.
-            double resultado = interpretador.avaliarExpressao(expressao);
+            return processarRequisicaoAsync(expressao, custo, cliente).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Como processarRequisicao, mas sem bloquear quem chama: as expressões baratas são avaliadas na hora
+     * (o futuro já volta completo) e as pesadas no pool do escalonador (usado pelo motor NIO).
+     * Os limites são verificados aqui.
+     */
+    static CompletableFuture<String> processarRequisicaoAsync(String expressao, String cliente) {
+        return processarRequisicaoAsync(expressao, -1, cliente);
+    }
+
+    /**
+     * Como processarRequisicaoAsync(expressao, cliente), para uma expressão cujos limites podem já ter
+     * sido verificados.
+     * @param custo O custo calculado nessa verificação, ou -1 para verificar os limites aqui.
+     */
+    static CompletableFuture<String> processarRequisicaoAsync(String expressao, int custo, String cliente) {
+        ControleAdmissao.Recusa recusa = ADMISSAO.admitir(cliente);
+        if (recusa != null) {
+            LOG.aviso("socket", "Requisição recusada pelo controle de admissão", recusa);
+            return CompletableFuture.completedFuture("ERRO: " + recusa.getMensagem());
+        }
+        long inicio = METRICAS.iniciarRequisicao();
+        CompletableFuture<Double> avaliacao;
+        try {
+            // Verifica os limites de complexidade (se ainda não foram) e avalia a expressão na faixa do seu custo.
+            avaliacao = ESCALONADOR.avaliarAsync(expressao, custo >= 0 ? custo : ESCALONADOR.verificar(expressao));
+        } catch (IllegalArgumentException e) {
+            avaliacao = CompletableFuture.failedFuture(e);
+        }
+        return avaliacao.handle((resultado, erro) -> {
+            if (erro instanceof CompletionException) {
+                erro = erro.getCause();
+            }
+            if (erro instanceof ControleAdmissao.Recusada) {
+                // Fila das pesadas cheia: nada foi calculado, então não entra na medição do limite adaptativo.
+                ADMISSAO.liberar();
+                METRICAS.concluirRequisicao(inicio);
+                LOG.aviso("socket", "Expressão pesada recusada", erro.getMessage());
+                return "ERRO: " + erro.getMessage();
+            }
+            try {
+                if (erro == null) {
+                    LOG.requisicao("socket", expressao, inicio, null);
+                    // Retorna o resultado numérico convertido para string.
+                    return String.valueOf(resultado);
+                }
+                if (erro instanceof IllegalArgumentException || erro instanceof ArithmeticException) {
+                    // Captura erros da lógica de cálculo (ex: formato inválido, divisão por zero, limites).
+                    LOG.requisicao("socket", expressao, inicio, erro.getMessage());
+                    return "ERRO: " + erro.getMessage();
+                }
+                throw erro instanceof RuntimeException ? (RuntimeException) erro : new CompletionException(erro);
+            } finally {
+                ADMISSAO.concluir(inicio);
+                METRICAS.concluirRequisicao(inicio);
+            }
+        });
+    }
+
+    /**
+     * Leitor de linhas que aplica os LimitesExpressao enquanto a linha chega: cada caractere passa pela
+     * verificação incremental e, no primeiro limite ultrapassado, o restante da linha é lido e descartado
+     * sem ser guardado (a conexão continua sincronizada na próxima linha). Substitui o readLine(), que
+     * montaria a linha inteira na memória, qualquer que fosse o tamanho.
+     */
+    static final class LeitorLinhas {
+        private final Reader entrada;
+        private final LimitesExpressao.Verificacao verificacao;
+        private final StringBuilder linha = new StringBuilder();
+        private final char[] buffer = new char[8192];
+        private int posicao;
+        private int limite;
 
-            // Retorna o resultado numérico convertido para string.
-            return String.valueOf(resultado);
+        LeitorLinhas(Reader entrada, LimitesExpressao limites) {
+            this.entrada = entrada;
+            this.verificacao = limites.iniciar();
+        }
+
+        /**
+         * Lê a próxima linha (sem o '\n' e sem um '\r' final).
+         * @return A linha, ou null no fim da entrada. Se a linha ultrapassou algum limite, getErro()
+         *         informa qual e a linha devolvida fica incompleta (não deve ser avaliada).
+         */
+        String lerLinha() throws IOException {
+            linha.setLength(0);
+            verificacao.reiniciar();
+            boolean vazia = true;
+            while (true) {
+                if (posicao == limite) {
+                    limite = entrada.read(buffer, 0, buffer.length);
+                    posicao = 0;
+                    if (limite <= 0) {
+                        limite = 0;
+                        return vazia ? null : terminar();
+                    }
+                }
+                char c = buffer[posicao++];
+                vazia = false;
+                if (c == '\n') {
+                    return terminar();
+                }
+                if (verificacao.aceitar(c)) {
+                    linha.append(c);
+                }
+            }
+        }
+
+        private String terminar() {
+            int fim = linha.length();
+            if (fim > 0 && linha.charAt(fim - 1) == '\r') {
+                linha.setLength(fim - 1);
+            }
+            return linha.toString();
+        }
+
+        /** O limite ultrapassado pela última linha lida, ou null se ela está dentro dos limites. */
+        String getErro() {
+            return verificacao.getErro();
+        }
+
+        /** O custo (tokens) da última linha lida, calculado na verificação feita durante a leitura. */
+        int getCusto() {
+            return verificacao.getCusto();
+        }
+
+        /** Indica se há caracteres já recebidos e ainda não lidos (como o ready() do BufferedReader). */
+        boolean ready() throws IOException {
+            return posicao < limite || entrada.ready();
+        }
+    }
+
+    /**
+     * Cria as threads do pool com nomes identificáveis (útil em dumps de threads e profilers).
+     */
+    private static class FabricaThreads implements ThreadFactory {
+        private final AtomicInteger contador = new AtomicInteger();
 
-        } catch (IllegalArgumentException | ArithmeticException e) {
-            // Captura erros da lógica de cálculo (ex: formato inválido, divisão por zero).
-            return "ERRO: " + e.getMessage();
+        @Override
+        public Thread newThread(Runnable tarefa) {
+            Thread thread = new Thread(tarefa, "calculadora-conexao-" + contador.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,429 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Motor alternativo do servidor da calculadora, baseado em java.nio (Selector).
+ *
+ * Em vez de uma thread por conexão, poucas threads (os "laços de seleção") atendem todas as
+ * conexões: cada laço espera até que alguma das suas conexões tenha dados para ler ou espaço
+ * para escrever. Assim o servidor mantém dezenas de milhares de conexões ociosas abertas com
+ * pouquíssimas threads. O protocolo é o mesmo do motor tradicional (uma expressão por linha,
+ * uma resposta por linha), então o ClienteCalculadora funciona sem nenhuma alteração.
+ * O protocolo binário (ver ProtocoloBinario) também é aceito, conforme a saudação da conexão.
+ *
+ * Os laços de seleção nunca avaliam uma expressão pesada (ver EscalonadorAvaliacao): ela vai para o
+ * pool das pesadas e a conexão fica "aguardando" (sem ler nem processar as próximas requisições, para
+ * manter a ordem das respostas) até a resposta voltar; as demais conexões do laço seguem normalmente.
+ */
+public class ServidorCalculadoraNIO {
+
+    // Tamanho inicial dos buffers de leitura e escrita de cada conexão.
+    private static final int TAMANHO_BUFFER = 4096;
+    // Tamanho máximo do buffer de entrada de uma conexão. Uma linha de texto maior que o limite de caracteres
+    // (ver LimitesExpressao) é descartada antes disso; um quadro binário é limitado pelo seu próprio tamanho máximo.
+    private static final int TAMANHO_MAXIMO_LINHA = 1024 * 1024;
+
+    private final int porta;
+    private final LacoSelecao[] lacos;
+
+    /**
+     * @param porta A porta de escuta.
+     * @param quantidadeSeletores Quantas threads de seleção dividem as conexões.
+     */
+    public ServidorCalculadoraNIO(int porta, int quantidadeSeletores) {
+        this.porta = porta;
+        this.lacos = new LacoSelecao[quantidadeSeletores];
+    }
+
+    /**
+     * Abre a porta, inicia os laços de seleção e passa a aceitar conexões (não retorna).
+     * As conexões aceitas são distribuídas entre os laços em rodízio (round-robin).
+     */
+    public void iniciar() throws IOException {
+        for (int i = 0; i < lacos.length; i++) {
+            lacos[i] = new LacoSelecao();
+            Thread thread = new Thread(lacos[i], "calculadora-nio-" + (i + 1));
+            thread.start();
+        }
+
+        try (ServerSocketChannel servidor = ServerSocketChannel.open()) {
+            servidor.bind(new InetSocketAddress(porta), 1024);
+            System.out.println("Servidor NIO iniciado na porta " + porta + " com " + lacos.length
+                    + " thread(s) de seleção. Aguardando conexões...");
+
+            int proximo = 0;
+            while (true) {
+                // O accept é bloqueante: só a thread principal faz isso.
+                SocketChannel canal = servidor.accept();
+                lacos[proximo].registrar(canal);
+                proximo = (proximo + 1) % lacos.length;
+            }
+        }
+    }
+
+    /**
+     * Uma thread com o seu próprio Selector, responsável por um subconjunto das conexões.
+     */
+    private static final class LacoSelecao implements Runnable {
+        private final Selector seletor;
+        // Conexões recém-aceitas, que ainda precisam ser registradas no seletor (pela própria thread do laço).
+        private final Queue<SocketChannel> pendentes = new ConcurrentLinkedQueue<>();
+        // Conexões cuja requisição pesada terminou (no pool das pesadas), esperando a thread do laço retomá-las.
+        private final Queue<SelectionKey> concluidas = new ConcurrentLinkedQueue<>();
+        // Área temporária para copiar uma linha antes de convertê-la em String (reaproveitada).
+        private byte[] linha = new byte[TAMANHO_BUFFER];
+
+        LacoSelecao() throws IOException {
+            this.seletor = Selector.open();
+        }
+
+        /** Entrega uma nova conexão ao laço (chamado pela thread que aceita conexões). */
+        void registrar(SocketChannel canal) {
+            pendentes.add(canal);
+            seletor.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    seletor.select();
+                    registrarPendentes();
+                    retomarConcluidas();
+
+                    Iterator<SelectionKey> chaves = seletor.selectedKeys().iterator();
+                    while (chaves.hasNext()) {
+                        SelectionKey chave = chaves.next();
+                        chaves.remove();
+                        processar(chave);
+                    }
+                } catch (IOException e) {
+                    ServidorCalculadora.LOG.erro("socket", "Erro no laço de seleção", e.getMessage());
+                }
+            }
+        }
+
+        private void registrarPendentes() {
+            SocketChannel canal;
+            while ((canal = pendentes.poll()) != null) {
+                // Contada aqui: toda conexão que sai da fila de pendentes passa depois por fechar().
+                ServidorCalculadora.METRICAS.conexaoAberta();
+                try {
+                    canal.configureBlocking(false);
+                    canal.socket().setTcpNoDelay(true);
+                    canal.register(seletor, SelectionKey.OP_READ,
+                            new Conexao(canal.socket().getInetAddress().getHostAddress()));
+                } catch (IOException e) {
+                    fechar(canal);
+                }
+            }
+        }
+
+        /** Acrescenta as respostas pesadas que ficaram prontas e continua o processamento dessas conexões. */
+        private void retomarConcluidas() {
+            SelectionKey chave;
+            while ((chave = concluidas.poll()) != null) {
+                if (!chave.isValid()) {
+                    continue; // A conexão foi encerrada enquanto esperava.
+                }
+                SocketChannel canal = (SocketChannel) chave.channel();
+                Conexao conexao = (Conexao) chave.attachment();
+                try {
+                    byte[] resposta = conexao.aguardando.join();
+                    conexao.aguardando = null;
+                    acrescentar(conexao, resposta, false);
+                    processarEntrada(chave, canal, conexao);
+                } catch (IOException | RuntimeException e) {
+                    ServidorCalculadora.METRICAS.registrarErro(Metricas.TipoErro.REDE);
+                    chave.cancel();
+                    fechar(canal);
+                }
+            }
+        }
+
+        /** Trata uma conexão pronta para leitura e/ou escrita. Erros de I/O encerram apenas essa conexão. */
+        private void processar(SelectionKey chave) {
+            SocketChannel canal = (SocketChannel) chave.channel();
+            Conexao conexao = (Conexao) chave.attachment();
+            try {
+                if (chave.isValid() && chave.isWritable()) {
+                    escrever(chave, canal, conexao);
+                }
+                if (chave.isValid() && chave.isReadable()) {
+                    ler(chave, canal, conexao);
+                }
+            } catch (IOException | RuntimeException e) {
+                ServidorCalculadora.METRICAS.registrarErro(Metricas.TipoErro.REDE);
+                chave.cancel();
+                fechar(canal);
+            }
+        }
+
+        private void ler(SelectionKey chave, SocketChannel canal, Conexao conexao) throws IOException {
+            if (canal.read(conexao.entrada) < 0) {
+                conexao.fimDaEntrada = true;
+            }
+            processarEntrada(chave, canal, conexao);
+        }
+
+        /**
+         * Processa as requisições completas já recebidas, até o fim do buffer ou até uma requisição pesada
+         * (o restante continua no buffer e é processado quando ela terminar, ver retomarConcluidas).
+         */
+        private void processarEntrada(SelectionKey chave, SocketChannel canal, Conexao conexao) throws IOException {
+            ByteBuffer entrada = conexao.entrada;
+            entrada.flip();
+
+            // O primeiro byte da conexão define o protocolo: 0x00 inicia a saudação do modo binário.
+            if (conexao.modo == Conexao.MODO_INDEFINIDO && entrada.hasRemaining()) {
+                if (entrada.get(entrada.position()) != ProtocoloBinario.SAUDACAO[0]) {
+                    conexao.modo = Conexao.MODO_TEXTO;
+                } else if (entrada.remaining() >= ProtocoloBinario.SAUDACAO.length) {
+                    if (!ProtocoloBinario.isSaudacao(entrada, entrada.position())) {
+                        throw new IOException("Saudação do protocolo binário inválida.");
+                    }
+                    entrada.position(entrada.position() + ProtocoloBinario.SAUDACAO.length);
+                    conexao.saida.put(ProtocoloBinario.SAUDACAO);
+                    conexao.modo = Conexao.MODO_BINARIO;
+                }
+            }
+
+            int inicio = entrada.position();
+            if (conexao.modo == Conexao.MODO_TEXTO) {
+                inicio = separarLinhas(chave, conexao, entrada, inicio);
+            } else if (conexao.modo == Conexao.MODO_BINARIO) {
+                inicio = separarQuadros(chave, conexao, entrada, inicio);
+            }
+
+            if (conexao.fimDaEntrada && conexao.aguardando == null) {
+                // O cliente fechou a conexão e tudo o que ele enviou já foi respondido:
+                // envia o que ainda faltar e fecha.
+                entrada.clear();
+                conexao.fecharAposEscrever = true;
+                enviarRespostas(chave, canal, conexao);
+                return;
+            }
+
+            entrada.position(inicio);
+            entrada.compact();
+
+            // Buffer cheio sem nenhuma mensagem completa: a linha (ou quadro) é maior que o buffer.
+            if (!entrada.hasRemaining() && conexao.aguardando == null) {
+                if (entrada.capacity() >= TAMANHO_MAXIMO_LINHA) {
+                    throw new IOException("Linha maior que o limite de " + TAMANHO_MAXIMO_LINHA + " bytes.");
+                }
+                conexao.entrada = ampliar(entrada, entrada.capacity() * 2);
+            }
+
+            enviarRespostas(chave, canal, conexao);
+        }
+
+        /**
+         * Responde todas as linhas completas a partir de 'inicio'. O que sobrar de uma linha incompleta fica
+         * para a próxima leitura, a não ser que já passe do limite de caracteres: nesse caso a resposta de
+         * erro sai na hora e o restante da linha é descartado conforme chega, sem ser guardado.
+         * @return A posição do primeiro byte ainda não processado.
+         */
+        private int separarLinhas(SelectionKey chave, Conexao conexao, ByteBuffer entrada, int inicio) {
+            for (int i = inicio; i < entrada.limit() && conexao.aguardando == null; i++) {
+                if (entrada.get(i) == '\n') {
+                    if (conexao.descartando) {
+                        conexao.descartando = false;
+                    } else {
+                        responder(chave, conexao, extrairLinha(entrada, inicio, i));
+                    }
+                    inicio = i + 1;
+                }
+            }
+            if (conexao.aguardando != null || inicio == entrada.limit()) {
+                return inicio;
+            }
+            if (conexao.fimDaEntrada) {
+                // Como no readLine(), uma última linha sem '\n' também é respondida.
+                if (!conexao.descartando) {
+                    responder(chave, conexao, extrairLinha(entrada, inicio, entrada.limit()));
+                }
+                return entrada.limit();
+            }
+            if (conexao.descartando) {
+                return entrada.limit();
+            }
+            LimitesExpressao limites = ServidorCalculadora.ESCALONADOR.getLimites();
+            // Só conta os caracteres (bytes que não continuam um caractere UTF-8) quando os bytes já passam do limite.
+            if (entrada.limit() - inicio > limites.getMaxCaracteres()
+                    && contarCaracteres(entrada, inicio, entrada.limit()) > limites.getMaxCaracteres()) {
+                ServidorCalculadora.METRICAS.registrarErro(Metricas.TipoErro.EXPRESSAO_INVALIDA);
+                acrescentar(conexao, ("ERRO: Expressão muito longa (máximo de " + limites.getMaxCaracteres()
+                        + " caracteres).").getBytes(StandardCharsets.UTF_8), true);
+                conexao.descartando = true;
+                return entrada.limit();
+            }
+            return inicio;
+        }
+
+        private static int contarCaracteres(ByteBuffer entrada, int inicio, int fim) {
+            int caracteres = 0;
+            for (int i = inicio; i < fim; i++) {
+                if ((entrada.get(i) & 0xC0) != 0x80) {
+                    caracteres++;
+                }
+            }
+            return caracteres;
+        }
+
+        /**
+         * Responde todos os quadros binários completos a partir de 'inicio'.
+         * @return A posição do primeiro byte ainda não processado.
+         */
+        private int separarQuadros(SelectionKey chave, Conexao conexao, ByteBuffer entrada, int inicio) throws IOException {
+            while (entrada.limit() - inicio >= 4 && conexao.aguardando == null) {
+                int tamanho = entrada.getInt(inicio);
+                if (tamanho < 5 || tamanho > ProtocoloBinario.TAMANHO_MAXIMO_QUADRO) {
+                    throw new IOException("Tamanho de quadro inválido: " + tamanho);
+                }
+                if (entrada.limit() - inicio - 4 < tamanho) {
+                    break; // Quadro incompleto: espera o restante.
+                }
+                ByteBuffer corpo = entrada.slice(inicio + 4, tamanho);
+                if (ProtocoloBinario.isPesado(corpo)) {
+                    aguardar(chave, conexao, ProtocoloBinario.processarQuadroPesado(corpo, conexao.cliente));
+                } else {
+                    conexao.saida = ProtocoloBinario.processarQuadro(corpo, conexao.saida, conexao.cliente);
+                }
+                inicio += 4 + tamanho;
+            }
+            return inicio;
+        }
+
+        private void escrever(SelectionKey chave, SocketChannel canal, Conexao conexao) throws IOException {
+            enviarRespostas(chave, canal, conexao);
+            if (conexao.fecharAposEscrever && conexao.saida.position() == 0) {
+                chave.cancel();
+                fechar(canal);
+            }
+        }
+
+        /**
+         * Tenta enviar tudo o que está no buffer de saída. Se o socket não aceitar tudo (escrita parcial),
+         * passa a esperar OP_WRITE e para de ler novas requisições até o buffer esvaziar.
+         */
+        private void enviarRespostas(SelectionKey chave, SocketChannel canal, Conexao conexao) throws IOException {
+            ByteBuffer saida = conexao.saida;
+            if (saida.position() > 0) {
+                long envio = System.nanoTime();
+                saida.flip();
+                canal.write(saida);
+                saida.compact();
+                ServidorCalculadora.METRICAS.registrarFase(Metricas.Fase.REDE, System.nanoTime() - envio);
+            }
+            if (saida.position() > 0 || conexao.fecharAposEscrever) {
+                chave.interestOps(SelectionKey.OP_WRITE);
+            } else if (conexao.aguardando != null) {
+                chave.interestOps(0); // Nada a fazer até a requisição pesada terminar.
+            } else {
+                chave.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        /** Converte os bytes [inicio, fim) da entrada em String, ignorando um '\r' final (quebra de linha do Windows). */
+        private String extrairLinha(ByteBuffer entrada, int inicio, int fim) {
+            if (fim > inicio && entrada.get(fim - 1) == '\r') {
+                fim--;
+            }
+            int tamanho = fim - inicio;
+            if (linha.length < tamanho) {
+                linha = new byte[Math.max(tamanho, linha.length * 2)];
+            }
+            entrada.get(inicio, linha, 0, tamanho);
+            return new String(linha, 0, tamanho, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Calcula a resposta de uma linha e a acrescenta ao buffer de saída da conexão. Se a expressão for
+         * pesada, a conexão passa a aguardar a resposta (ver aguardar).
+         */
+        private void responder(SelectionKey chave, Conexao conexao, String requisicao) {
+            CompletableFuture<String> resposta = ServidorCalculadora.processarRequisicaoAsync(requisicao, conexao.cliente);
+            if (resposta.isDone()) {
+                acrescentar(conexao, resposta.join().getBytes(StandardCharsets.UTF_8), true);
+            } else {
+                aguardar(chave, conexao, resposta.thenApply(texto -> (texto + "\n").getBytes(StandardCharsets.UTF_8)));
+            }
+        }
+
+        /**
+         * Põe a conexão para aguardar uma resposta calculada no pool das pesadas: quando ela terminar,
+         * a conexão entra na fila das concluídas e o laço é acordado para retomá-la.
+         */
+        private void aguardar(SelectionKey chave, Conexao conexao, CompletableFuture<byte[]> resposta) {
+            conexao.aguardando = resposta;
+            resposta.whenComplete((bytes, erro) -> {
+                concluidas.add(chave);
+                seletor.wakeup();
+            });
+        }
+
+        /** Acrescenta uma resposta (seguida de '\n', se for uma linha de texto) ao buffer de saída da conexão. */
+        private static void acrescentar(Conexao conexao, byte[] resposta, boolean quebraLinha) {
+            int tamanho = resposta.length + (quebraLinha ? 1 : 0);
+            if (conexao.saida.remaining() < tamanho) {
+                conexao.saida = ampliar(conexao.saida, Math.max(conexao.saida.capacity() * 2,
+                        conexao.saida.position() + tamanho));
+            }
+            conexao.saida.put(resposta);
+            if (quebraLinha) {
+                conexao.saida.put((byte) '\n');
+            }
+        }
+
+        private static ByteBuffer ampliar(ByteBuffer buffer, int novaCapacidade) {
+            ByteBuffer maior = ByteBuffer.allocateDirect(novaCapacidade);
+            buffer.flip();
+            maior.put(buffer);
+            return maior;
+        }
+
+        private static void fechar(SocketChannel canal) {
+            ServidorCalculadora.METRICAS.conexaoFechada();
+            try {
+                canal.close();
+            } catch (IOException e) {
+                // Nada a fazer: a conexão já está sendo descartada.
+            }
+        }
+    }
+
+    /**
+     * Estado de uma conexão: os buffers (diretos, reaproveitados durante toda a conexão)
+     * com os bytes recebidos ainda não processados e as respostas ainda não enviadas.
+     * Os dois ficam sempre em "modo de escrita" (prontos para receber mais bytes).
+     */
+    private static final class Conexao {
+        static final int MODO_INDEFINIDO = 0;  // Nenhum byte recebido ainda.
+        static final int MODO_TEXTO = 1;
+        static final int MODO_BINARIO = 2;
+
+        final String cliente; // Endereço do cliente, para o limite de taxa por cliente.
+        int modo = MODO_INDEFINIDO;
+        ByteBuffer entrada = ByteBuffer.allocateDirect(TAMANHO_BUFFER);
+        ByteBuffer saida = ByteBuffer.allocateDirect(TAMANHO_BUFFER);
+        boolean fecharAposEscrever;
+        boolean fimDaEntrada;                    // O cliente já fechou o seu lado da conexão.
+        boolean descartando;                     // Descartando o restante de uma linha fora do limite de caracteres.
+        CompletableFuture<byte[]> aguardando;    // Resposta pesada ainda em cálculo (só uma por vez, para manter a ordem).
+
+        Conexao(String cliente) {
+            this.cliente = cliente;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Testes do LeitorLinhas do servidor de sockets: a verificação feita enquanto a linha chega dá o
+ * mesmo custo e os mesmos erros que a verificação da linha inteira (LimitesExpressao.verificar).
+ */
+class LeitorLinhasTest {
+
+    private final LimitesExpressao limites = new LimitesExpressao(20, 7, 2);
+
+    @Test
+    void custoDaLeituraEhOMesmoDaVerificacaoDaLinhaInteira() throws IOException {
+        String[] linhas = {"1 + 2", "12.5*(3-1)", "  7  ", "(1+2)*3", "abc + 1"};
+        ServidorCalculadora.LeitorLinhas leitor = new ServidorCalculadora.LeitorLinhas(
+                new StringReader(String.join("\r\n", linhas) + "\n"), limites);
+        for (String linha : linhas) {
+            assertEquals(linha, leitor.lerLinha());
+            assertNull(leitor.getErro());
+            assertEquals(limites.verificar(linha), leitor.getCusto(), "linha: \"" + linha + "\"");
+        }
+        assertNull(leitor.lerLinha());
+    }
+
+    @Test
+    void linhaForaDosLimitesEhDescartadaEALeituraContinua() throws IOException {
+        String[] linhas = {"1+2+3+4+5", "((((1))))", "1234567890 + 1234567890", "4 / 2"};
+        ServidorCalculadora.LeitorLinhas leitor = new ServidorCalculadora.LeitorLinhas(
+                new StringReader(String.join("\n", linhas)), limites);
+        for (int i = 0; i < 3; i++) {
+            String linha = linhas[i];
+            leitor.lerLinha();
+            IllegalArgumentException esperado = assertThrows(IllegalArgumentException.class, () -> limites.verificar(linha));
+            assertEquals(esperado.getMessage(), leitor.getErro(), "linha: \"" + linha + "\"");
+        }
+        assertEquals("4 / 2", leitor.lerLinha());
+        assertNull(leitor.getErro());
+        assertEquals(3, leitor.getCusto());
+    }
+}
@@ -0,0 +1,203 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Testes do PoolConexoes contra um servidor falso local, que responde a mesma linha a cada pedido
+ * (ou não responde nada, para simular um servidor travado).
+ */
+class PoolConexoesTest {
+
+    private ServidorFalso servidor;
+    private PoolConexoes pool;
+
+    @AfterEach
+    void encerrar() throws IOException {
+        if (pool != null) pool.close();
+        if (servidor != null) servidor.close();
+    }
+
+    @Test
+    void devolucaoEntregaAConexaoAoPedidoQueEspera() throws Exception {
+        servidor = new ServidorFalso("0");
+        pool = new PoolConexoes(1, 60_000, 60_000);
+
+        PoolConexoes.Emprestimo primeiro = pool.adquirir("localhost", servidor.porta(), 2, TimeUnit.SECONDS);
+        CompletableFuture<PoolConexoes.Emprestimo> pedido = pool.adquirirAsync("localhost", servidor.porta(), 2, TimeUnit.SECONDS);
+        assertFalse(pedido.isDone(), "limite de uma conexão: o segundo pedido espera");
+
+        primeiro.close();
+        PoolConexoes.Emprestimo segundo = pedido.get(2, TimeUnit.SECONDS);
+        assertSame(primeiro.cliente(), segundo.cliente());
+        assertEquals(0.0, segundo.cliente().avaliar("1 + 1"));
+        assertEquals(1, pool.getConexoesAbertas("localhost", servidor.porta()));
+        segundo.close();
+    }
+
+    @Test
+    void pedidoQueEsperaDemaisFalhaComTimeout() throws Exception {
+        servidor = new ServidorFalso("0");
+        pool = new PoolConexoes(1, 60_000, 60_000);
+
+        try (PoolConexoes.Emprestimo ignorado = pool.adquirir("localhost", servidor.porta(), 2, TimeUnit.SECONDS)) {
+            assertThrows(TimeoutException.class,
+                    () -> pool.adquirir("localhost", servidor.porta(), 100, TimeUnit.MILLISECONDS));
+        }
+        assertEquals(1, pool.getConexoesAbertas("localhost", servidor.porta()));
+    }
+
+    @Test
+    void vagaDeConexaoDescartadaAbreConexaoNovaForaDaThreadQueDevolve() throws Exception {
+        servidor = new ServidorFalso("0");
+        pool = new PoolConexoes(1, 60_000, 60_000);
+
+        PoolConexoes.Emprestimo primeiro = pool.adquirir("localhost", servidor.porta(), 2, TimeUnit.SECONDS);
+        CompletableFuture<PoolConexoes.Emprestimo> pedido = pool.adquirirAsync("localhost", servidor.porta(), 2, TimeUnit.SECONDS);
+        AtomicReference<String> threadQueConectou = new AtomicReference<>();
+        pedido.whenComplete((e, erro) -> threadQueConectou.set(Thread.currentThread().getName()));
+
+        primeiro.invalidar();
+        primeiro.close();
+        PoolConexoes.Emprestimo segundo = pedido.get(2, TimeUnit.SECONDS);
+        assertNotSame(primeiro.cliente(), segundo.cliente());
+        assertFalse(primeiro.cliente().isAberta());
+        assertEquals("calculadora-pool-conexao", threadQueConectou.get());
+        assertEquals(1, pool.getConexoesAbertas("localhost", servidor.porta()));
+        segundo.close();
+    }
+
+    @Test
+    void conexoesOciosasSaoFechadasELiberamAVaga() throws Exception {
+        servidor = new ServidorFalso("0");
+        pool = new PoolConexoes(1, 50, 60_000);
+
+        PoolConexoes.Emprestimo emprestimo = pool.adquirir("localhost", servidor.porta(), 2, TimeUnit.SECONDS);
+        emprestimo.close();
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (pool.getConexoesAbertas("localhost", servidor.porta()) > 0 && System.nanoTime() < limite) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, pool.getConexoesAbertas("localhost", servidor.porta()));
+        assertFalse(emprestimo.cliente().isAberta());
+
+        try (PoolConexoes.Emprestimo novo = pool.adquirir("localhost", servidor.porta(), 2, TimeUnit.SECONDS)) {
+            assertNotSame(emprestimo.cliente(), novo.cliente());
+        }
+    }
+
+    @Test
+    void verificacaoDeServidorTravadoNaoBloqueiaQuemPedeERespeitaOTimeout() throws Exception {
+        servidor = new ServidorFalso(null);
+        // Intervalo de verificação 0: toda conexão parada é testada antes de ser emprestada.
+        pool = new PoolConexoes(1, 60_000, 0);
+
+        pool.adquirir("localhost", servidor.porta(), 2, TimeUnit.SECONDS).close();
+        Thread.sleep(5);
+
+        long inicio = System.nanoTime();
+        CompletableFuture<PoolConexoes.Emprestimo> pedido = pool.adquirirAsync("localhost", servidor.porta(), 200, TimeUnit.MILLISECONDS);
+        long chamada = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio);
+        assertTrue(chamada < 100, "adquirirAsync não deve esperar a verificação: " + chamada + " ms");
+
+        // O servidor nunca responde à verificação: o pedido termina no tempo dele, não no da verificação (1 s).
+        ExecutionException erro = assertThrows(ExecutionException.class, () -> pedido.get(2, TimeUnit.SECONDS));
+        long total = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio);
+        assertTrue(erro.getCause() instanceof TimeoutException || erro.getCause() instanceof IOException, erro.toString());
+        assertTrue(total < 900, "o pedido deveria terminar perto de 200 ms, terminou em " + total + " ms");
+    }
+
+    @Test
+    void erroDoServidorNaVerificacaoMantemAConexao() throws Exception {
+        // Servidor ocupado, mas respondendo: a conexão continua boa e não é trocada por uma nova.
+        servidor = new ServidorFalso("ERRO: " + ControleAdmissao.Recusa.CONCORRENCIA.getMensagem());
+        pool = new PoolConexoes(1, 60_000, 0);
+
+        PoolConexoes.Emprestimo primeiro = pool.adquirir("localhost", servidor.porta(), 2, TimeUnit.SECONDS);
+        primeiro.close();
+        Thread.sleep(5);
+
+        try (PoolConexoes.Emprestimo segundo = pool.adquirir("localhost", servidor.porta(), 2, TimeUnit.SECONDS)) {
+            assertSame(primeiro.cliente(), segundo.cliente());
+            assertTrue(segundo.cliente().isAberta());
+        }
+        assertEquals(1, servidor.getConexoes());
+    }
+
+    /** Servidor de linhas mínimo: uma thread por conexão, respondendo a mesma linha a cada pedido (se houver). */
+    private static final class ServidorFalso implements AutoCloseable {
+        private final ServerSocket socket;
+        private final byte[] resposta; // null = nunca responde.
+        private final AtomicInteger conexoes = new AtomicInteger();
+
+        ServidorFalso(String resposta) throws IOException {
+            this.socket = new ServerSocket(0);
+            this.resposta = resposta == null ? null : (resposta + "\n").getBytes(StandardCharsets.UTF_8);
+            Thread aceitador = new Thread(this::aceitar, "servidor-falso");
+            aceitador.setDaemon(true);
+            aceitador.start();
+        }
+
+        int porta() {
+            return socket.getLocalPort();
+        }
+
+        /** Conexões aceitas até agora. */
+        int getConexoes() {
+            return conexoes.get();
+        }
+
+        private void aceitar() {
+            try {
+                while (true) {
+                    Socket conexao = socket.accept();
+                    conexoes.incrementAndGet();
+                    Thread thread = new Thread(() -> atender(conexao), "servidor-falso-conexao");
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+            } catch (IOException e) {
+                // Servidor fechado.
+            }
+        }
+
+        private void atender(Socket conexao) {
+            try (conexao;
+                 BufferedReader entrada = new BufferedReader(new InputStreamReader(conexao.getInputStream(), StandardCharsets.UTF_8))) {
+                OutputStream saida = conexao.getOutputStream();
+                while (entrada.readLine() != null) {
+                    if (resposta != null) {
+                        saida.write(resposta);
+                        saida.flush();
+                    }
+                }
+            } catch (IOException e) {
+                // Conexão encerrada.
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Testes dos quadros do protocolo binário: cada requisição (id, tipo e conteúdo) vira um quadro de
+ * resposta com o mesmo id, o status certo e o resultado em double ou a mensagem de erro.
+ */
+class ProtocoloBinarioTest {
+
+    private final InterpretadorAritmetico interpretador = new InterpretadorAritmetico(new CacheExpressoes(64));
+
+    /** Quadro de resposta já separado nos seus campos. */
+    private static final class Resposta {
+        final int id;
+        final byte status;
+        final ByteBuffer conteudo;
+
+        Resposta(ByteBuffer quadro) {
+            int tamanho = quadro.getInt();
+            assertEquals(quadro.remaining(), tamanho, "o tamanho conta os bytes depois dele");
+            this.id = quadro.getInt();
+            this.status = quadro.get();
+            this.conteudo = quadro.slice();
+        }
+
+        double resultado() {
+            assertEquals(ProtocoloBinario.STATUS_OK, status, "mensagem: " + mensagem());
+            assertEquals(8, conteudo.remaining());
+            return conteudo.getDouble(0);
+        }
+
+        String mensagem() {
+            return StandardCharsets.UTF_8.decode(conteudo.duplicate()).toString();
+        }
+    }
+
+    private static Resposta processar(ByteBuffer corpo) {
+        ByteBuffer saida = ProtocoloBinario.processarQuadro(corpo.flip(), ByteBuffer.allocate(4), "teste");
+        return new Resposta(saida.flip());
+    }
+
+    private static ByteBuffer expressao(int id, String texto) {
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(5 + bytes.length).putInt(id).put(ProtocoloBinario.TIPO_EXPRESSAO).put(bytes);
+    }
+
+    private ByteBuffer programa(int id, ExpressaoCompilada programa, double... valores) {
+        ByteBuffer corpo = ByteBuffer.allocate(5 + programa.tamanhoBytecode() + 4 + 8 * valores.length)
+                .putInt(id).put(ProtocoloBinario.TIPO_PROGRAMA);
+        programa.escreverBytecode(corpo);
+        corpo.putInt(valores.length);
+        for (double valor : valores) {
+            corpo.putDouble(valor);
+        }
+        return corpo;
+    }
+
+    @Test
+    void expressaoDeTextoRespondeODoubleComOMesmoId() {
+        Resposta resposta = processar(expressao(17, "1 + 2 * 3"));
+        assertEquals(17, resposta.id);
+        assertEquals(7.0, resposta.resultado());
+
+        assertEquals(0.1 + 0.2, processar(expressao(-1, "0.1+0.2")).resultado());
+    }
+
+    @Test
+    void errosDeCalculoTemStatusEMensagemProprios() {
+        Resposta divisao = processar(expressao(3, "1 / 0"));
+        assertEquals(3, divisao.id);
+        assertEquals(ProtocoloBinario.STATUS_ERRO_ARITMETICO, divisao.status);
+        assertEquals("Divisão por zero!", divisao.mensagem());
+
+        Resposta invalida = processar(expressao(4, "2 + x"));
+        assertEquals(ProtocoloBinario.STATUS_EXPRESSAO_INVALIDA, invalida.status);
+        assertEquals("Caractere desconhecido: x", invalida.mensagem());
+    }
+
+    @Test
+    void programaCompiladoEhAvaliadoComOsValoresEnviados() {
+        ExpressaoCompilada compilada = interpretador.compilar("x * 2 + y", "x", "y");
+        Resposta resposta = processar(programa(8, compilada, 5, 1.5));
+        assertEquals(8, resposta.id);
+        assertEquals(11.5, resposta.resultado());
+
+        Resposta faltaValor = processar(programa(9, compilada, 5));
+        assertEquals(ProtocoloBinario.STATUS_QUADRO_INVALIDO, faltaValor.status);
+    }
+
+    @Test
+    void quadrosMalformadosSaoRecusadosSemDerrubarAConexao() {
+        Resposta tipo = processar(ByteBuffer.allocate(8).putInt(5).put((byte) 7).put((byte) 1));
+        assertEquals(5, tipo.id);
+        assertEquals(ProtocoloBinario.STATUS_QUADRO_INVALIDO, tipo.status);
+        assertEquals("Tipo de requisição desconhecido: 7", tipo.mensagem());
+
+        ByteBuffer invalido = ByteBuffer.allocate(16).putInt(6).put(ProtocoloBinario.TIPO_PROGRAMA)
+                .putInt(1).putInt(0).put((byte) 9);
+        Resposta programa = processar(invalido);
+        assertEquals(ProtocoloBinario.STATUS_QUADRO_INVALIDO, programa.status);
+        assertEquals("Programa inválido: código 9 desconhecido.", programa.mensagem());
+
+        // Corta o quadro no meio da constante: o conteúdo acaba antes do que o programa declara.
+        ByteBuffer completo = programa(7, interpretador.compilar("1 + 2")).flip();
+        ByteBuffer truncado = ByteBuffer.allocate(completo.limit()).put(completo.limit(12));
+        Resposta incompleto = processar(truncado);
+        assertEquals(7, incompleto.id);
+        assertEquals(ProtocoloBinario.STATUS_QUADRO_INVALIDO, incompleto.status);
+        assertEquals("Conteúdo do quadro incompleto.", incompleto.mensagem());
+    }
+
+    @Test
+    void respostasSeguidasSaoAcrescentadasAoBufferQueCresce() {
+        ByteBuffer saida = ByteBuffer.allocate(4);
+        for (int id = 0; id < 50; id++) {
+            saida = ProtocoloBinario.processarQuadro(expressao(id, id + " + 1").flip(), saida, "teste");
+        }
+        saida.flip();
+        for (int id = 0; id < 50; id++) {
+            ByteBuffer quadro = saida.slice(saida.position(), 4 + saida.getInt(saida.position()));
+            saida.position(saida.position() + quadro.limit());
+            Resposta resposta = new Resposta(quadro);
+            assertEquals(id, resposta.id);
+            assertEquals(id + 1.0, resposta.resultado());
+        }
+        assertFalse(saida.hasRemaining());
+    }
+
+    @Test
+    void reconheceASaudacao() {
+        ByteBuffer buffer = ByteBuffer.allocate(8).put((byte) 'x').put(ProtocoloBinario.SAUDACAO);
+        assertTrue(ProtocoloBinario.isSaudacao(buffer, 1));
+        assertFalse(ProtocoloBinario.isSaudacao(buffer, 0));
+        assertFalse(ProtocoloBinario.isSaudacao(ByteBuffer.wrap("1+2\n".getBytes(StandardCharsets.US_ASCII)), 0));
+    }
+}